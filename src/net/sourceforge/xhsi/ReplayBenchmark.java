@@ -0,0 +1,268 @@
+/**
+* ReplayBenchmark.java
+*
+* Feeds a recorded flight session through XPlaneDataPacketDecoder as fast as
+* possible, and renders the PFD, ND, EICAS and MFD into offscreen images after
+* every ADCD packet, like the UI would. Reports packets/s for decoding alone,
+* frames/s for decoding and rendering, the p50 and p99 paint time of every
+* subcomponent, and the allocation rate of the decoding and rendering threads.
+* Runs headless, with the preferences and navigation databases of XHSI.
+*
+* The ND map layer is off (xhsi.nd.map_layer=false), so that the ND draws
+* all its nav objects in its own paint, and the numbers stay comparable with
+* those of before the map layer. Start it with -Dxhsi.nd.map_layer=true to
+* measure the ND with the layer; its rendering on the "nd-map-layer" thread
+* is then not in the ND paint times.
+*
+* Started with: java -jar XHSI.jar --benchmark <filename> [<passes>]
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JMenuBar;
+
+import net.sourceforge.xhsi.flightdeck.PaintTimer;
+import net.sourceforge.xhsi.flightdeck.command.CmdConfigurator;
+import net.sourceforge.xhsi.flightdeck.eicas.EICASComponent;
+import net.sourceforge.xhsi.flightdeck.mfd.MFDComponent;
+import net.sourceforge.xhsi.flightdeck.nd.NDComponent;
+import net.sourceforge.xhsi.flightdeck.pfd.PFDComponent;
+
+import net.sourceforge.xhsi.model.ModelFactory;
+import net.sourceforge.xhsi.model.aptnavdata.AptNavXP900DatNavigationObjectBuilder;
+import net.sourceforge.xhsi.model.xplane.XPlaneDataPacketDecoder;
+import net.sourceforge.xhsi.model.xplane.XPlaneFlightSessionFile;
+import net.sourceforge.xhsi.model.xplane.XPlaneModelFactory;
+import net.sourceforge.xhsi.model.xplane.XPlaneSimDataRepository;
+
+
+public class ReplayBenchmark {
+
+    // frames rendered before measuring, to warm up the JIT and the caches
+    public static final int WARMUP_FRAMES = 500;
+
+    private static final int TAG_ADCD = ('A' << 24) | ('D' << 16) | ('C' << 8) | 'D';
+
+    private String filename;
+    private int passes;
+
+    private ModelFactory model_instance;
+    private XPlaneDataPacketDecoder decoder;
+
+    private String[] names = { "PFD", "ND", "EICAS", "MFD" };
+    private Component[] components = new Component[4];
+    private BufferedImage[] images = new BufferedImage[4];
+    private PaintTimer[] paint_timers = new PaintTimer[4];
+
+    private long edt_thread_id = -1;
+
+    // rendering happens on the event dispatch thread, after the repository has swapped in the new frame
+    private final Runnable render = new Runnable() {
+        public void run() {
+            edt_thread_id = Thread.currentThread().getId();
+            for (int i=0; i<components.length; i++) {
+                Graphics2D g2 = images[i].createGraphics();
+                components[i].paint(g2);
+                g2.dispose();
+            }
+        }
+    };
+
+
+    public ReplayBenchmark(String filename, int passes) {
+        this.filename = filename;
+        this.passes = Math.max(1, passes);
+    }
+
+
+    public void run() throws Exception {
+
+        if ( ! XPlaneFlightSessionFile.is_session_file(this.filename) ) {
+            System.out.println(this.filename + " is not a flight session recorded by this version of XHSI");
+            return;
+        }
+        // before MovingMap reads it
+        if ( System.getProperty("xhsi.nd.map_layer") == null ) {
+            System.setProperty("xhsi.nd.map_layer", "false");
+        }
+        XPlaneFlightSessionFile session = new XPlaneFlightSessionFile(this.filename);
+        session.open();
+
+        // the preferences need the commander configuration, like in XHSI.init()
+        new CmdConfigurator(null);
+        XHSIPreferences.get_instance();
+        // XHSI.main() logs everything until XHSI.init() sets the preferred loglevel; don't time the logging
+        Logger.getLogger("net.sourceforge.xhsi").setLevel(Level.WARNING);
+        // the settings keep their state in their menu items
+        XHSISettings.get_instance().create_menu(new JMenuBar());
+        this.model_instance = new XPlaneModelFactory();
+        this.decoder = new XPlaneDataPacketDecoder(this.model_instance);
+        XPlaneSimDataRepository.replaying = true;
+
+        // the ND needs the navigation databases, if they can be found
+        if ( ! XHSIStatus.nav_db_status.equals(XHSIStatus.STATUS_NAV_DB_NOT_FOUND) ) {
+            new AptNavXP900DatNavigationObjectBuilder().read_all_tables();
+        }
+
+        this.components[0] = new PFDComponent(this.model_instance, XHSIInstrument.PFD_ID);
+        this.components[1] = new NDComponent(this.model_instance, XHSIInstrument.ND_ID);
+        this.components[2] = new EICASComponent(this.model_instance, XHSIInstrument.EICAS_ID);
+        this.components[3] = new MFDComponent(this.model_instance, XHSIInstrument.MFD_ID);
+        for (int i=0; i<this.components.length; i++) {
+            Dimension size = this.components[i].getPreferredSize();
+            this.components[i].setSize(size);
+            this.images[i] = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+            this.paint_timers[i] = new PaintTimer();
+        }
+        ((PFDComponent)this.components[0]).paint_timer = this.paint_timers[0];
+        ((NDComponent)this.components[1]).paint_timer = this.paint_timers[1];
+        ((EICASComponent)this.components[2]).paint_timer = this.paint_timers[2];
+        ((MFDComponent)this.components[3]).paint_timer = this.paint_timers[3];
+
+        System.out.println("Replay benchmark of " + this.filename + " (" + (session.get_duration() / 1000000000L) + "s recorded)");
+        if ( "false".equals(System.getProperty("xhsi.nd.map_layer")) ) {
+            System.out.println("ND map layer off");
+        } else {
+            System.out.println("ND map layer on: the ND paint times leave out the rendering of the layer on its own thread");
+        }
+
+        ThreadMXBean thread_bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocation_bean = null;
+        if ( thread_bean instanceof com.sun.management.ThreadMXBean ) {
+            allocation_bean = (com.sun.management.ThreadMXBean) thread_bean;
+        }
+        long this_thread_id = Thread.currentThread().getId();
+
+        // decoding only
+        for (int pass=0; pass<2; pass++) {
+            // the first pass warms up
+            long allocated = ( allocation_bean != null ) ? allocation_bean.getThreadAllocatedBytes(this_thread_id) : 0;
+            long nb_of_packets = 0;
+            long start = System.nanoTime();
+            session.rewind();
+            while ( session.next_packet() ) {
+                this.decoder.new_sim_data(session.packet);
+                nb_of_packets++;
+            }
+            long elapsed = System.nanoTime() - start;
+            if ( pass == 1 ) {
+                System.out.println("Decoding: " + nb_of_packets + " packets, " + rate(nb_of_packets, elapsed) + " packets/s, "
+                        + (elapsed / Math.max(1, nb_of_packets)) + " ns/packet"
+                        + ( allocation_bean != null ? ", " + ((allocation_bean.getThreadAllocatedBytes(this_thread_id) - allocated) / Math.max(1, nb_of_packets)) + " bytes allocated/packet" : "" ));
+            }
+        }
+
+        // decoding and rendering
+        EventQueue.invokeAndWait(this.render);
+        session.rewind();
+        int warmup = 0;
+        while ( ( warmup < WARMUP_FRAMES ) && next_packet_looped(session) ) {
+            if ( decode_and_render(session) ) warmup++;
+        }
+        for (int i=0; i<this.paint_timers.length; i++) {
+            this.paint_timers[i].reset();
+        }
+
+        long allocated = 0;
+        long edt_allocated = 0;
+        if ( allocation_bean != null ) {
+            allocated = allocation_bean.getThreadAllocatedBytes(this_thread_id);
+            edt_allocated = allocation_bean.getThreadAllocatedBytes(this.edt_thread_id);
+        }
+        long nb_of_packets = 0;
+        long nb_of_frames = 0;
+        long start = System.nanoTime();
+        for (int pass=0; pass<this.passes; pass++) {
+            session.rewind();
+            while ( session.next_packet() ) {
+                if ( decode_and_render(session) ) nb_of_frames++;
+                nb_of_packets++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("Decoding and rendering: " + nb_of_packets + " packets, " + nb_of_frames + " frames, "
+                + rate(nb_of_packets, elapsed) + " packets/s, " + rate(nb_of_frames, elapsed) + " frames/s");
+        if ( allocation_bean != null ) {
+            allocated = allocation_bean.getThreadAllocatedBytes(this_thread_id) - allocated;
+            edt_allocated = allocation_bean.getThreadAllocatedBytes(this.edt_thread_id) - edt_allocated;
+            System.out.println("Allocation: decoding " + rate(allocated / 1024, elapsed) + " KB/s, rendering " + rate(edt_allocated / 1024, elapsed) + " KB/s, "
+                    + (edt_allocated / Math.max(1, nb_of_frames)) + " bytes/frame");
+        }
+
+        for (int c=0; c<this.paint_timers.length; c++) {
+            PaintTimer timer = this.paint_timers[c];
+            System.out.println(this.names[c] + " paint times (p50 / p99 ns)");
+            for (int i=0; i<timer.get_nb_of_subcomponents(); i++) {
+                String name = timer.get_subcomponent(i).toString();
+                name = name.substring(name.lastIndexOf('.') + 1);
+                System.out.println("    " + pad(name) + timer.get_percentile(i, 50.0) + " / " + timer.get_percentile(i, 99.0));
+            }
+        }
+
+        session.close();
+
+    }
+
+
+    private boolean next_packet_looped(XPlaneFlightSessionFile session) throws Exception {
+        if ( session.next_packet() ) return true;
+        session.rewind();
+        return session.next_packet();
+    }
+
+
+    /**
+     * Returns true if the packet completed a frame, and the displays have been rendered
+     */
+    private boolean decode_and_render(XPlaneFlightSessionFile session) throws Exception {
+        this.decoder.new_sim_data(session.packet);
+        if ( ( session.packet_length >= 4 ) && ( tag(session.packet) == TAG_ADCD ) ) {
+            EventQueue.invokeAndWait(this.render);
+            return true;
+        }
+        return false;
+    }
+
+
+    private static int tag(byte[] packet) {
+        return ( (packet[0] & 0xFF) << 24 ) | ( (packet[1] & 0xFF) << 16 ) | ( (packet[2] & 0xFF) << 8 ) | ( packet[3] & 0xFF );
+    }
+
+
+    private static long rate(long count, long nanos) {
+        return ( nanos > 0 ) ? count * 1000000000L / nanos : 0;
+    }
+
+
+    private static String pad(String name) {
+        StringBuffer padded = new StringBuffer(name);
+        while ( padded.length() < 28 ) padded.append(' ');
+        return padded.toString();
+    }
+
+
+}
@@ -0,0 +1,203 @@
+/**
+* ReplayMenu.java
+*
+* The "Replay" menu, to control the XPlaneFlightSessionPlayer when replaying
+* a recorded flight session: pause, step, replay speed and moving around in
+* the recording.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi;
+
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.ButtonGroup;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
+
+import net.sourceforge.xhsi.model.xplane.XPlaneFlightSessionPlayer;
+
+
+public class ReplayMenu implements ActionListener, MenuListener {
+
+    // menu item commands must be unique...
+    public static final String ACTION_PAUSE = "Pause";
+    public static final String ACTION_STEP = "Step";
+    public static final String ACTION_BACK = "Back 1 minute";
+    public static final String ACTION_FORWARD = "Forward 1 minute";
+    public static final String ACTION_GOTO = "Go to ...";
+    public static final String ACTION_SPEED = "Speed x";
+
+    public static final float[] SPEEDS = { 0.25f, 0.5f, 1.0f, 2.0f, 4.0f, 8.0f, 16.0f };
+
+    private static final long MINUTE = 60000000000L;
+
+    private XPlaneFlightSessionPlayer player;
+    private Component parent;
+
+    private JMenuItem position_menu_item;
+    private JCheckBoxMenuItem pause_menu_item;
+    private JMenuItem step_menu_item;
+
+
+    public ReplayMenu(XPlaneFlightSessionPlayer player, Component parent) {
+        this.player = player;
+        this.parent = parent;
+    }
+
+
+    public void create_menu(JMenuBar menu_bar) {
+
+        JMenuItem menu_item;
+
+        JMenu replay_menu = new JMenu("Replay");
+        replay_menu.addMenuListener(this);
+
+        // updated when the menu opens
+        this.position_menu_item = new JMenuItem(position_text());
+        this.position_menu_item.setEnabled(false);
+        replay_menu.add(this.position_menu_item);
+
+        replay_menu.addSeparator();
+
+        this.pause_menu_item = new JCheckBoxMenuItem(ReplayMenu.ACTION_PAUSE);
+        this.pause_menu_item.setToolTipText("Pause the replay");
+        this.pause_menu_item.addActionListener(this);
+        replay_menu.add(this.pause_menu_item);
+
+        this.step_menu_item = new JMenuItem(ReplayMenu.ACTION_STEP);
+        this.step_menu_item.setToolTipText("Play the next data packet while paused");
+        this.step_menu_item.addActionListener(this);
+        this.step_menu_item.setEnabled(false);
+        replay_menu.add(this.step_menu_item);
+
+        replay_menu.addSeparator();
+
+        ButtonGroup speed_group = new ButtonGroup();
+        for (int i=0; i<SPEEDS.length; i++) {
+            JRadioButtonMenuItem radio_button_menu_item = new JRadioButtonMenuItem(ReplayMenu.ACTION_SPEED + speed_text(SPEEDS[i]));
+            radio_button_menu_item.addActionListener(this);
+            radio_button_menu_item.setSelected(SPEEDS[i] == this.player.get_speed());
+            speed_group.add(radio_button_menu_item);
+            replay_menu.add(radio_button_menu_item);
+        }
+
+        replay_menu.addSeparator();
+
+        menu_item = new JMenuItem(ReplayMenu.ACTION_BACK);
+        menu_item.addActionListener(this);
+        replay_menu.add(menu_item);
+
+        menu_item = new JMenuItem(ReplayMenu.ACTION_FORWARD);
+        menu_item.addActionListener(this);
+        replay_menu.add(menu_item);
+
+        menu_item = new JMenuItem(ReplayMenu.ACTION_GOTO);
+        menu_item.setToolTipText("Go to a time in the recording (h:mm:ss)");
+        menu_item.addActionListener(this);
+        replay_menu.add(menu_item);
+
+        menu_bar.add(replay_menu);
+
+    }
+
+
+    public void actionPerformed(ActionEvent event) {
+
+        String command = event.getActionCommand();
+
+        if (command.equals(ReplayMenu.ACTION_PAUSE)) {
+            this.player.set_paused(this.pause_menu_item.isSelected());
+            this.step_menu_item.setEnabled(this.pause_menu_item.isSelected());
+        } else if (command.equals(ReplayMenu.ACTION_STEP)) {
+            this.player.step();
+        } else if (command.startsWith(ReplayMenu.ACTION_SPEED)) {
+            this.player.set_speed(Float.parseFloat(command.substring(ReplayMenu.ACTION_SPEED.length())));
+        } else if (command.equals(ReplayMenu.ACTION_BACK)) {
+            this.player.seek(this.player.get_position() - MINUTE);
+        } else if (command.equals(ReplayMenu.ACTION_FORWARD)) {
+            this.player.seek(this.player.get_position() + MINUTE);
+        } else if (command.equals(ReplayMenu.ACTION_GOTO)) {
+            String time = JOptionPane.showInputDialog(this.parent, "Go to time (h:mm:ss)", format_time(this.player.get_position()));
+            if (time != null) {
+                long target = parse_time(time);
+                if (target >= 0) {
+                    this.player.seek(target);
+                }
+            }
+        }
+
+    }
+
+
+    public void menuSelected(MenuEvent event) {
+        this.position_menu_item.setText(position_text());
+    }
+
+
+    public void menuDeselected(MenuEvent event) {
+    }
+
+
+    public void menuCanceled(MenuEvent event) {
+    }
+
+
+    private String position_text() {
+        if ( this.player.is_seekable() ) {
+            return format_time(this.player.get_position()) + " / " + format_time(this.player.get_duration());
+        } else {
+            return "Recording without timestamps";
+        }
+    }
+
+
+    private static String speed_text(float speed) {
+        return ( speed == (int)speed ) ? Integer.toString((int)speed) : Float.toString(speed);
+    }
+
+
+    private static String format_time(long nanos) {
+        long s = nanos / 1000000000L;
+        return (s / 3600) + ":" + ((s / 60) % 60 < 10 ? "0" : "") + ((s / 60) % 60) + ":" + (s % 60 < 10 ? "0" : "") + (s % 60);
+    }
+
+
+    /**
+     * Parses h:mm:ss, mm:ss or ss, returns -1 when it can't
+     */
+    private static long parse_time(String time) {
+        try {
+            String[] parts = time.trim().split(":");
+            long s = 0;
+            for (int i=0; i<parts.length; i++) {
+                s = s * 60 + Long.parseLong(parts[i].trim());
+            }
+            return s * 1000000000L;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+
+}
@@ -34,6 +34,7 @@ import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.io.File;
 import java.lang.Runtime;
 import java.net.InetAddress;
 import java.util.ArrayList;
@@ -51,6 +52,8 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 
+import net.sourceforge.xhsi.benchmark.ModelBenchmarks;
+
 import net.sourceforge.xhsi.model.ModelFactory;
 
 import net.sourceforge.xhsi.model.aptnavdata.AptNavXP900DatNavigationObjectBuilder;
@@ -61,8 +64,10 @@ import net.sourceforge.xhsi.model.xplane.XPlaneFlightSessionPlayer;
 import net.sourceforge.xhsi.model.xplane.XPlaneFlightSessionRecorder;
 import net.sourceforge.xhsi.model.xplane.XPlaneModelFactory;
 import net.sourceforge.xhsi.model.xplane.XPlaneNearestAirport;
+import net.sourceforge.xhsi.model.xplane.XPlaneReceiveMetrics;
 import net.sourceforge.xhsi.model.xplane.XPlaneSimDataRepository;
 import net.sourceforge.xhsi.model.xplane.XPlaneUDPReceiver;
+import net.sourceforge.xhsi.model.xplane.XPlaneUDPRelay;
 import net.sourceforge.xhsi.model.xplane.XPlaneUDPSender;
 
 import net.sourceforge.xhsi.flightdeck.UIHeartbeat;
@@ -105,6 +110,7 @@ public class XHSI implements ActionListener {
     public static final String ACTION_PREFERENCES = "Preferences ...";
     public static final String ACTION_ONTOP = "Windows on top";
     public static final String ACTION_ABOUT = "About XHSI ...";
+    public static final String ACTION_DUMP_METRICS = "Dump receive metrics";
 
     ModelFactory model_instance;
 
@@ -155,8 +161,23 @@ public class XHSI implements ActionListener {
             if (args.length == 3)
                 recording_rate = Integer.parseInt(args[2]);
             new XHSI(Mode.RECORD, args[1], recording_rate);
-        } else if ((args.length == 2) && (args[0].equals("--replay"))) {
-            new XHSI(Mode.REPLAY, args[1]);
+        } else if ((args.length >= 2) && (args[0].equals("--replay"))) {
+            float replay_speed = 1.0f;
+            if (args.length == 3)
+                replay_speed = Float.parseFloat(args[2]);
+            new XHSI(Mode.REPLAY, args[1], replay_speed);
+        } else if ((args.length >= 2) && (args[0].equals("--benchmark"))) {
+            int passes = 1;
+            if (args.length == 3)
+                passes = Integer.parseInt(args[2]);
+            System.setProperty("java.awt.headless", "true");
+            new ReplayBenchmark(args[1], passes).run();
+            System.exit(0);
+        } else if ((args.length >= 1) && (args[0].equals("--microbenchmarks"))) {
+            String[] benchmark_args = new String[args.length - 1];
+            System.arraycopy(args, 1, benchmark_args, 0, benchmark_args.length);
+            ModelBenchmarks.main(benchmark_args);
+            System.exit(0);
         } else if ((args.length == 1) && (args[0].equals("--help"))) {
             display_usage_info();
         } else if ((args.length == 1) && (args[0].equals("--version"))) {
@@ -179,8 +200,18 @@ public class XHSI implements ActionListener {
         "                                      <filename>. If <frame_rate>\n" +
         "                                      is given, records every <frame_rate>'th\n" +
         "                                      received data frame to save space.\n" +
-        "   --replay <filename>                to replay the recording stored\n" +
-        "                                      in <filename>\n" +
+        "   --replay <filename> [<speed>]      to replay the recording stored\n" +
+        "                                      in <filename>. If <speed> is given\n" +
+        "                                      (0.25 to 16), replays that much\n" +
+        "                                      faster than real time.\n" +
+        "   --benchmark <filename> [<passes>]  to decode and render the recording\n" +
+        "                                      stored in <filename> as fast as\n" +
+        "                                      possible, without displaying it,\n" +
+        "                                      and report the timings\n" +
+        "   --microbenchmarks [<regexp>]       to time the decoding of data packets\n" +
+        "                                      and the navigation database code on\n" +
+        "                                      synthetic navdata; --microbenchmarks -h\n" +
+        "                                      for the options\n" +
         "   --version                          to display the version of XHSI\n" +
         "   --help                             to display this help\n"
         );
@@ -211,7 +242,7 @@ public class XHSI implements ActionListener {
     }
 
 
-    public XHSI(Mode mode, String filename) throws Exception {
+    public XHSI(Mode mode, String filename, float replay_speed) throws Exception {
 
         init();
 
@@ -222,6 +253,10 @@ public class XHSI implements ActionListener {
             XPlaneFlightSessionPlayer player = new XPlaneFlightSessionPlayer(filename, Long.parseLong(this.preferences.get_preference(XHSIPreferences.PREF_REPLAY_DELAY_PER_FRAME)));
             XPlaneDataPacketDecoder decoder = new XPlaneDataPacketDecoder(model_instance);
             player.add_sim_data_observer(decoder);
+            player.set_speed(replay_speed);
+            if (this.xhsi_frame.getJMenuBar() != null) {
+                new ReplayMenu(player, this.xhsi_frame).create_menu(this.xhsi_frame.getJMenuBar());
+            }
             this.running_threads.add(player);
             XPlaneSimDataRepository.replaying = true;
             XHSIStatus.status = XHSIStatus.STATUS_PLAYING_RECORDING;
@@ -259,6 +294,7 @@ public class XHSI implements ActionListener {
                         preferences.get_preference(XHSIPreferences.PREF_GROUP) );
                 XPlaneDataPacketDecoder decoder = new XPlaneDataPacketDecoder(model_instance);
                 udp_receiver.add_reception_observer(decoder);
+                create_relay(udp_receiver);
                 XPlaneSimDataRepository.replaying = false;
                 this.running_threads.add(udp_receiver);
                 XHSIStatus.status = XHSIStatus.STATUS_RECEIVING;
@@ -841,6 +877,12 @@ public class XHSI implements ActionListener {
         menu_item.setMnemonic(KeyEvent.VK_P);
         main_xhsi_menu.add(menu_item);
 
+        menu_item = new JMenuItem(XHSI.ACTION_DUMP_METRICS);
+        menu_item.setToolTipText("Write the packet rates, jitter and decode times to XHSI_receive_metrics.txt");
+        menu_item.addActionListener(this);
+        menu_item.setMnemonic(KeyEvent.VK_D);
+        main_xhsi_menu.add(menu_item);
+
         main_xhsi_menu.addSeparator();
 
         menu_item = new JCheckBoxMenuItem(XHSI.ACTION_ONTOP);
@@ -895,6 +937,43 @@ public class XHSI implements ActionListener {
             setAlwaysOnTop( ! this.xhsi_frame.isAlwaysOnTop() );
         } else if (command.equals(ACTION_ABOUT)) {
             showActionDialog();
+        } else if (command.equals(ACTION_DUMP_METRICS)) {
+            dump_receive_metrics();
+        }
+    }
+
+    /**
+     * With -Dxhsi.relay.group=..., re-publish the plugin packets to that multicast group,
+     * on the port of -Dxhsi.relay.port or else our own port
+     */
+    private void create_relay(XPlaneUDPReceiver udp_receiver) {
+        String relay_group = System.getProperty("xhsi.relay.group");
+        if ( relay_group == null ) return;
+        int port = Integer.parseInt(preferences.get_preference(XHSIPreferences.PREF_PORT));
+        int relay_port = Integer.getInteger("xhsi.relay.port", port).intValue();
+        if ( preferences.get_preference(XHSIPreferences.PREF_MULTICAST).equals("true")
+                && preferences.get_preference(XHSIPreferences.PREF_GROUP).equals(relay_group) && ( relay_port == port ) ) {
+            logger.warning("Not relaying to " + relay_group + ":" + relay_port + ", that is where we receive from");
+            return;
+        }
+        try {
+            udp_receiver.set_relay(new XPlaneUDPRelay(relay_group, relay_port));
+        } catch (Exception e) {
+            logger.warning("Could not create the relay to " + relay_group + ":" + relay_port + " (" + e.toString() + ")");
+        }
+    }
+
+    private void dump_receive_metrics() {
+        File file = new File("XHSI_receive_metrics.txt");
+        try {
+            XPlaneReceiveMetrics.get_instance().dump(file);
+            logger.info("Receive metrics written to " + file.getAbsolutePath());
+            JOptionPane.showMessageDialog(this.xhsi_frame, "Receive metrics written to\n" + file.getAbsolutePath(),
+                    "Receive metrics", JOptionPane.INFORMATION_MESSAGE);
+        } catch (Exception e) {
+            logger.warning("Could not write the receive metrics (" + e.toString() + ")");
+            JOptionPane.showMessageDialog(this.xhsi_frame, "Could not write the receive metrics\n" + e.toString(),
+                    "Receive metrics", JOptionPane.ERROR_MESSAGE);
         }
     }
 
@@ -37,6 +37,6 @@ public class XHSIStatus {
     public static String nav_db_status = STATUS_NAV_DB_LOADED;
     public static String nav_db_cycle = "";
     
-    public static boolean receiving = true;
+    public static volatile boolean receiving = true;
 
 }
@@ -0,0 +1,73 @@
+/**
+* MicroBenchmark.java
+*
+* One operation to be timed by MicroBenchmarkRunner. run() is called over and
+* over; it returns a value derived from its result so that the JIT can't
+* optimize the work away. setup() is called once before the warmup, and when
+* the operation has to start from a fresh state every time (eg: parsing into
+* an empty repository), prepare() is called before every run(), outside of
+* the measured time.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.benchmark;
+
+
+public abstract class MicroBenchmark {
+
+    private String name;
+    private boolean per_invocation;
+
+
+    public MicroBenchmark(String name) {
+        this(name, false);
+    }
+
+
+    /**
+     * per_invocation : call prepare() before every run(), and time every run() separately
+     */
+    public MicroBenchmark(String name, boolean per_invocation) {
+        this.name = name;
+        this.per_invocation = per_invocation;
+    }
+
+
+    public String get_name() {
+        return this.name;
+    }
+
+
+    public boolean is_per_invocation() {
+        return this.per_invocation;
+    }
+
+
+    public void setup() throws Exception {
+    }
+
+
+    public void prepare() throws Exception {
+    }
+
+
+    public abstract long run() throws Exception;
+
+
+    public void teardown() throws Exception {
+    }
+
+
+}
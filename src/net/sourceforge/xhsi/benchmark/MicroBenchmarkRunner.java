@@ -0,0 +1,195 @@
+/**
+* MicroBenchmarkRunner.java
+*
+* Times MicroBenchmarks the way JMH does in its average time mode: a number of
+* warmup iterations, then a number of measured iterations, each running the
+* operation for a fixed time. Reports the average time per operation with its
+* standard deviation over the measured iterations, and the number of bytes
+* allocated per operation.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+
+public class MicroBenchmarkRunner {
+
+    public static final int DEFAULT_WARMUP_ITERATIONS = 3;
+    public static final int DEFAULT_ITERATIONS = 5;
+    public static final long DEFAULT_ITERATION_TIME = 1000; // ms
+
+    private int warmup_iterations = DEFAULT_WARMUP_ITERATIONS;
+    private int iterations = DEFAULT_ITERATIONS;
+    private long iteration_time = DEFAULT_ITERATION_TIME * 1000000L; // ns
+
+    private ArrayList<MicroBenchmark> benchmarks = new ArrayList<MicroBenchmark>();
+
+    private com.sun.management.ThreadMXBean allocation_bean = null;
+
+    // the results of the operations end up here, so that they are not dead code
+    public static volatile long sink;
+
+
+    public MicroBenchmarkRunner() {
+        ThreadMXBean thread_bean = ManagementFactory.getThreadMXBean();
+        if ( thread_bean instanceof com.sun.management.ThreadMXBean ) {
+            this.allocation_bean = (com.sun.management.ThreadMXBean) thread_bean;
+        }
+    }
+
+
+    public void set_warmup_iterations(int warmup_iterations) {
+        this.warmup_iterations = Math.max(0, warmup_iterations);
+    }
+
+
+    public void set_iterations(int iterations) {
+        this.iterations = Math.max(1, iterations);
+    }
+
+
+    public void set_iteration_time(long millis) {
+        this.iteration_time = Math.max(1, millis) * 1000000L;
+    }
+
+
+    public void add(MicroBenchmark benchmark) {
+        this.benchmarks.add(benchmark);
+    }
+
+
+    /**
+     * Runs the benchmarks whose name contains a match for filter (all of them when filter is null)
+     */
+    public void run(String filter) throws Exception {
+
+        Pattern pattern = ( filter != null ) ? Pattern.compile(filter) : null;
+
+        System.out.println(pad("Benchmark", 44) + lpad("Cnt", 5) + lpad("Score", 14) + lpad("StdDev", 12) + lpad("Units", 8) + lpad("Alloc", 12) + lpad("Units", 8));
+
+        for (int b=0; b<this.benchmarks.size(); b++) {
+            MicroBenchmark benchmark = this.benchmarks.get(b);
+            if ( ( pattern == null ) || pattern.matcher(benchmark.get_name()).find() ) {
+                run_benchmark(benchmark);
+            }
+        }
+
+    }
+
+
+    private void run_benchmark(MicroBenchmark benchmark) throws Exception {
+
+        benchmark.setup();
+
+        for (int i=0; i<this.warmup_iterations; i++) {
+            iteration(benchmark);
+        }
+
+        long this_thread_id = Thread.currentThread().getId();
+        long allocated = ( this.allocation_bean != null ) ? this.allocation_bean.getThreadAllocatedBytes(this_thread_id) : 0;
+        long total_ops = 0;
+        double[] scores = new double[this.iterations];
+        for (int i=0; i<this.iterations; i++) {
+            long[] result = iteration(benchmark);
+            scores[i] = (double)result[1] / result[0];
+            total_ops += result[0];
+        }
+        if ( this.allocation_bean != null ) {
+            allocated = this.allocation_bean.getThreadAllocatedBytes(this_thread_id) - allocated;
+        }
+
+        benchmark.teardown();
+
+        double mean = 0.0;
+        for (int i=0; i<scores.length; i++) mean += scores[i];
+        mean /= scores.length;
+        double variance = 0.0;
+        for (int i=0; i<scores.length; i++) variance += (scores[i] - mean) * (scores[i] - mean);
+        double stddev = ( scores.length > 1 ) ? Math.sqrt(variance / (scores.length - 1)) : 0.0;
+
+        System.out.println(pad(benchmark.get_name(), 44) + lpad(Integer.toString(scores.length), 5)
+                + lpad(format(mean), 14) + lpad("+- " + format(stddev), 12) + lpad("ns/op", 8)
+                + ( this.allocation_bean != null ? lpad(Long.toString(allocated / Math.max(1, total_ops)), 12) + lpad("B/op", 8) : "" ));
+
+    }
+
+
+    /**
+     * Runs the operation for iteration_time, returns { number of operations, measured ns }
+     */
+    private long[] iteration(MicroBenchmark benchmark) throws Exception {
+
+        long ops = 0;
+        long elapsed = 0;
+        long result = 0;
+
+        if ( benchmark.is_per_invocation() ) {
+            while ( elapsed < this.iteration_time ) {
+                benchmark.prepare();
+                long start = System.nanoTime();
+                result += benchmark.run();
+                elapsed += System.nanoTime() - start;
+                ops++;
+            }
+        } else {
+            // run in batches, so that reading the clock doesn't count for short operations
+            int batch = 1;
+            while ( elapsed < this.iteration_time ) {
+                long start = System.nanoTime();
+                for (int i=0; i<batch; i++) {
+                    result += benchmark.run();
+                }
+                long batch_time = System.nanoTime() - start;
+                elapsed += batch_time;
+                ops += batch;
+                if ( ( batch_time < this.iteration_time / 20 ) && ( batch < (1 << 24) ) ) batch *= 2;
+            }
+        }
+
+        sink += result;
+        return new long[] { ops, elapsed };
+
+    }
+
+
+    private static String format(double value) {
+        if ( value >= 100.0 ) {
+            return Long.toString(Math.round(value));
+        } else {
+            return Double.toString(Math.round(value * 100.0) / 100.0);
+        }
+    }
+
+
+    private static String pad(String text, int width) {
+        StringBuffer padded = new StringBuffer(text);
+        while ( padded.length() < width ) padded.append(' ');
+        return padded.toString();
+    }
+
+
+    private static String lpad(String text, int width) {
+        StringBuffer padded = new StringBuffer();
+        while ( padded.length() + text.length() < width ) padded.append(' ');
+        return padded.append(text).toString();
+    }
+
+
+}
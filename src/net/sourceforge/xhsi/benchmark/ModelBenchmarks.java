@@ -0,0 +1,569 @@
+/**
+* ModelBenchmarks.java
+*
+* Micro benchmarks of the hot paths of the model and of the navigation
+* databases: decoding data packets, the NavigationObjectRepository queries,
+* parsing the navdata and the procedures, and MovingMap rendering the
+* navigation objects of the ND map layer. The navdata is generated by NavDataFixtures, so no
+* X-Plane installation is needed.
+*
+* Started with: java -jar XHSI.jar --microbenchmarks [<options>] [<regexp>]
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.benchmark;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JMenuBar;
+
+import net.sourceforge.xhsi.XHSIInstrument;
+import net.sourceforge.xhsi.XHSIPreferences;
+import net.sourceforge.xhsi.XHSISettings;
+import net.sourceforge.xhsi.flightdeck.command.CmdConfigurator;
+import net.sourceforge.xhsi.flightdeck.nd.MapLayer;
+import net.sourceforge.xhsi.flightdeck.nd.MovingMap;
+import net.sourceforge.xhsi.flightdeck.nd.NDGraphicsConfig;
+import net.sourceforge.xhsi.flightdeck.nd.ProcFile;
+
+import net.sourceforge.xhsi.model.Avionics;
+import net.sourceforge.xhsi.model.CoordinateSystem;
+import net.sourceforge.xhsi.model.NavigationObject;
+import net.sourceforge.xhsi.model.NavigationObjectRepository;
+import net.sourceforge.xhsi.model.NearestAirportTracker;
+import net.sourceforge.xhsi.model.aptnavdata.AptNavXP900DatNavigationObjectBuilder;
+import net.sourceforge.xhsi.model.aptnavdata.NavDataCache;
+import net.sourceforge.xhsi.model.xplane.XPlaneDataPacketDecoder;
+import net.sourceforge.xhsi.model.xplane.XPlaneModelFactory;
+import net.sourceforge.xhsi.model.xplane.XPlaneSimDataRepository;
+
+
+public class ModelBenchmarks {
+
+    private static NavDataFixtures fixtures;
+    private static NavigationObjectRepository nor;
+    private static AptNavXP900DatNavigationObjectBuilder builder;
+    private static XPlaneModelFactory model_factory;
+    private static XPlaneDataPacketDecoder decoder;
+
+    // false when a parsing benchmark has left the repository half filled
+    private static boolean loaded = false;
+
+
+    public static void main(String[] args) throws Exception {
+
+        MicroBenchmarkRunner runner = new MicroBenchmarkRunner();
+        float scale = 1.0f;
+        String filter = null;
+
+        for (int i=0; i<args.length; i++) {
+            if ( args[i].equals("-wi") && ( i + 1 < args.length ) ) {
+                runner.set_warmup_iterations(Integer.parseInt(args[++i]));
+            } else if ( args[i].equals("-i") && ( i + 1 < args.length ) ) {
+                runner.set_iterations(Integer.parseInt(args[++i]));
+            } else if ( args[i].equals("-r") && ( i + 1 < args.length ) ) {
+                runner.set_iteration_time(Long.parseLong(args[++i]));
+            } else if ( args[i].equals("-scale") && ( i + 1 < args.length ) ) {
+                scale = Float.parseFloat(args[++i]);
+            } else if ( args[i].startsWith("-") ) {
+                display_usage_info();
+                return;
+            } else {
+                filter = args[i];
+            }
+        }
+
+        System.setProperty("java.awt.headless", "true");
+        // the model needs the preferences, which need the commander configuration, like in XHSI.init()
+        new CmdConfigurator(null);
+        XHSIPreferences.get_instance();
+        // XHSI.main() logs everything until XHSI.init() sets the preferred loglevel; don't time the logging
+        Logger.getLogger("net.sourceforge.xhsi").setLevel(Level.WARNING);
+        // the settings keep their state in their menu items
+        XHSISettings.get_instance().create_menu(new JMenuBar());
+        model_factory = new XPlaneModelFactory();
+        decoder = new XPlaneDataPacketDecoder(model_factory);
+
+        nor = NavigationObjectRepository.get_instance();
+        builder = new AptNavXP900DatNavigationObjectBuilder();
+        // parse every time, without recording for the cache
+        builder.set_cache(null);
+        fixtures = new NavDataFixtures(scale);
+        fixtures.create();
+        System.out.println("Synthetic navdata: " + fixtures);
+
+        runner.add(new DecodeSimData("decoder.new_sim_data.ADCD", "ADCD", false));
+        runner.add(new DecodeSimData("decoder.new_sim_data.AVIO", "AVIO", true));
+        runner.add(new GetNavObjects("nor.get_nav_objects.FIX", NavigationObject.NO_TYPE_FIX));
+        runner.add(new GetNavObjects("nor.get_nav_objects.AIRPORT", NavigationObject.NO_TYPE_AIRPORT));
+        runner.add(new FindTunedNavObject("nor.find_tuned_nav_object"));
+        runner.add(new FindNearestAirport("nor.find_nrst_arpt"));
+        runner.add(new TrackNearestAirport("tracker.update"));
+        runner.add(new FindNearestNavObjects("nor.find_nearest_nav_objects.FIX.8", NavigationObject.NO_TYPE_FIX, 8));
+        runner.add(new FindNavObjectsWithin("nor.find_nav_objects_within.VOR.200nm", NavigationObject.NO_TYPE_VOR, 200.0f));
+        runner.add(new ReadAptFile("builder.read_an_apt_file"));
+        runner.add(new ReadNavFile("builder.read_nav_file"));
+        runner.add(new ReadFixFile("builder.read_fix_file"));
+        runner.add(new LoadNavDataCache("navdatacache.load"));
+        runner.add(new ParseProcFile("procfile.parse"));
+        runner.add(new MovingMapRenderLayer("movingmap.render_layer.40nm", 40));
+        runner.add(new MovingMapRenderLayer("movingmap.render_layer.160nm", 160));
+        runner.add(new MovingMapRenderLayer("movingmap.render_layer.640nm", 640));
+
+        try {
+            runner.run(filter);
+        } finally {
+            fixtures.delete();
+        }
+
+    }
+
+
+    public static void display_usage_info() {
+        System.out.println(
+        "Usage: java -jar XHSI.jar --microbenchmarks [<options>] [<regexp>]\n\n" +
+        "runs the benchmarks whose name matches <regexp>, or all of them\n" +
+        "where options include:\n" +
+        "   -wi <n>          warmup iterations (default " + MicroBenchmarkRunner.DEFAULT_WARMUP_ITERATIONS + ")\n" +
+        "   -i <n>           measured iterations (default " + MicroBenchmarkRunner.DEFAULT_ITERATIONS + ")\n" +
+        "   -r <ms>          time of each iteration (default " + MicroBenchmarkRunner.DEFAULT_ITERATION_TIME + ")\n" +
+        "   -scale <f>       size of the synthetic navdata, relative to X-Plane 9 (default 1.0)\n"
+        );
+    }
+
+
+    private static void ensure_loaded() throws Exception {
+        if ( ! loaded ) {
+            nor.init();
+            fixtures.load(builder);
+            loaded = true;
+            // to compare the heap that the navdata takes with and without -Dxhsi.navdata.compact
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            System.out.println("Heap in use after loading the navdata: " + ( runtime.totalMemory() - runtime.freeMemory() ) / ( 1024 * 1024 ) + " MB"
+                    + ( NavigationObjectRepository.COMPACT_FIXES ? " (compact fixes)" : "" ));
+        }
+    }
+
+
+    /**
+     * A data packet like the plugin sends them, in a few variations so that the values change
+     */
+    private static class DecodeSimData extends MicroBenchmark {
+
+        private static final int NB_OF_PACKETS = 16;
+        private static final int NB_OF_FLOATS = 120;
+
+        private String tag;
+        private boolean with_strings;
+        private byte[][] packets = new byte[NB_OF_PACKETS][];
+        private int next = 0;
+
+        DecodeSimData(String name, String tag, boolean with_strings) {
+            super(name);
+            this.tag = tag;
+            this.with_strings = with_strings;
+        }
+
+        public void setup() {
+            int nb_of_strings = this.with_strings ? 4 : 0;
+            for (int p=0; p<NB_OF_PACKETS; p++) {
+                ByteBuffer packet = ByteBuffer.allocate(8 + 8 * (NB_OF_FLOATS + nb_of_strings));
+                packet.put(this.tag.getBytes());
+                packet.putInt(NB_OF_FLOATS + nb_of_strings);
+                for (int i=0; i<NB_OF_FLOATS; i++) {
+                    packet.putInt(i * 3);
+                    packet.putFloat(100.0f * i + 0.37f * p);
+                }
+                for (int i=0; i<nb_of_strings; i++) {
+                    packet.putInt(XPlaneSimDataRepository.SIM_COCKPIT2_RADIOS_INDICATORS_NAV1_NAV_ID + i);
+                    // the NAV IDs only change now and then
+                    packet.put(( p < NB_OF_PACKETS / 2 ? "ABC " : "XYZ " ).getBytes());
+                }
+                this.packets[p] = packet.array();
+            }
+        }
+
+        public long run() throws Exception {
+            decoder.new_sim_data(this.packets[this.next]);
+            this.next = ( this.next + 1 ) % NB_OF_PACKETS;
+            return this.next;
+        }
+
+    }
+
+
+    private static class GetNavObjects extends MicroBenchmark {
+
+        private int type;
+        private int q = 0;
+
+        GetNavObjects(String name, int type) {
+            super(name);
+            this.type = type;
+        }
+
+        public void setup() throws Exception {
+            ensure_loaded();
+        }
+
+        public long run() {
+            this.q = ( this.q + 1 ) % NavDataFixtures.NB_OF_QUERIES;
+            return nor.get_nav_objects(this.type, fixtures.query_lat[this.q], fixtures.query_lon[this.q]).size();
+        }
+
+    }
+
+
+    private static class FindTunedNavObject extends MicroBenchmark {
+
+        private int q = 0;
+
+        FindTunedNavObject(String name) {
+            super(name);
+        }
+
+        public void setup() throws Exception {
+            ensure_loaded();
+        }
+
+        public long run() {
+            this.q = ( this.q + 1 ) % NavDataFixtures.NB_OF_QUERIES;
+            return ( nor.find_tuned_nav_object(fixtures.query_lat[this.q], fixtures.query_lon[this.q], fixtures.query_freq[this.q], fixtures.query_nav_id[this.q]) != null ) ? 1 : 0;
+        }
+
+    }
+
+
+    private static class FindNearestAirport extends MicroBenchmark {
+
+        private int q = 0;
+
+        FindNearestAirport(String name) {
+            super(name);
+        }
+
+        public void setup() throws Exception {
+            ensure_loaded();
+        }
+
+        public long run() {
+            this.q = ( this.q + 1 ) % NavDataFixtures.NB_OF_QUERIES;
+            return nor.find_nrst_arpt(fixtures.query_lat[this.q], fixtures.query_lon[this.q], 1000.0f, false).length();
+        }
+
+    }
+
+
+    private static class TrackNearestAirport extends MicroBenchmark {
+
+        // 480 kts, updated every 100 ms like XPlaneNearestAirport
+        private static final float STEP_NM = 480.0f / 36000.0f;
+        // fly for an hour from each query position
+        private static final int STEPS_PER_FLIGHT = 36000;
+
+        private NearestAirportTracker tracker;
+        private int q = 0;
+        private int step = 0;
+        private float lat;
+        private float lon;
+
+        TrackNearestAirport(String name) {
+            super(name);
+        }
+
+        public void setup() throws Exception {
+            ensure_loaded();
+            this.tracker = new NearestAirportTracker(nor);
+            this.lat = fixtures.query_lat[this.q];
+            this.lon = fixtures.query_lon[this.q];
+        }
+
+        public long run() {
+            if ( ++this.step == STEPS_PER_FLIGHT ) {
+                this.step = 0;
+                this.q = ( this.q + 1 ) % NavDataFixtures.NB_OF_QUERIES;
+                this.lat = fixtures.query_lat[this.q];
+                this.lon = fixtures.query_lon[this.q];
+            }
+            // to the north-east, but not over the pole
+            this.lat = Math.min(80.0f, this.lat + STEP_NM * 0.7071f * CoordinateSystem.deg_lat_per_nm());
+            this.lon += STEP_NM * 0.7071f * CoordinateSystem.deg_lon_per_nm(this.lat);
+            if ( this.lon > 180.0f ) this.lon -= 360.0f;
+            return this.tracker.update(this.lat, this.lon, 1000.0f).length();
+        }
+
+    }
+
+
+    private static class FindNearestNavObjects extends MicroBenchmark {
+
+        private int type;
+        private int k;
+        private int q = 0;
+
+        FindNearestNavObjects(String name, int type, int k) {
+            super(name);
+            this.type = type;
+            this.k = k;
+        }
+
+        public void setup() throws Exception {
+            ensure_loaded();
+        }
+
+        public long run() {
+            this.q = ( this.q + 1 ) % NavDataFixtures.NB_OF_QUERIES;
+            return nor.find_nearest_nav_objects(this.type, fixtures.query_lat[this.q], fixtures.query_lon[this.q], this.k, null).size();
+        }
+
+    }
+
+
+    private static class FindNavObjectsWithin extends MicroBenchmark {
+
+        private int type;
+        private float radius;
+        private int q = 0;
+        private ArrayList<NavigationObject> result = new ArrayList<NavigationObject>();
+
+        FindNavObjectsWithin(String name, int type, float radius) {
+            super(name);
+            this.type = type;
+            this.radius = radius;
+        }
+
+        public void setup() throws Exception {
+            ensure_loaded();
+        }
+
+        public long run() {
+            this.q = ( this.q + 1 ) % NavDataFixtures.NB_OF_QUERIES;
+            this.result.clear();
+            nor.find_nav_objects_within(this.type, fixtures.query_lat[this.q], fixtures.query_lon[this.q], this.radius, this.result);
+            return this.result.size();
+        }
+
+    }
+
+
+    private static class ReadAptFile extends MicroBenchmark {
+
+        ReadAptFile(String name) {
+            super(name, true);
+        }
+
+        public void prepare() {
+            loaded = false;
+            nor.init();
+        }
+
+        public long run() throws Exception {
+            builder.read_an_apt_file(fixtures.get_apt_file());
+            return 1;
+        }
+
+    }
+
+
+    private static class ReadNavFile extends MicroBenchmark {
+
+        ReadNavFile(String name) {
+            super(name, true);
+        }
+
+        public void prepare() throws Exception {
+            // the ILS are added to the runways of the airports
+            loaded = false;
+            nor.init();
+            builder.read_an_apt_file(fixtures.get_apt_file());
+        }
+
+        public long run() throws Exception {
+            builder.read_nav_file(fixtures.get_nav_file());
+            return 1;
+        }
+
+    }
+
+
+    private static class ReadFixFile extends MicroBenchmark {
+
+        ReadFixFile(String name) {
+            super(name, true);
+        }
+
+        public void prepare() {
+            loaded = false;
+            nor.init();
+        }
+
+        public long run() throws Exception {
+            builder.read_fix_file(fixtures.get_fix_file());
+            return 1;
+        }
+
+    }
+
+
+    /**
+     * Loading what the three builder.read_* benchmarks parse from the cache instead
+     */
+    private static class LoadNavDataCache extends MicroBenchmark {
+
+        private NavDataCache cache;
+        private ArrayList<File> sources = new ArrayList<File>();
+
+        LoadNavDataCache(String name) {
+            super(name, true);
+        }
+
+        public void setup() throws Exception {
+            File cache_file = File.createTempFile("xhsi_navdata", ".cache");
+            cache_file.deleteOnExit();
+            this.cache = new NavDataCache(cache_file);
+            this.sources.add(fixtures.get_apt_file());
+            this.sources.add(fixtures.get_nav_file());
+            this.sources.add(fixtures.get_fix_file());
+            AptNavXP900DatNavigationObjectBuilder recording_builder = new AptNavXP900DatNavigationObjectBuilder();
+            recording_builder.set_cache(this.cache);
+            nor.init();
+            fixtures.load(recording_builder);
+            this.cache.save(this.sources, "", nor);
+            this.cache.clear_recording();
+            loaded = true;
+        }
+
+        public void prepare() {
+            nor.init();
+        }
+
+        public long run() throws Exception {
+            return this.cache.load(this.sources, "", nor) ? 1 : 0;
+        }
+
+        public void teardown() {
+            this.cache.get_file().delete();
+        }
+
+    }
+
+
+    private static class ParseProcFile extends MicroBenchmark {
+
+        ParseProcFile(String name) {
+            super(name);
+        }
+
+        public long run() {
+            return ( ProcFile.parse(fixtures.get_proc_data()).getApproachPaths("TAAAA") != null ) ? 1 : 0;
+        }
+
+    }
+
+
+    /**
+     * What the map layer thread of MovingMap does for a new layer image, in expanded MAP mode and North up:
+     * the selection of the navigation objects in view, their projection, and the drawing of their symbols,
+     * through MovingMap.render_layer() itself, into an offscreen image.
+     */
+    private static class MovingMapRenderLayer extends MicroBenchmark {
+
+        private int map_range;
+        private int q = 0;
+        private MovingMap moving_map;
+        private NDGraphicsConfig nd_gc;
+        private BufferedImage image;
+        private MapLayer.View view = new MapLayer.View();
+
+        MovingMapRenderLayer(String name, int map_range) {
+            super(name);
+            this.map_range = map_range;
+        }
+
+        public void setup() throws Exception {
+            ensure_loaded();
+            Component parent = new Component() { };
+            this.nd_gc = new NDGraphicsConfig(parent, XHSIInstrument.ND_ID);
+            Dimension size = new Dimension(NDGraphicsConfig.INITIAL_PANEL_SIZE + 2*NDGraphicsConfig.INITIAL_BORDER_SIZE, NDGraphicsConfig.INITIAL_PANEL_SIZE + 2*NDGraphicsConfig.INITIAL_BORDER_SIZE);
+            this.nd_gc.component_size = new Dimension(size);
+            this.nd_gc.frame_size = new Dimension(size);
+            this.image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = this.image.createGraphics();
+            this.nd_gc.update_config(g2, Avionics.EFIS_MAP_EXPANDED, Avionics.EFIS_MAP_MAP, this.map_range, false, true, Avionics.STYLE_BOEING);
+            g2.dispose();
+            this.moving_map = new MovingMap(model_factory, this.nd_gc, parent);
+        }
+
+        public long run() {
+
+            this.q = ( this.q + 1 ) % NavDataFixtures.NB_OF_QUERIES;
+            MapLayer.View view = this.view;
+            view.center_lat = fixtures.query_lat[this.q];
+            view.center_lon = fixtures.query_lon[this.q];
+            view.map_up = 0.0f;
+
+            // like MovingMap.drawMap0() and set_map_view()
+            float radius_scale = this.nd_gc.max_range;
+            float delta_lat = radius_scale * CoordinateSystem.deg_lat_per_nm();
+            float delta_lon = radius_scale * CoordinateSystem.deg_lon_per_nm(view.center_lat);
+            float range_multiply = 1.5f;
+            view.pixels_per_nm = (float)this.nd_gc.rose_radius / radius_scale;
+            view.pixels_per_deg_lat = this.nd_gc.rose_radius / delta_lat;
+            view.pixels_per_deg_lon = this.nd_gc.rose_radius / delta_lon;
+            view.mercator = false;
+            view.map_center_x = this.nd_gc.map_center_x;
+            view.map_center_y = this.nd_gc.map_center_y;
+            view.frame_width = this.nd_gc.frame_size.width;
+            view.frame_height = this.nd_gc.frame_size.height;
+            view.lat_max = view.center_lat + delta_lat * range_multiply;
+            view.lat_min = view.center_lat - delta_lat * range_multiply;
+            view.lon_max = view.center_lon + delta_lon * range_multiply;
+            view.lon_min = view.center_lon - delta_lon * range_multiply;
+            view.draw_runways = ( this.map_range <= 20 );
+            view.draw_fixes = ( this.map_range <= 40 );
+            view.draw_ndbs = ( this.map_range <= MovingMap.NDB_MAX_RANGE );
+            view.draw_vors = ( this.map_range <= MovingMap.VOR_MAX_RANGE );
+            view.draw_airports = ( this.map_range <= MovingMap.ARPT_MAX_RANGE );
+            view.show_navaid_data = false;
+            view.min_rwy = 1000.0f;
+            view.active_chart = null;
+            view.map_range = this.map_range;
+            view.map_zoomin = false;
+            view.nd_gc = this.nd_gc;
+            view.rendering_hints = this.nd_gc.rendering_hints;
+
+            Graphics2D g2 = this.image.createGraphics();
+            g2.setRenderingHints(view.rendering_hints);
+            g2.setColor(this.nd_gc.background_color);
+            g2.fillRect(0, 0, view.frame_width, view.frame_height);
+            this.moving_map.render_layer(g2, view);
+            g2.dispose();
+            return this.image.getRGB(view.map_center_x, view.map_center_y);
+
+        }
+
+    }
+
+
+}
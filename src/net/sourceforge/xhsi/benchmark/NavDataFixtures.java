@@ -0,0 +1,438 @@
+/**
+* NavDataFixtures.java
+*
+* Generates synthetic navigation databases in the X-Plane 9 formats read by
+* AptNavXP900DatNavigationObjectBuilder (apt.dat, earth_nav.dat, earth_fix.dat)
+* and a GNS430 procedure file for ProcFile, so that the navdata can be
+* benchmarked without an X-Plane installation. The data is random, but with
+* the sizes and the geographic distribution of the real databases: dense over
+* Europe, North America and East Asia, sparse elsewhere. The same seed always
+* gives the same data.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+import net.sourceforge.xhsi.model.aptnavdata.AptNavXP900DatNavigationObjectBuilder;
+
+
+public class NavDataFixtures {
+
+    public static final long DEFAULT_SEED = 20140101L;
+
+    // the sizes of the X-Plane 9 databases, roughly
+    public static final int AIRPORTS = 20000;
+    public static final int VORS = 3500;
+    public static final int NDBS = 4000;
+    public static final int DMES = 500;
+    public static final int FIXES = 120000;
+
+    // the number of queries that are prepared for the benchmarks
+    public static final int NB_OF_QUERIES = 1024;
+
+    // where the navdata is dense: lat, lon, spread (deg), weight
+    private static final float[][] REGIONS = {
+        {  50.0f,    8.0f,  7.0f, 30.0f },   // Europe
+        {  39.0f,  -88.0f, 10.0f, 30.0f },   // North America
+        {  36.0f, -118.0f,  4.0f,  6.0f },   // California
+        {  33.0f,  122.0f,  8.0f, 10.0f },   // East Asia
+        { -27.0f,  140.0f, 10.0f,  5.0f },   // Australia
+        { -18.0f,  -50.0f, 10.0f,  5.0f },   // South America
+        {   0.0f,    0.0f,  0.0f, 14.0f },   // anywhere
+    };
+
+    private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private Random random;
+    private File directory;
+
+    private int nb_of_airports;
+    private int nb_of_vors;
+    private int nb_of_ndbs;
+    private int nb_of_dmes;
+    private int nb_of_fixes;
+    private int nb_of_ils = 0;
+
+    // queries: aircraft positions near the generated data
+    public float[] query_lat = new float[NB_OF_QUERIES];
+    public float[] query_lon = new float[NB_OF_QUERIES];
+    // queries: tuned frequencies (MHz or kHz like the sim), and the NAV ID that is received, or ""
+    public float[] query_freq = new float[NB_OF_QUERIES];
+    public String[] query_nav_id = new String[NB_OF_QUERIES];
+
+    private String proc_data;
+
+
+    public NavDataFixtures(float scale) {
+        this(scale, DEFAULT_SEED);
+    }
+
+
+    public NavDataFixtures(float scale, long seed) {
+        this.random = new Random(seed);
+        this.nb_of_airports = Math.max(1, Math.round(AIRPORTS * scale));
+        this.nb_of_vors = Math.max(1, Math.round(VORS * scale));
+        this.nb_of_ndbs = Math.max(1, Math.round(NDBS * scale));
+        this.nb_of_dmes = Math.max(1, Math.round(DMES * scale));
+        this.nb_of_fixes = Math.max(1, Math.round(FIXES * scale));
+    }
+
+
+    /**
+     * Writes the databases in a new temporary directory
+     */
+    public void create() throws IOException {
+
+        this.directory = File.createTempFile("xhsi_navdata", "");
+        this.directory.delete();
+        if ( ! this.directory.mkdir() ) {
+            throw new IOException("Could not create " + this.directory);
+        }
+
+        // the ILS and their GS and DME are written in the nav file, but are generated with the airports
+        StringBuffer ils = new StringBuffer();
+        StringBuffer gs = new StringBuffer();
+        StringBuffer ils_dme = new StringBuffer();
+        write_apt_file(ils, gs, ils_dme);
+        write_nav_file(ils, gs, ils_dme);
+        write_fix_file();
+        this.proc_data = create_proc_data();
+
+    }
+
+
+    /**
+     * Reads the databases into the NavigationObjectRepository
+     */
+    public void load(AptNavXP900DatNavigationObjectBuilder builder) throws Exception {
+        builder.read_an_apt_file(get_apt_file());
+        builder.read_nav_file(get_nav_file());
+        builder.read_fix_file(get_fix_file());
+    }
+
+
+    public void delete() {
+        if ( this.directory != null ) {
+            File[] files = this.directory.listFiles();
+            for (int i=0; ( files != null ) && ( i<files.length ); i++) {
+                files[i].delete();
+            }
+            this.directory.delete();
+            this.directory = null;
+        }
+    }
+
+
+    public File get_apt_file() {
+        return new File(this.directory, "apt.dat");
+    }
+
+
+    public File get_nav_file() {
+        return new File(this.directory, "earth_nav.dat");
+    }
+
+
+    public File get_fix_file() {
+        return new File(this.directory, "earth_fix.dat");
+    }
+
+
+    /**
+     * The contents of a GNS430 procedure file of a large airport
+     */
+    public String get_proc_data() {
+        return this.proc_data;
+    }
+
+
+    public String toString() {
+        return this.nb_of_airports + " airports, " + this.nb_of_vors + " VORs, " + this.nb_of_ndbs + " NDBs, "
+                + this.nb_of_dmes + " DMEs, " + this.nb_of_ils + " ILS, " + this.nb_of_fixes + " fixes";
+    }
+
+
+    private void write_apt_file(StringBuffer ils, StringBuffer gs, StringBuffer ils_dme) throws IOException {
+
+        Writer out = new BufferedWriter(new FileWriter(get_apt_file()), 65536);
+        out.write("I\n850 Version - data cycle 1310, build 20131017, metadata AptXP850.  Synthetic data.\n\n");
+
+        float[] position = new float[2];
+
+        for (int a=0; a<this.nb_of_airports; a++) {
+
+            random_position(position);
+            float lat = position[0];
+            float lon = position[1];
+            String icao = ident(a, 4);
+            int elev = this.random.nextInt(3000);
+            out.write("1 " + elev + " 1 0 " + icao + " Synthetic Airport " + a + "\n");
+
+            int nb_of_runways = 1 + ( this.random.nextInt(10) < 6 ? 0 : this.random.nextInt(3) );
+            for (int r=0; r<nb_of_runways; r++) {
+                int number = 1 + this.random.nextInt(18);
+                float hdg = number * 10.0f;
+                boolean hard = this.random.nextInt(4) != 0;
+                int surface = hard ? ( this.random.nextInt(5) == 0 ? 2 : 1 ) : ( this.random.nextInt(2) == 0 ? 3 : 5 );
+                float length = hard ? 1200.0f + this.random.nextInt(2800) : 400.0f + this.random.nextInt(1000);
+                float width = hard ? 30.0f + 15.0f * this.random.nextInt(3) : 15.0f + this.random.nextInt(10);
+                // the runway center is close to the airport position
+                float c_lat = lat + ( this.random.nextFloat() - 0.5f ) * 0.01f;
+                float c_lon = lon + ( this.random.nextFloat() - 0.5f ) * 0.01f;
+                float half_nm = length / 1852.0f / 2.0f;
+                float d_lat = half_nm / 60.0f * (float)Math.cos(Math.toRadians(hdg));
+                float d_lon = half_nm / 60.0f * (float)Math.sin(Math.toRadians(hdg)) / (float)Math.cos(Math.toRadians(c_lat));
+                String num1 = ( number < 10 ? "0" : "" ) + number;
+                String num2 = Integer.toString(number + 18);
+                float thr1_lat = c_lat - d_lat;
+                float thr1_lon = c_lon - d_lon;
+                float thr2_lat = c_lat + d_lat;
+                float thr2_lon = c_lon + d_lon;
+                out.write("100 " + width + " " + surface + " 0 0.25 1 2 1 "
+                        + num1 + " " + coordinate(thr1_lat) + " " + coordinate(thr1_lon) + " 0.00 0.00 2 0 0 1 "
+                        + num2 + " " + coordinate(thr2_lat) + " " + coordinate(thr2_lon) + " 0.00 0.00 2 0 0 1\n");
+
+                if ( hard && ( length > 2000.0f ) && ( this.random.nextInt(3) == 0 ) ) {
+                    // an ILS for num1, the LOC beyond the far threshold, the GS and the DME near the landing threshold
+                    int freq = 10810 + 20 * this.random.nextInt(20) + ( this.random.nextBoolean() ? 5 : 0 );
+                    String ident = "I" + ident(this.nb_of_ils, 3);
+                    ils.append("4 " + coordinate(thr2_lat + d_lat / 10) + " " + coordinate(thr2_lon + d_lon / 10) + " " + elev + " " + freq + " 18 "
+                            + hdg + " " + ident + " " + icao + " " + num1 + " ILS-cat-I\n");
+                    gs.append("6 " + coordinate(thr1_lat + d_lat / 5) + " " + coordinate(thr1_lon + d_lon / 5) + " " + elev + " " + freq + " 10 "
+                            + (300000 + Math.round(hdg)) + ".000 " + ident + " " + icao + " " + num1 + " GS\n");
+                    if ( this.random.nextBoolean() ) {
+                        ils_dme.append("12 " + coordinate(thr1_lat + d_lat / 5) + " " + coordinate(thr1_lon + d_lon / 5) + " " + elev + " " + freq + " 18 0.000 "
+                                + ident + " " + icao + " " + num1 + " DME-ILS\n");
+                    }
+                    this.nb_of_ils++;
+                }
+            }
+
+            if ( this.random.nextInt(10) < 3 ) {
+                out.write("14 " + coordinate(lat + 0.002f) + " " + coordinate(lon + 0.002f) + " 0 0 Tower\n");
+            }
+            if ( this.random.nextInt(10) < 4 ) {
+                out.write("50 " + com_frequency() + " ATIS\n");
+                out.write("54 " + com_frequency() + " TWR\n");
+                out.write("53 " + com_frequency() + " GND\n");
+            }
+
+        }
+
+        out.write("99\n");
+        out.close();
+
+    }
+
+
+    private void write_nav_file(StringBuffer ils, StringBuffer gs, StringBuffer ils_dme) throws IOException {
+
+        Writer out = new BufferedWriter(new FileWriter(get_nav_file()), 65536);
+        out.write("I\n810 Version - data cycle 1310, build 20131017, metadata NavXP810.  Synthetic data.\n\n");
+
+        float[] position = new float[2];
+
+        // sorted by type, as the builder expects
+        for (int n=0; n<this.nb_of_ndbs; n++) {
+            random_position(position);
+            int freq = 190 + this.random.nextInt(1560);
+            out.write("2 " + coordinate(position[0]) + " " + coordinate(position[1]) + " " + this.random.nextInt(2000) + " " + freq + " 50 0.0 "
+                    + ident(n, 2 + n % 2) + " SYNTHETIC NDB " + n + " NDB\n");
+        }
+
+        int[] vor_freq = new int[this.nb_of_vors];
+        float[] vor_lat = new float[this.nb_of_vors];
+        float[] vor_lon = new float[this.nb_of_vors];
+        boolean[] vor_dme = new boolean[this.nb_of_vors];
+        for (int v=0; v<this.nb_of_vors; v++) {
+            random_position(position);
+            vor_lat[v] = position[0];
+            vor_lon[v] = position[1];
+            // 108.00 .. 117.95, but not on the ILS channels
+            vor_freq[v] = 10800 + 5 * this.random.nextInt(200);
+            if ( ( vor_freq[v] < 11200 ) && ( ( vor_freq[v] / 10 ) % 2 == 1 ) ) vor_freq[v] += 10;
+            vor_dme[v] = this.random.nextInt(10) < 7;
+            out.write("3 " + coordinate(vor_lat[v]) + " " + coordinate(vor_lon[v]) + " " + this.random.nextInt(2000) + " " + vor_freq[v] + " 130 "
+                    + ( this.random.nextInt(20) - 10 ) + ".0 " + ident(v, 3) + " SYNTHETIC VOR " + v + ( vor_dme[v] ? " VOR/DME" : " VOR" ) + "\n");
+        }
+
+        out.write(ils.toString());
+        out.write(gs.toString());
+
+        for (int v=0; v<this.nb_of_vors; v++) {
+            if ( vor_dme[v] ) {
+                out.write("12 " + coordinate(vor_lat[v]) + " " + coordinate(vor_lon[v]) + " 0 " + vor_freq[v] + " 130 0.000 "
+                        + ident(v, 3) + " SYNTHETIC VOR " + v + " VOR/DME\n");
+            }
+        }
+        out.write(ils_dme.toString());
+
+        for (int d=0; d<this.nb_of_dmes; d++) {
+            random_position(position);
+            out.write("13 " + coordinate(position[0]) + " " + coordinate(position[1]) + " 0 " + ( 10800 + 5 * this.random.nextInt(200) ) + " 40 0.000 "
+                    + ident(this.nb_of_vors + d, 3) + " SYNTHETIC DME " + d + " DME\n");
+        }
+
+        out.write("99\n");
+        out.close();
+
+        // aircraft tuned to a VOR at up to 60 NM, sometimes without receiving its NAV ID, or to a frequency with nothing in range
+        for (int q=0; q<NB_OF_QUERIES; q++) {
+            int v = this.random.nextInt(this.nb_of_vors);
+            this.query_lat[q] = vor_lat[v] + ( this.random.nextFloat() - 0.5f ) * 2.0f;
+            this.query_lon[q] = vor_lon[v] + ( this.random.nextFloat() - 0.5f ) * 2.0f;
+            this.query_freq[q] = vor_freq[v] / 100.0f;
+            this.query_nav_id[q] = ( q % 4 == 0 ) ? "" : ident(v, 3);
+            if ( q % 8 == 7 ) this.query_freq[q] = 108.00f + 0.05f * this.random.nextInt(200);
+        }
+
+    }
+
+
+    private void write_fix_file() throws IOException {
+
+        Writer out = new BufferedWriter(new FileWriter(get_fix_file()), 65536);
+        out.write("I\n600 Version - data cycle 1310, build 20131017, metadata FixXP700.  Synthetic data.\n\n");
+
+        float[] position = new float[2];
+        for (int f=0; f<this.nb_of_fixes; f++) {
+            random_position(position);
+            out.write(" " + coordinate(position[0]) + " " + coordinate(position[1]) + " " + ident(f, 5) + "\n");
+        }
+
+        out.write("99\n");
+        out.close();
+
+    }
+
+
+    /**
+     * SIDs, STARs and approaches of a large airport, in the format of GNS430/navdata/Proc/ICAO.txt
+     */
+    private String create_proc_data() {
+
+        StringBuffer proc = new StringBuffer();
+        float lat = 50.0f;
+        float lon = 8.5f;
+        String[] runways = { "07L", "07R", "25L", "25R", "18", "36" };
+        int wpt = 0;
+
+        for (int s=0; s<40; s++) {
+            String rwy = runways[s % runways.length];
+            proc.append("SID,SID" + ident(s, 2) + "1" + ",RW" + rwy + ",2\n");
+            proc.append("VA,0,0.0,0.0,0,,0.0,0.0,0.0,0.0,1,1500,0,0,0,0,0,0\n");
+            for (int e=0; e<7; e++) {
+                proc.append(( e == 0 ? "DF," : "TF," ) + proc_entry("W" + ident(wpt++ % 600, 4), lat + s * 0.01f + e * 0.1f, lon + e * 0.1f));
+            }
+            proc.append("\n");
+        }
+
+        for (int s=0; s<30; s++) {
+            String rwy = runways[s % runways.length];
+            proc.append("STAR,STA" + ident(s, 2) + "1" + ",RW" + rwy + ",1\n");
+            for (int e=0; e<8; e++) {
+                proc.append(( e == 0 ? "IF," : "TF," ) + proc_entry("W" + ident(wpt++ % 600, 4), lat - s * 0.01f - e * 0.1f, lon - e * 0.1f));
+            }
+            proc.append("\n");
+        }
+
+        for (int a=0; a<runways.length * 2; a++) {
+            String rwy = runways[a % runways.length];
+            String id = ( a < runways.length ? "I" : "R" ) + rwy;
+            for (int t=0; t<3; t++) {
+                proc.append("APPTR," + id + "," + rwy + ",T" + ident(a * 3 + t, 4) + "\n");
+                for (int e=0; e<5; e++) {
+                    proc.append(( e == 0 ? "IF," : "TF," ) + proc_entry("T" + ident(a * 3 + t + e, 4), lat + t * 0.2f - e * 0.04f, lon + a * 0.05f));
+                }
+                proc.append("\n");
+            }
+            proc.append("FINAL," + id + "," + rwy + "," + ( a < runways.length ? "I" : "R" ) + ",5\n");
+            proc.append("IF," + proc_entry("F" + ident(a, 4), lat, lon + a * 0.05f));
+            proc.append("CF," + proc_entry("D" + ident(a, 4), lat - 0.05f, lon + a * 0.05f));
+            proc.append("CF," + proc_entry("E" + ident(a, 4), lat - 0.08f, lon + a * 0.05f));
+            proc.append("CF," + proc_entry("G" + ident(a, 4), lat - 0.10f, lon + a * 0.05f));
+            proc.append("CF," + proc_entry("RW" + rwy, lat - 0.12f, lon + a * 0.05f));
+            proc.append("CA,0,0.0,0.0,0,,0.0,0.0,0.0,0.0,2,2000,0,0,0,0,0,0\n");
+            proc.append("DF," + proc_entry("M" + ident(a, 4), lat - 0.2f, lon + a * 0.05f));
+            proc.append("HM," + proc_entry("M" + ident(a, 4), lat - 0.2f, lon + a * 0.05f));
+            proc.append("\n");
+        }
+
+        return proc.toString();
+
+    }
+
+
+    private static String proc_entry(String name, float lat, float lon) {
+        return name + "," + coordinate(lat) + "," + coordinate(lon) + ",0, ,0.0,0.0,0.0,0.0,2,5000,0,0,0,0,0,0\n";
+    }
+
+
+    private void random_position(float[] position) {
+
+        float weights = 0.0f;
+        for (int r=0; r<REGIONS.length; r++) weights += REGIONS[r][3];
+        float pick = this.random.nextFloat() * weights;
+        int r = 0;
+        while ( ( r < REGIONS.length - 1 ) && ( pick >= REGIONS[r][3] ) ) {
+            pick -= REGIONS[r][3];
+            r++;
+        }
+
+        if ( REGIONS[r][2] == 0.0f ) {
+            // anywhere, but not too close to the poles
+            position[0] = (float)Math.toDegrees(Math.asin(2.0 * this.random.nextDouble() - 1.0)) * 0.9f;
+            position[1] = this.random.nextFloat() * 360.0f - 180.0f;
+        } else {
+            position[0] = Math.max(-89.0f, Math.min(89.0f, REGIONS[r][0] + (float)this.random.nextGaussian() * REGIONS[r][2]));
+            position[1] = REGIONS[r][1] + (float)this.random.nextGaussian() * REGIONS[r][2] * 1.5f;
+            if ( position[1] >= 180.0f ) position[1] -= 360.0f;
+            if ( position[1] < -180.0f ) position[1] += 360.0f;
+        }
+
+    }
+
+
+    private int com_frequency() {
+        return 11800 + 5 * this.random.nextInt(380);
+    }
+
+
+    /**
+     * A unique identifier of length letters for n
+     */
+    private static String ident(int n, int length) {
+        char[] ident = new char[length];
+        for (int i=length-1; i>=0; i--) {
+            ident[i] = LETTERS.charAt(n % 26);
+            n /= 26;
+        }
+        return new String(ident);
+    }
+
+
+    private static String coordinate(float degrees) {
+        return Float.toString(Math.round(degrees * 1000000.0f) / 1000000.0f);
+    }
+
+
+}
@@ -1,7 +1,7 @@
 /**
 * StatusBar.java
 *
-* Renders the status bar with data source and frame rate indicators.
+* Renders the status bar with data source, frame rate and reception indicators.
 *
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2009  Marc Rogiers (marrog.123@gmail.com)
@@ -32,6 +32,7 @@ import net.sourceforge.xhsi.XHSIStatus;
 
 import net.sourceforge.xhsi.model.ModelFactory;
 import net.sourceforge.xhsi.model.SimDataRepository;
+import net.sourceforge.xhsi.model.xplane.XPlaneReceiveMetrics;
 
 import net.sourceforge.xhsi.flightdeck.GraphicsConfig;
 import net.sourceforge.xhsi.flightdeck.Subcomponent;
@@ -57,6 +58,10 @@ public class StatusBar extends ConWinSubcomponent {
     int fps_y;
     int fps_pixels_per_frame;
 
+    int rx_x;
+    int rx_y;
+    XPlaneReceiveMetrics receive_metrics = XPlaneReceiveMetrics.get_instance();
+
     int src_x;
     int src_y;
 
@@ -128,6 +133,9 @@ public class StatusBar extends ConWinSubcomponent {
             fps_y = ConWinGraphicsConfig.STATUS_BAR_HEIGHT - 25;
             fps_pixels_per_frame = 2;
 
+            rx_x = fps_x + 130;
+            rx_y = fps_y;
+
             src_x = gc.border_left;
             src_y = ConWinGraphicsConfig.STATUS_BAR_HEIGHT - 21;
 
@@ -139,6 +147,7 @@ public class StatusBar extends ConWinSubcomponent {
 
             draw_data_source(g2);
             draw_frame_rate(g2);
+            draw_receive_metrics(g2);
             draw_nav_db_status(g2);
             draw_utc_clock(g2);
     }
@@ -213,6 +222,24 @@ public class StatusBar extends ConWinSubcomponent {
     }
 
 
+    public void draw_receive_metrics(Graphics2D g2) {
+
+        if ( XHSIStatus.status.equals(XHSIStatus.STATUS_RECEIVING) && ! this.data_source.is_replaying() ) {
+            DecimalFormat one_decimal = new DecimalFormat("0.0");
+            g2.setColor(Color.BLACK);
+            g2.setFont(gc.font_statusbar);
+            g2.drawString("RX " + Math.round(this.receive_metrics.get_packet_rate()) + " pkt/s  "
+                    + one_decimal.format(this.receive_metrics.get_byte_rate() / 1024.0f) + " kB/s", rx_x, rx_y + 11);
+            long dropped = this.receive_metrics.get_nb_of_dropped();
+            long lost = this.receive_metrics.get_nb_of_lost();
+            if ( ( dropped > 0 ) || ( lost > 0 ) ) g2.setColor(Color.RED);
+            g2.drawString("ADCD jitter " + one_decimal.format(this.receive_metrics.get_jitter_ms(XPlaneReceiveMetrics.TYPE_ADCD)) + " ms  dropped " + dropped
+                    + ( ( lost > 0 ) ? "  lost " + lost : "" ), rx_x, rx_y + 23);
+        }
+
+    }
+
+
     public void draw_frame_rate(Graphics2D g2) {
 
         if (( XHSIStatus.status.equals(XHSIStatus.STATUS_RECEIVING) ) || ( XHSIStatus.status.equals(XHSIStatus.STATUS_PLAYING_RECORDING) )) {
@@ -0,0 +1,101 @@
+/**
+* PaintTimer.java
+*
+* Collects the paint time of every subcomponent of a component, in ns, so that
+* percentiles can be reported. Unlike COLLECT_PROFILING_INFORMATION, which logs
+* millisecond averages, it is meant to be switched on by a benchmark.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.flightdeck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+
+public class PaintTimer {
+
+    private IdentityHashMap<Subcomponent, Integer> index = new IdentityHashMap<Subcomponent, Integer>();
+    private ArrayList<Subcomponent> subcomponents = new ArrayList<Subcomponent>();
+    private ArrayList<long[]> samples = new ArrayList<long[]>();
+    private int[] nb_of_samples = new int[32];
+
+    private long start;
+
+
+    public void start() {
+        this.start = System.nanoTime();
+    }
+
+
+    public void painted(Subcomponent subcomponent) {
+
+        long paint_time = System.nanoTime() - this.start;
+
+        Integer i = this.index.get(subcomponent);
+        if ( i == null ) {
+            i = Integer.valueOf(this.subcomponents.size());
+            this.index.put(subcomponent, i);
+            this.subcomponents.add(subcomponent);
+            this.samples.add(new long[1024]);
+            if ( i >= this.nb_of_samples.length ) {
+                this.nb_of_samples = Arrays.copyOf(this.nb_of_samples, this.nb_of_samples.length * 2);
+            }
+        }
+
+        int s = i;
+        long[] times = this.samples.get(s);
+        if ( this.nb_of_samples[s] == times.length ) {
+            times = Arrays.copyOf(times, times.length * 2);
+            this.samples.set(s, times);
+        }
+        times[this.nb_of_samples[s]++] = paint_time;
+
+        // for the next subcomponent
+        this.start = System.nanoTime();
+
+    }
+
+
+    public int get_nb_of_subcomponents() {
+        return this.subcomponents.size();
+    }
+
+
+    public Subcomponent get_subcomponent(int i) {
+        return this.subcomponents.get(i);
+    }
+
+
+    /**
+     * The p-th percentile (0..100) of the paint times of subcomponent i, in ns
+     */
+    public long get_percentile(int i, double p) {
+        int n = this.nb_of_samples[i];
+        if ( n == 0 ) return 0;
+        long[] sorted = Arrays.copyOf(this.samples.get(i), n);
+        Arrays.sort(sorted);
+        int rank = (int)Math.ceil(p / 100.0 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, rank))];
+    }
+
+
+    public void reset() {
+        Arrays.fill(this.nb_of_samples, 0);
+    }
+
+
+}
@@ -0,0 +1,88 @@
+/**
+* SimDataDependencies.java
+*
+* Keeps track of the sim data points that a component has read while it was
+* painting its subcomponents, so that it only has to be repainted when one of
+* them has changed, or XHSIStatus.receiving has flipped since the last paint
+* (for the fail crosses). As soon as one subcomponent depends on something else
+* than those, the component is repainted after every update, like before.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.flightdeck;
+
+import net.sourceforge.xhsi.XHSIStatus;
+import net.sourceforge.xhsi.model.SimDataRepository;
+
+
+public class SimDataDependencies {
+
+    private SimDataRepository repository;
+
+    // the mask that is being recorded during a paint (on the event dispatch thread) ...
+    private long[] recording;
+    private boolean recording_sim_data_only;
+    // ... and the one from the last complete paint, checked in update() on the receiving thread
+    private volatile long[] sim_data_mask;
+    private volatile boolean sim_data_only = false;
+    private volatile boolean painting = false;
+    // the XHSIStatus.receiving of the last paint
+    private volatile boolean painted_receiving = true;
+
+
+    public SimDataDependencies(SimDataRepository repository) {
+        this.repository = repository;
+        this.recording = repository.new_sim_data_mask();
+        this.sim_data_mask = repository.new_sim_data_mask();
+    }
+
+
+    public void begin_paint() {
+        this.painting = true;
+        for (int i=0; i<this.recording.length; i++) {
+            this.recording[i] = 0L;
+        }
+        this.recording_sim_data_only = true;
+        this.painted_receiving = XHSIStatus.receiving;
+        this.repository.record_reads(this.recording);
+    }
+
+
+    public void painted(Subcomponent subcomponent) {
+        // still recording, the subcomponent may read sim data to decide
+        if ( ! subcomponent.sim_data_only() ) {
+            this.recording_sim_data_only = false;
+        }
+    }
+
+
+    public void end_paint() {
+        this.repository.record_reads(null);
+        long[] recorded = this.recording;
+        this.recording = this.sim_data_mask;
+        this.sim_data_mask = recorded;
+        this.sim_data_only = this.recording_sim_data_only;
+        this.painting = false;
+    }
+
+
+    public boolean needs_repaint() {
+        // while a paint is going on, the masks are being swapped, so better paint once more
+        return ( ! this.sim_data_only ) || this.repository.has_changed(this.sim_data_mask) || this.painting
+                || ( XHSIStatus.receiving != this.painted_receiving );
+    }
+
+
+}
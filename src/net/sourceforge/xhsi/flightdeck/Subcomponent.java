@@ -82,6 +82,19 @@ public abstract class Subcomponent extends Component {
     public abstract void paint(Graphics2D g2);
 
 
+    /**
+     * Tells whether what paint() has just drawn depends only on sim data points (and
+     * preferences, which force a repaint anyway, and XHSIStatus.receiving, which
+     * SimDataDependencies watches), so that the component can skip its
+     * repaint until one of the sim data points that were read has changed.
+     * Subcomponents that use the time, the FMS, TCAS, navigation data or the CDU
+     * packets must keep the default.
+     */
+    public boolean sim_data_only() {
+        return false;
+    }
+
+
     public  String toString() {
         return this.getClass().getName();
     }
@@ -90,6 +103,10 @@ public abstract class Subcomponent extends Component {
     protected BufferedImage create_buffered_image(int width, int height) {
 
         GraphicsConfiguration gc = this.parent_component.getGraphicsConfiguration();
+        if ( gc == null ) {
+            // not on a screen, e.g. rendered offscreen by the replay benchmark
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
         BufferedImage buf_img = gc.createCompatibleImage(width, height, Transparency.BITMASK);
         return buf_img;
 
@@ -44,6 +44,8 @@ import net.sourceforge.xhsi.XHSIPreferences;
 import net.sourceforge.xhsi.XHSISettings;
 import net.sourceforge.xhsi.XHSIStatus;
 
+import net.sourceforge.xhsi.flightdeck.SimDataDependencies;
+
 import net.sourceforge.xhsi.model.Aircraft;
 import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.ModelFactory;
@@ -69,6 +71,8 @@ public class AnnunComponent extends Component implements Observer, PreferencesOb
     AnnunGraphicsConfig annun_gc;
     ModelFactory model_factory;
     boolean update_since_last_heartbeat = false;
+    // only repaint when sim data that we have painted has changed
+    SimDataDependencies sim_data_dependencies;
     //StatusMessage status_message_comp;
 
     Aircraft aircraft;
@@ -81,6 +85,7 @@ public class AnnunComponent extends Component implements Observer, PreferencesOb
         this.model_factory = model_factory;
         this.aircraft = this.model_factory.get_aircraft_instance();
         this.avionics = this.aircraft.get_avionics();
+        this.sim_data_dependencies = new SimDataDependencies(this.model_factory.get_repository_instance());
 
         annun_gc.reconfig = true;
 
@@ -110,6 +115,8 @@ public class AnnunComponent extends Component implements Observer, PreferencesOb
 
     public void drawAll(Graphics g) {
 
+        this.sim_data_dependencies.begin_paint();
+
         g2 = (Graphics2D)g;
         g2.setRenderingHints(annun_gc.rendering_hints);
         g2.setStroke(new BasicStroke(2.0f));
@@ -153,6 +160,7 @@ public class AnnunComponent extends Component implements Observer, PreferencesOb
 
             // paint each of the subcomponents
             ((AnnunSubcomponent) this.subcomponents.get(i)).paint(g2);
+            this.sim_data_dependencies.painted((AnnunSubcomponent) this.subcomponents.get(i));
 
             if (AnnunComponent.COLLECT_PROFILING_INFORMATION) {
                 paint_time = System.currentTimeMillis() - time;
@@ -162,6 +170,7 @@ public class AnnunComponent extends Component implements Observer, PreferencesOb
         }
 
         annun_gc.reconfigured = false;
+        this.sim_data_dependencies.end_paint();
 
         this.nb_of_paints += 1;
 
@@ -185,7 +194,9 @@ public class AnnunComponent extends Component implements Observer, PreferencesOb
 
 
     public void update() {
-        repaint();
+        if ( this.sim_data_dependencies.needs_repaint() ) {
+            repaint();
+        }
         this.update_since_last_heartbeat = true;
     }
 
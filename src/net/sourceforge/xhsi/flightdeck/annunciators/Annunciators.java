@@ -64,6 +64,10 @@ public class Annunciators extends AnnunSubcomponent {
         super(model_factory, hsi_gc, parent_component);
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
         if ( true ) {
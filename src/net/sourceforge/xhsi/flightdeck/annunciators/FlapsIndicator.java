@@ -59,6 +59,10 @@ public class FlapsIndicator extends AnnunSubcomponent {
         super(model_factory, hsi_gc, parent_component);
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
         if ( true ) {
@@ -70,6 +70,10 @@ public class GearStatus extends AnnunSubcomponent {
         super(model_factory, hsi_gc, parent_component);
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
 
@@ -77,6 +77,10 @@ public class Masters extends AnnunSubcomponent {
         
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
         if ( true ) {
@@ -734,7 +734,7 @@ public class Buttons {
 
                 float newval = s2float(getText(), -1) * radio.div + value;
                 if (newval > 0) {
-                    avionics.sendDataPoint(radio.set_stby, (int)newval);
+                    avionics.queueDataPoint(radio.set_stby, (int)newval);
                 }
             }
         }
@@ -784,7 +784,7 @@ public class Buttons {
                     ch += val;
                     b[oper] = (byte)('0' + (ch & 0x7));
                     float newval = s2float(new String(b), 7777.0f);
-                    avionics.sendDataPoint(XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_TRANSPONDER_CODE, (int)newval);
+                    avionics.queueDataPoint(XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_TRANSPONDER_CODE, (int)newval);
                     break;
                 }
                 case 'I': {
@@ -1365,7 +1365,7 @@ public class Buttons {
 
         void setBaro(int ival) {
             float val = ((float)(ival * (get2992Mode() ? 1013 : 2992))) / 101300;
-            avionics.sendDataPoint(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_ACTUATORS_BAROMETER_SETTING_IN_HG_PILOT, val);
+            avionics.queueDataPoint(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_ACTUATORS_BAROMETER_SETTING_IN_HG_PILOT, val);
         }
 
         boolean get2992Mode() {
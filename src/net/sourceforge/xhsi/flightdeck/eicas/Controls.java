@@ -64,6 +64,10 @@ public class Controls extends EICASSubcomponent {
         
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
 
@@ -57,6 +57,10 @@ public class DivText extends EICASSubcomponent {
         super(model_factory, hsi_gc, parent_component);
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
         if ( eicas_gc.powered && eicas_gc.boeing_style ) {
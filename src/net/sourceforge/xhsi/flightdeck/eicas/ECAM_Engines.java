@@ -65,6 +65,10 @@ public class ECAM_Engines extends EICASSubcomponent {
         three_decimals_format.setDecimalFormatSymbols(format_symbols);
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
 
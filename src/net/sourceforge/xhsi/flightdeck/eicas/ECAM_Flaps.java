@@ -18,6 +18,10 @@ public class ECAM_Flaps extends EICASSubcomponent {
 		// TODO Auto-generated constructor stub
 	}
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
 
@@ -22,6 +22,10 @@ public class ECAM_Fuel extends EICASSubcomponent {
         super(model_factory, hsi_gc, parent_component);
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
     	if ( eicas_gc.airbus_style && eicas_gc.powered ) {        
@@ -96,6 +96,10 @@ public class ECAM_Memo extends EICASSubcomponent {
 		}
 	}
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
 
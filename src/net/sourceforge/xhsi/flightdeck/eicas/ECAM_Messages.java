@@ -97,6 +97,11 @@ public class ECAM_Messages extends EICASSubcomponent {
 		}
 	}
 	
+    public boolean sim_data_only() {
+        // the QPAC and JAR A320neo messages come in their own packets
+        return ! ( eicas_gc.powered && eicas_gc.airbus_style && ( this.avionics.is_qpac() || this.avionics.is_jar_a320neo() ) );
+    }
+
     public void paint(Graphics2D g2) {
 
         if ( eicas_gc.powered && eicas_gc.airbus_style ) {        	
@@ -44,6 +44,9 @@ import net.sourceforge.xhsi.XHSIPreferences;
 import net.sourceforge.xhsi.XHSISettings;
 import net.sourceforge.xhsi.XHSIStatus;
 
+import net.sourceforge.xhsi.flightdeck.PaintTimer;
+import net.sourceforge.xhsi.flightdeck.SimDataDependencies;
+
 import net.sourceforge.xhsi.model.Aircraft;
 import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.ModelFactory;
@@ -62,6 +65,8 @@ public class EICASComponent extends Component implements Observer, PreferencesOb
 
     // subcomponents --------------------------------------------------------
     ArrayList subcomponents = new ArrayList();
+    // set by the replay benchmark to collect the paint times of the subcomponents
+    public PaintTimer paint_timer = null;
     long[] subcomponent_paint_times = new long[15];
     long total_paint_times = 0;
     long nb_of_paints = 0;
@@ -69,6 +74,8 @@ public class EICASComponent extends Component implements Observer, PreferencesOb
     EICASGraphicsConfig eicas_gc;
     ModelFactory model_factory;
     boolean update_since_last_heartbeat = false;
+    // only repaint when sim data that we have painted has changed
+    SimDataDependencies sim_data_dependencies;
     //StatusMessage status_message_comp;
 
     Aircraft aircraft;
@@ -81,6 +88,7 @@ public class EICASComponent extends Component implements Observer, PreferencesOb
         this.model_factory = model_factory;
         this.aircraft = this.model_factory.get_aircraft_instance();
         this.avionics = this.aircraft.get_avionics();
+        this.sim_data_dependencies = new SimDataDependencies(this.model_factory.get_repository_instance());
 
         eicas_gc.reconfig = true;
 
@@ -119,6 +127,8 @@ public class EICASComponent extends Component implements Observer, PreferencesOb
 
     public void drawAll(Graphics g) {
 
+        this.sim_data_dependencies.begin_paint();
+
         g2 = (Graphics2D)g;
         g2.setRenderingHints(eicas_gc.rendering_hints);
         g2.setStroke(new BasicStroke(2.0f));
@@ -152,9 +162,18 @@ public class EICASComponent extends Component implements Observer, PreferencesOb
                 time = System.currentTimeMillis();
             }
 
+            if (this.paint_timer != null) {
+                this.paint_timer.start();
+            }
+
             // paint each of the subcomponents
             ((EICASSubcomponent) this.subcomponents.get(i)).paint(g2);
 
+            if (this.paint_timer != null) {
+                this.paint_timer.painted((EICASSubcomponent) this.subcomponents.get(i));
+            }
+            this.sim_data_dependencies.painted((EICASSubcomponent) this.subcomponents.get(i));
+
             if (EICASComponent.COLLECT_PROFILING_INFORMATION) {
                 paint_time = System.currentTimeMillis() - time;
                 this.subcomponent_paint_times[i] += paint_time;
@@ -163,6 +182,7 @@ public class EICASComponent extends Component implements Observer, PreferencesOb
         }
 
         eicas_gc.reconfigured = false;
+        this.sim_data_dependencies.end_paint();
 
         this.nb_of_paints += 1;
 
@@ -186,7 +206,9 @@ public class EICASComponent extends Component implements Observer, PreferencesOb
 
 
     public void update() {
-        repaint();
+        if ( this.sim_data_dependencies.needs_repaint() ) {
+            repaint();
+        }
         this.update_since_last_heartbeat = true;
     }
 
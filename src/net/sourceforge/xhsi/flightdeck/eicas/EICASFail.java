@@ -54,6 +54,11 @@ public class EICASFail extends EICASSubcomponent {
         super(model_factory, hsi_gc, parent_component);
     }
 
+    public boolean sim_data_only() {
+        // XHSIStatus.receiving is watched by SimDataDependencies
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
         if ( ! XHSIStatus.receiving ) {
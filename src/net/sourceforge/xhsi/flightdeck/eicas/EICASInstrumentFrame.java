@@ -44,6 +44,10 @@ public class EICASInstrumentFrame extends EICASSubcomponent {
         super(model_factory, hsi_gc);
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
 
@@ -79,6 +79,10 @@ public class Engines extends EICASSubcomponent {
 
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
 
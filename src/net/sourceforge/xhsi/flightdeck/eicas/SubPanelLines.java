@@ -59,6 +59,10 @@ public class SubPanelLines extends EICASSubcomponent {
         super(model_factory, hsi_gc, parent_component);
     }
 
+    public boolean sim_data_only() {
+        return true;
+    }
+
 
     public void paint(Graphics2D g2) {
     	boolean primaries = this.preferences.get_eicas_primary_only();
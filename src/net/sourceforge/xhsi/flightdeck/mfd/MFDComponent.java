@@ -50,6 +50,7 @@ import net.sourceforge.xhsi.model.ModelFactory;
 import net.sourceforge.xhsi.model.Observer;
 
 //import net.sourceforge.xhsi.flightdeck.GraphicsConfig;
+import net.sourceforge.xhsi.flightdeck.PaintTimer;
 
 
 public class MFDComponent extends Component implements Observer, PreferencesObserver {
@@ -62,6 +63,8 @@ public class MFDComponent extends Component implements Observer, PreferencesObse
 
     // subcomponents --------------------------------------------------------
     ArrayList subcomponents = new ArrayList();
+    // set by the replay benchmark to collect the paint times of the subcomponents
+    public PaintTimer paint_timer = null;
     long[] subcomponent_paint_times = new long[15];
     long total_paint_times = 0;
     long nb_of_paints = 0;
@@ -158,9 +161,17 @@ public class MFDComponent extends Component implements Observer, PreferencesObse
                 time = System.currentTimeMillis();
             }
 
+            if (this.paint_timer != null) {
+                this.paint_timer.start();
+            }
+
             // paint each of the subcomponents
             ((MFDSubcomponent) this.subcomponents.get(i)).paint(g2);
 
+            if (this.paint_timer != null) {
+                this.paint_timer.painted((MFDSubcomponent) this.subcomponents.get(i));
+            }
+
             if (MFDComponent.COLLECT_PROFILING_INFORMATION) {
                 paint_time = System.currentTimeMillis() - time;
                 this.subcomponent_paint_times[i] += paint_time;
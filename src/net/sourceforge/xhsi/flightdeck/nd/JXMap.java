@@ -48,6 +48,9 @@ import org.jdesktop.swingx.mapviewer.*;
  * To use it right click on the ND panel and twiddle with the mouse wheel.
  * If the Java property "tile.cache" is set then the map data will
  * be saved e.g. "java -Dtile.cache=c:\tile\cache -jar xhsi.jar"
+ * Offline, the tiles can be read from a single file made from such a cache
+ * directory with TilePackImport, e.g. "java -Dtile.pack=c:\tile\tiles.pack -jar xhsi.jar"
+ * The decoded tiles are kept in memory up to "tile.memory" MB (default 64).
  *
  * Demo: https://youtu.be/W7Rb7cuiglk
  */
@@ -0,0 +1,381 @@
+/**
+* MapLayer.java
+*
+* The nav objects of the full map (runways, fixes, NDBs, VORs and airports),
+* retained in an image that a background thread renders, so that the ND
+* only has to draw that image on every frame instead of all the objects.
+*
+* The image is rendered for a View: the position, the rotation (HDG, TRK or
+* North up) and everything else that decides what is drawn. It covers the
+* frame, plus the distance that the aircraft can drift before the image has
+* to be rendered again. On every frame, the image is moved to where its
+* center is on the current map, and rotated by the difference between the
+* current map rotation and the one that it was rendered for. The symbols and
+* labels are only upright for the rotation that the image was rendered for,
+* so a new image is already requested when the map has turned by more than
+* REFRESH_ROTATION degrees, and the image is not used anymore beyond
+* MAX_ROTATION degrees. The same goes for the drift, with a quarter and half
+* of the rose radius. When there is no image that can be used, MovingMap
+* draws the objects itself, like before.
+*
+* An image is only handed from one thread to the other: the event dispatch
+* thread gives a spare image with the request, and gets it back rendered,
+* together with its View in one Rendered. There is no new request before
+* that has been collected. The layer thread only reads the View, and the
+* snapshot of the graphics configuration in it.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.flightdeck.nd;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+
+public class MapLayer {
+
+    private static final Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+    // in degrees
+    public static final float REFRESH_ROTATION = 0.5f;
+    public static final float MAX_ROTATION = 3.0f;
+
+
+    /**
+     * Draws the nav objects of a View; called on the layer thread
+     */
+    public interface Renderer {
+        public void render_layer(Graphics2D g2, View view);
+    }
+
+
+    /**
+     * What the map layer shows, and how
+     */
+    public static class View {
+
+        // where and how the map is projected
+        public float center_lat;
+        public float center_lon;
+        public float map_up;
+        public float pixels_per_nm;
+        public float pixels_per_deg_lat;
+        public float pixels_per_deg_lon;
+        public boolean mercator;
+        public int map_center_x;
+        public int map_center_y;
+        public int frame_width;
+        public int frame_height;
+
+        // the box in which the objects are drawn
+        public float lat_max;
+        public float lat_min;
+        public float lon_max;
+        public float lon_min;
+
+        // what is drawn
+        public boolean draw_runways;
+        public boolean draw_fixes;
+        public boolean draw_ndbs;
+        public boolean draw_vors;
+        public boolean draw_airports;
+        public boolean show_navaid_data;
+        public float min_rwy;
+        public String active_chart;
+        public int map_range;
+        public boolean map_zoomin;
+        // changes when the ND has been reconfigured, or the navigation databases have been loaded
+        public int config_serial;
+        public int nav_db_serial;
+
+        // how it is drawn: nd_gc is a snapshot of the configuration, which the event dispatch thread
+        // doesn't change, so that the layer thread never reads the NDGraphicsConfig that it reconfigures
+        public NDGraphicsConfig nd_gc;
+        public Stroke stroke;
+        public Map rendering_hints;
+
+        // the part of the frame that the layer image covers
+        public int origin_x;
+        public int origin_y;
+        public int size;
+
+        public void copy(View other) {
+            this.center_lat = other.center_lat;
+            this.center_lon = other.center_lon;
+            this.map_up = other.map_up;
+            this.pixels_per_nm = other.pixels_per_nm;
+            this.pixels_per_deg_lat = other.pixels_per_deg_lat;
+            this.pixels_per_deg_lon = other.pixels_per_deg_lon;
+            this.mercator = other.mercator;
+            this.map_center_x = other.map_center_x;
+            this.map_center_y = other.map_center_y;
+            this.frame_width = other.frame_width;
+            this.frame_height = other.frame_height;
+            this.lat_max = other.lat_max;
+            this.lat_min = other.lat_min;
+            this.lon_max = other.lon_max;
+            this.lon_min = other.lon_min;
+            this.draw_runways = other.draw_runways;
+            this.draw_fixes = other.draw_fixes;
+            this.draw_ndbs = other.draw_ndbs;
+            this.draw_vors = other.draw_vors;
+            this.draw_airports = other.draw_airports;
+            this.show_navaid_data = other.show_navaid_data;
+            this.min_rwy = other.min_rwy;
+            this.active_chart = other.active_chart;
+            this.map_range = other.map_range;
+            this.map_zoomin = other.map_zoomin;
+            this.config_serial = other.config_serial;
+            this.nav_db_serial = other.nav_db_serial;
+            this.nd_gc = other.nd_gc;
+            this.stroke = other.stroke;
+            this.rendering_hints = other.rendering_hints;
+            this.origin_x = other.origin_x;
+            this.origin_y = other.origin_y;
+            this.size = other.size;
+        }
+
+        /**
+         * The same objects, drawn the same way, at the same scale; only the position and the rotation may differ
+         */
+        public boolean same_content(View other) {
+            return ( this.pixels_per_nm == other.pixels_per_nm )
+                    && ( this.mercator == other.mercator )
+                    && ( this.map_center_x == other.map_center_x )
+                    && ( this.map_center_y == other.map_center_y )
+                    && ( this.frame_width == other.frame_width )
+                    && ( this.frame_height == other.frame_height )
+                    && ( this.draw_runways == other.draw_runways )
+                    && ( this.draw_fixes == other.draw_fixes )
+                    && ( this.draw_ndbs == other.draw_ndbs )
+                    && ( this.draw_vors == other.draw_vors )
+                    && ( this.draw_airports == other.draw_airports )
+                    && ( this.show_navaid_data == other.show_navaid_data )
+                    && ( this.min_rwy == other.min_rwy )
+                    && ( ( this.active_chart == null ) ? ( other.active_chart == null ) : this.active_chart.equals(other.active_chart) )
+                    && ( this.map_range == other.map_range )
+                    && ( this.map_zoomin == other.map_zoomin )
+                    && ( this.config_serial == other.config_serial )
+                    && ( this.nav_db_serial == other.nav_db_serial )
+                    && this.stroke.equals(other.stroke)
+                    && this.rendering_hints.equals(other.rendering_hints);
+        }
+
+    }
+
+
+    /**
+     * A rendered image and the View that it was rendered for
+     */
+    private static class Rendered {
+
+        final BufferedImage image;
+        final View view;
+
+        Rendered(BufferedImage image, View view) {
+            this.image = image;
+            this.view = view;
+        }
+
+    }
+
+
+    private Renderer renderer;
+    private ExecutorService executor = null;
+
+    // on the event dispatch thread: the image that is drawn, and the one to render the next layer in
+    private BufferedImage image = null;
+    private View image_view = null;
+    private BufferedImage spare_image = null;
+
+    // handed back by the layer thread
+    private final AtomicReference<Rendered> rendered = new AtomicReference<Rendered>();
+    private volatile boolean rendering = false;
+
+    private AffineTransform layer_at = new AffineTransform();
+
+    private volatile int nb_of_renders = 0;
+    private int nb_of_misses = 0;
+
+
+    public MapLayer(Renderer renderer) {
+        this.renderer = renderer;
+    }
+
+
+    /**
+     * The View of the image that can be drawn, or null; (layer_x, layer_y) for draw() is where its center is now
+     */
+    public View get_layer_view() {
+
+        Rendered layer = this.rendered.getAndSet(null);
+        if ( layer != null ) {
+            // the layer thread is done with it
+            this.spare_image = this.image;
+            this.image = layer.image;
+            this.image_view = layer.view;
+        }
+        return this.image_view;
+
+    }
+
+
+    /**
+     * Draws the layer image if it can be used for the view, with its center at (layer_x, layer_y) relative to unrotated_at,
+     * and requests a new one when needed; false if the caller has to draw the objects itself
+     */
+    public boolean draw(Graphics2D g2, View view, boolean same_content, float layer_x, float layer_y, AffineTransform unrotated_at, float radius) {
+
+        boolean usable = false;
+        boolean refresh = true;
+
+        if ( ( this.image_view != null ) && same_content ) {
+            float drift = (float)Math.hypot(layer_x - view.map_center_x, layer_y - view.map_center_y);
+            float rotation = view.map_up - this.image_view.map_up;
+            while ( rotation > 180.0f ) rotation -= 360.0f;
+            while ( rotation < -180.0f ) rotation += 360.0f;
+            usable = ( drift <= radius / 2.0f ) && ( Math.abs(rotation) <= MAX_ROTATION );
+            refresh = ( drift > radius / 4.0f ) || ( Math.abs(rotation) > REFRESH_ROTATION );
+
+            if ( usable ) {
+                AffineTransform original_at = g2.getTransform();
+                this.layer_at.setTransform(unrotated_at);
+                // less than half a pixel at the edge of the image is not worth resampling the image
+                if ( Math.abs(Math.toRadians(rotation)) * this.image_view.size >= 1.0d ) {
+                    this.layer_at.translate(layer_x, layer_y);
+                    this.layer_at.rotate(Math.toRadians(-rotation));
+                    this.layer_at.translate(this.image_view.origin_x - this.image_view.map_center_x, this.image_view.origin_y - this.image_view.map_center_y);
+                } else {
+                    this.layer_at.translate(Math.round(layer_x) + this.image_view.origin_x - this.image_view.map_center_x,
+                            Math.round(layer_y) + this.image_view.origin_y - this.image_view.map_center_y);
+                }
+                g2.setTransform(this.layer_at);
+                g2.drawImage(this.image, 0, 0, null);
+                g2.setTransform(original_at);
+            }
+        }
+
+        if ( ! usable ) this.nb_of_misses++;
+        // not before the last layer has been collected by get_layer_view, it would be lost
+        if ( refresh && ! this.rendering && ( this.rendered.get() == null ) ) request(view, radius);
+        return usable;
+
+    }
+
+
+    /**
+     * How many layers have been rendered, and how many frames had to be drawn without one, for the logs and the benchmarks
+     */
+    public int get_nb_of_renders() {
+        return this.nb_of_renders;
+    }
+
+
+    public int get_nb_of_misses() {
+        return this.nb_of_misses;
+    }
+
+
+    private void request(View view, float radius) {
+
+        final View layer_view = new View();
+        layer_view.copy(view);
+
+        // the objects up to where the aircraft can drift, and an image over the frame plus that drift
+        float max_drift = radius / 2.0f;
+        layer_view.lat_max += max_drift / view.pixels_per_deg_lat;
+        layer_view.lat_min -= max_drift / view.pixels_per_deg_lat;
+        layer_view.lon_max += max_drift / view.pixels_per_deg_lon;
+        layer_view.lon_min -= max_drift / view.pixels_per_deg_lon;
+        int half_size = (int)Math.ceil(view_reach(view) + max_drift) + 2;
+        layer_view.origin_x = view.map_center_x - half_size;
+        layer_view.origin_y = view.map_center_y - half_size;
+        layer_view.size = 2 * half_size;
+
+        BufferedImage spare = this.spare_image;
+        this.spare_image = null;
+        if ( ( spare == null ) || ( spare.getWidth() != layer_view.size ) ) {
+            // premultiplied, the software loops draw that faster on an opaque frame
+            spare = new BufferedImage(layer_view.size, layer_view.size, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        final BufferedImage layer_image = spare;
+
+        if ( this.executor == null ) {
+            this.executor = Executors.newSingleThreadExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "nd-map-layer");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }
+            );
+        }
+
+        this.rendering = true;
+        this.executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    render(layer_image, layer_view);
+                    MapLayer.this.rendered.set(new Rendered(layer_image, layer_view));
+                } catch (RuntimeException e) {
+                    logger.warning("Could not render the map layer: " + e);
+                } finally {
+                    MapLayer.this.rendering = false;
+                }
+            }
+        });
+
+    }
+
+
+    private void render(BufferedImage layer_image, View layer_view) {
+
+        Graphics2D g2 = layer_image.createGraphics();
+        g2.setComposite(AlphaComposite.Clear);
+        g2.fillRect(0, 0, layer_image.getWidth(), layer_image.getHeight());
+        g2.setComposite(AlphaComposite.SrcOver);
+        g2.setRenderingHints(layer_view.rendering_hints);
+        g2.setStroke(layer_view.stroke);
+        g2.translate(-layer_view.origin_x, -layer_view.origin_y);
+        this.renderer.render_layer(g2, layer_view);
+        g2.dispose();
+        this.nb_of_renders++;
+
+    }
+
+
+    /**
+     * The distance from the map center to the farthest corner of the frame
+     */
+    private static float view_reach(View view) {
+
+        float dx = Math.max(view.map_center_x, view.frame_width - view.map_center_x);
+        float dy = Math.max(view.map_center_y, view.frame_height - view.map_center_y);
+        return (float)Math.hypot(dx, dy);
+
+    }
+
+
+}
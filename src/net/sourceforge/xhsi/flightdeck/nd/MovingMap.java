@@ -66,6 +66,7 @@ import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.CoordinateSystem;
 import net.sourceforge.xhsi.model.FMSEntry;
 import net.sourceforge.xhsi.model.Fix;
+import net.sourceforge.xhsi.model.FixStore;
 import net.sourceforge.xhsi.model.Localizer;
 import net.sourceforge.xhsi.model.ModelFactory;
 import net.sourceforge.xhsi.model.NavigationObject;
@@ -82,7 +83,7 @@ import net.sourceforge.xhsi.model.aptnavdata.AptNavXP900DatTaxiChartBuilder;
 //import net.sourceforge.xhsi.panel.GraphicsConfig;
 //import net.sourceforge.xhsi.panel.Subcomponent;
 
-public class MovingMap extends NDSubcomponent {
+public class MovingMap extends NDSubcomponent implements MapLayer.Renderer {
 
     private static final Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
@@ -94,8 +95,9 @@ public class MovingMap extends NDSubcomponent {
     public final static int NDB_MAX_RANGE  = 640;
     public final static int ARPT_MAX_RANGE = 640;
 
-    public static DecimalFormat vor_freq_formatter;
-    public static DecimalFormat ndb_freq_formatter;
+    // not shared with the MovingMap that renders the map layer, a DecimalFormat is not thread safe
+    private DecimalFormat vor_freq_formatter;
+    private DecimalFormat ndb_freq_formatter;
     private static DecimalFormat hms_formatter;
 
 //    int tfc_size = 7;
@@ -126,6 +128,47 @@ public class MovingMap extends NDSubcomponent {
     Area panel = null;
 
     private static TaxiChart taxi = new TaxiChart();
+    // the taxi charts of the last airports, in pixels
+    private TaxiChartShapes.Cache taxi_shapes = new TaxiChartShapes.Cache(8, 4);
+
+    // reused for every type and every frame
+    private ArrayList nav_objects_in_view = new ArrayList();
+    // reused for the fixes when they are stored compactly
+    private FixStore.Selection fixes_in_view = null;
+
+    // reused for the batch projection of the objects in view
+    private float[] batch_lat = new float[256];
+    private float[] batch_lon = new float[256];
+    private int[] batch_visible = new int[256];
+    private int[] batch_x = new int[256];
+    private int[] batch_y = new int[256];
+
+    // the symbols of the navaids, fixes and airports that are not tuned are copied from images,
+    // unless -Dxhsi.nd.sprites=false asks to draw them like the tuned ones
+    private static final boolean DRAW_SPRITES = ! "false".equals(System.getProperty("xhsi.nd.sprites"));
+    private NavSymbolAtlas symbol_atlas;
+    // the transformation before the map is rotated, and the rotation
+    private AffineTransform unrotated_at;
+    private AffineTransform map_rotation;
+    // reused for the rotated position of a sprite
+    private Point2D.Float sprite_point = new Point2D.Float();
+    private int sprite_x;
+    private int sprite_y;
+
+    // the nav objects of the full map are drawn from an image that another MovingMap renders on a background thread,
+    // unless -Dxhsi.nd.map_layer=false asks to draw them on every frame
+    private static final boolean MAP_LAYER = ! "false".equals(System.getProperty("xhsi.nd.map_layer"));
+    private MapLayer map_layer = null;
+    private MapLayer.View map_view = new MapLayer.View();
+    private int config_serial = 0;
+    // what the map layer is drawn with, taken again whenever the ND has been reconfigured
+    private NDGraphicsConfig layer_gc = null;
+    // reused for where the center of the map layer is now
+    private Point2D.Float layer_point = new Point2D.Float();
+
+    // what the sim says, read once per frame, so that the MovingMap of the map layer doesn't have to
+    private boolean show_navaid_data;
+    private float min_rwy;
 
    //
    // -------------------------------- Projection --------------------------------
@@ -155,8 +198,12 @@ public class MovingMap extends NDSubcomponent {
             point = null;
         }
         public boolean pointIsVisible() {
+            // lon_min and lon_max can be beyond +/-180 close to the International Date Line
+            float lon = point_lon;
+            if ( lon < lon_min ) lon += 360.0f;
+            else if ( lon > lon_max ) lon -= 360.0f;
             return point_lat >= lat_min && point_lat <= lat_max &&
-                   point_lon >= lon_min && point_lon <= lon_max;
+                   lon >= lon_min && lon <= lon_max;
         }
 
         private Point resolve() {
@@ -219,6 +266,38 @@ public class MovingMap extends NDSubcomponent {
         }
 
         protected abstract Point geoToPixel(float lat, float lon);
+
+        /**
+         * Projects the visible points of lat[0 .. n-1] and lon[0 .. n-1] in one go: the index of the v-th
+         * visible point goes in visible[v], and its pixel in x[v] and y[v]; returns the number of visible points
+         */
+        public int project(float[] lat, float[] lon, int n, int[] visible, int[] x, int[] y) {
+            int count = select_visible(lat, lon, n, visible);
+            for (int v=0; v<count; v++) {
+                int i = visible[v];
+                Point p = geoToPixelCheck(lat[i], lon[i]);
+                x[v] = p.x;
+                y[v] = p.y;
+            }
+            return count;
+        }
+
+        /**
+         * The indexes of the points for which pointIsVisible() would be true
+         */
+        protected int select_visible(float[] lat, float[] lon, int n, int[] visible) {
+            int count = 0;
+            for (int i=0; i<n; i++) {
+                float lon_i = lon[i];
+                if ( lon_i < lon_min ) lon_i += 360.0f;
+                else if ( lon_i > lon_max ) lon_i -= 360.0f;
+                float lat_i = lat[i];
+                if ( lat_i >= lat_min && lat_i <= lat_max && lon_i >= lon_min && lon_i <= lon_max ) {
+                    visible[count++] = i;
+                }
+            }
+            return count;
+        }
     }
 
    //
@@ -254,6 +333,45 @@ public class MovingMap extends NDSubcomponent {
             int y = Math.round(nd_gc.map_center_y - fx * 180.0f / (float)Math.PI * 60.0f * pixels_per_nm);
             return new Point(x, y);
         }
+
+        public int project(float[] lat, float[] lon, int n, int[] visible, int[] x, int[] y) {
+            int count = select_visible(lat, lon, n, visible);
+            float ppn = pixels_per_nm;
+            int map_center_x = nd_gc.map_center_x;
+            int map_center_y = nd_gc.map_center_y;
+            for (int v=0; v<count; v++) {
+                int i = visible[v];
+                float lat_i = lat[i];
+                float lon_i = lon[i];
+                if (lat_i == center_lat && lon_i == center_lon) {
+                    x[v] = map_center_x;
+                    y[v] = map_center_y;
+                    continue;
+                }
+                // like geoToPixel, but with sin(theta) and cos(theta) as the normalized sides of the atan2
+                double phi = Math.toRadians(lat_i);
+                double sin_phi = Math.sin(phi);
+                double cos_phi = Math.cos(phi);
+                double d_lambda = Math.toRadians(lon_i) - lambda0;
+                double cos_phi_cos_d_lambda = cos_phi * Math.cos(d_lambda);
+                double rho = Math.acos(sin_phi1 * sin_phi + cos_phi1 * cos_phi_cos_d_lambda);
+                double north = cos_phi1 * sin_phi - sin_phi1 * cos_phi_cos_d_lambda;
+                double east = cos_phi * Math.sin(d_lambda);
+                double hypot = Math.sqrt(north * north + east * east);
+                float fx;
+                float fy;
+                if ( hypot > 0.0d ) {
+                    fx =   (float)(rho * north / hypot);
+                    fy = - (float)(rho * east / hypot);
+                } else {
+                    fx = 0.0f;
+                    fy = - (float)rho;
+                }
+                x[v] = Math.round(map_center_x - fy * 180.0f / (float)Math.PI * 60.0f * ppn);
+                y[v] = Math.round(map_center_y - fx * 180.0f / (float)Math.PI * 60.0f * ppn);
+            }
+            return count;
+        }
     }
 
    //
@@ -286,6 +404,35 @@ public class MovingMap extends NDSubcomponent {
             return new Point(x, y);
         }
 
+        public int project(float[] lat, float[] lon, int n, int[] visible, int[] x, int[] y) {
+            int count = select_visible(lat, lon, n, visible);
+            double rad_per_deg = Math.toRadians(1);
+            double map_center_x = nd_gc.map_center_x;
+            double map_center_y = nd_gc.map_center_y;
+            for (int v=0; v<count; v++) {
+                int i = visible[v];
+                float lat_i = lat[i];
+                float lon_i = lon[i];
+                if (lat_i == center_lat && lon_i == center_lon) {
+                    x[v] = nd_gc.map_center_x;
+                    y[v] = nd_gc.map_center_y;
+                    continue;
+                }
+                // the same as geoToPixel
+                double e = Math.sin((lat_i - center_lat) * rad_per_deg);
+                if (e > 0.9999d) {
+                    e = 0.9999d;
+                } else if (e < -0.9999d) {
+                    e = -0.9999d;
+                }
+                double dy = 0.5d * Math.log((1.0d + e) / (1.0d - e)) * -1.0d * oneRadianInLatitudePixels;
+                double dx = normalizeLonDegrees(lon_i - center_lon) * pixels_per_deg_lon;
+                x[v] = (int)Math.round(map_center_x + dx);
+                y[v] = (int)Math.round(map_center_y + dy);
+            }
+            return count;
+        }
+
         protected void drawLineTo(Graphics2D g2, float lat, float lon) {
             ArrayList<Geo> geos = new ArrayList<Geo>();
             Geo p0 = Geo.makeGeoDegrees(point_lat, point_lon);
@@ -437,15 +584,24 @@ public class MovingMap extends NDSubcomponent {
 
 
     public MovingMap(ModelFactory model_factory, NDGraphicsConfig hsi_gc, Component parent_component) {
+        this(model_factory, hsi_gc, parent_component, MAP_LAYER);
+    }
+
+
+    private MovingMap(ModelFactory model_factory, NDGraphicsConfig hsi_gc, Component parent_component, boolean with_map_layer) {
 
         super(model_factory, hsi_gc, parent_component);
         this.nor = NavigationObjectRepository.get_instance();
+        this.symbol_atlas = new NavSymbolAtlas(hsi_gc);
+        if ( with_map_layer ) {
+            this.map_layer = new MapLayer(new MovingMap(model_factory, hsi_gc, parent_component, false));
+        }
 
-        MovingMap.vor_freq_formatter = new DecimalFormat("000.00");
-        MovingMap.ndb_freq_formatter = new DecimalFormat("0000");
-        DecimalFormatSymbols symbols = vor_freq_formatter.getDecimalFormatSymbols();
+        this.vor_freq_formatter = new DecimalFormat("000.00");
+        this.ndb_freq_formatter = new DecimalFormat("0000");
+        DecimalFormatSymbols symbols = this.vor_freq_formatter.getDecimalFormatSymbols();
         symbols.setDecimalSeparator('.');
-        MovingMap.vor_freq_formatter.setDecimalFormatSymbols(symbols);
+        this.vor_freq_formatter.setDecimalFormatSymbols(symbols);
         MovingMap.hms_formatter = new DecimalFormat("00");
     }
 
@@ -615,435 +771,57 @@ public class MovingMap extends NDSubcomponent {
                 float acf_lon = this.aircraft.lon();
 
 
-                if ( taxi.border != null ) {
-
-                    if ( ! this.preferences.get_draw_bezier_pavements() ) {
-
-                        int poly_x[] = new int[taxi.border.nodes.size()];
-                        int poly_y[] = new int[taxi.border.nodes.size()];
-
-                        for (int h=0; h<taxi.border.nodes.size(); h++) {
-                            TaxiChart.Node node1 = taxi.border.nodes.get(h);
-                            poly_x[h] = map_c.x + (int)((node1.lon - acf_lon)*chart_lon_scale);
-                            poly_y[h] = map_c.y - (int)((node1.lat - acf_lat)*chart_lat_scale);
-                        }
-                        g2.setColor(field);
-                        g2.fillPolygon(poly_x, poly_y, taxi.border.nodes.size());
-                        g2.drawPolygon(poly_x, poly_y, taxi.border.nodes.size());
-
-                    } else {
-
-                        // Bezier
-
-                        Path2D taxishape = new Path2D.Float();
-                        TaxiChart.Node last_node = null;
-                        for (int h=0; h<taxi.border.nodes.size(); h++) {
-                            TaxiChart.Node node1 = taxi.border.nodes.get(h);
-                            if ( h == 0 ) {
-                                taxishape.moveTo(
-                                        map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                        map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                    );
-                                last_node = node1;
-                            } else {
-
-                                if ( ( node1.lat != last_node.lat ) || ( node1.lon != last_node.lon ) ) {
-
-                                    // this node is different from the previous, so we can draw ... something
-
-                                    if ( node1.cubic_bezier ) {
-                                        taxishape.curveTo(
-                                                map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                map_c.x + ((node1.cubic_lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.cubic_lat - acf_lat)*chart_lat_scale),
-                                                map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                            );
-                                    } else if ( node1.quad_bezier ) {
-                                        taxishape.quadTo(
-                                                map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                            );
-                                    } else {
-                                        taxishape.lineTo(
-                                                map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                            );
-                                    }
-
-                                    last_node = node1;
-
-                                }
-
-                            }
-                        }
-                        taxishape.closePath();
-                        g2.setColor(field);
-                        g2.fill(taxishape);
-                        g2.draw(taxishape);
-
-                    }
-
-                    if ( ! taxi.border.holes.isEmpty() ) {
-
-                        for (int k=0; k<taxi.border.holes.size(); k++) {
-
-                            TaxiChart.Pavement hole1 = taxi.border.holes.get(k);
-                            if ( ! this.preferences.get_draw_bezier_pavements() ) {
-
-                                int poly_x[] = new int[hole1.nodes.size()];
-                                int poly_y[] = new int[hole1.nodes.size()];
-                                for (int l=0; l<hole1.nodes.size(); l++) {
-                                    TaxiChart.Node node1 = hole1.nodes.get(l);
-                                    poly_x[l] = map_c.x + (int)((node1.lon - acf_lon)*chart_lon_scale);
-                                    poly_y[l] = map_c.y - (int)((node1.lat - acf_lat)*chart_lat_scale);
-                                }
-                                g2.setColor(paper);
-                                g2.fillPolygon(poly_x, poly_y, hole1.nodes.size());
-                                g2.drawPolygon(poly_x, poly_y, hole1.nodes.size());
-
-                            } else {
-
-                                // Bezier
-
-                                Path2D taxishape = new Path2D.Float();
-                                TaxiChart.Node last_node = null;
-                                for (int h=0; h<hole1.nodes.size(); h++) {
-
-                                    TaxiChart.Node node1 = hole1.nodes.get(h);
-                                    if ( h == 0 ) {
-                                        taxishape.moveTo(
-                                                map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                            );
-                                        last_node = node1;
-                                    } else {
-
-                                        if ( ( node1.lat != last_node.lat ) || ( node1.lon != last_node.lon ) ) {
-
-                                            // this node is different from the previous, so we can draw ... something
-
-                                            if ( node1.cubic_bezier ) {
-                                                taxishape.curveTo(
-                                                        map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                        map_c.x + ((node1.cubic_lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.cubic_lat - acf_lat)*chart_lat_scale),
-                                                        map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                    );
-                                            } else if ( node1.quad_bezier ) {
-                                                taxishape.quadTo(
-                                                        map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                        map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                    );
-                                            } else {
-                                                taxishape.lineTo(
-                                                        map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                    );
-                                            }
-
-                                            last_node = node1;
-
-                                        }
-
-                                    }
-                                }
-                                taxishape.closePath();
-                                g2.setColor(paper);
-                                g2.fill(taxishape);
-                                g2.draw(taxishape);
-
-                            }
-                        } // list of holes
-
-                    } // ! empty list of holes
-
-                } // ! null border
-
-
-                if ( ! taxi.pavements.isEmpty() ) {
-
-                    for (int i=0; i<taxi.pavements.size(); i++) {
-
-                        TaxiChart.Pavement ramp1 = taxi.pavements.get(i);
-
-                        if ( ! this.preferences.get_draw_bezier_pavements() ) {
-
-                            int poly_x[] = new int[ramp1.nodes.size()];
-                            int poly_y[] = new int[ramp1.nodes.size()];
-                            for (int j=0; j<ramp1.nodes.size(); j++) {
-                                TaxiChart.Node node1 = ramp1.nodes.get(j);
-                                poly_x[j] = map_c.x + (int)((node1.lon - acf_lon)*chart_lon_scale);
-                                poly_y[j] = map_c.y - (int)((node1.lat - acf_lat)*chart_lat_scale);
-                            }
-                            g2.setColor(taxi_ramp);
-                            g2.fillPolygon(poly_x, poly_y, ramp1.nodes.size());
-                            g2.drawPolygon(poly_x, poly_y, ramp1.nodes.size());
-
-                        } else {
-
-                            // Bezier
-
-                            Path2D taxishape = new Path2D.Float();
-                            TaxiChart.Node last_node = null;
-                            for (int h=0; h<ramp1.nodes.size(); h++) {
-
-                                TaxiChart.Node node1 = ramp1.nodes.get(h);
-                                if ( h == 0 ) {
-                                    taxishape.moveTo(
-                                            map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                            map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                        );
-                                    last_node = node1;
-                                } else {
-
-                                    if ( ( node1.lat != last_node.lat ) || ( node1.lon != last_node.lon ) ) {
-
-                                        // this node is different from the previous, so we can draw ... something
-
-                                        if ( node1.cubic_bezier ) {
-                                            taxishape.curveTo(
-                                                    map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                    map_c.x + ((node1.cubic_lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.cubic_lat - acf_lat)*chart_lat_scale),
-                                                    map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                );
-                                        } else if ( node1.quad_bezier ) {
-                                            taxishape.quadTo(
-                                                    map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                    map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                );
-                                        } else {
-                                            taxishape.lineTo(
-                                                    map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                );
-                                        }
-
-                                        // remember this node
-                                        last_node = node1;
-
-                                    }
-
-                                }
-
-                            }
-                            taxishape.closePath();
-                            g2.setColor(taxi_ramp);
-                            g2.fill(taxishape);
-                            g2.draw(taxishape);
-
-                        }
-
-                        if ( ! ramp1.holes.isEmpty() ) {
-
-                            for (int k=0; k<ramp1.holes.size(); k++) {
-
-                                TaxiChart.Pavement hole1 = ramp1.holes.get(k);
-
-                                if ( ! this.preferences.get_draw_bezier_pavements() ) {
-
-                                    int poly_x[] = new int[hole1.nodes.size()];
-                                    int poly_y[] = new int[hole1.nodes.size()];
-                                    for (int l=0; l<hole1.nodes.size(); l++) {
-                                        TaxiChart.Node node1 = hole1.nodes.get(l);
-                                        poly_x[l] = map_c.x + (int)((node1.lon - acf_lon)*chart_lon_scale);
-                                        poly_y[l] = map_c.y - (int)((node1.lat - acf_lat)*chart_lat_scale);
-                                    }
-                                    if ( taxi.border == null ) {
-                                        g2.setColor(paper);
-                                    } else {
-                                        g2.setColor(field);
-                                    }
-                                    g2.fillPolygon(poly_x, poly_y, hole1.nodes.size());
-                                    g2.drawPolygon(poly_x, poly_y, hole1.nodes.size());
-
-                                } else {
-
-                                    // Bezier
-
-                                    Path2D taxishape = new Path2D.Float();
-                                    TaxiChart.Node last_node = null;
-                                    for (int h=0; h<hole1.nodes.size(); h++) {
-
-                                        TaxiChart.Node node1 = hole1.nodes.get(h);
-                                        if ( h == 0 ) {
-                                            taxishape.moveTo(
-                                                    map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                );
-                                            last_node = node1;
-                                        } else {
-
-                                            if ( ( node1.lat != last_node.lat ) || ( node1.lon != last_node.lon ) ) {
-
-                                                // this node is different from the previous, so we can draw ... something
-
-                                                if ( node1.cubic_bezier ) {
-                                                    taxishape.curveTo(
-                                                            map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                            map_c.x + ((node1.cubic_lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.cubic_lat - acf_lat)*chart_lat_scale),
-                                                            map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                        );
-                                                } else if ( node1.quad_bezier ) {
-                                                    taxishape.quadTo(
-                                                            map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                            map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                        );
-                                                } else {
-                                                    taxishape.lineTo(
-                                                            map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                        );
-                                                }
-
-                                                last_node = node1;
-
-                                            }
-
-                                        }
-                                    }
-                                    taxishape.closePath();
-                                    if ( taxi.border == null ) {
-                                        g2.setColor(paper);
-                                    } else {
-                                        g2.setColor(field);
-                                    }
-                                    g2.fill(taxishape);
-                                    g2.draw(taxishape);
-
-                                }
-
-                            } // list of holes
-
-                        } // ! empty list of holes
-
-                    } // list of pavements
-
-                } // ! empty list of pavements
-
-
-                // APT810-style segments
-                if ( taxi.airport != null ) {
-                    AffineTransform current_at = g2.getTransform();
-                    Stroke original_stroke = g2.getStroke();
-                    g2.setColor(taxi_ramp);
-                    for (int s=0; s<taxi.segments.size(); s++) {
-                        TaxiChart.Segment seg0 = taxi.segments.get(s);
-                        int s_x = map_c.x + (int)((seg0.lon - acf_lon)*chart_lon_scale);
-                        int s_y = map_c.y - (int)((seg0.lat - acf_lat)*chart_lat_scale);
-                        int s_l = (int)(seg0.length*chart_metric_scale/2.0f);
-                        int s_y1 = s_y - s_l - 1;
-                        int s_y2 = s_y + s_l + 1;
-                        g2.setStroke(new BasicStroke(seg0.width * chart_metric_scale, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
-                        g2.rotate( Math.toRadians( seg0.orientation ), s_x, s_y );
-                        g2.drawLine( s_x, s_y1, s_x, s_y2 );
-                        g2.setTransform(current_at);
-                    }
-                    g2.setStroke(original_stroke);
-                }
-
-
-                // runways
-                if ( taxi.airport != null ) {
-
-                    // make sure to draw the paved runways OVER the non-paved runways
-
-                    // non-paved
-                    for (int i=0; i<taxi.airport.runways.size(); i++) {
-                        Runway rwy0 = taxi.airport.runways.get(i);
-                        if ( (rwy0.surface!=Runway.RWY_ASPHALT) && (rwy0.surface!=Runway.RWY_CONCRETE) ) {
-                            if (rwy0.surface==Runway.RWY_GRASS)
-                                g2.setColor(nd_gc.grass_color);
-                            else if ( (rwy0.surface==Runway.RWY_DIRT) || (rwy0.surface==Runway.RWY_GRAVEL) || (rwy0.surface==Runway.RWY_DRY_LAKEBED) )
-                                g2.setColor(nd_gc.sand_color);
-                            else if (rwy0.surface==Runway.RWY_SNOW)
-                                g2.setColor(nd_gc.snow_color);
-                            else
-                                g2.setColor(nd_gc.hard_color.darker());
-                            Stroke original_stroke = g2.getStroke();
-                            g2.setStroke(new BasicStroke(rwy0.width * chart_metric_scale, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
-                            int x1 = map_c.x + (int)((rwy0.lon1 - acf_lon)*chart_lon_scale);
-                            int y1 = map_c.y - (int)((rwy0.lat1 - acf_lat)*chart_lat_scale);
-                            int x2 = map_c.x + (int)((rwy0.lon2 - acf_lon)*chart_lon_scale);
-                            int y2 = map_c.y - (int)((rwy0.lat2 - acf_lat)*chart_lat_scale);
-                            g2.drawLine( x1, y1, x2, y2);
-                            g2.setStroke(original_stroke);
-                            if ( avionics.efis_shows_arpt() ) {
-                                g2.setFont(nd_gc.font_small);
-                                AffineTransform current_at = g2.getTransform();
-                                g2.rotate( Math.toRadians( this.map_up ), x1, y1 );
-                                int h0 = nd_gc.line_height_small;
-                                int w1 = nd_gc.get_text_width(g2, nd_gc.font_small, rwy0.rwy_num1);
-                                x1 -= w1 / 2;
-                                y1 += h0 / 2;
-                                g2.clearRect(x1 - 4, y1 - h0 - 3, w1 + 8, h0 + 6);
-                                g2.drawRect(x1 - 4, y1 - h0 - 3, w1 + 8, h0 + 6);
-                                g2.drawString(rwy0.rwy_num1, x1, y1 - 2);
-                                g2.setTransform(current_at);
-                                g2.rotate( Math.toRadians( this.map_up ), x2, y2 );
-                                int w2 = nd_gc.get_text_width(g2, nd_gc.font_small, rwy0.rwy_num2);
-                                x2 -= w2 / 2;
-                                y2 += h0 / 2;
-                                g2.clearRect(x2 - 4, y2 - h0 - 3, w2 + 8, h0 + 6);
-                                g2.drawRect(x2 - 4, y2 - h0 - 3, w2 + 8, h0 + 6);
-                                g2.drawString(rwy0.rwy_num2, x2, y2 - 2);
-                                g2.setTransform(current_at);
-                            }
-                        }
+                // the shapes in pixels are made once per airport and map scale,
+                // here we only have to move them to the aircraft position
+                TaxiChartShapes chart_shapes = this.taxi_shapes.get(taxi, chart_lat_scale, chart_lon_scale, chart_metric_scale, this.preferences.get_draw_bezier_pavements());
+                float chart_x = map_c.x + (chart_shapes.ref_lon - acf_lon)*chart_lon_scale;
+                float chart_y = map_c.y - (chart_shapes.ref_lat - acf_lat)*chart_lat_scale;
+                AffineTransform rotated_at = g2.getTransform();
+                AffineTransform chart_at = new AffineTransform(rotated_at);
+                chart_at.translate(chart_x, chart_y);
+
+                for (int i=0; i<chart_shapes.items.size(); i++) {
+
+                    TaxiChartShapes.Item item = chart_shapes.items.get(i);
+                    g2.setTransform(chart_at);
+                    switch (item.paint) {
+                        case TaxiChartShapes.PAINT_FIELD : g2.setColor(field); break;
+                        case TaxiChartShapes.PAINT_PAPER : g2.setColor(paper); break;
+                        case TaxiChartShapes.PAINT_RAMP : g2.setColor(taxi_ramp); break;
+                        case TaxiChartShapes.PAINT_GRASS : g2.setColor(nd_gc.grass_color); break;
+                        case TaxiChartShapes.PAINT_SAND : g2.setColor(nd_gc.sand_color); break;
+                        case TaxiChartShapes.PAINT_SNOW : g2.setColor(nd_gc.snow_color); break;
+                        case TaxiChartShapes.PAINT_SOFT_RWY : g2.setColor(nd_gc.hard_color.darker()); break;
+                        default : g2.setColor(hard_rwy); break;
                     }
-
-                    // paved
-                    for (int i=0; i<taxi.airport.runways.size(); i++) {
-                        Runway rwy0 = taxi.airport.runways.get(i);
-                        if ( (rwy0.surface==Runway.RWY_ASPHALT) || (rwy0.surface==Runway.RWY_CONCRETE) ) {
-                            g2.setColor(hard_rwy);
-                            Stroke original_stroke = g2.getStroke();
-                            g2.setStroke(new BasicStroke(rwy0.width * chart_metric_scale, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
-                            int x1 = map_c.x + (int)((rwy0.lon1 - acf_lon)*chart_lon_scale);
-                            int y1 = map_c.y - (int)((rwy0.lat1 - acf_lat)*chart_lat_scale);
-                            int x2 = map_c.x + (int)((rwy0.lon2 - acf_lon)*chart_lon_scale);
-                            int y2 = map_c.y - (int)((rwy0.lat2 - acf_lat)*chart_lat_scale);
-                            g2.drawLine( x1, y1, x2, y2);
-                            g2.setStroke(original_stroke);
-                            if ( avionics.efis_shows_arpt() ) {
-                                g2.setFont(nd_gc.font_small);
-                                AffineTransform current_at = g2.getTransform();
-                                g2.rotate( Math.toRadians( this.map_up ), x1, y1 );
-                                int h0 = nd_gc.line_height_small;
-                                int w1 = nd_gc.get_text_width(g2, nd_gc.font_small, rwy0.rwy_num1);
-                                x1 -= w1 / 2;
-                                y1 += h0 / 2;
-                                g2.clearRect(x1 - 4, y1 - h0 - 3, w1 + 8, h0 + 6);
-                                g2.drawRect(x1 - 4, y1 - h0 - 3, w1 + 8, h0 + 6);
-                                g2.drawString(rwy0.rwy_num1, x1, y1 - 2);
-                                g2.setTransform(current_at);
-                                g2.rotate( Math.toRadians( this.map_up ), x2, y2 );
-                                int w2 = nd_gc.get_text_width(g2, nd_gc.font_small, rwy0.rwy_num2);
-                                x2 -= w2 / 2;
-                                y2 += h0 / 2;
-                                g2.clearRect(x2 - 4, y2 - h0 - 3, w2 + 8, h0 + 6);
-                                g2.drawRect(x2 - 4, y2 - h0 - 3, w2 + 8, h0 + 6);
-                                g2.drawString(rwy0.rwy_num2, x2, y2 - 2);
-                                g2.setTransform(current_at);
-                            }
-                        }
+                    g2.fill(item.shape);
+                    if ( item.outline ) g2.draw(item.shape);
+                    g2.setTransform(rotated_at);
+
+                    if ( ( item.runway != null ) && avionics.efis_shows_arpt() ) {
+                        Runway rwy0 = item.runway;
+                        int x1 = (int)(chart_x + item.x1);
+                        int y1 = (int)(chart_y + item.y1);
+                        int x2 = (int)(chart_x + item.x2);
+                        int y2 = (int)(chart_y + item.y2);
+                        g2.setFont(nd_gc.font_small);
+                        g2.rotate( Math.toRadians( this.map_up ), x1, y1 );
+                        int h0 = nd_gc.line_height_small;
+                        int w1 = nd_gc.get_text_width(g2, nd_gc.font_small, rwy0.rwy_num1);
+                        x1 -= w1 / 2;
+                        y1 += h0 / 2;
+                        g2.clearRect(x1 - 4, y1 - h0 - 3, w1 + 8, h0 + 6);
+                        g2.drawRect(x1 - 4, y1 - h0 - 3, w1 + 8, h0 + 6);
+                        g2.drawString(rwy0.rwy_num1, x1, y1 - 2);
+                        g2.setTransform(rotated_at);
+                        g2.rotate( Math.toRadians( this.map_up ), x2, y2 );
+                        int w2 = nd_gc.get_text_width(g2, nd_gc.font_small, rwy0.rwy_num2);
+                        x2 -= w2 / 2;
+                        y2 += h0 / 2;
+                        g2.clearRect(x2 - 4, y2 - h0 - 3, w2 + 8, h0 + 6);
+                        g2.drawRect(x2 - 4, y2 - h0 - 3, w2 + 8, h0 + 6);
+                        g2.drawString(rwy0.rwy_num2, x2, y2 - 2);
+                        g2.setTransform(rotated_at);
                     }
 
                 }
@@ -1122,11 +900,12 @@ public class MovingMap extends NDSubcomponent {
             // North UP
             this.map_up = 0.0f;
         }
-        g2.transform( AffineTransform.getRotateInstance(
+        this.unrotated_at = original_at;
+        this.map_rotation = AffineTransform.getRotateInstance(
                 Math.toRadians(-1.0f * this.map_up),
                 nd_gc.map_center_x,
-                nd_gc.map_center_y)
-        );
+                nd_gc.map_center_y);
+        g2.transform(this.map_rotation);
 
 
         // a grid of latitude and longitude dots
@@ -1150,54 +929,15 @@ public class MovingMap extends NDSubcomponent {
 
         g2.setFont(nd_gc.font_small);
 
-        if ( nd_gc.mode_fullmap ) {
-
-            for (int lat=(int)lat_min; lat<=(int) lat_max; lat++) {
-                for (int lon=(int)lon_min; lon<=(int)lon_max; lon++) {
-
-                    if ( avionics.efis_shows_arpt() && ( ( (nd_gc.map_range <= 20) && this.preferences.get_draw_runways() ) || nd_gc.map_zoomin ) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_RUNWAY,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_RUNWAY, lat, lon)
-                            );
-                    }
-
-                    if ( avionics.efis_shows_wpt() && ((nd_gc.map_range <= 40)||nd_gc.map_zoomin) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_FIX,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_FIX, lat, lon)
-                            );
-                    }
+        this.show_navaid_data = this.avionics.efis_shows_data() && this.preferences.get_nd_navaid_frequencies();
+        //this.min_rwy = this.preferences.get_min_rwy_length();
+        this.min_rwy = this.aircraft.get_min_rwy_length();
 
-                    if ( avionics.efis_shows_ndb() && ((nd_gc.map_range <= NDB_MAX_RANGE)||nd_gc.map_zoomin) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_NDB,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_NDB, lat, lon)
-                            );
-                    }
-
-                    if ( avionics.efis_shows_vor() && ((nd_gc.map_range <= VOR_MAX_RANGE)||nd_gc.map_zoomin) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_VOR,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_VOR, lat, lon)
-                            );
-                    }
-
-                    if ( avionics.efis_shows_arpt() && ((nd_gc.map_range <= ARPT_MAX_RANGE)||nd_gc.map_zoomin) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_AIRPORT,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_AIRPORT, lat, lon)
-                            );
-
-                    }
-                }
+        if ( nd_gc.mode_fullmap ) {
+            set_map_view(g2, lat_max, lat_min, lon_max, lon_min);
+            if ( ( this.map_layer == null ) || ! draw_map_layer(g2) ) {
+                draw_map_objects(g2, this.map_view);
             }
-
         }
 
         if ( nd_gc.mode_fullmap || ( nd_gc.mode_map /*&& this.avionics.efis_shows_pos()*/ ) ) {
@@ -1482,6 +1222,144 @@ public class MovingMap extends NDSubcomponent {
     }
 
 
+    /**
+     * What the nav objects of the full map would be drawn for in this frame, in map_view
+     */
+    private void set_map_view(Graphics2D g2, float lat_max, float lat_min, float lon_max, float lon_min) {
+
+        MapLayer.View view = this.map_view;
+        view.center_lat = this.center_lat;
+        view.center_lon = this.center_lon;
+        view.map_up = this.map_up;
+        view.pixels_per_nm = this.pixels_per_nm;
+        view.pixels_per_deg_lat = this.pixels_per_deg_lat;
+        view.pixels_per_deg_lon = this.pixels_per_deg_lon;
+        view.mercator = ( map_projection instanceof WebMercatorProjection );
+        view.map_center_x = nd_gc.map_center_x;
+        view.map_center_y = nd_gc.map_center_y;
+        view.frame_width = nd_gc.frame_size.width;
+        view.frame_height = nd_gc.frame_size.height;
+        view.lat_max = lat_max;
+        view.lat_min = lat_min;
+        view.lon_max = lon_max;
+        view.lon_min = lon_min;
+
+        view.draw_runways = avionics.efis_shows_arpt() && ( ( (nd_gc.map_range <= 20) && this.preferences.get_draw_runways() ) || nd_gc.map_zoomin );
+        view.draw_fixes = avionics.efis_shows_wpt() && ((nd_gc.map_range <= 40)||nd_gc.map_zoomin);
+        view.draw_ndbs = avionics.efis_shows_ndb() && ((nd_gc.map_range <= NDB_MAX_RANGE)||nd_gc.map_zoomin);
+        view.draw_vors = avionics.efis_shows_vor() && ((nd_gc.map_range <= VOR_MAX_RANGE)||nd_gc.map_zoomin);
+        view.draw_airports = avionics.efis_shows_arpt() && ((nd_gc.map_range <= ARPT_MAX_RANGE)||nd_gc.map_zoomin);
+        view.show_navaid_data = this.show_navaid_data;
+        view.min_rwy = this.min_rwy;
+        view.active_chart = this.active_chart_str;
+        view.map_range = nd_gc.map_range;
+        view.map_zoomin = nd_gc.map_zoomin;
+        if ( nd_gc.reconfigured || ( this.layer_gc == null ) ) {
+            this.config_serial++;
+            this.layer_gc = nd_gc.snapshot();
+        }
+        view.config_serial = this.config_serial;
+        view.nav_db_serial = nor.get_serial();
+
+        view.nd_gc = this.layer_gc;
+        view.stroke = g2.getStroke();
+        view.rendering_hints = this.layer_gc.rendering_hints;
+
+    }
+
+
+    /**
+     * Draws the map layer, if it has been rendered for what map_view shows, close enough to the current position and rotation
+     */
+    private boolean draw_map_layer(Graphics2D g2) {
+
+        MapLayer.View layer_view = this.map_layer.get_layer_view();
+        boolean same_content = ( layer_view != null ) && layer_view.same_content(this.map_view);
+        if ( same_content ) {
+            // where the center of the layer is on the current map, before the map rotation
+            map_projection.setPoint(layer_view.center_lat, layer_view.center_lon);
+            this.layer_point.setLocation(map_projection.getX(), map_projection.getY());
+            this.map_rotation.transform(this.layer_point, this.layer_point);
+        }
+        return this.map_layer.draw(g2, this.map_view, same_content, this.layer_point.x, this.layer_point.y, this.unrotated_at, nd_gc.rose_radius);
+
+    }
+
+
+    /**
+     * The runways, fixes, NDBs, VORs and airports of the full map, on the map rotated by map_rotation
+     */
+    private void draw_map_objects(Graphics2D g2, MapLayer.View view) {
+
+        // only what is in view, from the spatial index of each type
+        if ( view.draw_runways ) {
+            draw_nav_objects_in_view(g2, NavigationObject.NO_TYPE_RUNWAY, view.lat_max, view.lat_min, view.lon_max, view.lon_min);
+        }
+
+        if ( view.draw_fixes ) {
+            if ( nor.get_fix_store() != null ) {
+                draw_fixes_in_view(g2, view.lat_max, view.lat_min, view.lon_max, view.lon_min);
+            } else {
+                draw_nav_objects_in_view(g2, NavigationObject.NO_TYPE_FIX, view.lat_max, view.lat_min, view.lon_max, view.lon_min);
+            }
+        }
+
+        if ( view.draw_ndbs ) {
+            draw_nav_objects_in_view(g2, NavigationObject.NO_TYPE_NDB, view.lat_max, view.lat_min, view.lon_max, view.lon_min);
+        }
+
+        if ( view.draw_vors ) {
+            draw_nav_objects_in_view(g2, NavigationObject.NO_TYPE_VOR, view.lat_max, view.lat_min, view.lon_max, view.lon_min);
+        }
+
+        if ( view.draw_airports ) {
+            draw_nav_objects_in_view(g2, NavigationObject.NO_TYPE_AIRPORT, view.lat_max, view.lat_min, view.lon_max, view.lon_min);
+        }
+
+    }
+
+
+    /**
+     * Draws the nav objects of the full map for a MapLayer, on its thread, with only what the view says
+     */
+    public void render_layer(Graphics2D g2, MapLayer.View view) {
+
+        if ( this.nd_gc != view.nd_gc ) {
+            // the ND has been reconfigured: draw with the new snapshot, never with the configuration of the event dispatch thread
+            this.nd_gc = view.nd_gc;
+            this.gc = view.nd_gc;
+            this.symbol_atlas = new NavSymbolAtlas(view.nd_gc);
+        }
+
+        this.center_lat = view.center_lat;
+        this.center_lon = view.center_lon;
+        this.map_up = view.map_up;
+        this.pixels_per_nm = view.pixels_per_nm;
+        this.pixels_per_deg_lat = view.pixels_per_deg_lat;
+        this.pixels_per_deg_lon = view.pixels_per_deg_lon;
+        this.show_navaid_data = view.show_navaid_data;
+        this.min_rwy = view.min_rwy;
+        this.active_chart_str = view.active_chart;
+        if ( view.mercator ) {
+            map_projection = new WebMercatorProjection(view.lat_max, view.lat_min, view.lon_max, view.lon_min);
+        } else {
+            map_projection = new AzimuthalEquidistantProjection(view.lat_max, view.lat_min, view.lon_max, view.lon_min);
+        }
+
+        this.unrotated_at = g2.getTransform();
+        this.map_rotation = AffineTransform.getRotateInstance(
+                Math.toRadians(-1.0f * this.map_up),
+                view.map_center_x,
+                view.map_center_y);
+        g2.transform(this.map_rotation);
+        g2.setFont(nd_gc.font_small);
+
+        draw_map_objects(g2, view);
+        map_projection = null;
+
+    }
+
+
     private void draw_scale_rings(Graphics2D g2) {
 
         // dim the scale rings
@@ -1503,56 +1381,202 @@ public class MovingMap extends NDSubcomponent {
     }
 
 
+    private void draw_nav_objects_in_view(Graphics2D g2, int type, float lat_max, float lat_min, float lon_max, float lon_min) {
+        this.nav_objects_in_view.clear();
+        nor.find_nav_objects_in_box(type, lat_min, lat_max, lon_min, lon_max, this.nav_objects_in_view);
+        draw_nav_objects(g2, type, this.nav_objects_in_view);
+    }
+
+
+    private void draw_fixes_in_view(Graphics2D g2, float lat_max, float lat_min, float lon_max, float lon_min) {
+
+        // one flyweight Fix for all the fixes, instead of a Fix object for each
+        this.fixes_in_view = nor.get_fix_store().select_box(lat_min, lat_max, lon_min, lon_max, this.fixes_in_view);
+
+        int nb_of_fixes = this.fixes_in_view.size();
+        ensure_batch_capacity(nb_of_fixes);
+        this.fixes_in_view.get_positions(this.batch_lat, this.batch_lon);
+        int nb_visible = map_projection.project(this.batch_lat, this.batch_lon, nb_of_fixes, this.batch_visible, this.batch_x, this.batch_y);
+
+        AffineTransform rotated_at = g2.getTransform();
+        if ( DRAW_SPRITES ) begin_sprites(g2);
+
+        for (int v=0; v<nb_visible; v++) {
+            Fix fix = this.fixes_in_view.get(this.batch_visible[v]);
+            if ( DRAW_SPRITES )
+                blitFix(g2, this.batch_x[v], this.batch_y[v], fix);
+            else
+                drawFix(g2, this.batch_x[v], this.batch_y[v], fix);
+        }
+
+        g2.setTransform(rotated_at);
+
+    }
+
+
     private void draw_nav_objects(Graphics2D g2, int type, ArrayList nav_objects) {
 
         NavigationObject navobj = null;
         RadioNavBeacon rnb;
 
-        //float min_rwy = this.preferences.get_min_rwy_length();
-        float min_rwy = this.aircraft.get_min_rwy_length();
-
-        for (int i=0; i<nav_objects.size(); i++) {
+        // the runways are lines between their ends, not symbols
+        boolean sprites = DRAW_SPRITES && ( type != NavigationObject.NO_TYPE_RUNWAY );
 
+        int nb_of_objects = nav_objects.size();
+        ensure_batch_capacity(nb_of_objects);
+        for (int i=0; i<nb_of_objects; i++) {
             navobj = (NavigationObject)nav_objects.get(i);
-            map_projection.setPoint(navobj.lat, navobj.lon);
-            if (map_projection.pointIsVisible()) {
-                int x = map_projection.getX();
-                int y = map_projection.getY();
+            this.batch_lat[i] = navobj.lat;
+            this.batch_lon[i] = navobj.lon;
+        }
+        int nb_visible = map_projection.project(this.batch_lat, this.batch_lon, nb_of_objects, this.batch_visible, this.batch_x, this.batch_y);
+
+        AffineTransform rotated_at = g2.getTransform();
+        if ( sprites ) begin_sprites(g2);
+
+        for (int v=0; v<nb_visible; v++) {
+
+            navobj = (NavigationObject)nav_objects.get(this.batch_visible[v]);
 
-                if (type == NavigationObject.NO_TYPE_NDB) {
+            int x = this.batch_x[v];
+            int y = this.batch_y[v];
 
+            if (type == NavigationObject.NO_TYPE_NDB) {
+
+                if ( sprites )
+                    blitNavaid(g2, x, y, NavSymbolAtlas.SYMBOL_NDB, (RadioNavBeacon)navobj, this.ndb_freq_formatter);
+                else
                     drawNDB(g2, x, y, (RadioNavBeacon)navobj, false);
 
-                } else if (type == NavigationObject.NO_TYPE_VOR) {
+            } else if (type == NavigationObject.NO_TYPE_VOR) {
 
-                    rnb = (RadioNavBeacon)navobj;
-                    if (rnb.type == RadioNavBeacon.TYPE_VOR) {
-                        if ( rnb.has_dme )
-                            drawVORDME(g2, x, y, (RadioNavBeacon)navobj, 0, 0.0f, 0.0f);
-                        else
-                            drawVOR(g2, x, y, (RadioNavBeacon)navobj, 0, 0.0f);
-                    } else if (rnb.type == RadioNavBeacon.TYPE_STANDALONE_DME)
+                rnb = (RadioNavBeacon)navobj;
+                if (rnb.type == RadioNavBeacon.TYPE_VOR) {
+                    if ( sprites )
+                        blitNavaid(g2, x, y, rnb.has_dme ? NavSymbolAtlas.SYMBOL_VORDME : NavSymbolAtlas.SYMBOL_VOR, rnb, this.vor_freq_formatter);
+                    else if ( rnb.has_dme )
+                        drawVORDME(g2, x, y, (RadioNavBeacon)navobj, 0, 0.0f, 0.0f);
+                    else
+                        drawVOR(g2, x, y, (RadioNavBeacon)navobj, 0, 0.0f);
+                } else if (rnb.type == RadioNavBeacon.TYPE_STANDALONE_DME) {
+                    if ( sprites )
+                        blitNavaid(g2, x, y, NavSymbolAtlas.SYMBOL_DME, rnb, this.vor_freq_formatter);
+                    else
                         drawDME(g2, x, y, (RadioNavBeacon)navobj, 0, 0);
+                }
 
-                } else if (type == NavigationObject.NO_TYPE_FIX) {
+            } else if (type == NavigationObject.NO_TYPE_FIX) {
 
-                        drawFix(g2, x, y, (Fix)navobj);
+                if ( sprites )
+                    blitFix(g2, x, y, (Fix)navobj);
+                else
+                    drawFix(g2, x, y, (Fix)navobj);
 
-                } else if (type == NavigationObject.NO_TYPE_AIRPORT) {
+            } else if (type == NavigationObject.NO_TYPE_AIRPORT) {
 
-                    if ( ((Airport)navobj).longest >= min_rwy ) {
+                if ( ((Airport)navobj).longest >= this.min_rwy ) {
+                    if ( sprites )
+                        blitAirport(g2, x, y, (Airport)navobj);
+                    else
                         drawAirport(g2, x, y, (Airport)navobj, ""+((Airport)navobj).elev);
-                        //bad_proj.setAcf(this.center_lat, this.center_lon);
-                        //bad_proj.setPoint(navobj.lat, navobj.lon);
-                        //drawTestAirport(g2, bad_proj.getX(), bad_proj.getY(), (Airport)navobj, ""+((Airport)navobj).elev);
-                    }
+                    //bad_proj.setAcf(this.center_lat, this.center_lon);
+                    //bad_proj.setPoint(navobj.lat, navobj.lon);
+                    //drawTestAirport(g2, bad_proj.getX(), bad_proj.getY(), (Airport)navobj, ""+((Airport)navobj).elev);
+                }
 
-                } else if ( type == NavigationObject.NO_TYPE_RUNWAY )
+            } else if ( type == NavigationObject.NO_TYPE_RUNWAY )
 
-                    drawRunway(g2, x, y, (Runway)navobj);
+                drawRunway(g2, x, y, (Runway)navobj);
 
-            }
         }
+
+        g2.setTransform(rotated_at);
+
+    }
+
+
+    private void ensure_batch_capacity(int n) {
+        if ( this.batch_lat.length < n ) {
+            int capacity = Math.max(n, 2 * this.batch_lat.length);
+            this.batch_lat = new float[capacity];
+            this.batch_lon = new float[capacity];
+            this.batch_visible = new int[capacity];
+            this.batch_x = new int[capacity];
+            this.batch_y = new int[capacity];
+        }
+    }
+
+
+    /**
+     * Sets the transformation from before the map rotation, with which the sprites are drawn
+     */
+    private void begin_sprites(Graphics2D g2) {
+        g2.setTransform(this.unrotated_at);
+        this.symbol_atlas.validate(g2);
+    }
+
+
+    /**
+     * Where (x, y) of the rotated map is with the transformation from before the rotation, in sprite_x and sprite_y
+     */
+    private void unrotate(int x, int y) {
+        this.sprite_point.setLocation(x, y);
+        this.map_rotation.transform(this.sprite_point, this.sprite_point);
+        this.sprite_x = Math.round(this.sprite_point.x);
+        this.sprite_y = Math.round(this.sprite_point.y);
+    }
+
+
+    /**
+     * An untuned VOR, VOR-DME, DME or NDB, like drawVOR, drawVORDME, drawDME and drawNDB draw it
+     */
+    private void blitNavaid(Graphics2D g2, int x, int y, int symbol, RadioNavBeacon navaid, DecimalFormat freq_formatter) {
+
+        unrotate(x, y);
+        int label_x = this.sprite_x + this.symbol_atlas.get_label_offset();
+        int label_y = this.sprite_y + this.symbol_atlas.get_label_offset();
+        g2.setColor(nd_gc.navaid_color);
+        this.symbol_atlas.draw_symbol(g2, symbol, nd_gc.navaid_color, this.sprite_x, this.sprite_y);
+        this.symbol_atlas.draw_label(g2, nd_gc.font_xs, navaid.ilt, label_x, label_y);
+        if ( this.show_navaid_data ) {
+            this.symbol_atlas.draw_label(g2, nd_gc.font_xxs, freq_formatter.format(navaid.frequency), label_x, label_y - nd_gc.line_height_xs);
+        }
+
+    }
+
+
+    /**
+     * A fix, like drawFix draws it
+     */
+    private void blitFix(Graphics2D g2, int x, int y, Fix fix) {
+
+        unrotate(x, y);
+        Color color = fix.on_awy ? nd_gc.awy_wpt_color : nd_gc.term_wpt_color;
+        g2.setColor(color);
+        this.symbol_atlas.draw_symbol(g2, NavSymbolAtlas.SYMBOL_FIX, color, this.sprite_x, this.sprite_y);
+        if ( (fix.on_awy) || (nd_gc.map_range <= 20) || nd_gc.map_zoomin ) {
+            this.symbol_atlas.draw_label(g2, nd_gc.font_xs, fix.name,
+                    this.sprite_x + this.symbol_atlas.get_label_offset(), this.sprite_y + this.symbol_atlas.get_label_offset());
+        }
+
+    }
+
+
+    /**
+     * An airport, like drawAirport draws it
+     */
+    private void blitAirport(Graphics2D g2, int x, int y, Airport airport) {
+
+        unrotate(x, y);
+        int label_x = this.sprite_x + this.symbol_atlas.get_label_offset();
+        int label_y = this.sprite_y + this.symbol_atlas.get_label_offset();
+        g2.setColor(nd_gc.arpt_color);
+        this.symbol_atlas.draw_symbol(g2, NavSymbolAtlas.SYMBOL_AIRPORT, nd_gc.arpt_color, this.sprite_x, this.sprite_y);
+        this.symbol_atlas.draw_label(g2, nd_gc.font_xs, airport.icao_code, label_x, label_y);
+        if ( this.show_navaid_data ) {
+            this.symbol_atlas.draw_label(g2, nd_gc.font_xxs, Integer.toString(airport.elev), label_x, label_y + nd_gc.line_height_xxs);
+        }
+
     }
 
 
@@ -1591,9 +1615,9 @@ public class MovingMap extends NDSubcomponent {
         g.drawPolygon(x_points_hexagon, y_points_hexagon, 6);
         g2.setFont(nd_gc.font_xs); // was: small
         g.drawString(vor.ilt, x + x12, y + y12);
-        if ( this.avionics.efis_shows_data() && this.preferences.get_nd_navaid_frequencies() ) {
+        if ( this.show_navaid_data ) {
             g2.setFont(nd_gc.font_xxs); // was: tiny
-            g.drawString(MovingMap.vor_freq_formatter.format(vor.frequency), x + x12, y + y12 - nd_gc.line_height_xs);
+            g.drawString(this.vor_freq_formatter.format(vor.frequency), x + x12, y + y12 - nd_gc.line_height_xs);
         }
         if ( ( bank > 0 ) && ! avionics.efis_shows_pos() ) {
             // the selected course and reciprocal
@@ -1650,9 +1674,9 @@ public class MovingMap extends NDSubcomponent {
         g.drawPolygon(x_points_b_leaf, y_points_b_leaf, 4);
         g2.setFont(nd_gc.font_xs);
         g.drawString(vordme.ilt, x + x12, y + y12);
-        if ( this.avionics.efis_shows_data() && this.preferences.get_nd_navaid_frequencies() ) {
+        if ( this.show_navaid_data ) {
             g2.setFont(nd_gc.font_xxs);
-            g.drawString(MovingMap.vor_freq_formatter.format(vordme.frequency), x + x12, y + y12 - nd_gc.line_height_xs);
+            g.drawString(this.vor_freq_formatter.format(vordme.frequency), x + x12, y + y12 - nd_gc.line_height_xs);
         }
         if ( bank > 0 ) {
             Stroke original_stroke = g2.getStroke();
@@ -1704,9 +1728,9 @@ public class MovingMap extends NDSubcomponent {
         g.drawPolygon(x_points, y_points, 12);
         g2.setFont(nd_gc.font_xs);
         g.drawString(dme.ilt, x + x12, y + y12);
-        if ( this.avionics.efis_shows_data() && this.preferences.get_nd_navaid_frequencies() ) {
+        if ( this.show_navaid_data ) {
             g2.setFont(nd_gc.font_xxs);
-            g.drawString(MovingMap.vor_freq_formatter.format(dme.frequency), x + x12, y + y12 - nd_gc.line_height_xs);
+            g.drawString(this.vor_freq_formatter.format(dme.frequency), x + x12, y + y12 - nd_gc.line_height_xs);
         }
         if ( bank > 0 ) {
             Stroke original_stroke = g2.getStroke();
@@ -1753,9 +1777,9 @@ public class MovingMap extends NDSubcomponent {
         g2.setStroke(original_stroke);
         g2.setFont(nd_gc.font_xs);
         g.drawString(ndb.ilt, x + x12, y + y12);
-        if ( this.avionics.efis_shows_data() && this.preferences.get_nd_navaid_frequencies() ) {
+        if ( this.show_navaid_data ) {
             g2.setFont(nd_gc.font_xxs);
-            g.drawString(MovingMap.ndb_freq_formatter.format(ndb.frequency), x + x12, y + y12 - nd_gc.line_height_xs);
+            g.drawString(this.ndb_freq_formatter.format(ndb.frequency), x + x12, y + y12 - nd_gc.line_height_xs);
         }
         g2.setTransform(original_at);
 
@@ -1835,9 +1859,9 @@ public class MovingMap extends NDSubcomponent {
         }
         g2.setFont(nd_gc.font_xs);
         g2.drawString(localizer.ilt, x - x11 - nd_gc.get_text_width(g2, nd_gc.font_xs, localizer.ilt), y + y_offset);
-        if ( this.avionics.efis_shows_data() && this.preferences.get_nd_navaid_frequencies() ) {
+        if ( this.show_navaid_data ) {
             g2.setFont(nd_gc.font_xxs);
-            g2.drawString(MovingMap.vor_freq_formatter.format(localizer.frequency), x - x11 - nd_gc.get_text_width(g2, nd_gc.font_xxs, "000.00"), y + y_offset + nd_gc.line_height_xxs);
+            g2.drawString(this.vor_freq_formatter.format(localizer.frequency), x - x11 - nd_gc.get_text_width(g2, nd_gc.font_xxs, "000.00"), y + y_offset + nd_gc.line_height_xxs);
         }
 
         Stroke original_stroke = g2.getStroke();
@@ -1902,7 +1926,7 @@ public class MovingMap extends NDSubcomponent {
             g2.setStroke(original_stroke);
             g2.setFont(nd_gc.font_xs);
             g2.drawString(airport.icao_code, x + x12, y + y12);
-            if ( this.avionics.efis_shows_data() && this.preferences.get_nd_navaid_frequencies() ) {
+            if ( this.show_navaid_data ) {
                 g2.setFont(nd_gc.font_xxs);
                 g2.drawString(elev, x + x12, y + y12 + nd_gc.line_height_xxs);
             }
@@ -1923,7 +1947,7 @@ public class MovingMap extends NDSubcomponent {
             g2.setStroke(original_stroke);
             g2.setFont(nd_gc.font_xs);
             g2.drawString(airport.icao_code, x + x12, y + y12);
-            if ( this.avionics.efis_shows_data() && this.preferences.get_nd_navaid_frequencies() ) {
+            if ( this.show_navaid_data ) {
                 g2.setFont(nd_gc.font_xxs);
                 g2.drawString(elev, x + x12, y + y12 + nd_gc.line_height_xxs);
             }
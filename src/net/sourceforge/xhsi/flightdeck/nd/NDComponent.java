@@ -55,6 +55,7 @@ import net.sourceforge.xhsi.model.ModelFactory;
 import net.sourceforge.xhsi.model.Observer;
 
 //import net.sourceforge.xhsi.flightdeck.GraphicsConfig;
+import net.sourceforge.xhsi.flightdeck.PaintTimer;
 
 
 public class NDComponent extends Component implements Observer, PreferencesObserver, MouseListener, MouseWheelListener {
@@ -67,6 +68,8 @@ public class NDComponent extends Component implements Observer, PreferencesObser
 
     // subcomponents --------------------------------------------------------
     ArrayList subcomponents = new ArrayList();
+    // set by the replay benchmark to collect the paint times of the subcomponents
+    public PaintTimer paint_timer = null;
     long[] subcomponent_paint_times = new long[15];
     long total_paint_times = 0;
     long nb_of_paints = 0;
@@ -189,9 +192,17 @@ public class NDComponent extends Component implements Observer, PreferencesObser
                 time = System.currentTimeMillis();
             }
 
+            if (this.paint_timer != null) {
+                this.paint_timer.start();
+            }
+
             // paint each of the subcomponents
             ((NDSubcomponent) this.subcomponents.get(i)).paint(g2);
 
+            if (this.paint_timer != null) {
+                this.paint_timer.painted((NDSubcomponent) this.subcomponents.get(i));
+            }
+
             if (NDComponent.COLLECT_PROFILING_INFORMATION) {
                 paint_time = System.currentTimeMillis() - time;
                 this.subcomponent_paint_times[i] += paint_time;
@@ -51,7 +51,7 @@ import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.flightdeck.GraphicsConfig;
 
 
-public class NDGraphicsConfig extends GraphicsConfig implements ComponentListener {
+public class NDGraphicsConfig extends GraphicsConfig implements ComponentListener, Cloneable {
 
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
@@ -267,6 +267,24 @@ public class NDGraphicsConfig extends GraphicsConfig implements ComponentListene
     }
 
 
+    /**
+     * A copy of the current configuration, for another thread to draw with while update_config changes this one.
+     * The fonts, colors and shapes are only ever replaced, the objects that are changed in place are copied.
+     */
+    public NDGraphicsConfig snapshot() {
+        try {
+            NDGraphicsConfig copy = (NDGraphicsConfig) clone();
+            copy.component_size = new Dimension(this.component_size);
+            copy.frame_size = new Dimension(this.frame_size);
+            if ( this.component_topleft != null ) copy.component_topleft = new Point(this.component_topleft);
+            copy.rendering_hints = new HashMap(this.rendering_hints);
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e.toString());
+        }
+    }
+
+
 //    public int get_text_width(Graphics graphics, Font font, String text) {
 //        return graphics.getFontMetrics(font).stringWidth(text);
 //    }
@@ -0,0 +1,276 @@
+/**
+* NavSymbolAtlas.java
+*
+* The symbols of the navaids, fixes and airports that are not tuned, drawn
+* once into small images, so that MovingMap only has to copy an image for
+* each of the hundreds of objects in view instead of stroking polygons and
+* ovals. There is an image for each symbol and color, for the current
+* scaling factor, line width and anti-aliasing; when any of those changes
+* (when the ND is reconfigured), the images are drawn again.
+*
+* The labels are laid out once into GlyphVectors as well, for the last
+* MAX_LABELS texts of each font.
+*
+* The images are upright, so they are drawn with the transformation from
+* before the map is rotated for HDG or TRK UP, at the rotated position of
+* the object.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.flightdeck.nd;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.Transparency;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+public class NavSymbolAtlas {
+
+    public static final int SYMBOL_VOR = 0;
+    public static final int SYMBOL_VORDME = 1;
+    public static final int SYMBOL_DME = 2;
+    public static final int SYMBOL_NDB = 3;
+    public static final int SYMBOL_FIX = 4;
+    public static final int SYMBOL_AIRPORT = 5;
+    private static final int NB_OF_SYMBOLS = 6;
+
+    // the images of a symbol, for the last few colors
+    private static final int COLORS_PER_SYMBOL = 4;
+
+    public static final int MAX_LABELS = 1024;
+
+    private static final float dots[] = { 1.0f, 2.0f };
+
+    private NDGraphicsConfig nd_gc;
+
+    // what the images were drawn for
+    private float scaling_factor = 0.0f;
+    private Stroke stroke = null;
+    private Object antialiasing = null;
+
+    private Color[][] sprite_colors = new Color[NB_OF_SYMBOLS][COLORS_PER_SYMBOL];
+    private BufferedImage[][] sprites = new BufferedImage[NB_OF_SYMBOLS][COLORS_PER_SYMBOL];
+    private int[] next_slot = new int[NB_OF_SYMBOLS];
+    // the center of the symbol in the images
+    private int anchor;
+    private int label_offset;
+
+    private FontRenderContext label_frc = null;
+    private Map<Font,LinkedHashMap<String,GlyphVector>> labels = new HashMap<Font,LinkedHashMap<String,GlyphVector>>();
+
+    private int nb_of_sprites_drawn = 0;
+
+
+    public NavSymbolAtlas(NDGraphicsConfig nd_gc) {
+        this.nd_gc = nd_gc;
+    }
+
+
+    /**
+     * Forgets the images and the labels when they were made for another size, line, anti-aliasing or font rendering;
+     * g2 must already have the transformation with which the symbols will be drawn
+     */
+    public void validate(Graphics2D g2) {
+
+        Stroke g2_stroke = g2.getStroke();
+        Object g2_antialiasing = this.nd_gc.rendering_hints.get(RenderingHints.KEY_ANTIALIASING);
+        if ( ( this.scaling_factor != this.nd_gc.scaling_factor )
+                || ! g2_stroke.equals(this.stroke)
+                || ( g2_antialiasing != this.antialiasing ) ) {
+            this.scaling_factor = this.nd_gc.scaling_factor;
+            this.stroke = g2_stroke;
+            this.antialiasing = g2_antialiasing;
+            for (int s=0; s<NB_OF_SYMBOLS; s++) {
+                for (int c=0; c<COLORS_PER_SYMBOL; c++) {
+                    this.sprite_colors[s][c] = null;
+                    this.sprites[s][c] = null;
+                }
+                this.next_slot[s] = 0;
+            }
+            // the biggest symbols reach 11 from the center, and the airport has a 3 pixels wide line
+            this.anchor = Math.round(11.0f * this.scaling_factor) + 3;
+            this.label_offset = Math.round(12.0f * this.scaling_factor);
+        }
+
+        FontRenderContext frc = g2.getFontRenderContext();
+        if ( ! frc.equals(this.label_frc) ) {
+            this.label_frc = frc;
+            this.labels.clear();
+        }
+
+    }
+
+
+    /**
+     * The distance from the center of a symbol to the start of its label, right and down
+     */
+    public int get_label_offset() {
+        return this.label_offset;
+    }
+
+
+    /**
+     * Draws the symbol in its color with its center at (x, y)
+     */
+    public void draw_symbol(Graphics2D g2, int symbol, Color color, int x, int y) {
+        g2.drawImage(get_sprite(g2, symbol, color), x - this.anchor, y - this.anchor, null);
+    }
+
+
+    /**
+     * Draws the text like drawString does, in the current color
+     */
+    public void draw_label(Graphics2D g2, Font font, String text, int x, int y) {
+
+        LinkedHashMap<String,GlyphVector> font_labels = this.labels.get(font);
+        if ( font_labels == null ) {
+            font_labels = new LinkedHashMap<String,GlyphVector>(MAX_LABELS * 4 / 3 + 1, 0.75f, true) { // access order
+                protected boolean removeEldestEntry(Map.Entry<String,GlyphVector> eldest) {
+                    return size() > MAX_LABELS;
+                }
+            };
+            this.labels.put(font, font_labels);
+        }
+        GlyphVector glyphs = font_labels.get(text);
+        if ( glyphs == null ) {
+            glyphs = font.createGlyphVector(this.label_frc, text);
+            font_labels.put(text, glyphs);
+        }
+        g2.drawGlyphVector(glyphs, x, y);
+
+    }
+
+
+    /**
+     * How many images have been drawn, for the logs and the benchmarks
+     */
+    public int get_nb_of_sprites_drawn() {
+        return this.nb_of_sprites_drawn;
+    }
+
+
+    private BufferedImage get_sprite(Graphics2D g2, int symbol, Color color) {
+
+        Color[] colors = this.sprite_colors[symbol];
+        for (int c=0; c<COLORS_PER_SYMBOL; c++) {
+            if ( color.equals(colors[c]) ) return this.sprites[symbol][c];
+        }
+
+        int size = 2 * this.anchor + 1;
+        BufferedImage sprite = g2.getDeviceConfiguration().createCompatibleImage(size, size, Transparency.TRANSLUCENT);
+        Graphics2D s2 = sprite.createGraphics();
+        s2.setRenderingHints(this.nd_gc.rendering_hints);
+        s2.setStroke(this.stroke);
+        s2.setColor(color);
+        draw_vector_symbol(s2, symbol, this.anchor, this.anchor);
+        s2.dispose();
+        this.nb_of_sprites_drawn++;
+
+        int slot = this.next_slot[symbol];
+        this.next_slot[symbol] = ( slot + 1 ) % COLORS_PER_SYMBOL;
+        colors[slot] = color;
+        this.sprites[symbol][slot] = sprite;
+        return sprite;
+
+    }
+
+
+    /**
+     * The same symbols as MovingMap draws for the navaids, fixes and airports
+     */
+    private void draw_vector_symbol(Graphics2D g2, int symbol, int x, int y) {
+
+        float s = this.scaling_factor;
+        int x3 = Math.round(3.0f*s);
+        int x4 = Math.round(4.0f*s);
+        int x5 = Math.round(5.0f*s);
+        int x6 = Math.round(6.0f*s);
+        int x8 = Math.round(8.0f*s);
+        int x11 = Math.round(11.0f*s);
+        int y3 = x3;
+        int y5 = Math.round(5.0f*s);
+        int y6 = Math.round(6.0f*s);
+        int y7 = Math.round(7.0f*s);
+        int y8 = x8;
+        int y11 = x11;
+
+        switch (symbol) {
+
+            case SYMBOL_VOR :
+                int x_points_vor[] = { x-x4, x+x4, x+x8, x+x4, x-x4, x-x8 };
+                int y_points_vor[] = { y-y7, y-y7, y, y+y7, y+y7, y };
+                g2.drawPolygon(x_points_vor, y_points_vor, 6);
+                break;
+
+            case SYMBOL_VORDME :
+                int x_points_hexagon[] = { x-x3, x+x3, x+x6, x+x3, x-x3, x-x6 };
+                int y_points_hexagon[] = { y-y5, y-y5, y, y+y5, y+y5, y };
+                int x_points_ul_leaf[] = { x-x6, x-x3, x-x8, x-x11 };
+                int y_points_ul_leaf[] = { y,   y-y5, y-y8, y-y3 };
+                int x_points_ur_leaf[] = { x+x6, x+x3, x+x8, x+x11 };
+                int y_points_ur_leaf[] = { y,   y-y5, y-y8, y-y3 };
+                int x_points_b_leaf[] =  { x-x3, x+x3, x+x3, x-x3 };
+                int y_points_b_leaf[] =  { y+y5, y+y5, y+y11, y+y11 };
+                g2.drawPolygon(x_points_hexagon, y_points_hexagon, 6);
+                g2.drawPolygon(x_points_ul_leaf, y_points_ul_leaf, 4);
+                g2.drawPolygon(x_points_ur_leaf, y_points_ur_leaf, 4);
+                g2.drawPolygon(x_points_b_leaf, y_points_b_leaf, 4);
+                break;
+
+            case SYMBOL_DME :
+                int x_points_dme[] = { x+x6, x+x11, x+x8, x+x3, x-x3, x-x8, x-x11, x-x6, x-x3, x-x3,  x+x3, x+x3 };
+                int y_points_dme[] = { y,   y-y3,  y-y8, y-y5, y-y5, y-y8, y-y3,  y,   y+y5, y+y11, y+y11, y+y5 };
+                g2.drawPolygon(x_points_dme, y_points_dme, 12);
+                break;
+
+            case SYMBOL_NDB :
+                int c4 = Math.round(3.0f*s);
+                int c7 = Math.round(5.5f*s);
+                int c10 = Math.round(8.0f*s);
+                g2.setStroke(new BasicStroke(2.0f));
+                g2.drawOval(x-c4, y-c4, 2*c4, 2*c4);
+                g2.setStroke(new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f, dots, 0.0f));
+                g2.drawOval(x-c7, y-c7, 2*c7, 2*c7);
+                g2.drawOval(x-c10, y-c10, 2*c10, 2*c10);
+                break;
+
+            case SYMBOL_FIX :
+                int x_points_triangle[] = { x-x5, x+x5, x };
+                int y_points_triangle[] = { y+y3, y+y3, y-y6  };
+                g2.drawPolygon(x_points_triangle, y_points_triangle, 3);
+                break;
+
+            case SYMBOL_AIRPORT :
+                int c9 = Math.round(9.0f*s);
+                g2.setStroke(new BasicStroke(3.0f));
+                g2.drawOval(x-c9, y-c9, 2*c9, 2*c9);
+                break;
+
+        }
+
+    }
+
+
+}
@@ -102,7 +102,14 @@ public class ProcFile {
      */
      public static ProcFile load(String icao) {
          String data = readIcao(icao);
-         return (data == null) ? null : new ProcFile(data);
+         return (data == null) ? null : parse(data);
+     }
+
+    /**
+     * parse
+     */
+     public static ProcFile parse(String data) {
+         return new ProcFile(data);
      }
 
     /**
@@ -0,0 +1,294 @@
+/**
+* TaxiChartShapes.java
+*
+* The pavements, holes, APT810-style segments and runways of a TaxiChart,
+* converted once into shapes in pixels for one map scale. The shapes are
+* relative to a reference point of the airport, so that drawing them only
+* takes a translation for the aircraft position (and the rotation that
+* MovingMap already applies for HDG or TRK UP).
+*
+* A Cache keeps the shapes of the last airports, for the last few map scales
+* of each airport.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.flightdeck.nd;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.sourceforge.xhsi.model.Airport;
+import net.sourceforge.xhsi.model.Runway;
+import net.sourceforge.xhsi.model.TaxiChart;
+
+
+public class TaxiChartShapes {
+
+    // what to paint a shape with; the colors themselves come from the NDGraphicsConfig when painting
+    public static final int PAINT_FIELD = 0;
+    public static final int PAINT_PAPER = 1;
+    public static final int PAINT_RAMP = 2;
+    public static final int PAINT_GRASS = 3;
+    public static final int PAINT_SAND = 4;
+    public static final int PAINT_SNOW = 5;
+    public static final int PAINT_SOFT_RWY = 6;
+    public static final int PAINT_HARD_RWY = 7;
+
+
+    /**
+     * A shape in the order in which it must be painted
+     */
+    public static class Item {
+
+        public Shape shape;
+        public int paint;
+        // pavements are also outlined, to draw them at least one pixel wide
+        public boolean outline;
+        // a runway also has its ends, for the labels
+        public Runway runway;
+        public float x1;
+        public float y1;
+        public float x2;
+        public float y2;
+
+        private Item(Shape shape, int paint, boolean outline) {
+            this.shape = shape;
+            this.paint = paint;
+            this.outline = outline;
+        }
+
+    }
+
+
+    /**
+     * The shapes of the last airports, most recently used last
+     */
+    public static class Cache {
+
+        private final int max_airports;
+        private final int max_scales;
+        private final Map<String,ArrayList<TaxiChartShapes>> airports;
+
+        public Cache(int max_airports, int max_scales) {
+            this.max_airports = max_airports;
+            this.max_scales = max_scales;
+            this.airports = new LinkedHashMap<String,ArrayList<TaxiChartShapes>>(max_airports + 1, 0.75f, true) { // access order
+                protected boolean removeEldestEntry(Map.Entry<String,ArrayList<TaxiChartShapes>> eldest) {
+                    return size() > Cache.this.max_airports;
+                }
+            };
+        }
+
+        /**
+         * The shapes of the chart for the scale, from the cache if we have already made them
+         */
+        public TaxiChartShapes get(TaxiChart chart, float lat_scale, float lon_scale, float metric_scale, boolean bezier) {
+
+            ArrayList<TaxiChartShapes> scales = this.airports.get(chart.icao);
+            if ( scales == null ) {
+                scales = new ArrayList<TaxiChartShapes>(this.max_scales);
+                this.airports.put(chart.icao, scales);
+            } else if ( ( ! scales.isEmpty() ) && ( scales.get(0).airport != chart.airport ) ) {
+                // the navigation databases have been loaded again
+                scales.clear();
+            }
+            for (int i=0; i<scales.size(); i++) {
+                TaxiChartShapes shapes = scales.get(i);
+                if ( shapes.matches(lat_scale, lon_scale, bezier) ) {
+                    if ( i != 0 ) {
+                        scales.remove(i);
+                        scales.add(0, shapes);
+                    }
+                    return shapes;
+                }
+            }
+            TaxiChartShapes shapes = new TaxiChartShapes(chart, lat_scale, lon_scale, metric_scale, bezier);
+            if ( scales.size() == this.max_scales ) {
+                scales.remove(scales.size() - 1);
+            }
+            scales.add(0, shapes);
+            return shapes;
+
+        }
+
+        public void clear() {
+            this.airports.clear();
+        }
+
+    }
+
+
+    public Airport airport;
+    public float ref_lat;
+    public float ref_lon;
+    public ArrayList<Item> items = new ArrayList<Item>();
+
+    private float lat_scale;
+    private float lon_scale;
+    private boolean bezier;
+
+
+    /**
+     * The shapes of a chart that is ready, at lat_scale and lon_scale pixels per degree
+     */
+    public TaxiChartShapes(TaxiChart chart, float lat_scale, float lon_scale, float metric_scale, boolean bezier) {
+
+        this.lat_scale = lat_scale;
+        this.lon_scale = lon_scale;
+        this.bezier = bezier;
+        this.airport = chart.airport;
+        this.ref_lat = ( chart.north_lat + chart.south_lat ) / 2.0f;
+        this.ref_lon = ( chart.east_lon + chart.west_lon ) / 2.0f;
+
+        if ( chart.border != null ) {
+            add_pavement(chart.border, PAINT_FIELD, PAINT_PAPER);
+        }
+
+        int hole_paint = ( chart.border == null ) ? PAINT_PAPER : PAINT_FIELD;
+        for (int i=0; i<chart.pavements.size(); i++) {
+            add_pavement(chart.pavements.get(i), PAINT_RAMP, hole_paint);
+        }
+
+        if ( chart.airport != null ) {
+
+            // APT810-style segments
+            for (int s=0; s<chart.segments.size(); s++) {
+                TaxiChart.Segment seg0 = chart.segments.get(s);
+                float s_x = x(seg0.lon);
+                float s_y = y(seg0.lat);
+                float s_l = seg0.length * metric_scale / 2.0f;
+                Shape stroked = stroke(seg0.width * metric_scale).createStrokedShape(
+                        new Line2D.Float(s_x, s_y - s_l - 1.0f, s_x, s_y + s_l + 1.0f) );
+                Shape rotated = AffineTransform.getRotateInstance(Math.toRadians(seg0.orientation), s_x, s_y).createTransformedShape(stroked);
+                this.items.add( new Item(rotated, PAINT_RAMP, false) );
+            }
+
+            // the paved runways are drawn OVER the non-paved runways
+            for (int i=0; i<chart.airport.runways.size(); i++) {
+                Runway rwy0 = chart.airport.runways.get(i);
+                if ( (rwy0.surface!=Runway.RWY_ASPHALT) && (rwy0.surface!=Runway.RWY_CONCRETE) ) {
+                    int paint;
+                    if (rwy0.surface==Runway.RWY_GRASS)
+                        paint = PAINT_GRASS;
+                    else if ( (rwy0.surface==Runway.RWY_DIRT) || (rwy0.surface==Runway.RWY_GRAVEL) || (rwy0.surface==Runway.RWY_DRY_LAKEBED) )
+                        paint = PAINT_SAND;
+                    else if (rwy0.surface==Runway.RWY_SNOW)
+                        paint = PAINT_SNOW;
+                    else
+                        paint = PAINT_SOFT_RWY;
+                    add_runway(rwy0, paint, metric_scale);
+                }
+            }
+            for (int i=0; i<chart.airport.runways.size(); i++) {
+                Runway rwy0 = chart.airport.runways.get(i);
+                if ( (rwy0.surface==Runway.RWY_ASPHALT) || (rwy0.surface==Runway.RWY_CONCRETE) ) {
+                    add_runway(rwy0, PAINT_HARD_RWY, metric_scale);
+                }
+            }
+
+        }
+
+    }
+
+
+    public boolean matches(float lat_scale, float lon_scale, boolean bezier) {
+        return ( this.lat_scale == lat_scale ) && ( this.lon_scale == lon_scale ) && ( this.bezier == bezier );
+    }
+
+
+    private float x(float lon) {
+        return ( lon - this.ref_lon ) * this.lon_scale;
+    }
+
+
+    private float y(float lat) {
+        return - ( lat - this.ref_lat ) * this.lat_scale;
+    }
+
+
+    private static BasicStroke stroke(float width) {
+        // a runway or segment narrower than a pixel is still drawn one pixel wide
+        return new BasicStroke(Math.max(1.0f, width), BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER);
+    }
+
+
+    private void add_pavement(TaxiChart.Pavement pavement, int paint, int hole_paint) {
+
+        this.items.add( new Item(loop(pavement.nodes), paint, true) );
+        for (int k=0; k<pavement.holes.size(); k++) {
+            this.items.add( new Item(loop(pavement.holes.get(k).nodes), hole_paint, true) );
+        }
+
+    }
+
+
+    private Path2D loop(ArrayList<TaxiChart.Node> nodes) {
+
+        Path2D taxishape = new Path2D.Float();
+        TaxiChart.Node last_node = null;
+        for (int h=0; h<nodes.size(); h++) {
+            TaxiChart.Node node1 = nodes.get(h);
+            if ( h == 0 ) {
+                taxishape.moveTo( x(node1.lon), y(node1.lat) );
+                last_node = node1;
+            } else if ( ! this.bezier ) {
+                taxishape.lineTo( x(node1.lon), y(node1.lat) );
+            } else if ( ( node1.lat != last_node.lat ) || ( node1.lon != last_node.lon ) ) {
+                // this node is different from the previous, so we can draw ... something
+                if ( node1.cubic_bezier ) {
+                    taxishape.curveTo(
+                            x(node1.quad_lon), y(node1.quad_lat),
+                            x(node1.cubic_lon), y(node1.cubic_lat),
+                            x(node1.lon), y(node1.lat) );
+                } else if ( node1.quad_bezier ) {
+                    taxishape.quadTo(
+                            x(node1.quad_lon), y(node1.quad_lat),
+                            x(node1.lon), y(node1.lat) );
+                } else {
+                    taxishape.lineTo( x(node1.lon), y(node1.lat) );
+                }
+                last_node = node1;
+            }
+        }
+        taxishape.closePath();
+        return taxishape;
+
+    }
+
+
+    private void add_runway(Runway rwy0, int paint, float metric_scale) {
+
+        float x1 = x(rwy0.lon1);
+        float y1 = y(rwy0.lat1);
+        float x2 = x(rwy0.lon2);
+        float y2 = y(rwy0.lat2);
+        Item item = new Item( stroke(rwy0.width * metric_scale).createStrokedShape(new Line2D.Float(x1, y1, x2, y2)), paint, false );
+        item.runway = rwy0;
+        item.x1 = x1;
+        item.y1 = y1;
+        item.x2 = x2;
+        item.y2 = y2;
+        this.items.add(item);
+
+    }
+
+
+}
@@ -49,6 +49,8 @@ import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.ModelFactory;
 import net.sourceforge.xhsi.model.Observer;
 
+import net.sourceforge.xhsi.flightdeck.PaintTimer;
+
 
 
 public class PFDComponent extends Component implements Observer, PreferencesObserver {
@@ -61,6 +63,8 @@ public class PFDComponent extends Component implements Observer, PreferencesObse
 
     // subcomponents --------------------------------------------------------
     ArrayList<PFDSubcomponent> subcomponents = new ArrayList<PFDSubcomponent>();
+    // set by the replay benchmark to collect the paint times of the subcomponents
+    public PaintTimer paint_timer = null;
     long[] subcomponent_paint_times = new long[15];
     long total_paint_times = 0;
     long nb_of_paints = 0;
@@ -167,9 +171,17 @@ public class PFDComponent extends Component implements Observer, PreferencesObse
                 time = System.currentTimeMillis();
             }
 
+            if (this.paint_timer != null) {
+                this.paint_timer.start();
+            }
+
             // paint each of the subcomponents
             ((PFDSubcomponent) this.subcomponents.get(i)).paint(g2);
 
+            if (this.paint_timer != null) {
+                this.paint_timer.painted((PFDSubcomponent) this.subcomponents.get(i));
+            }
+
             if (PFDComponent.COLLECT_PROFILING_INFORMATION) {
                 paint_time = System.currentTimeMillis() - time;
                 this.subcomponent_paint_times[i] += paint_time;
@@ -863,6 +863,10 @@ public interface Avionics {
 
     public void sendDataPoint(int key, float value);
 
+    public void queueDataPoint(int key, int value);
+
+    public void queueDataPoint(int key, float value);
+
     // Failures
     public enum FailedElement { PFD_ATTITUDE, PFD_ALTITUDE, PFD_AIR_SPEED, PFD_HEADING, PFD_TURN, PFD_VSI };
     public enum FailureMode { WORKING, FAIL_MEAN_TIME, FAIL_TIME, FAIL_SPD, FAIL_ALT, FAIL_KEY, INOPERATIVE  };
@@ -0,0 +1,465 @@
+/**
+* FixStore.java
+*
+* A compact alternative to keeping every Fix as a separate object. The fixes
+* are stored in parallel primitive arrays (lat, lon, flags), and their names
+* in one shared byte pool. The arrays are kept sorted by 1x1 degree cell, so
+* that the fixes of a cell are contiguous, and scanning a cell or a bounding
+* box only touches consecutive memory.
+*
+* An X-Plane 10/11 earth_fix.dat has a few hundred thousand fixes; as objects
+* that is over 100 bytes per fix (the Fix, its name String and its char or
+* byte array, and the references to it in the cell and spatial index lists),
+* here it is about 24.
+*
+* Fixes are handed out in two ways: get_fix() creates a real Fix that can be
+* kept, and a Selection re-points one flyweight Fix at each of the fixes that
+* it found, for drawing them without creating an object per fix per frame.
+* The name String of a fix is only made the first time that it is asked for,
+* and kept, so that the fixes that are drawn on every frame don't make a new
+* String every time.
+*
+* Fixes can be added at any time; they are sorted into the cells on the first
+* query after an addition. A query works on the sorted arrays as they were at
+* that moment, so a Selection stays valid while more fixes are loaded.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+
+public class FixStore {
+
+    private static final byte FLAG_ON_AWY = 1;
+
+    private static final int LAT_CELLS = 180;
+    private static final int LON_CELLS = 360;
+
+
+    /**
+     * The fixes sorted by cell; never changed after it has been built, except for the flags
+     */
+    private static class Block {
+
+        int size;
+        float[] lat;
+        float[] lon;
+        byte[] flags;
+        // the name of fix i is names[name_start[i]] .. names[name_start[i+1]-1]
+        int[] name_start;
+        byte[] names;
+        // the fixes of cell c are cell_start[c] .. cell_start[c+1]-1
+        int[] cell_start;
+        // the names that have been asked for, interned, so that the same String is handed out every time;
+        // filled in from several threads, but a String is immutable, and making it twice is harmless
+        String[] name_strings;
+
+        String get_name(int i) {
+            String name = this.name_strings[i];
+            if ( name == null ) {
+                int start = this.name_start[i];
+                char[] chars = new char[this.name_start[i+1] - start];
+                for (int c=0; c<chars.length; c++) chars[c] = (char)(this.names[start + c] & 0xFF);
+                name = new String(chars).intern();
+                this.name_strings[i] = name;
+            }
+            return name;
+        }
+
+        boolean name_equals(int i, String name) {
+            int start = this.name_start[i];
+            int length = this.name_start[i+1] - start;
+            if ( name.length() != length ) return false;
+            for (int c=0; c<length; c++) {
+                if ( Character.toUpperCase(name.charAt(c)) != Character.toUpperCase((char)(this.names[start + c] & 0xFF)) ) return false;
+            }
+            return true;
+        }
+
+    }
+
+
+    /**
+     * The result of a box query: a flyweight Fix re-pointed at each of the fixes that were found
+     */
+    public static class Selection {
+
+        private Block block;
+        private int[] indexes = new int[256];
+        private int size = 0;
+        private Fix fix = new Fix("", 0.0f, 0.0f, false);
+
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * The n-th fix that was found; the same Fix object is returned every time, so it is only valid until the next get()
+         */
+        public Fix get(int n) {
+            int i = this.indexes[n];
+            this.fix.name = this.block.get_name(i);
+            this.fix.lat = this.block.lat[i];
+            this.fix.lon = this.block.lon[i];
+            this.fix.on_awy = ( this.block.flags[i] & FLAG_ON_AWY ) != 0;
+            return this.fix;
+        }
+
+        /**
+         * The positions of the fixes that were found, in lat[0 .. size()-1] and lon[0 .. size()-1]
+         */
+        public void get_positions(float[] lat, float[] lon) {
+            float[] block_lat = this.block.lat;
+            float[] block_lon = this.block.lon;
+            for (int n=0; n<this.size; n++) {
+                int i = this.indexes[n];
+                lat[n] = block_lat[i];
+                lon[n] = block_lon[i];
+            }
+        }
+
+        private void add(int i) {
+            if ( this.size == this.indexes.length ) {
+                int[] grown = new int[this.size * 2];
+                System.arraycopy(this.indexes, 0, grown, 0, this.size);
+                this.indexes = grown;
+            }
+            this.indexes[this.size++] = i;
+        }
+
+    }
+
+
+    private Block sorted = new_block(0, 0);
+
+    // the fixes added since the last sort
+    private int pending_size = 0;
+    private float[] pending_lat = new float[1024];
+    private float[] pending_lon = new float[1024];
+    private byte[] pending_flags = new byte[1024];
+    private int[] pending_name_start = new int[1025];
+    private byte[] pending_names = new byte[8192];
+
+
+    public synchronized void add(String name, float lat, float lon, boolean on_awy) {
+        if ( this.pending_size == this.pending_lat.length ) {
+            int capacity = this.pending_size * 2;
+            this.pending_lat = grow(this.pending_lat, capacity);
+            this.pending_lon = grow(this.pending_lon, capacity);
+            this.pending_flags = grow(this.pending_flags, capacity);
+            this.pending_name_start = grow(this.pending_name_start, capacity + 1);
+        }
+        int start = this.pending_name_start[this.pending_size];
+        if ( start + name.length() > this.pending_names.length ) {
+            this.pending_names = grow(this.pending_names, Math.max(this.pending_names.length * 2, start + name.length()));
+        }
+        for (int c=0; c<name.length(); c++) this.pending_names[start + c] = (byte)name.charAt(c);
+        this.pending_lat[this.pending_size] = lat;
+        this.pending_lon[this.pending_size] = lon;
+        this.pending_flags[this.pending_size] = on_awy ? FLAG_ON_AWY : 0;
+        this.pending_size++;
+        this.pending_name_start[this.pending_size] = start + name.length();
+    }
+
+
+    public synchronized void clear() {
+        this.sorted = new_block(0, 0);
+        this.pending_size = 0;
+        this.pending_name_start[0] = 0;
+    }
+
+
+    public synchronized int size() {
+        return this.sorted.size + this.pending_size;
+    }
+
+
+    /**
+     * A new Fix with the supplied name that is in the same cell as lat/lon, or null
+     */
+    public Fix get_fix(String name, float lat, float lon) {
+        Block block = get_sorted();
+        int i = find(block, name, lat, lon);
+        return ( i >= 0 ) ? new_fix(block, i) : null;
+    }
+
+
+    /**
+     * Marks the fix with the supplied name that is in the same cell as lat/lon as being on an airway
+     */
+    public boolean set_on_awy(String name, float lat, float lon) {
+        Block block = get_sorted();
+        int i = find(block, name, lat, lon);
+        if ( i >= 0 ) {
+            block.flags[i] |= FLAG_ON_AWY;
+        }
+        return i >= 0;
+    }
+
+
+    /**
+     * New Fix objects for all the fixes in the same cell as lat/lon
+     */
+    public ArrayList<NavigationObject> get_fixes(float lat, float lon) {
+        Block block = get_sorted();
+        int cell = cell(lat, lon);
+        ArrayList<NavigationObject> fixes = new ArrayList<NavigationObject>();
+        for (int i=block.cell_start[cell]; i<block.cell_start[cell+1]; i++) {
+            fixes.add(new_fix(block, i));
+        }
+        return fixes;
+    }
+
+
+    /**
+     * Selects the fixes in the box (lon_min > lon_max when the box crosses the International Date Line);
+     * selection can be null, or the Selection of a previous query to reuse it
+     */
+    public Selection select_box(float lat_min, float lat_max, float lon_min, float lon_max, Selection selection) {
+
+        if ( selection == null ) selection = new Selection();
+        Block block = get_sorted();
+        selection.block = block;
+        selection.size = 0;
+
+        if ( lat_min > lat_max ) return selection;
+        float lon_span = lon_max - lon_min;
+        if ( lon_span < 0.0f ) lon_span += 360.0f;
+        boolean all_lons = ( lat_min < -90.0f ) || ( lat_max > 90.0f ) || ( lon_span >= 360.0f );
+
+        int ilat_min = lat_index(lat_min);
+        int ilat_max = lat_index(lat_max);
+        int ilon_first = all_lons ? 0 : lon_index(lon_min);
+        int nb_of_lon_cells = all_lons ? LON_CELLS : Math.min(LON_CELLS, (int)Math.floor(lon_min + lon_span) - (int)Math.floor(lon_min) + 1);
+
+        for (int ilat=ilat_min; ilat<=ilat_max; ilat++) {
+            for (int l=0; l<nb_of_lon_cells; l++) {
+                int cell = ilat * LON_CELLS + ( ilon_first + l ) % LON_CELLS;
+                for (int i=block.cell_start[cell]; i<block.cell_start[cell+1]; i++) {
+                    float lat = block.lat[i];
+                    if ( ( lat >= lat_min ) && ( lat <= lat_max ) ) {
+                        if ( all_lons ) {
+                            selection.add(i);
+                        } else {
+                            float dlon = block.lon[i] - lon_min;
+                            if ( dlon < 0.0f ) dlon += 360.0f;
+                            if ( dlon <= lon_span ) selection.add(i);
+                        }
+                    }
+                }
+            }
+        }
+
+        return selection;
+
+    }
+
+
+    /**
+     * Adds new Fix objects for the fixes that are at less than radius NM and accepted by filter (which may be null) to result
+     */
+    public void find_within(float lat, float lon, float radius, SpatialIndex.Filter filter, ArrayList<NavigationObject> result) {
+        float dlat = radius / 60.0f;
+        float cos_lat = (float)Math.cos(Math.toRadians(lat));
+        float dlon = ( Math.abs(lat) + dlat >= 90.0f ) || ( cos_lat * 60.0f * 180.0f <= radius ) ? 180.0f : radius / ( 60.0f * cos_lat );
+        float lon_min = ( dlon >= 180.0f ) ? -180.0f : normalize_lon(lon - dlon);
+        float lon_max = ( dlon >= 180.0f ) ? 180.0f : normalize_lon(lon + dlon);
+        Selection selection = select_box(Math.max(-90.0f, lat - dlat), Math.min(90.0f, lat + dlat), lon_min, lon_max, null);
+        for (int n=0; n<selection.size(); n++) {
+            Fix fix = selection.get(n);
+            if ( ( SpatialIndex.distance(lat, lon, fix.lat, fix.lon) < radius ) && ( ( filter == null ) || filter.accept(fix) ) ) {
+                result.add(new Fix(fix.name, fix.lat, fix.lon, fix.on_awy));
+            }
+        }
+    }
+
+
+    /**
+     * New Fix objects for the k nearest fixes that are accepted by filter (which may be null), nearest first
+     */
+    public ArrayList<NavigationObject> find_nearest(final float lat, final float lon, int k, SpatialIndex.Filter filter) {
+        ArrayList<NavigationObject> found = new ArrayList<NavigationObject>();
+        if ( k <= 0 ) return found;
+        // widen the search until it has at least k fixes, then the k nearest are among them
+        float radius = 25.0f;
+        while ( true ) {
+            found.clear();
+            find_within(lat, lon, radius, filter, found);
+            if ( ( found.size() >= k ) || ( radius > 60.0f * 180.0f ) ) break;
+            radius *= 2.0f;
+        }
+        Collections.sort(found, new Comparator<NavigationObject>() {
+            public int compare(NavigationObject a, NavigationObject b) {
+                return Float.compare(SpatialIndex.distance(lat, lon, a.lat, a.lon), SpatialIndex.distance(lat, lon, b.lat, b.lon));
+            }
+        });
+        while ( found.size() > k ) found.remove(found.size() - 1);
+        return found;
+    }
+
+
+    private synchronized Block get_sorted() {
+        if ( this.pending_size > 0 ) {
+            this.sorted = merge(this.sorted);
+            this.pending_size = 0;
+            this.pending_name_start[0] = 0;
+        }
+        return this.sorted;
+    }
+
+
+    /**
+     * A new Block with the fixes of old and the pending fixes, sorted by cell
+     */
+    private Block merge(Block old) {
+
+        int size = old.size + this.pending_size;
+        int names_size = old.name_start[old.size] + this.pending_name_start[this.pending_size];
+        Block block = new_block(size, names_size);
+
+        // count the fixes per cell, then place them at the start of their cell
+        int[] cells = new int[size];
+        for (int i=0; i<old.size; i++) {
+            cells[i] = cell(old.lat[i], old.lon[i]);
+            block.cell_start[cells[i] + 1]++;
+        }
+        for (int p=0; p<this.pending_size; p++) {
+            cells[old.size + p] = cell(this.pending_lat[p], this.pending_lon[p]);
+            block.cell_start[cells[old.size + p] + 1]++;
+        }
+        for (int c=0; c<LAT_CELLS*LON_CELLS; c++) {
+            block.cell_start[c + 1] += block.cell_start[c];
+        }
+
+        int[] position = new int[size];
+        int[] next = new int[LAT_CELLS*LON_CELLS];
+        System.arraycopy(block.cell_start, 0, next, 0, next.length);
+        for (int i=0; i<size; i++) {
+            position[i] = next[cells[i]]++;
+        }
+
+        int[] name_length = new int[size];
+        for (int i=0; i<size; i++) {
+            int j = position[i];
+            if ( i < old.size ) {
+                block.lat[j] = old.lat[i];
+                block.lon[j] = old.lon[i];
+                block.flags[j] = old.flags[i];
+                block.name_strings[j] = old.name_strings[i];
+                name_length[j] = old.name_start[i+1] - old.name_start[i];
+            } else {
+                int p = i - old.size;
+                block.lat[j] = this.pending_lat[p];
+                block.lon[j] = this.pending_lon[p];
+                block.flags[j] = this.pending_flags[p];
+                name_length[j] = this.pending_name_start[p+1] - this.pending_name_start[p];
+            }
+        }
+        for (int j=0; j<size; j++) {
+            block.name_start[j+1] = block.name_start[j] + name_length[j];
+        }
+        for (int i=0; i<size; i++) {
+            int j = position[i];
+            if ( i < old.size ) {
+                System.arraycopy(old.names, old.name_start[i], block.names, block.name_start[j], name_length[j]);
+            } else {
+                int p = i - old.size;
+                System.arraycopy(this.pending_names, this.pending_name_start[p], block.names, block.name_start[j], name_length[j]);
+            }
+        }
+
+        return block;
+
+    }
+
+
+    private static int find(Block block, String name, float lat, float lon) {
+        int cell = cell(lat, lon);
+        for (int i=block.cell_start[cell]; i<block.cell_start[cell+1]; i++) {
+            if ( block.name_equals(i, name) ) return i;
+        }
+        return -1;
+    }
+
+
+    private static Fix new_fix(Block block, int i) {
+        return new Fix(block.get_name(i), block.lat[i], block.lon[i], ( block.flags[i] & FLAG_ON_AWY ) != 0);
+    }
+
+
+    private static Block new_block(int size, int names_size) {
+        Block block = new Block();
+        block.size = size;
+        block.lat = new float[size];
+        block.lon = new float[size];
+        block.flags = new byte[size];
+        block.name_start = new int[size + 1];
+        block.names = new byte[names_size];
+        block.cell_start = new int[LAT_CELLS*LON_CELLS + 1];
+        block.name_strings = new String[size];
+        return block;
+    }
+
+
+    private static int cell(float lat, float lon) {
+        return lat_index(lat) * LON_CELLS + lon_index(lon);
+    }
+
+
+    private static int lat_index(float lat) {
+        int ilat = (int)Math.floor(lat) + 90;
+        return Math.max(0, Math.min(LAT_CELLS - 1, ilat));
+    }
+
+
+    private static int lon_index(float lon) {
+        int ilon = ( (int)Math.floor(lon) + 180 ) % LON_CELLS;
+        return ( ilon < 0 ) ? ilon + LON_CELLS : ilon;
+    }
+
+
+    private static float normalize_lon(float lon) {
+        if ( lon < -180.0f ) return lon + 360.0f;
+        if ( lon > 180.0f ) return lon - 360.0f;
+        return lon;
+    }
+
+
+    private static float[] grow(float[] array, int capacity) {
+        float[] grown = new float[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+
+    private static int[] grow(int[] array, int capacity) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+
+    private static byte[] grow(byte[] array, int capacity) {
+        byte[] grown = new byte[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+
+}
@@ -0,0 +1,146 @@
+/**
+* FrequencyIndex.java
+*
+* The RadioNavigationObjects by frequency, in an open addressing hash table
+* with the frequency in hundredths (kHz for a VOR or an ILS) as an int key,
+* so that looking up a frequency doesn't box a Float or depend on the exact
+* float that was received.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model;
+
+import java.util.ArrayList;
+
+
+public class FrequencyIndex {
+
+    // key 0 marks an empty slot
+    private static final int EMPTY = 0;
+
+    private static final ArrayList<RadioNavigationObject> NOTHING = new ArrayList<RadioNavigationObject>(0);
+
+    private int[] keys;
+    private ArrayList<RadioNavigationObject>[] lists;
+    private int size;
+    private int modifications = 0;
+
+
+    public FrequencyIndex() {
+        clear();
+    }
+
+
+    /**
+     * The key of a frequency: in hundredths, rounded
+     */
+    public static int get_key(float freq) {
+        return Math.round(freq * 100.0f);
+    }
+
+
+    public synchronized void clear() {
+        this.keys = new int[1024];
+        this.lists = new_lists(1024);
+        this.size = 0;
+        this.modifications++;
+    }
+
+
+    public synchronized void add(RadioNavigationObject rno) {
+
+        int key = get_key(rno.frequency);
+        if ( key == EMPTY ) return;
+
+        int slot = find_slot(this.keys, key);
+        if ( this.keys[slot] == EMPTY ) {
+            if ( 2 * ( this.size + 1 ) > this.keys.length ) {
+                grow();
+                slot = find_slot(this.keys, key);
+            }
+            this.keys[slot] = key;
+            this.lists[slot] = new ArrayList<RadioNavigationObject>(4);
+            this.size++;
+        }
+        this.lists[slot].add(rno);
+        this.modifications++;
+
+    }
+
+
+    /**
+     * The RadioNavigationObjects on the frequency, in the order in which they were added; don't modify the list
+     */
+    public synchronized ArrayList<RadioNavigationObject> get(float freq) {
+
+        int key = get_key(freq);
+        if ( key == EMPTY ) return NOTHING;
+        int slot = find_slot(this.keys, key);
+        return ( this.keys[slot] == EMPTY ) ? NOTHING : this.lists[slot];
+
+    }
+
+
+    /**
+     * The number of different frequencies
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+
+    /**
+     * Changes with every add or clear
+     */
+    public synchronized int get_modification_count() {
+        return this.modifications;
+    }
+
+
+    private static int find_slot(int[] keys, int key) {
+        int mask = keys.length - 1;
+        // Fibonacci hashing, the keys of neighbouring frequencies are consecutive
+        int slot = ( key * 0x9E3779B9 ) >>> 16 & mask;
+        while ( ( keys[slot] != EMPTY ) && ( keys[slot] != key ) ) {
+            slot = ( slot + 1 ) & mask;
+        }
+        return slot;
+    }
+
+
+    private void grow() {
+
+        int[] old_keys = this.keys;
+        ArrayList<RadioNavigationObject>[] old_lists = this.lists;
+        this.keys = new int[old_keys.length * 2];
+        this.lists = new_lists(old_keys.length * 2);
+        for (int i=0; i<old_keys.length; i++) {
+            if ( old_keys[i] != EMPTY ) {
+                int slot = find_slot(this.keys, old_keys[i]);
+                this.keys[slot] = old_keys[i];
+                this.lists[slot] = old_lists[i];
+            }
+        }
+
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static ArrayList<RadioNavigationObject>[] new_lists(int n) {
+        return new ArrayList[n];
+    }
+
+
+}
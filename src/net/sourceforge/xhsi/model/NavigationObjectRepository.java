@@ -25,6 +25,7 @@ package net.sourceforge.xhsi.model;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 
@@ -37,9 +38,19 @@ public class NavigationObjectRepository {
     public static final boolean RECORD_NAV_OBJECTS = false;
     private HashMap nav_objects = RECORD_NAV_OBJECTS ? new HashMap() : null;
 
-    private HashMap frequencies = new HashMap();
+    private FrequencyIndex frequencies = new FrequencyIndex();
     private HashMap airports = new HashMap();
 
+    // one for each NO_TYPE, for the nearest, radius and box queries
+    private SpatialIndex[] spatial_indexes = { new SpatialIndex(), new SpatialIndex(), new SpatialIndex(), new SpatialIndex(), new SpatialIndex() };
+
+    // -Dxhsi.navdata.compact keeps the fixes in a FixStore instead of as separate objects, for PCs that are short on RAM
+    public static final boolean COMPACT_FIXES = System.getProperty("xhsi.navdata.compact") != null;
+    private FixStore fix_store = COMPACT_FIXES ? new FixStore() : null;
+
+    // changes whenever anything is added, changed or cleared
+    private AtomicInteger serial = new AtomicInteger();
+
     private static final Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
     private static NavigationObjectRepository single_instance;
@@ -121,6 +132,10 @@ public class NavigationObjectRepository {
     private static HashMap<Integer,ArrayList> objTable = new HashMap<Integer,ArrayList>();
 
     public ArrayList get_nav_objects(int type, float lat, float lon) {
+        if ( ( this.fix_store != null ) && ( type == NavigationObject.NO_TYPE_FIX ) ) {
+            // new Fix objects, not a list that can be added to
+            return this.fix_store.get_fixes(lat, lon);
+        }
         int ilat = get_lat_index(lat);
         int ilon = get_lon_index(lon);
 
@@ -133,7 +148,8 @@ public class NavigationObjectRepository {
         if (ilon < 0 || ilon > 360) {
             throw new Error();
         }
-        int key = type << 24 | ilat << 16 | ilon;
+        // consecutive keys; with type << 24 | ilat << 16 | ilon most of them ended up in the same few HashMap buckets
+        int key = ( type * 181 + ilat ) * 361 + ilon;
         ArrayList res = objTable.get(key);
         if (res == null) {
             res = new_ArrayList();
@@ -142,6 +158,23 @@ public class NavigationObjectRepository {
         return res;
     }
 
+    public void init() {
+        objTable.clear();
+        this.frequencies.clear();
+        this.airports.clear();
+        if (RECORD_NAV_OBJECTS) {
+            this.nav_objects.clear();
+        }
+        for (int i=0; i<this.spatial_indexes.length; i++) {
+            this.spatial_indexes[i].clear();
+        }
+        if (this.fix_store != null) {
+            this.fix_store.clear();
+        }
+        // after the change, so that whoever sees the new serial also sees the change
+        this.serial.incrementAndGet();
+    }
+
     public NavigationObject get_nav_object(String name) {
         return RECORD_NAV_OBJECTS ? (NavigationObject) nav_objects.get(name) : null;
     }
@@ -160,49 +193,119 @@ public class NavigationObjectRepository {
         if (nav_object instanceof RadioNavBeacon) {
             RadioNavBeacon vor = (RadioNavBeacon) nav_object;
             if (vor.type == RadioNavBeacon.TYPE_NDB) {
-                get_nav_objects(NavigationObject.NO_TYPE_NDB, nav_object).add(nav_object);
+                add_nav_object(NavigationObject.NO_TYPE_NDB, nav_object);
             } else if (vor.type == RadioNavBeacon.TYPE_VOR) {
-                get_nav_objects(NavigationObject.NO_TYPE_VOR, nav_object).add(nav_object);
+                add_nav_object(NavigationObject.NO_TYPE_VOR, nav_object);
             } else if (vor.type == RadioNavBeacon.TYPE_STANDALONE_DME) {
-                get_nav_objects(NavigationObject.NO_TYPE_VOR, nav_object).add(nav_object);
+                add_nav_object(NavigationObject.NO_TYPE_VOR, nav_object);
             }
         } else if (nav_object instanceof Fix) {
-            get_nav_objects(NavigationObject.NO_TYPE_FIX, nav_object).add(nav_object);
+            if (this.fix_store != null) {
+                this.fix_store.add(nav_object.name, nav_object.lat, nav_object.lon, ((Fix)nav_object).on_awy);
+            } else {
+                add_nav_object(NavigationObject.NO_TYPE_FIX, nav_object);
+            }
         } else if (nav_object instanceof Airport) {
             String arpt_str = ((Airport)nav_object).icao_code;
             if ( get_airport( arpt_str ) == null ) {
                 // OK, it's not a duplicate
-                get_nav_objects(NavigationObject.NO_TYPE_AIRPORT, nav_object).add(nav_object);
+                add_nav_object(NavigationObject.NO_TYPE_AIRPORT, nav_object);
                 add_arpt(nav_object);
 //            } else {
 //                logger.warning("NOT storing a duplicate Airport in the ArrayList for: " + arpt_str);
             }
         } else if (nav_object instanceof Runway) {
-            get_nav_objects(NavigationObject.NO_TYPE_RUNWAY, nav_object).add(nav_object);
+            add_nav_object(NavigationObject.NO_TYPE_RUNWAY, nav_object);
         }
 
         if (nav_object instanceof RadioNavigationObject) {
             RadioNavigationObject rno = (RadioNavigationObject) nav_object;
             if (rno.frequency != 0.0) {
-                add_freq(rno.frequency, rno);
+                this.frequencies.add(rno);
             }
         }
 
+        this.serial.incrementAndGet();
+
     }
 
 
-    private void add_freq(float freq, NavigationObject nav_object) {
+    private void add_nav_object(int type, NavigationObject nav_object) {
+        get_nav_objects(type, nav_object).add(nav_object);
+        this.spatial_indexes[type].add(nav_object);
+    }
 
-        //Float freq_key = new Float(freq);
-        ArrayList nos;
-        if (this.frequencies.containsKey(freq)) {
-            nos = (ArrayList) this.frequencies.get(freq);
-        } else {
-            nos = new_ArrayList();
+
+    /**
+     * Changes whenever a navigation object is added or changed, or the repository is cleared,
+     * so that what has been drawn or computed from the repository can tell that it is out of date
+     */
+    public int get_serial() {
+        return this.serial.get();
+    }
+
+
+    /**
+     * Changes whenever a RadioNavigationObject is added or the repository is cleared
+     */
+    public int get_frequencies_modification_count() {
+        return this.frequencies.get_modification_count();
+    }
+
+
+    /**
+     * Changes whenever a navigation object of the type is added or the repository is cleared
+     */
+    public int get_modification_count(int type) {
+        return this.spatial_indexes[type].get_modification_count();
+    }
+
+
+    /**
+     * The k nearest navigation objects of a type that are accepted by filter (which may be null), nearest first
+     */
+    public ArrayList<NavigationObject> find_nearest_nav_objects(int type, float lat, float lon, int k, SpatialIndex.Filter filter) {
+        if ( ( this.fix_store != null ) && ( type == NavigationObject.NO_TYPE_FIX ) ) {
+            return this.fix_store.find_nearest(lat, lon, k, filter);
         }
-        nos.add(nav_object);
-        this.frequencies.put(freq, nos);
+        return this.spatial_indexes[type].nearest(lat, lon, k, filter);
+    }
 
+
+    /**
+     * Adds the navigation objects of a type that are at less than radius NM to result
+     */
+    public void find_nav_objects_within(int type, float lat, float lon, float radius, ArrayList result) {
+        if ( ( this.fix_store != null ) && ( type == NavigationObject.NO_TYPE_FIX ) ) {
+            this.fix_store.find_within(lat, lon, radius, null, result);
+            return;
+        }
+        this.spatial_indexes[type].within_radius(lat, lon, radius, result);
+    }
+
+
+    /**
+     * Adds the navigation objects of a type that are in the box to result
+     * (lon_min > lon_max when the box crosses the International Date Line)
+     */
+    public void find_nav_objects_in_box(int type, float lat_min, float lat_max, float lon_min, float lon_max, ArrayList result) {
+        if ( ( this.fix_store != null ) && ( type == NavigationObject.NO_TYPE_FIX ) ) {
+            FixStore.Selection selection = this.fix_store.select_box(lat_min, lat_max, lon_min, lon_max, null);
+            for (int i=0; i<selection.size(); i++) {
+                Fix fix = selection.get(i);
+                result.add(new Fix(fix.name, fix.lat, fix.lon, fix.on_awy));
+            }
+            return;
+        }
+        this.spatial_indexes[type].within_box(lat_min, lat_max, lon_min, lon_max, result);
+    }
+
+
+    /**
+     * The FixStore when the fixes are stored compactly, or null when they are stored as Fix objects
+     */
+    public FixStore get_fix_store() {
+        return this.fix_store;
     }
 
 
@@ -220,14 +323,9 @@ public class NavigationObjectRepository {
     }
 
 
-    private ArrayList get_nav_objects_by_freq(float freq) {
+    private ArrayList<RadioNavigationObject> get_nav_objects_by_freq(float freq) {
 
-        Float freq_key = new Float(freq);
-        if (this.frequencies.containsKey(freq_key)) {
-            return (ArrayList) this.frequencies.get(freq_key);
-        } else {
-            return new_ArrayList();
-        }
+        return this.frequencies.get(freq);
 
     }
 
@@ -245,18 +343,16 @@ public class NavigationObjectRepository {
 
     public RadioNavigationObject find_tuned_nav_object(float aircraft_lat, float aircraft_lon, float freq, String nav_id) {
 
-        ArrayList nos = get_nav_objects_by_freq(freq);
+        ArrayList<RadioNavigationObject> nos = get_nav_objects_by_freq(freq);
         RadioNavigationObject rno = null;
         boolean found_rno = false;
         int index = 0;
-        int distance;
 
         if ( nav_id.equals("") ) {
             // no NAV_ID received, what can we find that is within range?
             while ((found_rno == false) && (index<nos.size())) {
-                rno = (RadioNavigationObject) nos.get(index);
-                distance = (int)CoordinateSystem.rough_distance(aircraft_lat, aircraft_lon, rno.lat, rno.lon);
-                if ( distance < (rno.range * NavigationObjectRepository.RANGE_MULTIPLIER) ) {
+                rno = nos.get(index);
+                if ( in_tuned_range(aircraft_lat, aircraft_lon, rno) ) {
                     found_rno = true;
                 } else {
                     index += 1;
@@ -264,11 +360,10 @@ public class NavigationObjectRepository {
             }
         } else {
             while ((found_rno == false) && (index<nos.size())) {
-                rno = (RadioNavigationObject) nos.get(index);
+                rno = nos.get(index);
                 if ( rno.ilt.equals(nav_id)) {
                     // freq and id match, do we really have to check if we are within range?
-                    distance = (int)CoordinateSystem.rough_distance(aircraft_lat, aircraft_lon, rno.lat, rno.lon);
-                    if ( distance < (rno.range * NavigationObjectRepository.RANGE_MULTIPLIER) ) {
+                    if ( in_tuned_range(aircraft_lat, aircraft_lon, rno) ) {
                         found_rno = true;
                     } else {
                         index += 1;
@@ -287,8 +382,46 @@ public class NavigationObjectRepository {
     }
 
 
+    private static boolean in_tuned_range(float aircraft_lat, float aircraft_lon, RadioNavigationObject rno) {
+
+        float max_range = rno.range * NavigationObjectRepository.RANGE_MULTIPLIER;
+        // the difference in latitude alone can be enough to be out of range, that saves the trigonometry
+        if ( Math.abs(aircraft_lat - rno.lat) * 60.0f >= max_range + 1.0f ) return false;
+        int distance = (int)CoordinateSystem.rough_distance(aircraft_lat, aircraft_lon, rno.lat, rno.lon);
+        return distance < max_range;
+
+    }
+
+
+    /**
+     * How far the aircraft must fly before a RadioNavigationObject on freq (with nav_id, unless that is empty)
+     * can be within the range where find_tuned_nav_object finds it
+     */
+    public float distance_to_tuned_range(float aircraft_lat, float aircraft_lon, float freq, String nav_id) {
+
+        ArrayList<RadioNavigationObject> nos = get_nav_objects_by_freq(freq);
+        float margin = Float.MAX_VALUE;
+
+        for (int index=0; index<nos.size(); index++) {
+            RadioNavigationObject rno = nos.get(index);
+            if ( nav_id.equals("") || rno.ilt.equals(nav_id) ) {
+                float distance = CoordinateSystem.rough_distance(aircraft_lat, aircraft_lon, rno.lat, rno.lon);
+                // find_tuned_nav_object truncates the distance, so it accepts up to 1 NM more
+                margin = Math.min(margin, distance - rno.range * NavigationObjectRepository.RANGE_MULTIPLIER - 1.0f);
+            }
+        }
+
+        return Math.max(0.0f, margin);
+
+    }
+
+
     public Fix get_fix(String ilt, float lat, float lon) {
 
+        if (this.fix_store != null) {
+            return this.fix_store.get_fix(ilt, lat, lon);
+        }
+
         // find the fix with the supplied name that is at lat/lon
         // TODO : a hashmap might be more efficient
         ArrayList fix_list = get_nav_objects(NavigationObject.NO_TYPE_FIX, lat, lon);
@@ -313,6 +446,23 @@ public class NavigationObjectRepository {
     }
 
 
+    public boolean set_fix_on_awy(String ilt, float lat, float lon) {
+
+        boolean found;
+        // get_fix returns a copy when the fixes are stored compactly, so the flag has to be set in the store
+        if (this.fix_store != null) {
+            found = this.fix_store.set_on_awy(ilt, lat, lon);
+        } else {
+            Fix fix = get_fix(ilt, lat, lon);
+            if (fix != null) fix.on_awy = true;
+            found = (fix != null);
+        }
+        if (found) this.serial.incrementAndGet();
+        return found;
+
+    }
+
+
 //    public Airport get_airport(String ilt, float lat, float lon) {
 //
 //        // find the airport with the supplied name that is at lat/lon
@@ -482,39 +632,16 @@ public class NavigationObjectRepository {
 
     }
 
-    public String find_nrst_arpt(float my_lat, float my_lon, float min_rwy, boolean no_hurry) {
+    public String find_nrst_arpt(float my_lat, float my_lon, final float min_rwy, boolean no_hurry) {
 
-        // TODO: handle longitudes around the international date line
-
-        String nrst_arpt = "";
-        double nrst_dist = 99999.0d;
-        ArrayList<NavigationObject> navobj_list;
+        // the spatial index finds it without scanning the whole world, so there is no need to take it easy anymore when no_hurry
 
-        double dist;
-        double delta_lon;
-        double cos_lat = Math.cos(Math.toRadians(my_lat));
-
-        for (int grid_lat=0; grid_lat<181; grid_lat++) {
-            for (int grid_lon=0; grid_lon<361; grid_lon++) {
-
-                navobj_list = get_nav_objects(NavigationObject.NO_TYPE_AIRPORT, grid_lat, grid_lat); //**NS**
-                int index = 0;
-                while ( index < navobj_list.size() ) {
-                    Airport arpt = (Airport)navobj_list.get(index);
-                    if ( arpt.longest >= min_rwy ) {
-                        delta_lon = Math.abs(my_lon - arpt.lon);
-                        if ( delta_lon > 270.0 ) delta_lon = 360.0 - delta_lon; // close to the Internationale Date Line, with one point on either side
-                        dist = Math.hypot( (my_lat - arpt.lat), delta_lon * cos_lat );
-                        if ( dist < nrst_dist ) {
-                            nrst_dist = dist;
-                            nrst_arpt = arpt.icao_code;
-                        }
-                    }
-                    index += 1;
-                }
+        NavigationObject nrst = this.spatial_indexes[NavigationObject.NO_TYPE_AIRPORT].nearest(my_lat, my_lon, new SpatialIndex.Filter() {
+            public boolean accept(NavigationObject nav_object) {
+                return ((Airport)nav_object).longest >= min_rwy;
             }
-            if ( no_hurry ) try { Thread.sleep(5l); } catch(Exception e) {}
-        }
+        });
+        String nrst_arpt = ( nrst != null ) ? ((Airport)nrst).icao_code : "";
 
         logger.fine("NRST ARPT = "+nrst_arpt);
 
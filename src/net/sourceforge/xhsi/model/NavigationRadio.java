@@ -81,6 +81,11 @@ public class NavigationRadio {
     public Avionics avionics;
     // link to the radionavaid that we are tuned to
     private RadioNavigationObject rnav_object;
+    // when we didn't find one: where we searched, and how far we have to fly before one can be in range
+    private float miss_lat;
+    private float miss_lon;
+    private float miss_margin = -1.0f;
+    private int miss_modification_count;
 
 
     // GPS -------------------------------------------------------------------
@@ -289,6 +294,15 @@ public class NavigationRadio {
 
 
     // -----------------------------------------------------------------------
+    private boolean still_missing() {
+        // nothing on this frequency can have come within range since the last search;
+        // only half the margin is trusted, because the rough distances aren't exact over long distances
+        return ( this.miss_margin > 0.0f )
+                && ( this.miss_modification_count == this.navobj_repository.get_frequencies_modification_count() )
+                && ( CoordinateSystem.rough_distance(this.miss_lat, this.miss_lon, this.aircraft.lat(), this.aircraft.lon()) < this.miss_margin / 2.0f );
+    }
+
+
     private void update_radio_data() {
         float current_freq = this.sim_data_repository.get_sim_float(this.sim_data_id_freq);
         String current_nav_id = this.sim_data_repository.get_sim_string(this.sim_data_id_nav_id);
@@ -298,11 +312,20 @@ public class NavigationRadio {
         // if the frequency has changed, or we were not tuned to any radionavaid, or we got out of (multiplied) range; then search for a radionavaid again...
         if ( (this.frequency != current_freq)
                 || ( ! this.nav_id.equals(current_nav_id) )
-                || ( this.rnav_object == null )
-                || ( this.aircraft.rough_distance_to(this.rnav_object) > this.rnav_object.range * NavigationObjectRepository.RANGE_MULTIPLIER ) ) {
+                || ( ( this.rnav_object == null ) && ! still_missing() )
+                || ( ( this.rnav_object != null ) && ( this.aircraft.rough_distance_to(this.rnav_object) > this.rnav_object.range * NavigationObjectRepository.RANGE_MULTIPLIER ) ) ) {
             this.frequency = current_freq;
             this.nav_id = current_nav_id;
-            this.rnav_object = this.navobj_repository.find_tuned_nav_object(this.aircraft.lat(), this.aircraft.lon(), current_freq, current_nav_id);
+            float lat = this.aircraft.lat();
+            float lon = this.aircraft.lon();
+            this.rnav_object = this.navobj_repository.find_tuned_nav_object(lat, lon, current_freq, current_nav_id);
+            if ( this.rnav_object == null ) {
+                // don't search again every frame while there is nothing in range
+                this.miss_modification_count = this.navobj_repository.get_frequencies_modification_count();
+                this.miss_margin = this.navobj_repository.distance_to_tuned_range(lat, lon, current_freq, current_nav_id);
+                this.miss_lat = lat;
+                this.miss_lon = lon;
+            }
         }
     }
 
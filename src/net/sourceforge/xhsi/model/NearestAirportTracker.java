@@ -0,0 +1,181 @@
+/**
+* NearestAirportTracker.java
+*
+* Keeps track of the nearest airport with a long enough runway while the
+* aircraft moves. It asks the NavigationObjectRepository for the
+* NB_OF_CANDIDATES nearest airports, and then only compares the distances
+* to those candidates. No other airport can be nearer as long as the aircraft
+* has moved less than the distance to the farthest candidate minus the
+* distance to the nearest one, so the repository is only queried again when
+* the aircraft has moved that far, when the minimum runway length changes,
+* or when airports have been loaded.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model;
+
+import java.util.ArrayList;
+
+
+public class NearestAirportTracker {
+
+    public static final int NB_OF_CANDIDATES = 16;
+
+    private NavigationObjectRepository nor;
+
+    // the candidates, with their positions on the unit sphere to compare distances without trigonometry
+    private Airport[] candidates = new Airport[NB_OF_CANDIDATES];
+    private double[] candidate_x = new double[NB_OF_CANDIDATES];
+    private double[] candidate_y = new double[NB_OF_CANDIDATES];
+    private double[] candidate_z = new double[NB_OF_CANDIDATES];
+    private int nb_of_candidates = 0;
+
+    // where and for what the candidates were found
+    private boolean queried = false;
+    private double query_x;
+    private double query_y;
+    private double query_z;
+    private float query_min_rwy;
+    private int query_modification_count;
+    // there is no other airport with a long enough runway within this angle from the query position
+    private double covered_angle;
+
+    // the position of the current update
+    private double x;
+    private double y;
+    private double z;
+
+    private int nb_of_queries = 0;
+
+
+    public NearestAirportTracker(NavigationObjectRepository nor) {
+        this.nor = nor;
+    }
+
+
+    /**
+     * The ICAO code of the nearest airport with a runway of at least min_rwy, or "" when there is none
+     */
+    public String update(float lat, float lon, float min_rwy) {
+
+        double cos_lat = Math.cos(Math.toRadians(lat));
+        this.x = cos_lat * Math.cos(Math.toRadians(lon));
+        this.y = cos_lat * Math.sin(Math.toRadians(lon));
+        this.z = Math.sin(Math.toRadians(lat));
+
+        if ( ! this.queried
+                || ( min_rwy != this.query_min_rwy )
+                || ( this.nor.get_modification_count(NavigationObject.NO_TYPE_AIRPORT) != this.query_modification_count ) ) {
+            query(lat, lon, min_rwy);
+        }
+
+        int nearest = nearest_candidate();
+        if ( ( nearest >= 0 ) && ( this.covered_angle != Double.MAX_VALUE ) ) {
+            double moved = angle(this.query_x, this.query_y, this.query_z);
+            if ( angle(this.candidate_x[nearest], this.candidate_y[nearest], this.candidate_z[nearest]) > this.covered_angle - moved ) {
+                // an airport that is not a candidate could be nearer by now
+                query(lat, lon, min_rwy);
+                nearest = nearest_candidate();
+            }
+        }
+
+        return ( nearest >= 0 ) ? this.candidates[nearest].icao_code : "";
+
+    }
+
+
+    /**
+     * How many times the repository has been queried, for the logs and the benchmarks
+     */
+    public int get_nb_of_queries() {
+        return this.nb_of_queries;
+    }
+
+
+    private void query(float lat, float lon, final float min_rwy) {
+
+        // before querying, so that airports that are added during the query make us query again
+        this.query_modification_count = this.nor.get_modification_count(NavigationObject.NO_TYPE_AIRPORT);
+        ArrayList<NavigationObject> found = this.nor.find_nearest_nav_objects(NavigationObject.NO_TYPE_AIRPORT, lat, lon, NB_OF_CANDIDATES, new SpatialIndex.Filter() {
+            public boolean accept(NavigationObject nav_object) {
+                return ((Airport)nav_object).longest >= min_rwy;
+            }
+        });
+
+        this.nb_of_candidates = found.size();
+        for (int i=0; i<this.nb_of_candidates; i++) {
+            Airport airport = (Airport) found.get(i);
+            double cos_lat = Math.cos(Math.toRadians(airport.lat));
+            this.candidates[i] = airport;
+            this.candidate_x[i] = cos_lat * Math.cos(Math.toRadians(airport.lon));
+            this.candidate_y[i] = cos_lat * Math.sin(Math.toRadians(airport.lon));
+            this.candidate_z[i] = Math.sin(Math.toRadians(airport.lat));
+        }
+        for (int i=this.nb_of_candidates; i<NB_OF_CANDIDATES; i++) {
+            this.candidates[i] = null;
+        }
+
+        if ( this.nb_of_candidates < NB_OF_CANDIDATES ) {
+            // these are all the airports that there are
+            this.covered_angle = Double.MAX_VALUE;
+        } else {
+            int farthest = NB_OF_CANDIDATES - 1;
+            this.covered_angle = angle(this.candidate_x[farthest], this.candidate_y[farthest], this.candidate_z[farthest]);
+        }
+
+        this.query_x = this.x;
+        this.query_y = this.y;
+        this.query_z = this.z;
+        this.query_min_rwy = min_rwy;
+        this.queried = true;
+        this.nb_of_queries++;
+
+    }
+
+
+    private int nearest_candidate() {
+
+        // the nearest has the shortest chord
+        int nearest = -1;
+        double nearest_chord2 = Double.MAX_VALUE;
+        for (int i=0; i<this.nb_of_candidates; i++) {
+            double chord2 = chord2(this.candidate_x[i], this.candidate_y[i], this.candidate_z[i]);
+            if ( chord2 < nearest_chord2 ) {
+                nearest_chord2 = chord2;
+                nearest = i;
+            }
+        }
+        return nearest;
+
+    }
+
+
+    private double chord2(double x, double y, double z) {
+        double dx = x - this.x;
+        double dy = y - this.y;
+        double dz = z - this.z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+
+    /**
+     * The angle in radians between the current position and (x, y, z)
+     */
+    private double angle(double x, double y, double z) {
+        return 2.0d * Math.asin(Math.min(1.0d, Math.sqrt(chord2(x, y, z)) / 2.0d));
+    }
+
+
+}
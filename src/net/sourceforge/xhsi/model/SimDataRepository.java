@@ -46,6 +46,24 @@ public interface SimDataRepository {
 
     public void tick_updates();
 
+    /**
+     * Returns an empty mask, with one bit for each sim data point
+     */
+    public long[] new_sim_data_mask();
+
+    /**
+     * Sets the bit of every sim data point that is read from now on in mask,
+     * until this is called again with null. Only the reads of the calling
+     * thread are recorded.
+     */
+    public void record_reads(long[] mask);
+
+    /**
+     * Tells the observers, while they are updated by tick_updates, whether one
+     * of the sim data points in mask has changed since the previous tick
+     */
+    public boolean has_changed(long[] mask);
+
     public long get_nb_of_updates();
 
 }
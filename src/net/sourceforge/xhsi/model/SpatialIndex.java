@@ -0,0 +1,439 @@
+/**
+* SpatialIndex.java
+*
+* A k-d tree of NavigationObjects, for nearest, radius and bounding box
+* queries. The positions are stored as points on the unit sphere, so that
+* distances are the same everywhere: there is nothing special about the
+* International Date Line or the poles.
+*
+* Objects can be added at any time; the tree is rebuilt on the first query
+* after an addition, which is cheap compared to reading the navigation
+* databases.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model;
+
+import java.util.ArrayList;
+
+
+public class SpatialIndex {
+
+    public interface Filter {
+        public boolean accept(NavigationObject nav_object);
+    }
+
+    // NM per radian of great circle
+    private static final double NM_PER_RADIAN = 60.0d * 180.0d / Math.PI;
+
+    private ArrayList<NavigationObject> objects = new ArrayList<NavigationObject>();
+    private boolean dirty = false;
+    private int modifications = 0;
+
+    // the tree: the node of range [lo,hi) is at (lo+hi)/2, and splits it on axis[node]
+    private NavigationObject[] nodes = new NavigationObject[0];
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] z = new float[0];
+    private byte[] axis = new byte[0];
+
+    // the state of the current query
+    private float q_x;
+    private float q_y;
+    private float q_z;
+    private float q_chord2;
+    private Filter q_filter;
+    private int heap_size;
+    private int[] heap_node = new int[16];
+    private float[] heap_chord2 = new float[16];
+
+
+    public synchronized void add(NavigationObject nav_object) {
+        this.objects.add(nav_object);
+        this.dirty = true;
+        this.modifications++;
+    }
+
+
+    public synchronized void clear() {
+        this.objects.clear();
+        this.dirty = true;
+        this.modifications++;
+    }
+
+
+    /**
+     * Changes with every add or clear, so that the results of earlier queries can be kept until then
+     */
+    public synchronized int get_modification_count() {
+        return this.modifications;
+    }
+
+
+    public synchronized int size() {
+        return this.objects.size();
+    }
+
+
+    /**
+     * The k nearest objects accepted by filter (which may be null), nearest first
+     */
+    public synchronized ArrayList<NavigationObject> nearest(float lat, float lon, int k, Filter filter) {
+
+        ArrayList<NavigationObject> result = new ArrayList<NavigationObject>();
+        if ( k <= 0 ) return result;
+        build();
+        set_query(lat, lon);
+        this.q_filter = filter;
+        this.q_chord2 = Float.MAX_VALUE;
+        if ( this.heap_node.length < k ) {
+            this.heap_node = new int[k];
+            this.heap_chord2 = new float[k];
+        }
+        this.heap_size = 0;
+
+        search_nearest(0, this.nodes.length, k);
+
+        // the heap has the farthest on top; empty it from the end of the result
+        NavigationObject[] sorted = new NavigationObject[this.heap_size];
+        for (int i=this.heap_size-1; i>=0; i--) {
+            sorted[i] = this.nodes[this.heap_node[0]];
+            heap_pop();
+        }
+        for (int i=0; i<sorted.length; i++) result.add(sorted[i]);
+        this.q_filter = null;
+        return result;
+
+    }
+
+
+    /**
+     * The nearest object accepted by filter (which may be null), or null
+     */
+    public synchronized NavigationObject nearest(float lat, float lon, Filter filter) {
+        ArrayList<NavigationObject> result = nearest(lat, lon, 1, filter);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+
+    /**
+     * Adds the objects at less than radius NM to result
+     */
+    public synchronized void within_radius(float lat, float lon, float radius, ArrayList result) {
+
+        build();
+        set_query(lat, lon);
+        float chord = chord(radius / NM_PER_RADIAN);
+        this.q_chord2 = chord * chord;
+        search_radius(0, this.nodes.length, chord, result, false, 0.0f, 0.0f, 0.0f, 0.0f);
+
+    }
+
+
+    /**
+     * Adds the objects in the box to result. When lon_min > lon_max, the box crosses the
+     * International Date Line. A box that extends over a pole covers all longitudes there.
+     */
+    public synchronized void within_box(float lat_min, float lat_max, float lon_min, float lon_max, ArrayList result) {
+
+        build();
+
+        float lon_span = lon_max - lon_min;
+        if ( lon_span < 0.0f ) lon_span += 360.0f;
+        if ( ( lat_min < -90.0f ) || ( lat_max > 90.0f ) ) {
+            // over the pole
+            lon_span = 360.0f;
+        }
+        lat_min = Math.max(-90.0f, lat_min);
+        lat_max = Math.min(90.0f, lat_max);
+        if ( lat_min > lat_max ) return;
+        if ( lon_span >= 360.0f ) {
+            lon_min = -180.0f;
+            lon_span = 360.0f;
+        } else {
+            lon_min = normalize_lon(lon_min);
+        }
+
+        // search the smallest spherical cap around the box, then keep what is in the box
+        float center_lat = ( lat_min + lat_max ) / 2.0f;
+        float center_lon = normalize_lon(lon_min + lon_span / 2.0f);
+        set_query(center_lat, center_lon);
+        float chord;
+        if ( lon_span >= 180.0f ) {
+            // the farthest point might be inside the box
+            chord = 2.0f;
+        } else {
+            // along the edges of the box, the distance to the center is largest at the corners
+            double angle = Math.max(angle(center_lat, center_lon, lat_min, lon_min), angle(center_lat, center_lon, lat_max, lon_min));
+            chord = Math.min(2.0f, chord(angle) * 1.0001f + 0.00001f);
+        }
+        this.q_chord2 = chord * chord;
+        search_radius(0, this.nodes.length, chord, result, true, lat_min, lat_max, lon_min, lon_span);
+
+    }
+
+
+    /**
+     * The great circle distance in NM
+     */
+    public static float distance(float lat1, float lon1, float lat2, float lon2) {
+        return (float)(angle(lat1, lon1, lat2, lon2) * NM_PER_RADIAN);
+    }
+
+
+    private void build() {
+
+        if ( ! this.dirty ) return;
+        int n = this.objects.size();
+        this.nodes = this.objects.toArray(new NavigationObject[n]);
+        this.x = new float[n];
+        this.y = new float[n];
+        this.z = new float[n];
+        this.axis = new byte[n];
+        for (int i=0; i<n; i++) {
+            double phi = Math.toRadians(this.nodes[i].lat);
+            double lambda = Math.toRadians(this.nodes[i].lon);
+            this.x[i] = (float)(Math.cos(phi) * Math.cos(lambda));
+            this.y[i] = (float)(Math.cos(phi) * Math.sin(lambda));
+            this.z[i] = (float)Math.sin(phi);
+        }
+        build(0, n);
+        this.dirty = false;
+
+    }
+
+
+    private void build(int lo, int hi) {
+
+        if ( hi - lo <= 1 ) {
+            if ( hi > lo ) this.axis[lo] = 0;
+            return;
+        }
+
+        // split on the axis with the largest extent
+        float min_x = Float.MAX_VALUE, max_x = -Float.MAX_VALUE;
+        float min_y = Float.MAX_VALUE, max_y = -Float.MAX_VALUE;
+        float min_z = Float.MAX_VALUE, max_z = -Float.MAX_VALUE;
+        for (int i=lo; i<hi; i++) {
+            min_x = Math.min(min_x, this.x[i]); max_x = Math.max(max_x, this.x[i]);
+            min_y = Math.min(min_y, this.y[i]); max_y = Math.max(max_y, this.y[i]);
+            min_z = Math.min(min_z, this.z[i]); max_z = Math.max(max_z, this.z[i]);
+        }
+        byte a = 0;
+        if ( ( max_y - min_y ) > ( max_x - min_x ) ) a = 1;
+        if ( ( max_z - min_z ) > Math.max(max_x - min_x, max_y - min_y) ) a = 2;
+
+        int mid = ( lo + hi ) >>> 1;
+        select(lo, hi - 1, mid, a);
+        this.axis[mid] = a;
+        build(lo, mid);
+        build(mid + 1, hi);
+
+    }
+
+
+    /**
+     * Puts the k-th smallest of [lo,hi] on axis a at k, the smaller before and the larger after it
+     */
+    private void select(int lo, int hi, int k, byte a) {
+        while ( hi > lo ) {
+            float pivot = coordinate(( lo + hi ) >>> 1, a);
+            int i = lo;
+            int j = hi;
+            while ( i <= j ) {
+                while ( coordinate(i, a) < pivot ) i++;
+                while ( coordinate(j, a) > pivot ) j--;
+                if ( i <= j ) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if ( k <= j ) {
+                hi = j;
+            } else if ( k >= i ) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+
+    private float coordinate(int i, int a) {
+        return ( a == 0 ) ? this.x[i] : ( ( a == 1 ) ? this.y[i] : this.z[i] );
+    }
+
+
+    private void swap(int i, int j) {
+        NavigationObject o = this.nodes[i]; this.nodes[i] = this.nodes[j]; this.nodes[j] = o;
+        float f = this.x[i]; this.x[i] = this.x[j]; this.x[j] = f;
+        f = this.y[i]; this.y[i] = this.y[j]; this.y[j] = f;
+        f = this.z[i]; this.z[i] = this.z[j]; this.z[j] = f;
+    }
+
+
+    private void set_query(float lat, float lon) {
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lon);
+        this.q_x = (float)(Math.cos(phi) * Math.cos(lambda));
+        this.q_y = (float)(Math.cos(phi) * Math.sin(lambda));
+        this.q_z = (float)Math.sin(phi);
+    }
+
+
+    private float query_coordinate(int a) {
+        return ( a == 0 ) ? this.q_x : ( ( a == 1 ) ? this.q_y : this.q_z );
+    }
+
+
+    private float chord2(int i) {
+        float dx = this.x[i] - this.q_x;
+        float dy = this.y[i] - this.q_y;
+        float dz = this.z[i] - this.q_z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+
+    private void search_radius(int lo, int hi, float chord, ArrayList result, boolean box, float lat_min, float lat_max, float lon_min, float lon_span) {
+
+        while ( lo < hi ) {
+            int mid = ( lo + hi ) >>> 1;
+            if ( chord2(mid) <= this.q_chord2 ) {
+                NavigationObject nav_object = this.nodes[mid];
+                if ( ( ! box ) || in_box(nav_object, lat_min, lat_max, lon_min, lon_span) ) {
+                    result.add(nav_object);
+                }
+            }
+            int a = this.axis[mid];
+            float d = query_coordinate(a) - coordinate(mid, a);
+            if ( d - chord <= 0.0f ) {
+                if ( d + chord >= 0.0f ) {
+                    // both sides
+                    search_radius(lo, mid, chord, result, box, lat_min, lat_max, lon_min, lon_span);
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+    }
+
+
+    private static boolean in_box(NavigationObject nav_object, float lat_min, float lat_max, float lon_min, float lon_span) {
+        if ( ( nav_object.lat < lat_min ) || ( nav_object.lat > lat_max ) ) return false;
+        float d_lon = nav_object.lon - lon_min;
+        if ( d_lon < 0.0f ) d_lon += 360.0f;
+        if ( d_lon >= 360.0f ) d_lon -= 360.0f;
+        return d_lon <= lon_span;
+    }
+
+
+    private void search_nearest(int lo, int hi, int k) {
+
+        if ( lo >= hi ) return;
+        int mid = ( lo + hi ) >>> 1;
+        int a = this.axis[mid];
+        float d = query_coordinate(a) - coordinate(mid, a);
+
+        // the side of the query point first
+        if ( d < 0.0f ) {
+            search_nearest(lo, mid, k);
+        } else {
+            search_nearest(mid + 1, hi, k);
+        }
+
+        float c2 = chord2(mid);
+        if ( ( c2 < this.q_chord2 ) || ( this.heap_size < k ) ) {
+            if ( ( this.q_filter == null ) || this.q_filter.accept(this.nodes[mid]) ) {
+                if ( this.heap_size == k ) heap_pop();
+                heap_push(mid, c2);
+                if ( this.heap_size == k ) this.q_chord2 = this.heap_chord2[0];
+            }
+        }
+
+        // the other side, if it can be closer than the k-th nearest so far
+        if ( ( this.heap_size < k ) || ( d * d < this.q_chord2 ) ) {
+            if ( d < 0.0f ) {
+                search_nearest(mid + 1, hi, k);
+            } else {
+                search_nearest(lo, mid, k);
+            }
+        }
+
+    }
+
+
+    // a max-heap on the chord, the farthest of the k nearest so far on top
+
+    private void heap_push(int node, float c2) {
+        int i = this.heap_size++;
+        while ( i > 0 ) {
+            int parent = ( i - 1 ) >> 1;
+            if ( this.heap_chord2[parent] >= c2 ) break;
+            this.heap_node[i] = this.heap_node[parent];
+            this.heap_chord2[i] = this.heap_chord2[parent];
+            i = parent;
+        }
+        this.heap_node[i] = node;
+        this.heap_chord2[i] = c2;
+    }
+
+
+    private void heap_pop() {
+        int last = --this.heap_size;
+        int node = this.heap_node[last];
+        float c2 = this.heap_chord2[last];
+        int i = 0;
+        while ( true ) {
+            int child = 2 * i + 1;
+            if ( child >= last ) break;
+            if ( ( child + 1 < last ) && ( this.heap_chord2[child + 1] > this.heap_chord2[child] ) ) child++;
+            if ( this.heap_chord2[child] <= c2 ) break;
+            this.heap_node[i] = this.heap_node[child];
+            this.heap_chord2[i] = this.heap_chord2[child];
+            i = child;
+        }
+        this.heap_node[i] = node;
+        this.heap_chord2[i] = c2;
+    }
+
+
+    private static double angle(float lat1, float lon1, float lat2, float lon2) {
+        // haversine, accurate for small distances too
+        double d_phi = Math.toRadians(lat2 - lat1);
+        double d_lambda = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(d_phi / 2) * Math.sin(d_phi / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(d_lambda / 2) * Math.sin(d_lambda / 2);
+        return 2.0d * Math.asin(Math.min(1.0d, Math.sqrt(a)));
+    }
+
+
+    private static float chord(double angle) {
+        return (float)(2.0d * Math.sin(Math.min(Math.PI, angle) / 2.0d));
+    }
+
+
+    private static float normalize_lon(float lon) {
+        while ( lon >= 180.0f ) lon -= 360.0f;
+        while ( lon < -180.0f ) lon += 360.0f;
+        return lon;
+    }
+
+
+}
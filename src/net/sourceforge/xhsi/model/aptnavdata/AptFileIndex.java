@@ -0,0 +1,150 @@
+/**
+* AptFileIndex.java
+*
+* Where the block of each airport is in the apt.dat files: the file, the
+* byte offset of its "1 " header line and the length up to the next header,
+* so that AptNavXP900DatTaxiChartBuilder can read an airport without
+* scanning a global apt.dat of hundreds of MB line by line.
+*
+* The index is built by AptNavXP900DatNavigationObjectBuilder while it reads
+* the apt.dat files, and it is saved with the NavDataCache. When an ICAO
+* code is in more than one file, the first file that was indexed wins. The
+* files are indexed in the order in which the taxi chart builder searches
+* them without the index: the custom scenery, the Global Scenery, the
+* default scenery, and the deprecated <aptnav>/apt.dat last.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.aptnavdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Logger;
+
+
+public class AptFileIndex {
+
+    public static class Entry {
+
+        public File file;
+        public long offset;
+        public int length;
+
+        public Entry(File file, long offset, int length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+    }
+
+
+    private HashMap<String,Entry> entries = new HashMap<String,Entry>();
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+    private static AptFileIndex single_instance;
+
+
+    public static AptFileIndex get_instance() {
+        if (AptFileIndex.single_instance == null) {
+            AptFileIndex.single_instance = new AptFileIndex();
+        }
+        return AptFileIndex.single_instance;
+    }
+
+
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+
+    /**
+     * Where the block of the airport is, or null when it is not in the index
+     */
+    public synchronized Entry get(String icao) {
+        return this.entries.get(icao.trim().toUpperCase());
+    }
+
+
+    public synchronized void put(String icao, Entry entry) {
+        String key = icao.trim().toUpperCase();
+        if ( ! this.entries.containsKey(key) ) {
+            this.entries.put(key, entry);
+        }
+    }
+
+
+    /**
+     * All the entries, for saving them
+     */
+    public synchronized ArrayList<String> get_icao_codes() {
+        return new ArrayList<String>(this.entries.keySet());
+    }
+
+
+    /**
+     * Adds the entries of another index, in their order; the ICAO codes that are already in the index keep their entry
+     */
+    public synchronized void put_all(Map<String,Entry> new_entries) {
+        Iterator<Map.Entry<String,Entry>> iterator = new_entries.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Map.Entry<String,Entry> new_entry = iterator.next();
+            put(new_entry.getKey(), new_entry.getValue());
+        }
+    }
+
+
+    /**
+     * The block of the airport, starting with its header line, or null when it isn't where the index says
+     */
+    public byte[] read_block(String icao) throws IOException {
+
+        Entry entry = get(icao);
+        if ( ( entry == null ) || ( entry.offset + entry.length > entry.file.length() ) ) return null;
+
+        byte[] block = new byte[entry.length];
+        RandomAccessFile file = new RandomAccessFile(entry.file, "r");
+        try {
+            file.seek(entry.offset);
+            file.readFully(block);
+        } finally {
+            file.close();
+        }
+
+        // the file may have changed since it was indexed
+        int header_end = 0;
+        while ( ( header_end < block.length ) && ( block[header_end] != '\n' ) ) header_end++;
+        String[] tokens = new String(block, 0, header_end, "ISO-8859-1").split("\\s+", 6);
+        if ( ( tokens.length < 5 ) || ! tokens[0].equals("1") || ! tokens[4].equalsIgnoreCase(icao.trim()) ) {
+            logger.warning("The index of " + entry.file.getPath() + " is out of date for " + icao);
+            return null;
+        }
+        return block;
+
+    }
+
+
+}
\ No newline at end of file
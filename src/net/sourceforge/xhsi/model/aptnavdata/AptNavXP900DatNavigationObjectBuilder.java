@@ -28,6 +28,14 @@ import java.io.File;
 import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 import net.sourceforge.xhsi.XHSIPreferences;
@@ -40,6 +48,7 @@ import net.sourceforge.xhsi.model.ComRadio;
 import net.sourceforge.xhsi.model.CoordinateSystem;
 import net.sourceforge.xhsi.model.Fix;
 import net.sourceforge.xhsi.model.Localizer;
+import net.sourceforge.xhsi.model.NavigationObject;
 import net.sourceforge.xhsi.model.NavigationObjectRepository;
 import net.sourceforge.xhsi.model.RadioNavigationObject;
 import net.sourceforge.xhsi.model.RadioNavBeacon;
@@ -62,13 +71,42 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
 
     private ProgressObserver progressObserver;
     private Fix fix;
+    private NavDataCache cache;
+    // when not null, the navigation objects are collected here instead of being added to the repository
+    private ArrayList<NavigationObject> buffer;
+    // the AptFileIndex entries of the deprecated "<aptnavdir>/apt.dat", which are added after those of the default scenery
+    private Map<String,AptFileIndex.Entry> deprecated_apt_index;
+
+    // the number of threads that read the apt.dat files and earth_fix.dat; -Dxhsi.navdata.threads=1 reads them one after another
+    private static final int NB_OF_THREADS = Integer.getInteger("xhsi.navdata.threads", Runtime.getRuntime().availableProcessors()).intValue();
 
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
 
+    /**
+     * What a thread has read from an apt.dat file, to be added to the repository in the order of the scenery packs
+     */
+    private static class AptFileContents {
+        ArrayList<NavigationObject> nav_objects = new ArrayList<NavigationObject>();
+        Map<String,AptFileIndex.Entry> index;
+    }
+
+
     public AptNavXP900DatNavigationObjectBuilder() throws Exception {
         this.nor = NavigationObjectRepository.get_instance();
         this.progressObserver = null;
+        this.cache = NavDataCache.ENABLED ? new NavDataCache(new File(NavDataCache.CACHE_FILENAME)) : null;
+    }
+
+
+    /**
+     * A builder for a thread of read_sources_in_parallel, that collects the navigation objects in buffer
+     */
+    private AptNavXP900DatNavigationObjectBuilder(ArrayList<NavigationObject> buffer) {
+        this.nor = NavigationObjectRepository.get_instance();
+        this.progressObserver = null;
+        this.cache = null;
+        this.buffer = buffer;
     }
 
 
@@ -82,78 +120,286 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
         if (new File(XHSIPreferences.aptNavDirectory()).exists()) {
             logger.info("Start reading AptNav resource files in " + XHSIPreferences.aptNavDirectory());
 
-//            this.nor.init();
-
-            // read the "<aptnavdir>/Custom Scenery/<pack>/Earth nav data/apt.dat" in the order specified by scenery_packs.ini
-            if (this.progressObserver != null) {
-                this.progressObserver.set_progress("Loading databases", "Loading Custom Scenery APT ...", 0.0f);
+            // the apt.dat files in the order in which they are read
+            ArrayList<File> custom_apt_files = list_custom_apt_files();
+            ArrayList<File> global_apt_files = list_apt_files("Global Scenery");
+            ArrayList<File> default_apt_files = new ArrayList<File>();
+            if ( new File( this.APT_file() ).exists() ) {
+                logger.info("Reading APT database ( " + this.APT_file() + " )    DEPRECATED!");
+                default_apt_files.add( new File( this.APT_file() ) );
             }
-            File scenery_packs_ini = new File( XHSIPreferences.aptNavDirectory() + "/Custom Scenery/scenery_packs.ini");
-            if ( scenery_packs_ini.exists() ) {
-                // There is an ini-file that defines the load order of custom scenery
-                BufferedReader reader = new BufferedReader( new FileReader( scenery_packs_ini ));
-                String line;
-                String[] tokens;
-
-                while ( (line = reader.readLine()) != null ) {
-                    tokens = line.split("\\s+", 2);
-                    if ( (tokens.length == 2) && tokens[0].equals("SCENERY_PACK") ) {
-                        File custom_apt_file = new File( XHSIPreferences.aptNavDirectory() + "/" + tokens[1] + "/Earth nav data/apt.dat" );
-                        if ( custom_apt_file.exists() ) {
-
-                            // We have a custom apt.dat
-                            logger.config("Loading Custom Scenery APT " + custom_apt_file.getPath());
-                            read_an_apt_file(custom_apt_file);
-
-                        } // else logger.warning("No custom apt.dat found at " + custom_apt_dat.getPath());
+            default_apt_files.addAll( list_apt_files("Resources/default scenery") );
+            File nav_file = nav_table_file();
+            File fix_file = fix_table_file();
+            File awy_file = awy_table_file();
+
+            // what the cache depends on
+            ArrayList<File> sources = new ArrayList<File>();
+            sources.addAll(custom_apt_files);
+            sources.addAll(global_apt_files);
+            sources.addAll(default_apt_files);
+            if ( nav_file != null ) sources.add(nav_file);
+            if ( fix_file != null ) sources.add(fix_file);
+            if ( awy_file.exists() ) sources.add(awy_file);
+            String cycle = read_nav_db_cycle(nav_file);
+
+            // don't keep what was read from the previous AptNav directory
+            this.nor.init();
+            AptFileIndex.get_instance().clear();
+
+            if ( this.cache != null ) {
+                if (this.progressObserver != null) {
+                    this.progressObserver.set_progress("Loading databases", "Loading cache ...", 0.0f);
+                }
+                boolean cached = false;
+                try {
+                    cached = this.cache.load(sources, cycle, this.nor);
+                } catch (Exception e) {
+                    logger.warning("Could not read " + this.cache.get_file().getPath() + " (" + e + ")");
+                    this.nor.init();
+                    AptFileIndex.get_instance().clear();
+                }
+                if ( cached ) {
+                    XHSIStatus.nav_db_cycle = cycle;
+                    if (this.progressObserver != null) {
+                        this.progressObserver.set_progress("Loading databases", "Done!", 100.0f);
                     }
+                    return;
                 }
+                logger.config("The navigation databases are not in " + this.cache.get_file().getPath() + ", reading them");
+                this.cache.clear_recording();
             }
 
-            if (this.progressObserver != null) {
-                this.progressObserver.set_progress("Loading databases", "Loading Global Scenery APT ...", 10.0f);
+            read_sources(custom_apt_files, global_apt_files, default_apt_files, nav_file, fix_file, awy_file);
+
+            if ( this.cache != null ) {
+                if (this.progressObserver != null) {
+                    this.progressObserver.set_progress("Loading databases", "Saving cache ...", 90.0f);
+                }
+                try {
+                    this.cache.save(sources, cycle, this.nor);
+                } catch (Exception e) {
+                    logger.warning("Could not write " + this.cache.get_file().getPath() + " (" + e + ")");
+                }
+                this.cache.clear_recording();
             }
-            // read the "<aptnavdir>/Global Scenery/<pack>/Earth nav data/apt.dat" in alphabetical other
-            scan_apt_files("Global Scenery");
 
             if (this.progressObserver != null) {
-                this.progressObserver.set_progress("Loading databases", "Loading Default Scenery APT ...", 20.0f);
+                this.progressObserver.set_progress("Loading databases", "Done!", 100.0f);
             }
-            if ( new File( this.APT_file() ).exists() ) {
-                logger.info("Reading APT database ( " + this.APT_file() + " )    DEPRECATED!");
-                File aptnav_apt_file = new File( this.APT_file() );
-                read_an_apt_file(aptnav_apt_file);
+        } else {
+            logger.warning("AptNav resources directory is wrong!");
+        }
+
+    }
+
+
+    private void read_sources(ArrayList<File> custom_apt_files, ArrayList<File> global_apt_files, ArrayList<File> default_apt_files, File nav_file, File fix_file, File awy_file) throws Exception {
+
+        if ( NB_OF_THREADS > 1 ) {
+            read_sources_in_parallel(custom_apt_files, global_apt_files, default_apt_files, nav_file, fix_file, awy_file);
+            return;
+        }
+
+        // read the "<aptnavdir>/Custom Scenery/<pack>/Earth nav data/apt.dat" in the order specified by scenery_packs.ini
+        if (this.progressObserver != null) {
+            this.progressObserver.set_progress("Loading databases", "Loading Custom Scenery APT ...", 0.0f);
+        }
+        for (int i=0; i<custom_apt_files.size(); i++) {
+            logger.config("Loading Custom Scenery APT " + custom_apt_files.get(i).getPath());
+            index_apt_file(custom_apt_files.get(i), read_an_apt_file(custom_apt_files.get(i)));
+        }
+
+        if (this.progressObserver != null) {
+            this.progressObserver.set_progress("Loading databases", "Loading Global Scenery APT ...", 10.0f);
+        }
+        // read the "<aptnavdir>/Global Scenery/<pack>/Earth nav data/apt.dat" in alphabetical other
+        for (int i=0; i<global_apt_files.size(); i++) {
+            logger.config("Loading Global Scenery APT " + global_apt_files.get(i).getPath());
+            index_apt_file(global_apt_files.get(i), read_an_apt_file(global_apt_files.get(i)));
+        }
+
+        if (this.progressObserver != null) {
+            this.progressObserver.set_progress("Loading databases", "Loading Default Scenery APT ...", 20.0f);
+        }
+        // read the deprecated "<aptnavdir>/apt.dat", and
+        // the "<aptnavdir>/Resources/default scenery/<pack>/Earth nav data/apt.dat" in alphabetical other
+        for (int i=0; i<default_apt_files.size(); i++) {
+            logger.config("Loading Default Scenery APT " + default_apt_files.get(i).getPath());
+            index_apt_file(default_apt_files.get(i), read_an_apt_file(default_apt_files.get(i)));
+        }
+        index_deprecated_apt_file();
+
+        if (this.progressObserver != null) {
+            this.progressObserver.set_progress("Loading databases", "Loading NAV ...", 40.0f);
+        }
+        read_nav_file(nav_file);
+
+        if (this.progressObserver != null) {
+            this.progressObserver.set_progress("Loading databases", "Loading FIX ...", 60.0f);
+        }
+        read_fix_file(fix_file);
+
+        if (this.progressObserver != null) {
+            this.progressObserver.set_progress("Loading databases", "Loading AWY ...", 80.0f);
+        }
+        read_awy_file(awy_file);
+
+    }
+
+
+    /**
+     * Like read_sources, but the apt.dat files and earth_fix.dat are read by NB_OF_THREADS threads. What they have read is
+     * added to the repository in the same order as read_sources does, so the first scenery pack with an airport still wins.
+     * earth_nav.dat needs the runways to be in the repository, and earth_awy.dat the fixes, so they are read afterwards.
+     */
+    private void read_sources_in_parallel(ArrayList<File> custom_apt_files, ArrayList<File> global_apt_files, ArrayList<File> default_apt_files, File nav_file, File fix_file, File awy_file) throws Exception {
+
+        ArrayList<File> apt_files = new ArrayList<File>();
+        apt_files.addAll(custom_apt_files);
+        apt_files.addAll(global_apt_files);
+        apt_files.addAll(default_apt_files);
+        long total_bytes = 0;
+        for (int i=0; i<apt_files.size(); i++) {
+            total_bytes += apt_files.get(i).length();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(NB_OF_THREADS,
+            new ThreadFactory() {
+                private int count = 0;
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "navdata-reader-" + this.count++);
+                    t.setDaemon(true);
+                    return t;
+                }
             }
-            // read the "<aptnavdir>/Resources/default scenery/<pack>/Earth nav data/apt.dat" in alphabetical other
-            scan_apt_files("Resources/default scenery");
+        );
+
+        try {
+
+            // in the order in which they are added to the repository, so that the first ones are ready first
+            ArrayList<Future<AptFileContents>> apt_contents = new ArrayList<Future<AptFileContents>>();
+            for (int i=0; i<apt_files.size(); i++) {
+                final File apt_file = apt_files.get(i);
+                apt_contents.add( pool.submit(new Callable<AptFileContents>() {
+                    public AptFileContents call() throws Exception {
+                        AptFileContents contents = new AptFileContents();
+                        contents.index = new AptNavXP900DatNavigationObjectBuilder(contents.nav_objects).read_an_apt_file(apt_file);
+                        return contents;
+                    }
+                }) );
+            }
+            Future<ArrayList<NavigationObject>> fixes = null;
+            if ( fix_file != null ) {
+                final File file = fix_file;
+                fixes = pool.submit(new Callable<ArrayList<NavigationObject>>() {
+                    public ArrayList<NavigationObject> call() throws Exception {
+                        ArrayList<NavigationObject> fix_objects = new ArrayList<NavigationObject>();
+                        new AptNavXP900DatNavigationObjectBuilder(fix_objects).read_fix_file(file);
+                        return fix_objects;
+                    }
+                });
+            }
+
+            long added_bytes = 0;
+            for (int i=0; i<apt_files.size(); i++) {
+                String stage;
+                if ( i < custom_apt_files.size() ) {
+                    stage = "Loading Custom Scenery APT ...";
+                } else if ( i < custom_apt_files.size() + global_apt_files.size() ) {
+                    stage = "Loading Global Scenery APT ...";
+                } else {
+                    stage = "Loading Default Scenery APT ...";
+                }
+                if (this.progressObserver != null) {
+                    this.progressObserver.set_progress("Loading databases", stage, 40.0f * added_bytes / Math.max(1L, total_bytes));
+                }
+                logger.config("Loading APT " + apt_files.get(i).getPath());
+                AptFileContents contents = get_result(apt_contents.get(i));
+                // don't keep what has been added
+                apt_contents.set(i, null);
+                for (int j=0; j<contents.nav_objects.size(); j++) {
+                    add_nav_object(contents.nav_objects.get(j));
+                }
+                index_apt_file(apt_files.get(i), contents.index);
+                added_bytes += apt_files.get(i).length();
+            }
+            index_deprecated_apt_file();
 
             if (this.progressObserver != null) {
                 this.progressObserver.set_progress("Loading databases", "Loading NAV ...", 40.0f);
             }
-            read_nav_table();
+            read_nav_file(nav_file);
 
             if (this.progressObserver != null) {
                 this.progressObserver.set_progress("Loading databases", "Loading FIX ...", 60.0f);
             }
-            read_fix_table();
+            if ( fixes != null ) {
+                ArrayList<NavigationObject> fix_objects = get_result(fixes);
+                for (int j=0; j<fix_objects.size(); j++) {
+                    add_nav_object(fix_objects.get(j));
+                }
+            } else {
+                read_fix_file(fix_file);
+            }
 
-            if (this.progressObserver != null) {
-                this.progressObserver.set_progress("Loading databases", "Loading AWY ...", 80.0f);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (this.progressObserver != null) {
+            this.progressObserver.set_progress("Loading databases", "Loading AWY ...", 80.0f);
+        }
+        read_awy_file(awy_file);
+
+    }
+
+
+    /**
+     * The result of a thread of read_sources_in_parallel, or what went wrong in it
+     */
+    private static <T> T get_result(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if ( e.getCause() instanceof Exception ) {
+                throw (Exception) e.getCause();
             }
-            read_awy_table();
+            throw e;
+        }
+    }
 
-            if (this.progressObserver != null) {
-                this.progressObserver.set_progress("Loading databases", "Done!", 100.0f);
+
+    private ArrayList<File> list_custom_apt_files() throws Exception {
+
+        ArrayList<File> apt_files = new ArrayList<File>();
+        File scenery_packs_ini = new File( XHSIPreferences.aptNavDirectory() + "/Custom Scenery/scenery_packs.ini");
+        if ( scenery_packs_ini.exists() ) {
+            // There is an ini-file that defines the load order of custom scenery
+            BufferedReader reader = new BufferedReader( new FileReader( scenery_packs_ini ));
+            String line;
+            String[] tokens;
+
+            while ( (line = reader.readLine()) != null ) {
+                tokens = line.split("\\s+", 2);
+                if ( (tokens.length == 2) && tokens[0].equals("SCENERY_PACK") ) {
+                    File custom_apt_file = new File( XHSIPreferences.aptNavDirectory() + "/" + tokens[1] + "/Earth nav data/apt.dat" );
+                    if ( custom_apt_file.exists() ) {
+                        // We have a custom apt.dat
+                        apt_files.add(custom_apt_file);
+                    } // else logger.warning("No custom apt.dat found at " + custom_apt_dat.getPath());
+                }
             }
-        } else {
-            logger.warning("AptNav resources directory is wrong!");
+            reader.close();
         }
+        return apt_files;
 
     }
 
 
-    private void scan_apt_files(String basedir) throws Exception {
+    private ArrayList<File> list_apt_files(String basedir) throws Exception {
 
+        ArrayList<File> apt_files = new ArrayList<File>();
         File scenery_dir = new File( XHSIPreferences.aptNavDirectory() + "/" + basedir);
         // get the list of packs in scenery_dir
         String[] scenery_packs = scenery_dir.list();
@@ -166,23 +412,98 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                     File apt_file = new File( XHSIPreferences.aptNavDirectory() + "/" + basedir + "/" + scenery_packs[i] + "/Earth nav data/apt.dat");
                     // check if we have an apt.dat file in this pack
                     if ( apt_file.exists() ) {
-                        logger.config("Loading " + basedir + " APT " + apt_file.getPath());
-                        read_an_apt_file(apt_file);
+                        apt_files.add(apt_file);
                     }
                 }
             }
         }
+        return apt_files;
+
+    }
+
 
+    /**
+     * Adds the airport blocks that read_an_apt_file found to the AptFileIndex, for AptNavXP900DatTaxiChartBuilder;
+     * without it, a taxi chart can still be found, but not quickly. The deprecated "<aptnavdir>/apt.dat" waits for
+     * index_deprecated_apt_file, so that the index picks the same file as the taxi chart search without it
+     */
+    private void index_apt_file(File apt_file, Map<String,AptFileIndex.Entry> index) {
+        if ( apt_file.equals(new File(this.APT_file())) ) {
+            this.deprecated_apt_index = index;
+        } else {
+            AptFileIndex.get_instance().put_all(index);
+        }
     }
 
 
-    private void read_an_apt_file(File apt_file) throws Exception {
+    private void index_deprecated_apt_file() {
+        if ( this.deprecated_apt_index != null ) {
+            AptFileIndex.get_instance().put_all(this.deprecated_apt_index);
+            this.deprecated_apt_index = null;
+        }
+    }
 
-        BufferedReader reader = new BufferedReader( new FileReader( apt_file ));
-        String line;
+
+    /**
+     * The AIRAC cycle on line 2 of earth_nav.dat, without reading the rest of the file
+     */
+    private String read_nav_db_cycle(File nav_file) throws Exception {
+
+        String cycle = "";
+        if ( nav_file != null ) {
+            BufferedReader reader = new BufferedReader( new FileReader( nav_file ));
+            String line;
+            long line_number = 0;
+            while ( ( line_number < 2 ) && ( (line = reader.readLine()) != null ) ) {
+                if ( line.length() > 0 ) {
+                    line_number++;
+                    line = line.trim();
+                    if ( (line_number == 2) && (line.length() >= 32) ) {
+                        cycle = line.substring(25, 32);
+                    }
+                }
+            }
+            reader.close();
+        }
+        return cycle;
+
+    }
+
+
+    /**
+     * The cache that read_all_tables uses, and that records what is read, or null to always parse the databases
+     */
+    public void set_cache(NavDataCache cache) {
+        this.cache = cache;
+    }
+
+
+    private void add_nav_object(NavigationObject nav_object) {
+        if ( this.buffer != null ) {
+            this.buffer.add(nav_object);
+            return;
+        }
+        this.nor.add_nav_object(nav_object);
+        // the fixes are saved from the repository, with their airway information
+        if ( ( this.cache != null ) && ! ( nav_object instanceof Fix ) ) {
+            this.cache.record(nav_object);
+        }
+    }
+
+
+    /**
+     * Reads the airports, runways and COM radios of apt_file, and returns where the block of each airport is in the
+     * file (from its header line up to the next one), in the order of the file, for the AptFileIndex
+     */
+    public Map<String,AptFileIndex.Entry> read_an_apt_file(File apt_file) throws Exception {
+
+        DatFileTokenizer tokenizer = new DatFileTokenizer(apt_file);
+        LinkedHashMap<String,AptFileIndex.Entry> apt_index = new LinkedHashMap<String,AptFileIndex.Entry>();
+        String block_icao = null;
+        long block_offset = 0;
         long line_number = 0;
         int info_type;
-        String[] tokens;
+        boolean fake_airport;
         String airport_icao_code = "";
         String airport_name = "";
         boolean current_airport_saved = true; // this is a trick to say that there is no previous airport when starting to read the first
@@ -213,24 +534,28 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
         int elev = 0;
         ArrayList<ComRadio> comms = new ArrayList<ComRadio>();
 
-        while ((line = reader.readLine()) != null) {
+        while ( tokenizer.next_line() ) {
 
-            if ( line.length() > 0 ) {
+            if ( ! tokenizer.is_empty() ) {
 
                 line_number++;
 
-                line = line.trim();
                 if ((line_number > 2) /* && ( ! line.equals("99") ) */ ) {
                     try {
-                        if ( line.equals("99") ) {
+                        fake_airport = tokenizer.line_is("99");
+                        if ( fake_airport ) {
                             // a line with a fake airport to force saving the last
-                            tokens = "1 9999 0 0 XXXX Fake Airport to force saving the last".split("\\s+",6);
-                            info_type = Integer.parseInt(tokens[0]);
+                            info_type = 1;
                         } else {
-                            tokens = line.split("\\s+",6);
-                            info_type = Integer.parseInt(tokens[0]);
+                            tokenizer.tokenize(6);
+                            info_type = tokenizer.get_int(0);
                         }
                         if (info_type == 1) {
+                            // the block of the previous airport ends here
+                            if ( ( block_icao != null ) && ! apt_index.containsKey(block_icao) ) {
+                                apt_index.put(block_icao, new AptFileIndex.Entry(apt_file, block_offset, (int)( tokenizer.get_line_offset() - block_offset )));
+                            }
+                            block_icao = null;
                             // hold it, save the previous airport before proceeding with this one...
                             if ( ! current_airport_saved ) {
                                 // when this is the first airport that whe read, there is no previous airport
@@ -259,15 +584,19 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                                     arp_lat = lat_sum / rwy_count;
                                     arp_lon = lon_sum / rwy_count;
                                 }
-                                nor.add_nav_object(new Airport(airport_name, airport_icao_code, arp_lat, arp_lon, runways, longest, elev, comms));
+                                add_nav_object(new Airport(airport_name, airport_icao_code, arp_lat, arp_lon, runways, longest, elev, comms));
                             }
                             // process the new airport header
                             //elev = Integer.parseInt(line.substring(5, 10).trim());
-                            elev = Integer.parseInt(tokens[1]);
+                            elev = fake_airport ? 9999 : tokenizer.get_int(1);
                             //airport_icao_code = line.substring(15, 19);
-                            airport_icao_code = tokens[4];
+                            airport_icao_code = fake_airport ? "XXXX" : tokenizer.get_string(4);
                             //airport_name = line.substring(20);
-                            airport_name = tokens[5];
+                            airport_name = fake_airport ? "Fake Airport to force saving the last" : tokenizer.get_string(5);
+                            if ( ! fake_airport ) {
+                                block_icao = airport_icao_code.toUpperCase();
+                                block_offset = tokenizer.get_line_offset();
+                            }
                             current_airport_saved = false;
                             runways = new ArrayList();
                             arp_lat = 0;
@@ -285,20 +614,20 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                         } else if (info_type == 100) {
                             // a runway
                             // we need more tokens
-                            tokens = line.split("\\s+",26);
-                            width = Float.parseFloat(tokens[1]);
-                            surface = Integer.parseInt(tokens[2]);
-                            rwy_num1 = tokens[8];
-                            thr1_lat = Float.parseFloat(tokens[9]);
-                            thr1_lon = Float.parseFloat(tokens[10]);
-                            rwy_num2 = tokens[17];
-                            thr2_lat = Float.parseFloat(tokens[18]);
-                            thr2_lon = Float.parseFloat(tokens[19]);
+                            tokenizer.tokenize(26);
+                            width = tokenizer.get_float(1);
+                            surface = tokenizer.get_int(2);
+                            rwy_num1 = tokenizer.get_string(8);
+                            thr1_lat = tokenizer.get_float(9);
+                            thr1_lon = tokenizer.get_float(10);
+                            rwy_num2 = tokenizer.get_string(17);
+                            thr2_lat = tokenizer.get_float(18);
+                            thr2_lon = tokenizer.get_float(19);
                             length = CoordinateSystem.rough_distance(thr1_lat, thr1_lon, thr2_lat, thr2_lon) * 1851.852f; // meters!
                             lat = ( thr1_lat + thr2_lat ) / 2;
                             lon = ( thr1_lon + thr2_lon ) / 2;
                             Runway new_rwy = new Runway(airport_icao_code, length, width, surface, rwy_num1, thr1_lat, thr1_lon, rwy_num2, thr2_lat, thr2_lon);
-                            nor.add_nav_object(new_rwy);
+                            add_nav_object(new_rwy);
                             //runways.add( nor.get_runway(airport_icao_code, lat, lon) );
                             runways.add(new_rwy);
                             // find the longest runway for this airport
@@ -318,13 +647,13 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                             // if defined in the file, the tower position can be used as the ARP
                             tower = true;
                             // we already have enough tokens tokens = line.split("\\s+",3);
-                            tower_lat = Float.parseFloat(tokens[1]);
-                            tower_lon = Float.parseFloat(tokens[2]);
+                            tower_lat = tokenizer.get_float(1);
+                            tower_lon = tokenizer.get_float(2);
                         } else if ( (info_type >= 50) && (info_type < 60) ) {
                             // COM Radio
                             // we need the name, which can include spaces, in the third token
-                            tokens = line.split("\\s+",3);
-                            comms.add(new ComRadio(airport_icao_code, tokens.length==3?tokens[2]:"", (float)Float.parseFloat(tokens[1]) / 100.0f));
+                            tokenizer.tokenize(3);
+                            comms.add(new ComRadio(airport_icao_code, tokenizer.get_token_count()==3?tokenizer.get_string(2):"", tokenizer.get_float(1) / 100.0f));
 //                        } else if ((info_type == 99) && (current_airport_saved == false)) {
 //                            // end of file, save the last airport
 //                            if ( ! current_airport_saved ) {
@@ -352,28 +681,38 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
 //                                    arp_lat = lat_sum / rwy_count;
 //                                    arp_lon = lon_sum / rwy_count;
 //                                }
-//                                nor.add_nav_object(new Airport(airport_name, airport_icao_code, lat, lon, runways, longest, elev, comms));
+//                                add_nav_object(new Airport(airport_name, airport_icao_code, lat, lon, runways, longest, elev, comms));
 //                                current_airport_saved = true;
 //                            }
                         }
                     } catch (Exception e) {
-                        logger.warning("\nParse error in " +apt_file.getName() + ":" + line_number + "(" + e + ") " + line);
+                        logger.warning("\nParse error in " +apt_file.getName() + ":" + line_number + "(" + e + ") " + tokenizer.get_line());
                     }
                 }
 
             } // line !isEmpty
 
-        } // while readLine
+        } // while next_line
 
-        if (reader != null) {
-            reader.close();
+        if ( ( block_icao != null ) && ! apt_index.containsKey(block_icao) ) {
+            apt_index.put(block_icao, new AptFileIndex.Entry(apt_file, block_offset, (int)( tokenizer.get_position() - block_offset )));
         }
+        tokenizer.close();
+
+        return apt_index;
 
     }
 
 
     public void read_nav_table() throws Exception {
 
+        read_nav_file(nav_table_file());
+
+    }
+
+
+    private File nav_table_file() {
+
         File file = null;
         if ( new File( this.NAV_xplane() ).exists() ) {
             logger.config("Reading NAV database ( " + this.NAV_xplane() + " )");
@@ -382,11 +721,20 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
             logger.info("Reading NAV database ( " + this.NAV_file() + " )    DEPRECATED!");
             file = new File( this.NAV_file() );
         }
-        BufferedReader reader = new BufferedReader( new FileReader( file ));
+        return file;
+
+    }
+
+
+    public void read_nav_file(File file) throws Exception {
+
+        DatFileTokenizer tokenizer = new DatFileTokenizer(file);
         String line;
         int info_type;
-        String[] tokens;
         long line_number = 0;
+        float lat;
+        float lon;
+        float freq;
         RadioNavigationObject coupled_rno;
         Localizer coupled_loc;
         RadioNavigationObject twin_rno;
@@ -394,73 +742,80 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
         boolean has_a_twin;
         String twin_ilt;
 
-        while ((line = reader.readLine()) != null) {
+        while ( tokenizer.next_line() ) {
 
-            if ( line.length() > 0) {
+            if ( ! tokenizer.is_empty() ) {
             // line.isEmpty() doesn't work on java 1.5
 
                 line_number++;
 
-                line = line.trim();
-
-                if ( (line_number == 2) && (line.length() >= 32) ) {
-                    // the version info is on line 2, hopefully in a fixed location
-                    XHSIStatus.nav_db_cycle = line.substring(25, 32);
-                } else if ( (line_number > 2)  && ( ! line.equals("99") ) ) {
+                if ( line_number == 2 ) {
+                    line = tokenizer.get_line();
+                    if ( line.length() >= 32 ) {
+                        // the version info is on line 2, hopefully in a fixed location
+                        XHSIStatus.nav_db_cycle = line.substring(25, 32);
+                    }
+                } else if ( (line_number > 2)  && ( ! tokenizer.line_is("99") ) ) {
                     try {
 
-                        tokens = line.split("\\s+",9);
-                        info_type = Integer.parseInt(tokens[0]);
+                        tokenizer.tokenize(9);
+                        info_type = tokenizer.get_int(0);
 
                         if ( (info_type ==2) || (info_type == 3) || (info_type == 13) ) {
 
                             // 2=NDB, 3=VOR (VOR, VOR-DME, VORTAC) 13=DME (Standalone DME, TACAN)
                             // tokens = line.split("\\s+",9);
-                            nor.add_nav_object(new RadioNavBeacon(
-                                    tokens[8], // name
-                                    tokens[7], // ident
+                            add_nav_object(new RadioNavBeacon(
+                                    tokenizer.get_string(8), // name
+                                    tokenizer.get_string(7), // ident
                                     info_type,
-                                    Float.parseFloat(tokens[1]), // lat
-                                    Float.parseFloat(tokens[2]), // lon
-                                    Integer.parseInt(tokens[3]), // elev MSL
-                                    Float.parseFloat(tokens[4]), // freq
-                                    Integer.parseInt(tokens[5]), // range
-                                    Float.parseFloat(tokens[6])  // NDB: zero , VOR: offset
+                                    tokenizer.get_float(1), // lat
+                                    tokenizer.get_float(2), // lon
+                                    tokenizer.get_int(3), // elev MSL
+                                    tokenizer.get_float(4), // freq
+                                    tokenizer.get_int(5), // range
+                                    tokenizer.get_float(6)  // NDB: zero , VOR: offset
                                 ));
 
                         } else if ((info_type == 4) || (info_type == 5)) {
 
                             // ILS or LOC
-                            tokens = line.split("\\s+",11);
+                            tokenizer.tokenize(11);
+                            lat = tokenizer.get_float(1);
+                            lon = tokenizer.get_float(2);
+                            freq = tokenizer.get_float(4);
+                            String ident = tokenizer.get_string(7);
+                            String arpt = tokenizer.get_string(8);
+                            String rwy_num = tokenizer.get_string(9);
                             // search for a twin, i.e. an ILS with the same frequency at the same airport
-                            twin_rno = nor.find_tuned_nav_object(Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]), Float.parseFloat(tokens[4])/100.0f, "");
+                            twin_rno = nor.find_tuned_nav_object(lat, lon, freq/100.0f, "");
                             has_a_twin = ( (twin_rno != null) && (twin_rno instanceof Localizer) );
                             twin_ilt = "";
                             if ( has_a_twin ) {
                                 twin_loc = (Localizer) twin_rno;
                                 twin_loc.has_twin = true;
-                                twin_loc.twin_ilt = tokens[7];
+                                twin_loc.twin_ilt = ident;
                                 twin_ilt = twin_loc.ilt;
                             }
                             Localizer new_loc = new Localizer(
-                                    tokens[8] + " " + tokens[9], // arpt ICAO + RWY
-                                    tokens[7], // ident
+                                    arpt + " " + rwy_num, // arpt ICAO + RWY
+                                    ident, // ident
                                     info_type,
-                                    Float.parseFloat(tokens[1]), // lat
-                                    Float.parseFloat(tokens[2]), // lon
-                                    Integer.parseInt(tokens[3]), // elev MSL
-                                    Float.parseFloat(tokens[4]), // freq
-                                    Integer.parseInt(tokens[5]), // range
-                                    Float.parseFloat(tokens[6]), // bearing, true degrees
-                                    tokens[8], // ICAO
-                                    tokens[9], // RWY,
-                                    tokens[10],
+                                    lat, // lat
+                                    lon, // lon
+                                    tokenizer.get_int(3), // elev MSL
+                                    freq, // freq
+                                    tokenizer.get_int(5), // range
+                                    tokenizer.get_float(6), // bearing, true degrees
+                                    arpt, // ICAO
+                                    rwy_num, // RWY,
+                                    tokenizer.get_string(10),
                                     has_a_twin,
                                     twin_ilt
                                 );
-                            nor.add_nav_object(new_loc);
+                            add_nav_object(new_loc);
                             // add this localizer to the runway
-                            Runway rwy = nor.get_runway(tokens[8], tokens[9], Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]), true);
+                            Runway rwy = nor.get_runway(arpt, rwy_num, lat, lon, true);
                             if ( rwy != null ) {
                                 rwy.localizers.add(new_loc);
 //                                if ( rwy.rwy_num1.equals(tokens[9]) ) {
@@ -471,60 +826,67 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
 //                                    rwy.loc2 = new_loc;
 //                                }
                             } else {
-                                logger.warning("Error NAV.dat: no RWY found for " + tokens[8] + " " + tokens[9] + " " + tokens[7]);
+                                logger.warning("Error NAV.dat: no RWY found for " + arpt + " " + rwy_num + " " + ident);
                             }
 
                         } else if (info_type == 6) {
 
                             // update the ILS (or IGS) with this GS
                             // (we can do this in the same loop, since the file is sorted by info_type; the ILS will already be stored)
-                            tokens = line.split("\\s+",11);
+                            tokenizer.tokenize(11);
                             // tokens[] 0=type, 1=lat, 2=lon, 3=elev, 4=freq, 5=range, 6=glide_angle*100000+course, 7=ident, 8=arpt, 9=rwy, 10="GS"
-                            coupled_rno = nor.find_tuned_nav_object(Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]), Float.parseFloat(tokens[4])/100.0f, tokens[7]);
+                            coupled_rno = nor.find_tuned_nav_object(tokenizer.get_float(1), tokenizer.get_float(2), tokenizer.get_float(4)/100.0f, tokenizer.get_string(7));
                             if ( (coupled_rno != null) && (coupled_rno instanceof Localizer) ) {
                                 coupled_loc = (Localizer) coupled_rno;
                                 coupled_loc.has_gs = true;
                                 // when an ILS has a GS, we are more interested in the elev of the GS than the LOC
-                                coupled_loc.elevation = Integer.parseInt(tokens[3]);
+                                coupled_loc.elevation = tokenizer.get_int(3);
                             } else {
-                                logger.warning("Error NAV.dat: no ILS for GS " + tokens[7] + " " + tokens[4]);
+                                logger.warning("Error NAV.dat: no ILS for GS " + tokenizer.get_string(7) + " " + tokenizer.get_string(4));
                             }
 
                         } else if (info_type == 12) {
 
                             // update the VOR, LOC, ILS or IGS with this DME
                             // (we can do this in the same loop, since the file is sorted by info_type)
-                            tokens = line.split("\\s+",9);
+                            // we already have the 9 tokens
                             // tokens[] 0=type, 1=lat, 2=lon, 3=elev, 4=freq, 5=range, 6=bias, 7=ident, 8=name
-                            coupled_rno = nor.find_tuned_nav_object(Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]), Float.parseFloat(tokens[4])/100.0f, tokens[7]);
+                            lat = tokenizer.get_float(1);
+                            lon = tokenizer.get_float(2);
+                            coupled_rno = nor.find_tuned_nav_object(lat, lon, tokenizer.get_float(4)/100.0f, tokenizer.get_string(7));
                             if (coupled_rno != null) {
                                 coupled_rno.has_dme = true;
-                                coupled_rno.dme_lat = Float.parseFloat(tokens[1]);
-                                coupled_rno.dme_lon = Float.parseFloat(tokens[2]);
+                                coupled_rno.dme_lat = lat;
+                                coupled_rno.dme_lon = lon;
                             } else {
-                                logger.warning("Error NAV.dat: no VOR or Loc for DME " + tokens[7] + " " + tokens[4]);
+                                logger.warning("Error NAV.dat: no VOR or Loc for DME " + tokenizer.get_string(7) + " " + tokenizer.get_string(4));
                             }
                         }
 
                     } catch (Exception e) {
-                        logger.warning("Parse error in " + file.getName() + ":" + line_number + " '" + line + "' (" + e + ")");
+                        logger.warning("Parse error in " + file.getName() + ":" + line_number + " '" + tokenizer.get_line() + "' (" + e + ")");
                     }
 
                 }
 
             } // line ! isEmpty
 
-        } // while readLine
+        } // while next_line
 
-        if (reader != null) {
-            reader.close();
-        }
+        tokenizer.close();
 
     }
 
 
     public void read_fix_table() throws Exception {
 
+        read_fix_file(fix_table_file());
+
+    }
+
+
+    private File fix_table_file() {
+
         File file = null;
         if ( new File( this.FIX_xplane() ).exists() ) {
             logger.config("Reading FIX database ( " + this.FIX_xplane() + " )");
@@ -533,44 +895,53 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
             logger.info("Reading FIX database ( " + this.FIX_file() + " )    DEPRECATED!");
             file = new File( this.FIX_file() );
         }
-        BufferedReader reader = new BufferedReader( new FileReader( file ));
-        String line;
-        String[] tokens;
+        return file;
+
+    }
+
+
+    public void read_fix_file(File file) throws Exception {
+
+        DatFileTokenizer tokenizer = new DatFileTokenizer(file);
         long line_number = 0;
 
-        while ((line = reader.readLine()) != null) {
+        while ( tokenizer.next_line() ) {
 
-            if ( line.length() > 0 ) {
+            if ( ! tokenizer.is_empty() ) {
 
                 line_number++;
 
-                line = line.trim();
-                if ( (line_number > 2) && ( ! line.equals("99") ) ) {
+                if ( (line_number > 2) && ( ! tokenizer.line_is("99") ) ) {
                     try {
-                        tokens = line.split("\\s+",3);
-                        nor.add_nav_object(new Fix(
-                                tokens[2],
-                                Float.parseFloat(tokens[0]),
-                                Float.parseFloat(tokens[1]),
+                        tokenizer.tokenize(3);
+                        add_nav_object(new Fix(
+                                tokenizer.get_string(2),
+                                tokenizer.get_float(0),
+                                tokenizer.get_float(1),
                                 false));
                     } catch (Exception e) {
-                        logger.warning("Parse error in " + file.getName() + ":" + line_number + " '" + line + "' (" + e + ")");
+                        logger.warning("Parse error in " + file.getName() + ":" + line_number + " '" + tokenizer.get_line() + "' (" + e + ")");
                     }
                 }
 
             } // line !isEmpty
 
-        } // while readLine
+        } // while next_line
 
-        if (reader != null) {
-            reader.close();
-        }
+        tokenizer.close();
 
     }
 
 
     public void read_awy_table() throws Exception {
 
+        read_awy_file(awy_table_file());
+
+    }
+
+
+    private File awy_table_file() {
+
         File file = null;
         if ( new File( this.AWY_xplane() ).exists() ) {
             logger.config("Reading AWY database ( " + this.AWY_xplane() + " )");
@@ -579,36 +950,37 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
             logger.info("Reading AWY database ( " + this.AWY_file() + " )    DEPRECATED!");
             file = new File( this.AWY_file() );
         }
-        BufferedReader reader = new BufferedReader( new FileReader( file ));
-        String line;
-        String[] tokens;
+        return file;
+
+    }
+
+
+    public void read_awy_file(File file) throws Exception {
+
+        DatFileTokenizer tokenizer = new DatFileTokenizer(file);
         long line_number = 0;
 
-        while ((line = reader.readLine()) != null) {
+        while ( tokenizer.next_line() ) {
 
-            if ( line.length() > 0 ) {
+            if ( ! tokenizer.is_empty() ) {
 
                 line_number++;
 
-                line = line.trim();
-                if ((line_number > 2) && ( ! line.equals("99") ) ) {
+                if ((line_number > 2) && ( ! tokenizer.line_is("99") ) ) {
                     try {
-                        tokens = line.split("\\s+",10);
+                        tokenizer.tokenize(10);
                         // tokens[] 0=WPT1, 1=lat1, 2=lon1, 3=WPT2, 4=lat2, 5=lon2, 6=low(1)/high(2), 7=bottom, 8=top, 9=ID(s)
-                        fix = nor.get_fix( tokens[0], Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]) );
-                        if ( fix != null ) fix.on_awy = true;
+                        nor.set_fix_on_awy( tokenizer.get_string(0), tokenizer.get_float(1), tokenizer.get_float(2) );
                     } catch (Exception e) {
-                        logger.warning("Parse error in " + file.getName() + ":" + line_number + " '" + line + "' (" + e + ")");
+                        logger.warning("Parse error in " + file.getName() + ":" + line_number + " '" + tokenizer.get_line() + "' (" + e + ")");
                     }
                 }
 
             } // line !isEmpty
 
-        } // while readLine
+        } // while next_line
 
-        if (reader != null) {
-            reader.close();
-        }
+        tokenizer.close();
 
     }
 
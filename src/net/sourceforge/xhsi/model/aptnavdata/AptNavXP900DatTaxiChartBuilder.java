@@ -24,6 +24,7 @@
 package net.sourceforge.xhsi.model.aptnavdata;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileReader;
 //import java.util.ArrayList;
@@ -112,6 +113,9 @@ public class AptNavXP900DatTaxiChartBuilder extends Thread {
         
         this.taxi_chart.new_chart(icao);
 
+        // the index that was made while loading the navdata leads straight to the airport
+        if ( read_indexed_apt_block(icao) ) return;
+
         boolean chart_found = false;
         
         File scenery_packs_ini = new File( this.pathname_to_aptnav + "/Custom Scenery/scenery_packs.ini");
@@ -195,38 +199,84 @@ public class AptNavXP900DatTaxiChartBuilder extends Thread {
     }
     
     
-    private boolean read_apt_file(File current_file, String icao) throws Exception {
+    private boolean read_indexed_apt_block(String icao) {
 
-        BufferedReader reader = new BufferedReader( new FileReader( current_file ));
-        String line;
-        long line_number = 0;
+        AptFileIndex apt_file_index = AptFileIndex.get_instance();
+        byte[] block = null;
+        try {
+            block = apt_file_index.read_block(icao);
+        } catch (Exception e) {
+            logger.warning("Problem reading the indexed apt.dat block of " + icao + " (" + e + ")");
+        }
+        if ( block == null ) return false;
+
+        AptFileIndex.Entry entry = apt_file_index.get(icao);
+        logger.config("Found " + icao + " in " + entry.file.getPath() + " at " + entry.offset);
+        try {
+            DatFileTokenizer tokenizer = new DatFileTokenizer( new ByteArrayInputStream(block) );
+            // skip the airport header
+            tokenizer.next_line();
+            // the line numbers of the block start at its airport header
+            read_apt_block(tokenizer, entry.file.getName() + " at byte " + entry.offset, 1);
+            tokenizer.close();
+        } catch (Exception e) {
+            logger.warning("Problem loading AirportChart " + icao + " (" + e + ")");
+        }
+        return true;
+
+    }
 
-        String[] tokens;
-        int info_type;
+
+    private boolean read_apt_file(File current_file, String icao) throws Exception {
+
+        DatFileTokenizer tokenizer = new DatFileTokenizer(current_file);
 
         boolean arpt_hit = false;
-        boolean finish = false;
+        long line_number = 0;
         
-        while ( ! arpt_hit && ( (line = reader.readLine()) != null ) ) {
+        while ( ! arpt_hit && tokenizer.next_line() ) {
+
+            line_number++;
 
-            if ( line.startsWith("1 ") ) {
-                tokens = line.split("\\s+",6);
-                arpt_hit = tokens[4].equalsIgnoreCase(icao);
+            if ( tokenizer.starts_with("1 ") ) {
+                tokenizer.tokenize(6);
+                arpt_hit = tokenizer.token_equals_ignore_case(4, icao);
 if (arpt_hit) logger.config("Found " + icao + " in " + current_file.getPath());
             }
 
         }
+
+        if ( arpt_hit ) {
+            read_apt_block(tokenizer, current_file.getName(), line_number);
+        }
+
+        tokenizer.close();
         
-        while ( arpt_hit && ( (line = reader.readLine()) != null ) && ! finish ) {
+        return arpt_hit;
+
+    }
 
-            if ( line.length() > 0 ) {
 
-                line = line.trim();
+    /**
+     * Reads the lines after the airport header into the taxi chart, until the next airport;
+     * where and line_number, the line of the airport header, are for the warnings
+     */
+    private void read_apt_block(DatFileTokenizer tokenizer, String where, long line_number) throws Exception {
+
+        int info_type;
+
+        boolean finish = false;
+
+        while ( ! finish && tokenizer.next_line() ) {
+
+            line_number++;
+
+            if ( ! tokenizer.is_empty() ) {
 
                 try {
 
-                    tokens = line.split("\\s+",10);
-                    info_type = Integer.parseInt(tokens[0]);
+                    tokenizer.tokenize(10);
+                    info_type = tokenizer.get_int(0);
 //logger.warning("Info type : "+ info_type);
                     if (info_type == 1) {
 
@@ -239,17 +289,17 @@ if (arpt_hit) logger.config("Found " + icao + " in " + current_file.getPath());
 
                         // a new taxiway or ramp in old APT810 format
 //logger.warning("ARPT "+icao+" segemnt type 10 : "+tokens[1]+" "+tokens[2]+" "+tokens[4]+" "+tokens[5]+" "+tokens[8]);
-                        this.taxi_chart.new_segment( Float.parseFloat(tokens[1]),
-                                Float.parseFloat(tokens[2]),
-                                Float.parseFloat(tokens[4]),
-                                Integer.parseInt(tokens[5]),
-                                Integer.parseInt(tokens[8])
+                        this.taxi_chart.new_segment( tokenizer.get_float(1),
+                                tokenizer.get_float(2),
+                                tokenizer.get_float(4),
+                                tokenizer.get_int(5),
+                                tokenizer.get_int(8)
                                 );
 
                     } else if (info_type == 110) {
 
                         // a new taxiway or ramp
-                        this.taxi_chart.new_pavement( Integer.parseInt(tokens[1]) );
+                        this.taxi_chart.new_pavement( tokenizer.get_int(1) );
 
                     } else if (info_type == 120) {
 
@@ -264,15 +314,15 @@ if (arpt_hit) logger.config("Found " + icao + " in " + current_file.getPath());
                     } else if ( (info_type == 111) || (info_type == 113) ) {
 
                         // a node
-                        this.taxi_chart.new_node( Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]) );
+                        this.taxi_chart.new_node( tokenizer.get_float(1), tokenizer.get_float(2) );
 
                         if (info_type == 113) this.taxi_chart.close_loop();
 
                     } else if ( (info_type == 112) || (info_type == 114) ) {
 
                         // a node with bezier control point
-                        this.taxi_chart.new_bezier_node( Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]),
-                                Float.parseFloat(tokens[3]), Float.parseFloat(tokens[4]) );
+                        this.taxi_chart.new_bezier_node( tokenizer.get_float(1), tokenizer.get_float(2),
+                                tokenizer.get_float(3), tokenizer.get_float(4) );
 
                         if (info_type == 114) this.taxi_chart.close_loop();
 
@@ -285,18 +335,17 @@ if (arpt_hit) logger.config("Found " + icao + " in " + current_file.getPath());
                     }
 
                 } catch (Exception e) {
-                    logger.warning("Parse error in " +current_file.getName() + ":" + line_number + "(" + e + ") " + line);
+                    logger.warning("Parse error in " + where + ":" + line_number + "(" + e + ") " + tokenizer.get_line());
                 }
 
             } // line !isEmpty
 
-        } // while arpt_hit && readLine
+        } // while next_line
 
-        if (reader != null) {
-            reader.close();
+        if ( ! finish ) {
+            // the block of an indexed airport ends before the next airport header
+            this.taxi_chart.close_chart();
         }
-        
-        return arpt_hit;
 
     }
 
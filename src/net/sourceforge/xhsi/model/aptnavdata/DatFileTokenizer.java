@@ -0,0 +1,347 @@
+/**
+* DatFileTokenizer.java
+*
+* Reads the lines of an X-Plane .dat file (apt.dat, earth_nav.dat,
+* earth_fix.dat, earth_awy.dat) as bytes, and splits them into tokens the
+* same way as line.trim().split("\\s+", limit), but without making Strings:
+* the tokens are only positions in a reusable line buffer, and ints and
+* floats are parsed from there. A String is only made for the tokens that
+* are kept, like names and idents.
+*
+* The bytes of a String token are decoded with the default charset, like
+* FileReader does. The byte offset of each line in the input is kept, so
+* that the airport blocks of an apt.dat can be indexed while it is read.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.aptnavdata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+public class DatFileTokenizer {
+
+    // the exact powers of ten of a double
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    // up to this mantissa, a long converts to a double exactly
+    private static final long MAX_EXACT_MANTISSA = ( 1L << 53 ) - 1;
+
+    private InputStream input;
+    private byte[] buffer = new byte[65536];
+    private int buffer_pos = 0;
+    private int buffer_end = 0;
+    private boolean end_of_input = false;
+    // the byte offset in the input of buffer[0], and of the first byte of the current line
+    private long buffer_offset = 0;
+    private long line_offset = 0;
+    // the previous line ended with a CR, so a LF that follows doesn't start another line
+    private boolean skip_lf = false;
+
+    // the current line, and where it starts and ends without the leading and trailing white space
+    private byte[] line = new byte[256];
+    private int line_length = 0;
+    private int trim_start = 0;
+    private int trim_end = 0;
+
+    private int[] token_start = new int[32];
+    private int[] token_end = new int[32];
+    private int token_count = 0;
+
+
+    public DatFileTokenizer(InputStream input) {
+        this.input = input;
+    }
+
+
+    public DatFileTokenizer(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+
+    public void close() throws IOException {
+        this.input.close();
+    }
+
+
+    /**
+     * Reads the next line, like BufferedReader.readLine; false at the end of the input
+     */
+    public boolean next_line() throws IOException {
+
+        this.line_length = 0;
+        this.token_count = 0;
+        boolean got_something = false;
+
+        while ( true ) {
+            if ( this.buffer_pos == this.buffer_end ) {
+                if ( ! fill() ) break;
+            }
+            byte b = this.buffer[this.buffer_pos++];
+            if ( this.skip_lf ) {
+                this.skip_lf = false;
+                if ( b == '\n' ) continue;
+            }
+            if ( ! got_something ) {
+                this.line_offset = this.buffer_offset + this.buffer_pos - 1;
+            }
+            got_something = true;
+            if ( b == '\n' ) {
+                break;
+            } else if ( b == '\r' ) {
+                this.skip_lf = true;
+                break;
+            }
+            if ( this.line_length == this.line.length ) {
+                byte[] longer = new byte[this.line.length * 2];
+                System.arraycopy(this.line, 0, longer, 0, this.line_length);
+                this.line = longer;
+            }
+            this.line[this.line_length++] = b;
+        }
+
+        if ( ! got_something ) return false;
+
+        int start = 0;
+        int end = this.line_length;
+        while ( ( start < end ) && ( ( this.line[start] & 0xFF ) <= ' ' ) ) start++;
+        while ( ( end > start ) && ( ( this.line[end - 1] & 0xFF ) <= ' ' ) ) end--;
+        this.trim_start = start;
+        this.trim_end = end;
+        return true;
+
+    }
+
+
+    /**
+     * The byte offset in the input where the current line starts
+     */
+    public long get_line_offset() {
+        return this.line_offset;
+    }
+
+
+    /**
+     * The number of bytes of the input that have been read up to the end of the current line
+     */
+    public long get_position() {
+        return this.buffer_offset + this.buffer_pos;
+    }
+
+
+    /**
+     * The line, before trimming, has no characters at all
+     */
+    public boolean is_empty() {
+        return this.line_length == 0;
+    }
+
+
+    /**
+     * The line, before trimming, starts with prefix (which must be ASCII)
+     */
+    public boolean starts_with(String prefix) {
+        if ( prefix.length() > this.line_length ) return false;
+        for (int i=0; i<prefix.length(); i++) {
+            if ( this.line[i] != prefix.charAt(i) ) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * The trimmed line is text (which must be ASCII)
+     */
+    public boolean line_is(String text) {
+        if ( text.length() != this.trim_end - this.trim_start ) return false;
+        for (int i=0; i<text.length(); i++) {
+            if ( this.line[this.trim_start + i] != text.charAt(i) ) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * The trimmed line, for messages
+     */
+    public String get_line() {
+        return new String(this.line, this.trim_start, this.trim_end - this.trim_start);
+    }
+
+
+    /**
+     * Splits the trimmed line like split("\\s+", limit): the last of the limit tokens is the rest of the line
+     */
+    public int tokenize(int limit) {
+
+        if ( this.token_start.length < limit ) {
+            this.token_start = new int[limit];
+            this.token_end = new int[limit];
+        }
+        this.token_count = 0;
+        int p = this.trim_start;
+        while ( true ) {
+            int start = p;
+            if ( this.token_count == limit - 1 ) {
+                p = this.trim_end;
+            } else {
+                while ( ( p < this.trim_end ) && ! is_white_space(this.line[p]) ) p++;
+            }
+            this.token_start[this.token_count] = start;
+            this.token_end[this.token_count] = p;
+            this.token_count++;
+            if ( p == this.trim_end ) break;
+            while ( ( p < this.trim_end ) && is_white_space(this.line[p]) ) p++;
+        }
+        return this.token_count;
+
+    }
+
+
+    public int get_token_count() {
+        return this.token_count;
+    }
+
+
+    public String get_string(int t) {
+        check(t);
+        return new String(this.line, this.token_start[t], this.token_end[t] - this.token_start[t]);
+    }
+
+
+    /**
+     * The token is text, ignoring the case of ASCII letters
+     */
+    public boolean token_equals_ignore_case(int t, String text) {
+        check(t);
+        int start = this.token_start[t];
+        int length = this.token_end[t] - start;
+        if ( length != text.length() ) {
+            // with other than ASCII characters, the number of bytes can differ from the number of chars
+            return has_non_ascii(t) && get_string(t).equalsIgnoreCase(text);
+        }
+        for (int i=0; i<length; i++) {
+            int b = this.line[start + i] & 0xFF;
+            char c = text.charAt(i);
+            if ( ( b >= 0x80 ) || ( c >= 0x80 ) ) {
+                return get_string(t).equalsIgnoreCase(text);
+            }
+            if ( ( b != c ) && ( Character.toLowerCase((char)b) != Character.toLowerCase(c) ) ) return false;
+        }
+        return true;
+    }
+
+
+    public int get_int(int t) {
+
+        check(t);
+        int p = this.token_start[t];
+        int end = this.token_end[t];
+        boolean negative = false;
+        if ( ( p < end ) && ( this.line[p] == '-' ) ) {
+            negative = true;
+            p++;
+        }
+        // up to 9 digits can't overflow
+        if ( ( p == end ) || ( end - p > 9 ) ) return Integer.parseInt(get_string(t));
+        int value = 0;
+        while ( p < end ) {
+            int digit = this.line[p++] - '0';
+            if ( ( digit < 0 ) || ( digit > 9 ) ) return Integer.parseInt(get_string(t));
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+
+    }
+
+
+    public float get_float(int t) {
+
+        check(t);
+        int p = this.token_start[t];
+        int end = this.token_end[t];
+        boolean negative = false;
+        if ( ( p < end ) && ( ( this.line[p] == '-' ) || ( this.line[p] == '+' ) ) ) {
+            negative = ( this.line[p] == '-' );
+            p++;
+        }
+        long mantissa = 0;
+        int decimals = 0;
+        int digits = 0;
+        boolean point = false;
+        while ( p < end ) {
+            byte b = this.line[p++];
+            if ( ( b >= '0' ) && ( b <= '9' ) ) {
+                if ( mantissa > ( MAX_EXACT_MANTISSA - 9 ) / 10 ) return Float.parseFloat(get_string(t));
+                mantissa = mantissa * 10 + ( b - '0' );
+                digits++;
+                if ( point ) decimals++;
+            } else if ( ( b == '.' ) && ! point ) {
+                point = true;
+            } else {
+                // exponents and the rest
+                return Float.parseFloat(get_string(t));
+            }
+        }
+        if ( ( digits == 0 ) || ( decimals >= POW10.length ) ) return Float.parseFloat(get_string(t));
+        // both are exact, so the quotient is the double that is nearest to the decimal number
+        double value = (double)mantissa / POW10[decimals];
+        return (float)( negative ? -value : value );
+
+    }
+
+
+    private void check(int t) {
+        if ( t >= this.token_count ) {
+            throw new ArrayIndexOutOfBoundsException(t);
+        }
+    }
+
+
+    private boolean has_non_ascii(int t) {
+        for (int p=this.token_start[t]; p<this.token_end[t]; p++) {
+            if ( this.line[p] < 0 ) return true;
+        }
+        return false;
+    }
+
+
+    private static boolean is_white_space(byte b) {
+        // the \s of a regular expression
+        return ( b == ' ' ) || ( b == '\t' ) || ( b == '\n' ) || ( b == 0x0B ) || ( b == '\f' ) || ( b == '\r' );
+    }
+
+
+    private boolean fill() throws IOException {
+        if ( this.end_of_input ) return false;
+        int n = this.input.read(this.buffer, 0, this.buffer.length);
+        if ( n <= 0 ) {
+            this.end_of_input = ( n < 0 );
+            if ( n < 0 ) return false;
+            return fill();
+        }
+        this.buffer_offset += this.buffer_end;
+        this.buffer_pos = 0;
+        this.buffer_end = n;
+        return true;
+    }
+
+
+}
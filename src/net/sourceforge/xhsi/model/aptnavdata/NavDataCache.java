@@ -0,0 +1,478 @@
+/**
+* NavDataCache.java
+*
+* A binary copy of what AptNavXP900DatNavigationObjectBuilder has put in the
+* NavigationObjectRepository, so that the next start doesn't have to parse
+* all the apt.dat files, earth_nav.dat, earth_fix.dat and earth_awy.dat again.
+*
+* The cache is only used when it was written by the same version of this
+* class from the same source files (same path, size and modification time,
+* in the same order) and with the same AIRAC cycle in earth_nav.dat; in all
+* other cases the databases are parsed and the cache is written anew.
+*
+* The objects are stored in the order in which they were added to the
+* repository, in their final state (with the GS, DME, twin ILS and airway
+* information that was filled in later), so that adding them again gives the
+* same repository. The AptFileIndex of the apt.dat files is saved with them.
+* The file is read into memory in one go: it is not memory-mapped, because
+* on Windows a mapped file can't be replaced until the mapping has been
+* garbage collected, and save() replaces it.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.aptnavdata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.logging.Logger;
+
+import net.sourceforge.xhsi.model.Airport;
+import net.sourceforge.xhsi.model.ComRadio;
+import net.sourceforge.xhsi.model.Fix;
+import net.sourceforge.xhsi.model.Localizer;
+import net.sourceforge.xhsi.model.NavigationObject;
+import net.sourceforge.xhsi.model.NavigationObjectRepository;
+import net.sourceforge.xhsi.model.RadioNavBeacon;
+import net.sourceforge.xhsi.model.RadioNavigationObject;
+import net.sourceforge.xhsi.model.Runway;
+
+
+public class NavDataCache {
+
+    // start with -Dxhsi.navdata.nocache to always parse the databases
+    public static final boolean ENABLED = System.getProperty("xhsi.navdata.nocache") == null;
+
+    // next to XHSI.properties
+    public static final String CACHE_FILENAME = "XHSI_navdata.cache";
+
+    private static final int MAGIC = 0x58484E43; // "XHNC"
+    // increment when the format, or what the builder puts in the repository, changes
+    private static final int VERSION = 3;
+
+    private static final int NULL_STRING = 0xFFFF;
+
+    private static final byte RECORD_RUNWAY = 1;
+    private static final byte RECORD_AIRPORT = 2;
+    private static final byte RECORD_BEACON = 3;
+    private static final byte RECORD_LOCALIZER = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+    private File file;
+
+    // the objects that the builder has added to the repository, except the fixes
+    private ArrayList<NavigationObject> recorded = new ArrayList<NavigationObject>();
+
+    private byte[] string_buffer = new byte[256];
+
+
+    public NavDataCache(File file) {
+        this.file = file;
+    }
+
+
+    public File get_file() {
+        return this.file;
+    }
+
+
+    /**
+     * Called by the builder for every object that it adds to the repository, except the fixes
+     */
+    public void record(NavigationObject nav_object) {
+        this.recorded.add(nav_object);
+    }
+
+
+    public void clear_recording() {
+        this.recorded.clear();
+    }
+
+
+    /**
+     * Adds the objects from the cache to nor when the cache was made from the same sources;
+     * returns false, without adding anything, when it wasn't; throws an exception when it can't be read
+     */
+    public boolean load(ArrayList<File> sources, String cycle, NavigationObjectRepository nor) throws IOException {
+
+        if ( ! this.file.exists() ) return false;
+
+        FileInputStream input = new FileInputStream(this.file);
+        try {
+            FileChannel channel = input.getChannel();
+            if ( channel.size() > Integer.MAX_VALUE ) return false;
+            ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+            while ( buffer.hasRemaining() ) {
+                if ( channel.read(buffer) < 0 ) throw new IOException(this.file.getPath() + " has become shorter");
+            }
+            buffer.flip();
+
+            if ( ( buffer.getInt() != MAGIC ) || ( buffer.getInt() != VERSION ) ) return false;
+            if ( ! get_string(buffer).equals(cycle) ) return false;
+            int nb_of_sources = buffer.getInt();
+            if ( nb_of_sources != sources.size() ) return false;
+            for (int i=0; i<nb_of_sources; i++) {
+                File source = sources.get(i);
+                if ( ! get_string(buffer).equals(source.getPath()) ) return false;
+                if ( buffer.getLong() != source.length() ) return false;
+                if ( buffer.getLong() != source.lastModified() ) return false;
+            }
+
+            int nb_of_records = buffer.getInt();
+            NavigationObject[] objects = new NavigationObject[nb_of_records];
+            for (int i=0; i<nb_of_records; i++) {
+                objects[i] = get_record(buffer, objects);
+                nor.add_nav_object(objects[i]);
+            }
+
+            int nb_of_fixes = buffer.getInt();
+            for (int i=0; i<nb_of_fixes; i++) {
+                String name = get_string(buffer);
+                float lat = buffer.getFloat();
+                float lon = buffer.getFloat();
+                nor.add_nav_object(new Fix(name, lat, lon, buffer.get() != 0));
+            }
+
+            AptFileIndex apt_file_index = AptFileIndex.get_instance();
+            int nb_of_apt_files = buffer.getInt();
+            File[] apt_files = new File[nb_of_apt_files];
+            for (int i=0; i<nb_of_apt_files; i++) {
+                apt_files[i] = new File(get_string(buffer));
+            }
+            int nb_of_apt_entries = buffer.getInt();
+            for (int i=0; i<nb_of_apt_entries; i++) {
+                String icao = get_string(buffer);
+                File apt_file = apt_files[buffer.getInt()];
+                long offset = buffer.getLong();
+                apt_file_index.put(icao, new AptFileIndex.Entry(apt_file, offset, buffer.getInt()));
+            }
+
+            logger.config("Loaded " + nb_of_records + " navigation objects, " + nb_of_fixes + " fixes and " + nb_of_apt_entries + " apt.dat entries from " + this.file.getPath());
+            return true;
+        } finally {
+            input.close();
+        }
+
+    }
+
+
+    /**
+     * Writes the recorded objects and the fixes that are in nor, for the next time that the databases are read from sources
+     */
+    public void save(ArrayList<File> sources, String cycle, NavigationObjectRepository nor) throws IOException {
+
+        // Runways and Localizers are referred to by their index in the records
+        IdentityHashMap<NavigationObject,Integer> indexes = new IdentityHashMap<NavigationObject,Integer>();
+        IdentityHashMap<Localizer,Integer> localizer_runways = new IdentityHashMap<Localizer,Integer>();
+        for (int i=0; i<this.recorded.size(); i++) {
+            NavigationObject nav_object = this.recorded.get(i);
+            if ( nav_object instanceof Runway ) {
+                indexes.put(nav_object, i);
+                ArrayList<Localizer> localizers = ((Runway)nav_object).localizers;
+                for (int l=0; l<localizers.size(); l++) {
+                    localizer_runways.put(localizers.get(l), i);
+                }
+            }
+        }
+
+        ArrayList fixes = new ArrayList();
+        nor.find_nav_objects_in_box(NavigationObject.NO_TYPE_FIX, -90.0f, 90.0f, -180.0f, 180.0f, fixes);
+
+        // write to a temporary file first, so that there is never a partial cache
+        File temp_file = new File(this.file.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp_file), 65536));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            put_string(output, cycle);
+            output.writeInt(sources.size());
+            for (int i=0; i<sources.size(); i++) {
+                File source = sources.get(i);
+                put_string(output, source.getPath());
+                output.writeLong(source.length());
+                output.writeLong(source.lastModified());
+            }
+
+            output.writeInt(this.recorded.size());
+            for (int i=0; i<this.recorded.size(); i++) {
+                put_record(output, this.recorded.get(i), indexes, localizer_runways);
+            }
+
+            output.writeInt(fixes.size());
+            for (int i=0; i<fixes.size(); i++) {
+                Fix fix = (Fix)fixes.get(i);
+                put_string(output, fix.name);
+                output.writeFloat(fix.lat);
+                output.writeFloat(fix.lon);
+                output.writeByte(fix.on_awy ? 1 : 0);
+            }
+
+            put_apt_file_index(output);
+        } finally {
+            output.close();
+        }
+
+        if ( ! temp_file.renameTo(this.file) ) {
+            // on Windows, renameTo doesn't replace an existing file
+            if ( this.file.exists() && ! this.file.delete() ) {
+                temp_file.delete();
+                throw new IOException("Could not replace " + this.file.getPath());
+            }
+            if ( ! temp_file.renameTo(this.file) ) {
+                throw new IOException("Could not rename " + temp_file.getPath() + " to " + this.file.getPath());
+            }
+        }
+        logger.config("Saved " + this.recorded.size() + " navigation objects and " + fixes.size() + " fixes to " + this.file.getPath());
+
+    }
+
+
+    private void put_apt_file_index(DataOutputStream output) throws IOException {
+
+        AptFileIndex apt_file_index = AptFileIndex.get_instance();
+        ArrayList<String> icao_codes = apt_file_index.get_icao_codes();
+
+        // the paths once, and an index in the list of paths for each entry
+        ArrayList<String> paths = new ArrayList<String>();
+        HashMap<String,Integer> path_indexes = new HashMap<String,Integer>();
+        for (int i=0; i<icao_codes.size(); i++) {
+            String path = apt_file_index.get(icao_codes.get(i)).file.getPath();
+            if ( ! path_indexes.containsKey(path) ) {
+                path_indexes.put(path, paths.size());
+                paths.add(path);
+            }
+        }
+        output.writeInt(paths.size());
+        for (int i=0; i<paths.size(); i++) {
+            put_string(output, paths.get(i));
+        }
+
+        output.writeInt(icao_codes.size());
+        for (int i=0; i<icao_codes.size(); i++) {
+            AptFileIndex.Entry entry = apt_file_index.get(icao_codes.get(i));
+            put_string(output, icao_codes.get(i));
+            output.writeInt(path_indexes.get(entry.file.getPath()));
+            output.writeLong(entry.offset);
+            output.writeInt(entry.length);
+        }
+
+    }
+
+
+    private void put_record(DataOutputStream output, NavigationObject nav_object, IdentityHashMap<NavigationObject,Integer> indexes, IdentityHashMap<Localizer,Integer> localizer_runways) throws IOException {
+
+        if ( nav_object instanceof Runway ) {
+            Runway rwy = (Runway)nav_object;
+            output.writeByte(RECORD_RUNWAY);
+            put_string(output, rwy.name);
+            output.writeFloat(rwy.length);
+            output.writeFloat(rwy.width);
+            output.writeInt(rwy.surface);
+            put_string(output, rwy.rwy_num1);
+            output.writeFloat(rwy.lat1);
+            output.writeFloat(rwy.lon1);
+            put_string(output, rwy.rwy_num2);
+            output.writeFloat(rwy.lat2);
+            output.writeFloat(rwy.lon2);
+        } else if ( nav_object instanceof Airport ) {
+            Airport arpt = (Airport)nav_object;
+            output.writeByte(RECORD_AIRPORT);
+            put_string(output, arpt.name);
+            put_string(output, arpt.icao_code);
+            output.writeFloat(arpt.lat);
+            output.writeFloat(arpt.lon);
+            output.writeFloat(arpt.longest);
+            output.writeInt(arpt.elev);
+            output.writeInt(arpt.runways.size());
+            for (int i=0; i<arpt.runways.size(); i++) {
+                output.writeInt(indexes.get(arpt.runways.get(i)));
+            }
+            output.writeInt(arpt.com_radios.size());
+            for (int i=0; i<arpt.com_radios.size(); i++) {
+                ComRadio com = arpt.com_radios.get(i);
+                put_string(output, com.arpt);
+                put_string(output, com.callsign);
+                output.writeFloat(com.frequency);
+            }
+        } else if ( nav_object instanceof RadioNavBeacon ) {
+            RadioNavBeacon rnb = (RadioNavBeacon)nav_object;
+            output.writeByte(RECORD_BEACON);
+            put_string(output, rnb.name);
+            put_string(output, rnb.ilt);
+            output.writeInt(rnb.type);
+            output.writeFloat(rnb.lat);
+            output.writeFloat(rnb.lon);
+            output.writeInt(rnb.elevation);
+            output.writeFloat(rnb.frequency);
+            output.writeInt(rnb.range);
+            output.writeFloat(rnb.offset);
+            put_dme(output, rnb);
+        } else if ( nav_object instanceof Localizer ) {
+            Localizer loc = (Localizer)nav_object;
+            output.writeByte(RECORD_LOCALIZER);
+            put_string(output, loc.name);
+            put_string(output, loc.ilt);
+            output.writeInt(loc.type);
+            output.writeFloat(loc.lat);
+            output.writeFloat(loc.lon);
+            output.writeInt(loc.elevation);
+            output.writeFloat(loc.frequency);
+            output.writeInt(loc.range);
+            output.writeFloat(loc.bearing);
+            put_string(output, loc.airport);
+            put_string(output, loc.rwy);
+            put_string(output, loc.description);
+            output.writeBoolean(loc.has_gs);
+            output.writeBoolean(loc.has_twin);
+            put_string(output, loc.twin_ilt);
+            put_dme(output, loc);
+            Integer rwy_index = localizer_runways.get(loc);
+            output.writeInt( rwy_index != null ? rwy_index.intValue() : -1 );
+        } else {
+            throw new IOException("Can't cache " + nav_object);
+        }
+
+    }
+
+
+    private NavigationObject get_record(ByteBuffer buffer, NavigationObject[] objects) throws IOException {
+
+        byte record_type = buffer.get();
+
+        if ( record_type == RECORD_RUNWAY ) {
+            String name = get_string(buffer);
+            float length = buffer.getFloat();
+            float width = buffer.getFloat();
+            int surface = buffer.getInt();
+            String rwy_num1 = get_string(buffer);
+            float lat1 = buffer.getFloat();
+            float lon1 = buffer.getFloat();
+            String rwy_num2 = get_string(buffer);
+            float lat2 = buffer.getFloat();
+            float lon2 = buffer.getFloat();
+            return new Runway(name, length, width, surface, rwy_num1, lat1, lon1, rwy_num2, lat2, lon2);
+        } else if ( record_type == RECORD_AIRPORT ) {
+            String name = get_string(buffer);
+            String icao_code = get_string(buffer);
+            float lat = buffer.getFloat();
+            float lon = buffer.getFloat();
+            float longest = buffer.getFloat();
+            int elev = buffer.getInt();
+            int nb_of_runways = buffer.getInt();
+            ArrayList runways = new ArrayList(nb_of_runways);
+            for (int i=0; i<nb_of_runways; i++) {
+                runways.add(objects[buffer.getInt()]);
+            }
+            int nb_of_comms = buffer.getInt();
+            ArrayList<ComRadio> comms = new ArrayList<ComRadio>(nb_of_comms);
+            for (int i=0; i<nb_of_comms; i++) {
+                String arpt = get_string(buffer);
+                String callsign = get_string(buffer);
+                comms.add(new ComRadio(arpt, callsign, buffer.getFloat()));
+            }
+            return new Airport(name, icao_code, lat, lon, runways, longest, elev, comms);
+        } else if ( record_type == RECORD_BEACON ) {
+            String name = get_string(buffer);
+            String ilt = get_string(buffer);
+            int type = buffer.getInt();
+            float lat = buffer.getFloat();
+            float lon = buffer.getFloat();
+            int elevation = buffer.getInt();
+            float frequency = buffer.getFloat();
+            int range = buffer.getInt();
+            float offset = buffer.getFloat();
+            RadioNavBeacon rnb = new RadioNavBeacon(name, ilt, type, lat, lon, elevation, frequency, range, offset);
+            get_dme(buffer, rnb);
+            return rnb;
+        } else if ( record_type == RECORD_LOCALIZER ) {
+            String name = get_string(buffer);
+            String ilt = get_string(buffer);
+            int type = buffer.getInt();
+            float lat = buffer.getFloat();
+            float lon = buffer.getFloat();
+            int elevation = buffer.getInt();
+            float frequency = buffer.getFloat();
+            int range = buffer.getInt();
+            float bearing = buffer.getFloat();
+            String airport = get_string(buffer);
+            String rwy = get_string(buffer);
+            String description = get_string(buffer);
+            boolean has_gs = ( buffer.get() != 0 );
+            boolean has_twin = ( buffer.get() != 0 );
+            String twin_ilt = get_string(buffer);
+            Localizer loc = new Localizer(name, ilt, type, lat, lon, elevation, frequency, range, bearing, airport, rwy, description, has_twin, twin_ilt);
+            loc.has_gs = has_gs;
+            get_dme(buffer, loc);
+            int rwy_index = buffer.getInt();
+            if ( rwy_index >= 0 ) {
+                ((Runway)objects[rwy_index]).localizers.add(loc);
+            }
+            return loc;
+        } else {
+            throw new IOException("Unknown record type " + record_type + " in " + this.file.getPath());
+        }
+
+    }
+
+
+    private static void put_dme(DataOutputStream output, RadioNavigationObject rno) throws IOException {
+        output.writeBoolean(rno.has_dme);
+        output.writeFloat(rno.dme_lat);
+        output.writeFloat(rno.dme_lon);
+    }
+
+
+    private static void get_dme(ByteBuffer buffer, RadioNavigationObject rno) {
+        rno.has_dme = ( buffer.get() != 0 );
+        rno.dme_lat = buffer.getFloat();
+        rno.dme_lon = buffer.getFloat();
+    }
+
+
+    private static void put_string(DataOutputStream output, String string) throws IOException {
+        if ( string == null ) {
+            output.writeShort(NULL_STRING);
+            return;
+        }
+        byte[] bytes = string.getBytes(UTF_8);
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+
+    private String get_string(ByteBuffer buffer) throws IOException {
+        int length = buffer.getShort() & 0xFFFF;
+        if ( length == NULL_STRING ) return null;
+        if ( length > this.string_buffer.length ) {
+            this.string_buffer = new byte[length];
+        }
+        buffer.get(this.string_buffer, 0, length);
+        return new String(this.string_buffer, 0, length, UTF_8);
+    }
+
+
+}
@@ -1854,14 +1854,14 @@ public class XPlaneAvionics implements Avionics, Observer {
 
     public void set_nav1_obs(float new_obs1) {
 
-        udp_sender.sendDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_NAV1_OBS_DEGM, (float) new_obs1 );
+        udp_sender.queueDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_NAV1_OBS_DEGM, (float) new_obs1 );
 
     }
 
 
     public void set_nav2_obs(float new_obs2) {
 
-        udp_sender.sendDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_NAV2_OBS_DEGM, (float) new_obs2 );
+        udp_sender.queueDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_NAV2_OBS_DEGM, (float) new_obs2 );
 
     }
 
@@ -1962,6 +1962,20 @@ public class XPlaneAvionics implements Avionics, Observer {
     }
 
 
+    public void queueDataPoint(int key, int value) {
+
+        queueDataPoint( key, (float) value );
+
+    }
+
+
+    public void queueDataPoint(int key, float value) {
+
+        udp_sender.queueDataPoint( key, value );
+
+    }
+
+
     public void send_ap_key_press(int button) {
 
         udp_sender.sendDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_KEY_PRESS, (float) button );
@@ -1970,25 +1984,25 @@ public class XPlaneAvionics implements Avionics, Observer {
 
     public void send_ap_altitude(int value) {
 
-        udp_sender.sendDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_ALTITUDE, (float) value );
+        udp_sender.queueDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_ALTITUDE, (float) value );
 
     }
 
     public void send_ap_vv(int value) {
 
-        udp_sender.sendDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_VERTICAL_VELOCITY, (float) value );
+        udp_sender.queueDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_VERTICAL_VELOCITY, (float) value );
 
     }
 
     public void send_ap_heading(float value) {
 
-        udp_sender.sendDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_HEADING_MAG, value );
+        udp_sender.queueDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_HEADING_MAG, value );
 
     }
 
     public void send_ap_airspeed(float value) {
 
-        udp_sender.sendDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_AIRSPEED, value );
+        udp_sender.queueDataPoint( XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_AIRSPEED, value );
 
     }
 
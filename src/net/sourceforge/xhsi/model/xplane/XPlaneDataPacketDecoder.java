@@ -30,6 +30,7 @@ package net.sourceforge.xhsi.model.xplane;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 //import net.sourceforge.xhsi.XHSISettings;
@@ -50,9 +51,29 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
     private static String charset = "ISO-8859-1";
 
+    // the sim data packets (ADCD, AVIO, ENGI and STAT) are decoded straight from the receive buffer,
+    // without creating streams or strings; start with -Dxhsi.decoder.legacy to use the old stream decoder
+    public static final boolean ZERO_COPY = System.getProperty("xhsi.decoder.legacy") == null;
+
+    // the packet type id (the first four bytes) as a big-endian int
+    private static final int TAG_ADCD = ('A' << 24) | ('D' << 16) | ('C' << 8) | 'D';
+    private static final int TAG_AVIO = ('A' << 24) | ('V' << 16) | ('I' << 8) | 'O';
+    private static final int TAG_ENGI = ('E' << 24) | ('N' << 16) | ('G' << 8) | 'I';
+    private static final int TAG_STAT = ('S' << 24) | ('T' << 16) | ('A' << 8) | 'T';
+
+    // the receiver re-uses its receive buffer, so we only need to wrap a new one when it changes
+    private byte[] view_array = null;
+    private ByteBuffer view = null;
+
+    // the raw 4 bytes and the String that was last decoded from them, for each string data point
+    private int[] last_string_raw = new int[XPlaneSimDataRepository.NB_OF_SIM_VALUES];
+    private String[] last_string = new String[XPlaneSimDataRepository.NB_OF_SIM_VALUES];
+
     private boolean received_adc_packet = false;
     private boolean received_fms_packet = false;
     private boolean received_tcas_packet = false;
+    // the repository only shows what we store after tick_updates (snapshot mode), so we keep this one ourselves
+    private float plugin_version = 0.0f;
 
     // list of sim data id's that need the anti-jitter filter
     private int[] jitter_id = { XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_MAGPSI,
@@ -62,6 +83,8 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
     // ... and the same number of vars to store previous value and delta
     private float[] last_value = { 0.0f, 0.0f, 0.0f, 0.0f };
     private float[] last_delta = { 0.0f, 0.0f, 0.0f, 0.0f };
+    // sim data id -> index in jitter_id, or -1 when the id doesn't need the filter
+    private int[] jitter_slot = new int[XPlaneSimDataRepository.NB_OF_SIM_VALUES];
 
     SimDataRepository xplane_data_repository = null;
     FMS fms = FMS.get_instance();
@@ -69,6 +92,7 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
     XfmcData xfmc = XfmcData.getInstance();
     QpacEwdData qpac_ewd = QpacEwdData.getInstance();
     QpacMcduData qpac_mcdu = QpacMcduData.getInstance();
+    XPlaneReceiveMetrics metrics = XPlaneReceiveMetrics.get_instance();
     
 
     public boolean beyond_active;
@@ -83,6 +107,12 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
 
     public XPlaneDataPacketDecoder(ModelFactory sim_model) {
         this.xplane_data_repository = sim_model.get_repository_instance();
+        for (int i=0; i<this.jitter_slot.length; i++) {
+            this.jitter_slot[i] = -1;
+        }
+        for (int i=0; i<this.jitter_id.length; i++) {
+            this.jitter_slot[this.jitter_id[i]] = i;
+        }
     }
 
 
@@ -94,19 +124,15 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
 
         float new_value = value;
 
-        int i;
-        for ( i=0; i<this.jitter_id.length; i++ ) {
-
-            if ( id == this.jitter_id[i] ) {
-                float new_delta = Math.abs(value - this.last_value[i]);
-                if (  new_delta > this.last_delta[i] * 5.0f ) {
-                    // delta suddenly bigger; keep the old value
-                    new_value = this.last_value[i];
-                }
-                this.last_delta[i] = new_delta;
-                this.last_value[i] = value;
+        int i = ( ( id >= 0 ) && ( id < this.jitter_slot.length ) ) ? this.jitter_slot[id] : -1;
+        if ( i >= 0 ) {
+            float new_delta = Math.abs(value - this.last_value[i]);
+            if (  new_delta > this.last_delta[i] * 5.0f ) {
+                // delta suddenly bigger; keep the old value
+                new_value = this.last_value[i];
             }
-
+            this.last_delta[i] = new_delta;
+            this.last_value[i] = value;
         }
 
         return new_value;
@@ -114,8 +140,82 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
     }
 
 
+    /**
+     * The number of bytes that a packet really uses in a receive buffer,
+     * worked out from the packet layouts that we decode below.
+     * Unknown packet types take the whole buffer.
+     */
+    public static int packet_length(byte[] sim_data) {
+
+        if ( sim_data.length < 8 ) return sim_data.length;
+
+        int tag = get_int(sim_data, 0);
+        int n = get_int(sim_data, 4);
+        long length;
+
+        if ( ( tag == TAG_ADCD ) || ( tag == TAG_AVIO ) || ( tag == TAG_ENGI ) || ( tag == TAG_STAT ) ) {
+            // tag, count, count x (id, value)
+            length = 8 + 8L * n;
+        } else if ( ( tag >>> 8 ) == ( ('F' << 16) | ('M' << 8) | 'C' ) ) {
+            // tag, ete, groundspeed, count, displayed, active, max. 50 x (type, id[8], alt, lat, lon)
+            if ( sim_data.length < 16 ) return sim_data.length;
+            int offset = Character.digit( (char)(tag & 0xFF), 10 ) * 50;
+            int entries = get_int(sim_data, 12) - offset;
+            length = 24 + 24L * Math.max(0, Math.min(50, entries));
+        } else if ( tag == (('M' << 24) | ('P' << 16) | ('A' << 8) | 'C') ) {
+            // tag, total, active, 4 floats for ourselves, (total - 1) x (lat, lon, alt)
+            length = 28 + 12L * Math.max(0, Math.min(n, TCAS.MAX_ENTRIES) - 1);
+        } else if ( tag == (('X' << 24) | ('F' << 16) | ('M' << 8) | 'C') ) {
+            // tag, count, status, count x (line, length, text[80])
+            length = 12 + 88L * n;
+        } else if ( ( tag == (('Q' << 24) | ('P' << 16) | ('A' << 8) | 'E') ) || ( tag == (('Q' << 24) | ('P' << 16) | ('A' << 8) | 'M') ) ) {
+            // tag, count, count x (line, length, text[80])
+            length = 8 + 88L * n;
+        } else {
+            length = sim_data.length;
+        }
+
+        return (int)Math.max(4, Math.min(length, sim_data.length));
+
+    }
+
+
+    private static int get_int(byte[] b, int i) {
+        return ( (b[i] & 0xFF) << 24 ) | ( (b[i+1] & 0xFF) << 16 ) | ( (b[i+2] & 0xFF) << 8 ) | ( b[i+3] & 0xFF );
+    }
+
+
     public void new_sim_data( byte[] sim_data ) throws Exception {
 
+        long decode_start = System.nanoTime();
+        try {
+            decode(sim_data);
+        } finally {
+            this.metrics.packet_decoded(XPlaneReceiveMetrics.get_tag(sim_data), System.nanoTime() - decode_start);
+        }
+
+    }
+
+
+    private void decode( byte[] sim_data ) throws Exception {
+
+        if ( ZERO_COPY ) {
+            if ( sim_data != this.view_array ) {
+                this.view_array = sim_data;
+                this.view = ByteBuffer.wrap(sim_data);
+            }
+            int tag = this.view.getInt(0);
+            switch (tag) {
+                case TAG_ADCD :
+                case TAG_AVIO :
+                case TAG_ENGI :
+                case TAG_STAT :
+                    decode_sim_data_points(tag);
+                    return;
+            }
+            // the other packet types are not received at full rate; decode them the old way
+        }
+
         // these vars will be re-used several times, so define them here and not in a for-loop
         int data_point_id;
         // int int_data;
@@ -157,6 +257,7 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
                     // Float
                     float_data = anti_jitter(data_point_id, data_stream.readFloat());
                     this.xplane_data_repository.store_sim_float(data_point_id, float_data);
+                    if ( data_point_id == XPlaneSimDataRepository.PLUGIN_VERSION_ID ) this.plugin_version = float_data;
                     logger.finest("ID:"+data_point_id+"="+float_data);
                 }
             }
@@ -172,7 +273,7 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             // logger.warning("" + this.xplane_data_repository.get_sim_float(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_LATITUDE) + ";" + this.xplane_data_repository.get_sim_float(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_LONGITUDE));
 
             if ( (this.received_adc_packet == false) && packet_type.equals("ADCD") ) {
-                logger.warning("Receiving from XHSI_plugin version " + decode_plugin_version(this.xplane_data_repository.get_sim_float(XPlaneSimDataRepository.PLUGIN_VERSION_ID)));
+                logger.warning("Receiving from XHSI_plugin version " + decode_plugin_version(this.plugin_version));
                 logger.fine("... ADCD packet contains " + nb_of_data_points + " sim data values");
                 this.received_adc_packet = true;
             }
@@ -478,6 +579,69 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
 
     }
 
+    private void decode_sim_data_points(int tag) {
+
+        // Air Data Computer or Avionics or Engines or Static data packet, read directly from the packet buffer
+
+        if (this.received_adc_packet == false)
+            logger.fine("Received first sim packet");
+        logger.finest("Receiving sim packet");
+
+        ByteBuffer data = this.view;
+        int nb_of_data_points = data.getInt(4);
+        int offset = 8;
+        int data_point_id;
+        float float_data;
+        int raw;
+        int slot;
+        String string_data;
+
+        for (int i=0; i<nb_of_data_points; i++) {
+            data_point_id = data.getInt(offset);
+            if ( data_point_id >= 10000 ) {
+                // a string of 4 bytes; only make a new String when the bytes have changed
+                raw = data.getInt(offset + 4);
+                slot = data_point_id % 10000;
+                string_data = this.last_string[slot];
+                if ( ( string_data == null ) || ( raw != this.last_string_raw[slot] ) ) {
+                    string_data = decode_string(this.view_array, offset + 4);
+                    this.last_string[slot] = string_data;
+                    this.last_string_raw[slot] = raw;
+                }
+                this.xplane_data_repository.store_sim_string(data_point_id, string_data);
+            } else {
+                // Float
+                float_data = anti_jitter(data_point_id, data.getFloat(offset + 4));
+                this.xplane_data_repository.store_sim_float(data_point_id, float_data);
+                if ( data_point_id == XPlaneSimDataRepository.PLUGIN_VERSION_ID ) this.plugin_version = float_data;
+            }
+            offset += 8;
+        }
+
+        if ( tag == TAG_ADCD ) {
+            if ( this.received_adc_packet == false ) {
+                logger.warning("Receiving from XHSI_plugin version " + decode_plugin_version(this.plugin_version));
+                logger.fine("... ADCD packet contains " + nb_of_data_points + " sim data values");
+                this.received_adc_packet = true;
+            }
+            logger.finest("Ticking updates");
+            this.xplane_data_repository.tick_updates();
+        }
+
+    }
+
+
+    private String decode_string(byte[] sim_data, int offset) {
+
+        try {
+            return new String(sim_data, offset, 4, charset).trim().intern();
+        } catch (java.io.UnsupportedEncodingException e) {
+            return new String(sim_data, offset, 4).trim().intern();
+        }
+
+    }
+
+
     private boolean convertCodedStrings(byte[] bts){
 
     	boolean small = false;
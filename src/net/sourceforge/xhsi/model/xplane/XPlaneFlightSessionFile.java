@@ -0,0 +1,369 @@
+/**
+* XPlaneFlightSessionFile.java
+*
+* The binary flight session recording format, and a reader for it.
+*
+* A recording starts with a header (magic "XHSR", version, start time in ms,
+* keyframe interval in ns), followed by length-prefixed records: int payload
+* length, long time in ns since the start of the recording, byte kind, and
+* the payload. A PACKET record holds one packet as it was received. A KEYFRAME
+* record is written every keyframe interval and holds the last packet of each
+* packet type that was received so far (int count, then int length + bytes for
+* each packet), which is enough to restore the complete sim data repository.
+* When the recording is stopped cleanly, an INDEX record with the time and
+* file offset of every keyframe is appended, followed by its offset and the
+* magic "XHSX". Without it, the reader rebuilds the index by skipping through
+* the records.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+
+public class XPlaneFlightSessionFile {
+
+    public static final int MAGIC = ('X' << 24) | ('H' << 16) | ('S' << 8) | 'R';
+    public static final int END_MAGIC = ('X' << 24) | ('H' << 16) | ('S' << 8) | 'X';
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+    public static final int RECORD_HEADER_SIZE = 4 + 8 + 1;
+    public static final int TRAILER_SIZE = 8 + 4;
+
+    public static final byte KIND_PACKET = 0;
+    public static final byte KIND_KEYFRAME = 1;
+    public static final byte KIND_INDEX = 2;
+
+    public static final long DEFAULT_KEYFRAME_INTERVAL = 10000000000L; // 10 seconds
+
+    // the largest packet that we receive (the size of the receive buffer)
+    public static final int MAX_PACKET_SIZE = 5000;
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+    private String filename;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private ByteBuffer read_buffer = ByteBuffer.allocate(65536);
+    private long buffer_position;    // file offset of the first byte in read_buffer
+
+    private long start_time_millis;
+    private long keyframe_interval;
+    private long data_end;           // file offset where the records end (the index, or the end of the file)
+    private long duration;
+
+    // the keyframes, sorted by time
+    private int nb_of_keyframes = 0;
+    private long[] keyframe_time = new long[64];
+    private long[] keyframe_offset = new long[64];
+    // for each keyframe interval, the last keyframe that was written at or before the start of that interval
+    private int[] slot_keyframe;
+
+    // the current record
+    private byte record_kind;
+    private long record_time;
+    private int record_length;
+    private byte[] record = new byte[MAX_PACKET_SIZE];
+    // the position of the next packet in a keyframe record, and the number of packets left
+    private int keyframe_position;
+    private int keyframe_packets_left = 0;
+
+    // the current packet
+    public byte[] packet = new byte[MAX_PACKET_SIZE];
+    public int packet_length;
+    public long packet_time;
+    public boolean packet_from_keyframe;
+
+
+    public XPlaneFlightSessionFile(String filename) {
+        this.filename = filename;
+    }
+
+
+    public static boolean is_session_file(String filename) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(filename, "r");
+            return ( raf.length() >= HEADER_SIZE ) && ( raf.readInt() == MAGIC );
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if ( raf != null ) {
+                try { raf.close(); } catch (IOException e) {}
+            }
+        }
+    }
+
+
+    public void open() throws IOException {
+
+        this.file = new RandomAccessFile(this.filename, "r");
+        this.channel = this.file.getChannel();
+
+        long file_length = this.channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        read_fully(header, 0);
+        if ( header.getInt(0) != MAGIC ) {
+            throw new IOException(this.filename + " is not an XHSI flight session recording");
+        }
+        if ( header.getInt(4) > VERSION ) {
+            throw new IOException(this.filename + " has an unsupported version " + header.getInt(4));
+        }
+        this.start_time_millis = header.getLong(8);
+        this.keyframe_interval = header.getLong(16);
+        this.data_end = file_length;
+
+        if ( ! read_index(file_length) ) {
+            logger.info("Flight session " + this.filename + " has no index, scanning the recording");
+            scan_index();
+        }
+
+        // O(1) lookup table from time to keyframe
+        int nb_of_slots = (int)(this.duration / this.keyframe_interval) + 1;
+        this.slot_keyframe = new int[nb_of_slots];
+        int k = 0;
+        for (int s=0; s<nb_of_slots; s++) {
+            while ( ( k + 1 < this.nb_of_keyframes ) && ( this.keyframe_time[k + 1] <= s * this.keyframe_interval ) ) k++;
+            this.slot_keyframe[s] = k;
+        }
+
+        rewind();
+
+    }
+
+
+    public void close() {
+        try {
+            if ( this.file != null ) this.file.close();
+        } catch (IOException e) {
+            logger.warning("Could not close flight session file (" + e.toString() + ")");
+        }
+    }
+
+
+    public long get_start_time_millis() {
+        return this.start_time_millis;
+    }
+
+
+    public long get_duration() {
+        return this.duration;
+    }
+
+
+    public int get_nb_of_keyframes() {
+        return this.nb_of_keyframes;
+    }
+
+
+    public void rewind() {
+        position(HEADER_SIZE);
+    }
+
+
+    /**
+     * Positions the reader on the last keyframe at or before time (in ns since the start)
+     * and returns the time of that keyframe, or -1 when there is none.
+     */
+    public long seek_keyframe(long time) {
+        if ( this.nb_of_keyframes == 0 ) {
+            rewind();
+            return -1;
+        }
+        if ( time < 0 ) time = 0;
+        int slot = (int)Math.min(time / this.keyframe_interval, this.slot_keyframe.length - 1);
+        int k = this.slot_keyframe[slot];
+        while ( ( k + 1 < this.nb_of_keyframes ) && ( this.keyframe_time[k + 1] <= time ) ) k++;
+        position(this.keyframe_offset[k]);
+        return this.keyframe_time[k];
+    }
+
+
+    /**
+     * Reads the next packet into packet/packet_length/packet_time.
+     * Keyframe packets are only returned when reading from a keyframe where seek_keyframe has put us,
+     * otherwise they are only a repetition of what has been read before.
+     * Returns false at the end of the recording.
+     */
+    public boolean next_packet() throws IOException {
+
+        if ( this.keyframe_packets_left == 0 ) {
+            boolean at_keyframe = ( this.buffer_position + this.read_buffer.position() ) == this.seek_position;
+            do {
+                if ( ! next_record() ) return false;
+            } while ( ( this.record_kind == KIND_KEYFRAME ) && ! at_keyframe );
+            if ( this.record_kind == KIND_PACKET ) {
+                System.arraycopy(this.record, 0, this.packet, 0, this.record_length);
+                this.packet_length = this.record_length;
+                this.packet_time = this.record_time;
+                this.packet_from_keyframe = false;
+                return true;
+            }
+            // a keyframe
+            this.keyframe_packets_left = get_int(this.record, 0);
+            this.keyframe_position = 4;
+            if ( this.keyframe_packets_left == 0 ) return next_packet();
+        }
+
+        int length = get_int(this.record, this.keyframe_position);
+        if ( length > this.packet.length ) this.packet = new byte[length];
+        System.arraycopy(this.record, this.keyframe_position + 4, this.packet, 0, length);
+        this.keyframe_position += 4 + length;
+        this.keyframe_packets_left--;
+        this.packet_length = length;
+        this.packet_time = this.record_time;
+        this.packet_from_keyframe = true;
+        return true;
+
+    }
+
+
+    // the offset that seek_keyframe or rewind has put us on
+    private long seek_position = -1;
+
+
+    private void position(long offset) {
+        this.seek_position = offset;
+        this.buffer_position = offset;
+        this.read_buffer.clear();
+        this.read_buffer.limit(0);
+        this.keyframe_packets_left = 0;
+    }
+
+
+    private boolean next_record() throws IOException {
+
+        if ( this.buffer_position + this.read_buffer.position() + RECORD_HEADER_SIZE > this.data_end ) return false;
+        if ( ! fill(RECORD_HEADER_SIZE) ) return false;
+        int length = this.read_buffer.getInt();
+        long time = this.read_buffer.getLong();
+        byte kind = this.read_buffer.get();
+        if ( ( length < 0 ) || ( this.buffer_position + this.read_buffer.position() + length > this.data_end ) ) {
+            // a recording that has been cut off
+            return false;
+        }
+        if ( length > this.record.length ) this.record = new byte[length];
+        int done = 0;
+        while ( done < length ) {
+            if ( ! fill(1) ) return false;
+            int chunk = Math.min(length - done, this.read_buffer.remaining());
+            this.read_buffer.get(this.record, done, chunk);
+            done += chunk;
+        }
+        this.record_kind = kind;
+        this.record_time = time;
+        this.record_length = length;
+        return ( kind != KIND_INDEX );
+
+    }
+
+
+    private boolean fill(int needed) throws IOException {
+        if ( this.read_buffer.remaining() >= needed ) return true;
+        this.buffer_position += this.read_buffer.position();
+        this.read_buffer.compact();
+        int n = this.channel.read(this.read_buffer, this.buffer_position + this.read_buffer.position());
+        this.read_buffer.flip();
+        return ( n >= 0 ) && ( this.read_buffer.remaining() >= needed );
+    }
+
+
+    private boolean read_index(long file_length) throws IOException {
+
+        if ( file_length < HEADER_SIZE + TRAILER_SIZE ) return false;
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        read_fully(trailer, file_length - TRAILER_SIZE);
+        long index_offset = trailer.getLong(0);
+        if ( ( trailer.getInt(8) != END_MAGIC ) || ( index_offset < HEADER_SIZE ) || ( index_offset + RECORD_HEADER_SIZE > file_length - TRAILER_SIZE ) ) {
+            return false;
+        }
+
+        ByteBuffer record_header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        read_fully(record_header, index_offset);
+        int length = record_header.getInt(0);
+        if ( ( record_header.get(12) != KIND_INDEX ) || ( index_offset + RECORD_HEADER_SIZE + length > file_length - TRAILER_SIZE ) ) {
+            return false;
+        }
+        ByteBuffer index = ByteBuffer.allocate(length);
+        read_fully(index, index_offset + RECORD_HEADER_SIZE);
+        int count = index.getInt();
+        for (int i=0; i<count; i++) {
+            add_keyframe(index.getLong(), index.getLong());
+        }
+        this.duration = record_header.getLong(4);
+        this.data_end = index_offset;
+        return true;
+
+    }
+
+
+    private void scan_index() throws IOException {
+
+        ByteBuffer record_header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long offset = HEADER_SIZE;
+        long file_length = this.channel.size();
+        this.duration = 0;
+        while ( offset + RECORD_HEADER_SIZE <= file_length ) {
+            record_header.clear();
+            read_fully(record_header, offset);
+            int length = record_header.getInt(0);
+            long time = record_header.getLong(4);
+            byte kind = record_header.get(12);
+            if ( ( length < 0 ) || ( offset + RECORD_HEADER_SIZE + length > file_length ) || ( kind == KIND_INDEX ) ) break;
+            if ( kind == KIND_KEYFRAME ) add_keyframe(time, offset);
+            this.duration = time;
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        this.data_end = offset;
+
+    }
+
+
+    private void add_keyframe(long time, long offset) {
+        if ( this.nb_of_keyframes == this.keyframe_time.length ) {
+            long[] new_time = new long[this.nb_of_keyframes * 2];
+            long[] new_offset = new long[this.nb_of_keyframes * 2];
+            System.arraycopy(this.keyframe_time, 0, new_time, 0, this.nb_of_keyframes);
+            System.arraycopy(this.keyframe_offset, 0, new_offset, 0, this.nb_of_keyframes);
+            this.keyframe_time = new_time;
+            this.keyframe_offset = new_offset;
+        }
+        this.keyframe_time[this.nb_of_keyframes] = time;
+        this.keyframe_offset[this.nb_of_keyframes] = offset;
+        this.nb_of_keyframes++;
+    }
+
+
+    private void read_fully(ByteBuffer buffer, long offset) throws IOException {
+        while ( buffer.hasRemaining() ) {
+            if ( this.channel.read(buffer, offset + buffer.position()) < 0 ) throw new EOFException();
+        }
+        buffer.flip();
+    }
+
+
+    private static int get_int(byte[] b, int i) {
+        return ( (b[i] & 0xFF) << 24 ) | ( (b[i+1] & 0xFF) << 16 ) | ( (b[i+2] & 0xFF) << 8 ) | ( b[i+3] & 0xFF );
+    }
+
+
+}
@@ -1,22 +1,30 @@
 /**
 * XPlaneFlightSessionPlayer.java
-* 
+*
 * Plays a flight session from a file recorded by XPlaneFlightSessionRecorder.
 * The read data packets are sent to XPlaneDataPacketDecoder which in turn
 * updates the UI.
-* 
+*
+* Packets are played at the time they were recorded, multiplied by the replay
+* speed. The replay can be paused, stepped one packet at a time while paused,
+* and moved to any time in the recording: the player jumps to the keyframe
+* before that time, which restores the complete repository, and plays the few
+* packets between the keyframe and that time without waiting.
+* Recordings made by older versions have no timestamps; they are still played
+* with a fixed delay between packets, and can't be moved around in.
+*
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
-* 
+*
 * This program is free software; you can redistribute it and/or
 * modify it under the terms of the GNU General Public License
-* as published by the Free Software Foundation; either version 2 
+* as published by the Free Software Foundation; either version 2
 * of the License, or (at your option) any later version.
 *
 * This library is distributed in the hope that it will be useful,
 * but WITHOUT ANY WARRANTY; without even the implied warranty of
 * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
 * GNU General Public License for more details.
-* 
+*
 * You should have received a copy of the GNU Lesser General Public
 * License along with this library; if not, write to the Free Software
 * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
@@ -26,17 +34,36 @@ package net.sourceforge.xhsi.model.xplane;
 import java.io.FileInputStream;
 import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.logging.Logger;
 import java.io.EOFException;
 
 import net.sourceforge.xhsi.StoppableThread;
 
 public class XPlaneFlightSessionPlayer extends StoppableThread {
 
+    public static final float MIN_SPEED = 0.25f;
+    public static final float MAX_SPEED = 16.0f;
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
     String filename;
     ObjectInputStream ois;
     ArrayList sim_data_observers;
     long delay_between_packets;
 
+    // the replay controls, guarded by this
+    private float speed = 1.0f;
+    private boolean paused = false;
+    private int steps = 0;
+    private long seek_target = -1;
+    // when set, the replay clock is restarted from the current position
+    private boolean reanchor = true;
+
+    private volatile boolean seekable = false;
+    private volatile long duration = 0;
+    // the time in the recording of the last packet that was played, in ns
+    private volatile long position = 0;
+
     public XPlaneFlightSessionPlayer(String filename, long delay_between_packets) {
         this.filename = filename;
         this.sim_data_observers = new ArrayList();
@@ -48,18 +75,184 @@ public class XPlaneFlightSessionPlayer extends StoppableThread {
         this.sim_data_observers.add(observer);
     }
 
+    public synchronized void set_speed(float new_speed) {
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, new_speed));
+        this.reanchor = true;
+        notifyAll();
+    }
+
+    public synchronized float get_speed() {
+        return this.speed;
+    }
+
+    public synchronized void set_paused(boolean pause) {
+        this.paused = pause;
+        this.steps = 0;
+        this.reanchor = true;
+        notifyAll();
+    }
+
+    public synchronized boolean is_paused() {
+        return this.paused;
+    }
+
+    /**
+     * Plays the next packet, while paused
+     */
+    public synchronized void step() {
+        if ( this.paused ) {
+            this.steps++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Moves the replay to time (in ns since the start of the recording)
+     */
+    public synchronized void seek(long time) {
+        if ( this.seekable ) {
+            this.seek_target = Math.max(0, Math.min(time, this.duration));
+            notifyAll();
+        }
+    }
+
+    public boolean is_seekable() {
+        return this.seekable;
+    }
+
+    public long get_position() {
+        return this.position;
+    }
+
+    public long get_duration() {
+        return this.duration;
+    }
+
+    public synchronized void signal_stop() {
+        super.signal_stop();
+        notifyAll();
+    }
+
+    private void send_packet(byte[] sim_data) throws Exception {
+        for (int i=0;i<this.sim_data_observers.size();i++) {
+            ((XPlaneDataPacketObserver)this.sim_data_observers.get(i)).new_sim_data(sim_data);
+        }
+    }
+
     public void run() {
+        if ( XPlaneFlightSessionFile.is_session_file(this.filename) ) {
+            play_session_file();
+        } else {
+            // recorded with Java serialization by older versions
+            play_object_stream();
+        }
+        System.out.println("Flight Session player stopped");
+    }
+
+    private void play_session_file() {
+
+        XPlaneFlightSessionFile session = new XPlaneFlightSessionFile(this.filename);
+        try {
+            session.open();
+            this.duration = session.get_duration();
+            this.seekable = ( session.get_nb_of_keyframes() > 0 );
+            logger.info("Replaying " + (this.duration / 1000000000L) + "s of flight session recorded at " + new java.util.Date(session.get_start_time_millis()));
+
+            long clock_position = 0;
+            long clock_nanos = 0;
+            boolean have_packet = false;
+
+            while (this.keep_running) {
+
+                long target = -1;
+                synchronized (this) {
+                    if ( this.seek_target >= 0 ) {
+                        target = this.seek_target;
+                        this.seek_target = -1;
+                        this.reanchor = true;
+                    } else if ( this.paused && ( this.steps == 0 ) ) {
+                        wait();
+                        continue;
+                    }
+                }
+
+                if ( target >= 0 ) {
+                    play_from_keyframe(session, target);
+                    have_packet = false;
+                    continue;
+                }
+
+                if ( ! have_packet ) {
+                    if ( ! session.next_packet() ) {
+                        // reached end of recording, start again
+                        session.rewind();
+                        this.position = 0;
+                        synchronized (this) { this.reanchor = true; }
+                        continue;
+                    }
+                    have_packet = true;
+                }
+
+                synchronized (this) {
+                    if ( this.paused ) {
+                        if ( this.steps == 0 ) continue;
+                        this.steps--;
+                    } else {
+                        if ( this.reanchor ) {
+                            clock_position = this.position;
+                            clock_nanos = System.nanoTime();
+                            this.reanchor = false;
+                        }
+                        long due = clock_nanos + (long)((session.packet_time - clock_position) / this.speed);
+                        long early = due - System.nanoTime();
+                        if ( early > 1000000L ) {
+                            // a change of the controls will wake us up early
+                            wait(early / 1000000L, (int)(early % 1000000L));
+                            continue;
+                        }
+                    }
+                }
+
+                send_packet(session.packet);
+                this.position = session.packet_time;
+                have_packet = false;
+
+            }
+        } catch (Exception e) {
+            System.out.print("could not replay flight session (" + e.toString() + "). will stop now ... ");
+            keep_running = false;
+        } finally {
+            session.close();
+        }
+
+    }
+
+    private void play_from_keyframe(XPlaneFlightSessionFile session, long target) throws Exception {
+        // the keyframe packets restore the complete repository, then catch up with the target without waiting
+        long keyframe_time = session.seek_keyframe(target);
+        this.position = Math.max(0, keyframe_time);
+        while ( session.next_packet() ) {
+            send_packet(session.packet);
+            this.position = session.packet_time;
+            if ( ( ! session.packet_from_keyframe ) && ( session.packet_time >= target ) ) break;
+        }
+        logger.fine("Replay moved to " + (this.position / 1000000000L) + "s");
+    }
+
+    private void play_object_stream() {
         while (this.keep_running) {
             try {
                 this.ois = new ObjectInputStream(new FileInputStream(this.filename));
 
                 try {
                     while (this.keep_running) {
-                        byte[] sim_data = (byte[])ois.readObject();
-                        for (int i=0;i<this.sim_data_observers.size();i++) {
-                            ((XPlaneDataPacketObserver)this.sim_data_observers.get(i)).new_sim_data(sim_data);
+                        synchronized (this) {
+                            while ( this.paused && ( this.steps == 0 ) && this.keep_running ) wait();
+                            if ( this.steps > 0 ) this.steps--;
                         }
-                        Thread.sleep(this.delay_between_packets);
+                        byte[] sim_data = (byte[])ois.readObject();
+                        send_packet(sim_data);
+                        Thread.sleep((long)(this.delay_between_packets / get_speed()));
                         //System.out.print(".");
                     }
                 } catch (EOFException e) {
@@ -78,6 +271,5 @@ public class XPlaneFlightSessionPlayer extends StoppableThread {
                 }
             }
         }
-        System.out.println("Flight Session player stopped");
     }
 }
@@ -1,45 +1,83 @@
 /**
 * XPlaneFlightSessionRecorder.java
-* 
+*
 * Records the data packets received by XPlaneUDPReceiver and writes them to
-* a file. The data in the file can then be replayed with 
+* a file. The data in the file can then be replayed with
 * XPlaneFlightSessionPlayer.
-* 
+*
+* The packets are copied into a ring buffer on the receiving thread and
+* written to the file in the format of XPlaneFlightSessionFile by this thread,
+* so that a slow disk never holds up the reception. When the ring buffer is
+* full, packets are dropped and counted.
+*
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
-* 
+*
 * This program is free software; you can redistribute it and/or
 * modify it under the terms of the GNU General Public License
-* as published by the Free Software Foundation; either version 2 
+* as published by the Free Software Foundation; either version 2
 * of the License, or (at your option) any later version.
 *
 * This library is distributed in the hope that it will be useful,
 * but WITHOUT ANY WARRANTY; without even the implied warranty of
 * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
 * GNU General Public License for more details.
-* 
+*
 * You should have received a copy of the GNU Lesser General Public
 * License along with this library; if not, write to the Free Software
 * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
 */
 package net.sourceforge.xhsi.model.xplane;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.FileOutputStream;
-import java.io.ObjectOutputStream;
+import java.io.IOException;
+
+import net.sourceforge.xhsi.StoppableThread;
 
 
-public class XPlaneFlightSessionRecorder implements XPlaneDataPacketObserver {
+public class XPlaneFlightSessionRecorder extends StoppableThread implements XPlaneDataPacketObserver {
+
+    // must be a power of 2
+    public static final int RING_SIZE = 256;
 
     String filename;
     int recording_rate;
     int data_frame_counter;
     long time_at_begin_of_recording;
-    ObjectOutputStream oos;
-    boolean recording = false;
+    long nanos_at_begin_of_recording;
+    long keyframe_interval = XPlaneFlightSessionFile.DEFAULT_KEYFRAME_INTERVAL;
+    volatile boolean recording = false;
+
+    // the ring buffer; ring_head is only written by the receiving thread, ring_tail only by this thread
+    private byte[][] ring_data = new byte[RING_SIZE][XPlaneFlightSessionFile.MAX_PACKET_SIZE];
+    private int[] ring_length = new int[RING_SIZE];
+    private long[] ring_time = new long[RING_SIZE];
+    private volatile long ring_head = 0;
+    private volatile long ring_tail = 0;
+    private volatile long dropped_packets = 0;
+
+    // only used by this thread
+    private DataOutputStream out;
+    private long file_offset;
+    private long last_time = 0;
+    private long next_keyframe_time = 0;
+    private long nb_of_packets = 0;
+    // the last packet of each packet type, for the keyframes
+    private int nb_of_packet_types = 0;
+    private int[] packet_type = new int[32];
+    private byte[][] last_packet = new byte[32][];
+    private int[] last_packet_length = new int[32];
+    // the keyframe index
+    private int nb_of_keyframes = 0;
+    private long[] keyframe_time = new long[64];
+    private long[] keyframe_offset = new long[64];
 
 
     public XPlaneFlightSessionRecorder(String filename, int recording_rate) {
         this.filename = filename;
         this.recording_rate = recording_rate;
+        this.keep_running = true;
     }
 
 
@@ -47,40 +85,180 @@ public class XPlaneFlightSessionRecorder implements XPlaneDataPacketObserver {
         if (recording) {
             this.data_frame_counter -= 1;
             if (this.data_frame_counter <= 0) {
-                System.out.print(".");
-                byte[] data_clone = new byte[data.length];
-                System.arraycopy(data,0,data_clone,0,data.length);
-                this.oos.writeObject(data_clone);
                 this.data_frame_counter = this.recording_rate;
+                long head = this.ring_head;
+                if ( head - this.ring_tail >= RING_SIZE ) {
+                    // the writer can't keep up; never block the receiver
+                    this.dropped_packets++;
+                } else {
+                    int slot = (int)(head & (RING_SIZE - 1));
+                    int length = XPlaneDataPacketDecoder.packet_length(data);
+                    if ( length > this.ring_data[slot].length ) this.ring_data[slot] = new byte[length];
+                    System.arraycopy(data, 0, this.ring_data[slot], 0, length);
+                    this.ring_length[slot] = length;
+                    this.ring_time[slot] = System.nanoTime() - this.nanos_at_begin_of_recording;
+                    this.ring_head = head + 1;
+                }
             }
         }
     }
 
 
-    public void start() {
+    public void run() {
+
         time_at_begin_of_recording = System.currentTimeMillis();
+        nanos_at_begin_of_recording = System.nanoTime();
         try {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.filename), 65536));
+            this.out.writeInt(XPlaneFlightSessionFile.MAGIC);
+            this.out.writeInt(XPlaneFlightSessionFile.VERSION);
+            this.out.writeLong(this.time_at_begin_of_recording);
+            this.out.writeLong(this.keyframe_interval);
+            this.file_offset = XPlaneFlightSessionFile.HEADER_SIZE;
             this.data_frame_counter = this.recording_rate;
-            this.oos = new ObjectOutputStream(new FileOutputStream(this.filename));
             this.recording = true;
             System.out.println("Recording started");
         } catch (Exception e) {
             System.out.println("Could not start recording! (" + e.toString() + ")");
+            return;
         }
-    }
-
 
-    public void stop() {
-        if (recording) {
-            try {
-                this.oos.close();
-                System.out.println("\nRecording stopped after " + (System.currentTimeMillis() - time_at_begin_of_recording)/1000 + "s");
-            } catch (Exception e) {
-                System.out.println("Could not stop recording cleanly! (" + e.toString() + ")");
+        try {
+            while (this.keep_running) {
+                if ( ! write_ring() ) {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException ie) {}
+                }
             }
-            recording = false;
+            this.recording = false;
+            write_ring();
+            write_index();
+            this.out.close();
+            System.out.println("\nRecording stopped after " + (System.currentTimeMillis() - time_at_begin_of_recording)/1000 + "s, "
+                    + this.nb_of_packets + " packets, " + this.nb_of_keyframes + " keyframes, " + this.dropped_packets + " dropped");
+        } catch (Exception e) {
+            this.recording = false;
+            System.out.println("Could not stop recording cleanly! (" + e.toString() + ")");
         }
         System.out.println("Flight session recorder stopped");
+
+    }
+
+
+    public long get_dropped_packets() {
+        return this.dropped_packets;
+    }
+
+
+    /**
+     * Writes what the receiving thread has put in the ring buffer, returns false if it was empty
+     */
+    private boolean write_ring() throws IOException {
+
+        long tail = this.ring_tail;
+        long head = this.ring_head;
+        if ( tail == head ) return false;
+        while ( tail < head ) {
+            int slot = (int)(tail & (RING_SIZE - 1));
+            write_packet(this.ring_data[slot], this.ring_length[slot], this.ring_time[slot]);
+            tail++;
+            this.ring_tail = tail;
+        }
+        return true;
+
+    }
+
+
+    private void write_packet(byte[] data, int length, long time) throws IOException {
+
+        write_record_header(length, time, XPlaneFlightSessionFile.KIND_PACKET);
+        this.out.write(data, 0, length);
+        this.file_offset += length;
+        this.nb_of_packets++;
+        this.last_time = time;
+
+        remember_packet(data, length);
+
+        if ( time >= this.next_keyframe_time ) {
+            write_keyframe(time);
+            this.next_keyframe_time = ( time / this.keyframe_interval + 1 ) * this.keyframe_interval;
+        }
+
     }
 
+
+    private void remember_packet(byte[] data, int length) {
+
+        if ( length < 4 ) return;
+        int tag = ( (data[0] & 0xFF) << 24 ) | ( (data[1] & 0xFF) << 16 ) | ( (data[2] & 0xFF) << 8 ) | ( data[3] & 0xFF );
+        int t = 0;
+        while ( ( t < this.nb_of_packet_types ) && ( this.packet_type[t] != tag ) ) t++;
+        if ( t == this.nb_of_packet_types ) {
+            if ( t == this.packet_type.length ) return;
+            this.packet_type[t] = tag;
+            this.last_packet[t] = new byte[XPlaneFlightSessionFile.MAX_PACKET_SIZE];
+            this.nb_of_packet_types++;
+        }
+        if ( length > this.last_packet[t].length ) this.last_packet[t] = new byte[length];
+        System.arraycopy(data, 0, this.last_packet[t], 0, length);
+        this.last_packet_length[t] = length;
+
+    }
+
+
+    private void write_keyframe(long time) throws IOException {
+
+        if ( this.nb_of_keyframes == this.keyframe_time.length ) {
+            long[] new_time = new long[this.nb_of_keyframes * 2];
+            long[] new_offset = new long[this.nb_of_keyframes * 2];
+            System.arraycopy(this.keyframe_time, 0, new_time, 0, this.nb_of_keyframes);
+            System.arraycopy(this.keyframe_offset, 0, new_offset, 0, this.nb_of_keyframes);
+            this.keyframe_time = new_time;
+            this.keyframe_offset = new_offset;
+        }
+        this.keyframe_time[this.nb_of_keyframes] = time;
+        this.keyframe_offset[this.nb_of_keyframes] = this.file_offset;
+        this.nb_of_keyframes++;
+
+        int length = 4;
+        for (int t=0; t<this.nb_of_packet_types; t++) {
+            length += 4 + this.last_packet_length[t];
+        }
+        write_record_header(length, time, XPlaneFlightSessionFile.KIND_KEYFRAME);
+        this.out.writeInt(this.nb_of_packet_types);
+        for (int t=0; t<this.nb_of_packet_types; t++) {
+            this.out.writeInt(this.last_packet_length[t]);
+            this.out.write(this.last_packet[t], 0, this.last_packet_length[t]);
+        }
+        this.file_offset += length;
+
+    }
+
+
+    private void write_index() throws IOException {
+
+        long index_offset = this.file_offset;
+        // the time of the index record is the duration of the recording
+        write_record_header(4 + 16 * this.nb_of_keyframes, this.last_time, XPlaneFlightSessionFile.KIND_INDEX);
+        this.out.writeInt(this.nb_of_keyframes);
+        for (int k=0; k<this.nb_of_keyframes; k++) {
+            this.out.writeLong(this.keyframe_time[k]);
+            this.out.writeLong(this.keyframe_offset[k]);
+        }
+        this.file_offset += 4 + 16 * this.nb_of_keyframes;
+        this.out.writeLong(index_offset);
+        this.out.writeInt(XPlaneFlightSessionFile.END_MAGIC);
+
+    }
+
+
+    private void write_record_header(int length, long time, byte kind) throws IOException {
+        this.out.writeInt(length);
+        this.out.writeLong(time);
+        this.out.writeByte(kind);
+        this.file_offset += XPlaneFlightSessionFile.RECORD_HEADER_SIZE;
+    }
+
+
 }
@@ -27,6 +27,7 @@ import net.sourceforge.xhsi.StoppableThread;
 import net.sourceforge.xhsi.XHSIPreferences;
 import net.sourceforge.xhsi.model.Aircraft;
 import net.sourceforge.xhsi.model.NavigationObjectRepository;
+import net.sourceforge.xhsi.model.NearestAirportTracker;
 
 
 public class XPlaneNearestAirport extends StoppableThread {
@@ -35,6 +36,7 @@ public class XPlaneNearestAirport extends StoppableThread {
     
     private Aircraft aircraft;
     private NavigationObjectRepository nor;
+    private NearestAirportTracker tracker;
     private XHSIPreferences preferences;
 
 
@@ -43,6 +45,7 @@ public class XPlaneNearestAirport extends StoppableThread {
         
         this.aircraft = my_acf;
         this.nor = NavigationObjectRepository.get_instance();
+        this.tracker = new NearestAirportTracker(this.nor);
         this.preferences = XHSIPreferences.get_instance();
         
         this.keep_running = true;
@@ -54,8 +57,9 @@ public class XPlaneNearestAirport extends StoppableThread {
         while (this.keep_running) {
             
             if ( (this.aircraft.lat() != 0.0f) || (this.aircraft.lon() != 0.0f) ) {
+                // the tracker only queries the repository again when the aircraft has moved far enough
                 this.aircraft.set_nearest_arpt(
-                    nor.find_nrst_arpt(this.aircraft.lat(), this.aircraft.lon(), this.aircraft.get_min_rwy_length(), true)
+                    this.tracker.update(this.aircraft.lat(), this.aircraft.lon(), this.aircraft.get_min_rwy_length())
                 );
             }
 
@@ -63,7 +67,7 @@ public class XPlaneNearestAirport extends StoppableThread {
             
         }
         
-        logger.fine("XPlaneNearestAirport stopped");
+        logger.fine("XPlaneNearestAirport stopped after " + this.tracker.get_nb_of_queries() + " queries");
         
     }
 
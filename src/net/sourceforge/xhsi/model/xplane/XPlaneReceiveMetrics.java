@@ -0,0 +1,357 @@
+/**
+* XPlaneReceiveMetrics.java
+*
+* Measures the reception of the XHSI plugin packets: XPlaneUDPReceiver
+* reports every packet when it arrives, and XPlaneDataPacketDecoder how long
+* it took to decode it. For each packet type, this keeps the packets and
+* bytes per second, the inter-arrival jitter (how much the time between two
+* packets differs from the time between the previous two, as a moving average
+* with a gain of 1/16 and as a histogram), and the decode time. The packets
+* carry no send time, so this is not the RTP jitter, and it is only kept per
+* type, because the types are sent at different rates and interleave.
+*
+* The StatusBar shows the total rates and the ADCD jitter, and dump writes
+* everything to a text file, to find out whether the network is saturated
+* when several XHSI instances share one plugin stream.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+
+
+public class XPlaneReceiveMetrics {
+
+    public static final int TYPE_ADCD = 0;
+    public static final int TYPE_AVIO = 1;
+    public static final int TYPE_ENGI = 2;
+    public static final int TYPE_STAT = 3;
+    public static final int TYPE_FMC = 4;
+    public static final int TYPE_TCAS = 5;
+    public static final int TYPE_QPAC = 6;
+    public static final int TYPE_XFMC = 7;
+    public static final int TYPE_OTHER = 8;
+    public static final int NB_OF_TYPES = 9;
+
+    public static final String[] TYPE_NAMES = { "ADCD", "AVIO", "ENGI", "STAT", "FMCx", "MPAC (TCAS)", "QPAx (QPAC)", "XFMC", "other" };
+
+    // the upper bounds of the jitter histogram buckets, in microseconds; the last bucket has no upper bound
+    public static final int[] JITTER_BUCKETS = { 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000 };
+
+    // the packet type ids (the first four bytes) as big-endian ints
+    private static final int TAG_ADCD = ('A' << 24) | ('D' << 16) | ('C' << 8) | 'D';
+    private static final int TAG_AVIO = ('A' << 24) | ('V' << 16) | ('I' << 8) | 'O';
+    private static final int TAG_ENGI = ('E' << 24) | ('N' << 16) | ('G' << 8) | 'I';
+    private static final int TAG_STAT = ('S' << 24) | ('T' << 16) | ('A' << 8) | 'T';
+    private static final int TAG_MPAC = ('M' << 24) | ('P' << 16) | ('A' << 8) | 'C';
+    private static final int TAG_XFMC = ('X' << 24) | ('F' << 16) | ('M' << 8) | 'C';
+    private static final int TAG_QPAE = ('Q' << 24) | ('P' << 16) | ('A' << 8) | 'E';
+    private static final int TAG_QPAM = ('Q' << 24) | ('P' << 16) | ('A' << 8) | 'M';
+    // FMC0, FMC1, ...
+    private static final int PREFIX_FMC = ('F' << 16) | ('M' << 8) | 'C';
+
+    // the rates are counted over windows of a second
+    private static final long WINDOW = 1000000000L;
+
+    private long begin_time = System.nanoTime();
+
+    // arrival, per type
+    private long[] packets = new long[NB_OF_TYPES];
+    private long[] bytes = new long[NB_OF_TYPES];
+    private long[] last_arrival = new long[NB_OF_TYPES];
+    private long[] last_interval = new long[NB_OF_TYPES];
+    private double[] jitter = new double[NB_OF_TYPES];
+    private long[][] jitter_histogram = new long[NB_OF_TYPES][JITTER_BUCKETS.length + 1];
+
+    // the current window and the rates of the last complete one
+    private long window_start = begin_time;
+    private long[] window_packets = new long[NB_OF_TYPES];
+    private long[] window_bytes = new long[NB_OF_TYPES];
+    private float[] packet_rate = new float[NB_OF_TYPES];
+    private float[] byte_rate = new float[NB_OF_TYPES];
+    private float total_packet_rate = 0.0f;
+    private float total_byte_rate = 0.0f;
+
+    // all packets
+    private long last_total_arrival = 0;
+    private long dropped = 0;
+    private long lost = 0;
+
+    // decoding, per type
+    private long[] decoded = new long[NB_OF_TYPES];
+    private long[] decode_nanos = new long[NB_OF_TYPES];
+    private long[] max_decode_nanos = new long[NB_OF_TYPES];
+
+
+    private static XPlaneReceiveMetrics single_instance = null;
+
+
+    public static synchronized XPlaneReceiveMetrics get_instance() {
+        if (XPlaneReceiveMetrics.single_instance == null) {
+            XPlaneReceiveMetrics.single_instance = new XPlaneReceiveMetrics();
+        }
+        return XPlaneReceiveMetrics.single_instance;
+    }
+
+
+    /**
+     * The type of a packet, from its first four bytes
+     */
+    public static int get_type(int tag) {
+
+        switch (tag) {
+            case TAG_ADCD : return TYPE_ADCD;
+            case TAG_AVIO : return TYPE_AVIO;
+            case TAG_ENGI : return TYPE_ENGI;
+            case TAG_STAT : return TYPE_STAT;
+            case TAG_MPAC : return TYPE_TCAS;
+            case TAG_XFMC : return TYPE_XFMC;
+            case TAG_QPAE :
+            case TAG_QPAM : return TYPE_QPAC;
+        }
+        return ( ( tag >>> 8 ) == PREFIX_FMC ) ? TYPE_FMC : TYPE_OTHER;
+
+    }
+
+
+    public static int get_tag(byte[] sim_data) {
+        return ( (sim_data[0] & 0xFF) << 24 ) | ( (sim_data[1] & 0xFF) << 16 ) | ( (sim_data[2] & 0xFF) << 8 ) | ( sim_data[3] & 0xFF );
+    }
+
+
+    /**
+     * A packet has arrived at time now (System.nanoTime)
+     */
+    public synchronized void packet_received(int tag, int length, long now) {
+
+        int type = get_type(tag);
+        this.packets[type]++;
+        this.bytes[type] += length;
+        this.window_packets[type]++;
+        this.window_bytes[type] += length;
+
+        if ( this.last_arrival[type] != 0 ) {
+            long interval = now - this.last_arrival[type];
+            if ( this.last_interval[type] != 0 ) {
+                long deviation = Math.abs(interval - this.last_interval[type]);
+                this.jitter[type] += ( deviation - this.jitter[type] ) / 16.0d;
+                this.jitter_histogram[type][get_bucket(deviation)]++;
+            }
+            this.last_interval[type] = interval;
+        }
+        this.last_arrival[type] = now;
+
+        this.last_total_arrival = now;
+
+        if ( now - this.window_start >= WINDOW ) {
+            end_window(now);
+        }
+
+    }
+
+
+    /**
+     * A packet could not be kept
+     */
+    public synchronized void packet_dropped() {
+        this.dropped++;
+    }
+
+
+    /**
+     * Packets that a relay sent were not received
+     */
+    public synchronized void packets_lost(int nb_of_packets) {
+        this.lost += nb_of_packets;
+    }
+
+
+    public synchronized void packet_decoded(int tag, long nanos) {
+
+        int type = get_type(tag);
+        this.decoded[type]++;
+        this.decode_nanos[type] += nanos;
+        if ( nanos > this.max_decode_nanos[type] ) this.max_decode_nanos[type] = nanos;
+
+    }
+
+
+    /**
+     * Packets per second during the last second, 0 when nothing arrived for a while
+     */
+    public synchronized float get_packet_rate() {
+        return stale() ? 0.0f : this.total_packet_rate;
+    }
+
+
+    public synchronized float get_byte_rate() {
+        return stale() ? 0.0f : this.total_byte_rate;
+    }
+
+
+    /**
+     * The smoothed inter-arrival jitter of the packets of a type, in milliseconds
+     */
+    public synchronized float get_jitter_ms(int type) {
+        return (float)( this.jitter[type] / 1000000.0d );
+    }
+
+
+    public synchronized long get_nb_of_dropped() {
+        return this.dropped;
+    }
+
+
+    public synchronized long get_nb_of_lost() {
+        return this.lost;
+    }
+
+
+    public synchronized void reset() {
+
+        this.begin_time = System.nanoTime();
+        this.window_start = this.begin_time;
+        for (int type=0; type<NB_OF_TYPES; type++) {
+            this.packets[type] = 0;
+            this.bytes[type] = 0;
+            this.last_arrival[type] = 0;
+            this.last_interval[type] = 0;
+            this.jitter[type] = 0.0d;
+            for (int b=0; b<=JITTER_BUCKETS.length; b++) this.jitter_histogram[type][b] = 0;
+            this.window_packets[type] = 0;
+            this.window_bytes[type] = 0;
+            this.packet_rate[type] = 0.0f;
+            this.byte_rate[type] = 0.0f;
+            this.decoded[type] = 0;
+            this.decode_nanos[type] = 0;
+            this.max_decode_nanos[type] = 0;
+        }
+        this.total_packet_rate = 0.0f;
+        this.total_byte_rate = 0.0f;
+        this.last_total_arrival = 0;
+        this.dropped = 0;
+        this.lost = 0;
+
+    }
+
+
+    /**
+     * Writes all the metrics as a text table
+     */
+    public synchronized void dump(PrintWriter out) {
+
+        long now = System.nanoTime();
+        out.println("XHSI receive metrics, " + new Date());
+        out.println("measured during " + ( ( now - this.begin_time ) / 1000000000L ) + " s, "
+                + this.dropped + " packets dropped, " + this.lost + " lost from the relay");
+        out.println();
+        out.println(pad("type", 12) + pad("packets", 10) + pad("bytes", 12) + pad("pkt/s", 9) + pad("B/s", 10)
+                + pad("jitter ms", 10) + pad("decoded", 10) + pad("avg us", 9) + pad("max us", 9));
+        for (int type=0; type<NB_OF_TYPES; type++) {
+            boolean fresh = ( now - this.last_arrival[type] ) < 2 * WINDOW;
+            out.println(pad(TYPE_NAMES[type], 12)
+                    + pad("" + this.packets[type], 10)
+                    + pad("" + this.bytes[type], 12)
+                    + pad(format(fresh ? this.packet_rate[type] : 0.0f), 9)
+                    + pad(format(fresh ? this.byte_rate[type] : 0.0f), 10)
+                    + pad(format(get_jitter_ms(type)), 10)
+                    + pad("" + this.decoded[type], 10)
+                    + pad(format(this.decoded[type] == 0 ? 0.0f : this.decode_nanos[type] / 1000.0f / this.decoded[type]), 9)
+                    + pad(format(this.max_decode_nanos[type] / 1000.0f), 9));
+        }
+        out.println();
+        out.println("jitter histogram (packets per deviation of the inter-arrival time)");
+        String header = pad("type", 12);
+        for (int b=0; b<JITTER_BUCKETS.length; b++) {
+            header += pad("<" + format(JITTER_BUCKETS[b] / 1000.0f) + "ms", 10);
+        }
+        header += pad(">=" + format(JITTER_BUCKETS[JITTER_BUCKETS.length - 1] / 1000.0f) + "ms", 10);
+        out.println(header);
+        for (int type=0; type<NB_OF_TYPES; type++) {
+            String line = pad(TYPE_NAMES[type], 12);
+            for (int b=0; b<=JITTER_BUCKETS.length; b++) {
+                line += pad("" + this.jitter_histogram[type][b], 10);
+            }
+            out.println(line);
+        }
+
+    }
+
+
+    /**
+     * Writes all the metrics to a text file
+     */
+    public void dump(File file) throws IOException {
+
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            dump(out);
+        } finally {
+            out.close();
+        }
+
+    }
+
+
+    private void end_window(long now) {
+
+        float seconds = ( now - this.window_start ) / 1000000000.0f;
+        this.total_packet_rate = 0.0f;
+        this.total_byte_rate = 0.0f;
+        for (int type=0; type<NB_OF_TYPES; type++) {
+            this.packet_rate[type] = this.window_packets[type] / seconds;
+            this.byte_rate[type] = this.window_bytes[type] / seconds;
+            this.total_packet_rate += this.packet_rate[type];
+            this.total_byte_rate += this.byte_rate[type];
+            this.window_packets[type] = 0;
+            this.window_bytes[type] = 0;
+        }
+        this.window_start = now;
+
+    }
+
+
+    private boolean stale() {
+        return ( System.nanoTime() - this.last_total_arrival ) >= 2 * WINDOW;
+    }
+
+
+    private static int get_bucket(long deviation_nanos) {
+        long micros = deviation_nanos / 1000;
+        for (int b=0; b<JITTER_BUCKETS.length; b++) {
+            if ( micros < JITTER_BUCKETS[b] ) return b;
+        }
+        return JITTER_BUCKETS.length;
+    }
+
+
+    private static String format(float value) {
+        return String.format("%.1f", value);
+    }
+
+
+    private static String pad(String text, int width) {
+        StringBuffer padded = new StringBuffer(text);
+        while ( padded.length() < width ) padded.append(' ');
+        return padded.toString();
+    }
+
+
+}
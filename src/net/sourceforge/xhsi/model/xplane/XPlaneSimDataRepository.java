@@ -6,6 +6,10 @@
 * in this repository. All observers are updated by calling the tick_updates
 * method of this repository.
 *
+* In snapshot mode, the decoder fills a back buffer that tick_updates publishes
+* as a whole, and readers get one consistent frame that only changes between
+* two events on the Swing event dispatch thread (triple buffering, no locks).
+*
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2009  Marc Rogiers (marrog.123@gmail.com)
 *
@@ -26,7 +30,10 @@
 package net.sourceforge.xhsi.model.xplane;
 
 import java.awt.Component;
+import java.awt.EventQueue;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import net.sourceforge.xhsi.model.Observer;
@@ -655,10 +662,43 @@ public class XPlaneSimDataRepository implements SimDataRepository {
     public static final int PLUGIN_VERSION_ID = 999;
 
 
+    // readers get tear-free frames published by tick_updates; start with -Dxhsi.nosnapshots to read and write the same arrays
+    public static final boolean SNAPSHOTS = System.getProperty("xhsi.nosnapshots") == null;
+
+    public static final int NB_OF_SIM_VALUES = 1300;
+
     // array with sim data for all sim data points defined above
-    float[] sim_values_float = new float[1300];
+    // (in snapshot mode, these are the back buffers that are written by the decoder)
+    float[] sim_values_float;
     // int[] sim_values_int = new int[1000];
-    String[] sim_values_string = new String[1300];
+    String[] sim_values_string;
+
+    // the frame that is seen by the readers
+    float[] frame_values_float;
+    String[] frame_values_string;
+
+    // snapshot mode: three buffers that are owned by the writer (back), the readers (front) or neither (middle)
+    private float[][] float_buffers = new float[3][];
+    private String[][] string_buffers = new String[3][];
+    private int back_index = 0;
+    private int front_index = 2;
+    // the index of the middle buffer, with the FRESH bit set when it has been published since the last swap
+    private static final int FRESH = 4;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private final AtomicBoolean swap_pending = new AtomicBoolean(false);
+    private final Runnable swap_frame = new Runnable() {
+        public void run() {
+            swap_pending.set(false);
+            begin_frame();
+        }
+    };
+
+    // one bit for each sim data point that has been stored with a new value since the previous tick
+    private long[] dirty = new_sim_data_mask();
+    // per thread: when not null, one bit is set for each sim data point that this thread reads,
+    // so that the reads of the other threads (the decoder, the nearest airport search, ...)
+    // don't end up in the mask of the event dispatch thread
+    private final ThreadLocal<long[]> read_mask = new ThreadLocal<long[]>();
 
     long updates = 0;
     ArrayList observers;
@@ -675,8 +715,22 @@ public class XPlaneSimDataRepository implements SimDataRepository {
 
     public XPlaneSimDataRepository() {
         observers = new ArrayList();
-        for (int i=0; i<1300; i++) {
-            sim_values_string[i] = "";
+        int nb_of_buffers = SNAPSHOTS ? 3 : 1;
+        for (int b=0; b<nb_of_buffers; b++) {
+            float_buffers[b] = new float[NB_OF_SIM_VALUES];
+            string_buffers[b] = new String[NB_OF_SIM_VALUES];
+            for (int i=0; i<NB_OF_SIM_VALUES; i++) {
+                string_buffers[b][i] = "";
+            }
+        }
+        sim_values_float = float_buffers[back_index];
+        sim_values_string = string_buffers[back_index];
+        if ( SNAPSHOTS ) {
+            frame_values_float = float_buffers[front_index];
+            frame_values_string = string_buffers[front_index];
+        } else {
+            frame_values_float = sim_values_float;
+            frame_values_string = sim_values_string;
         }
     }
 
@@ -689,7 +743,10 @@ public class XPlaneSimDataRepository implements SimDataRepository {
     }
 
     public void store_sim_float(int id, float value) {
-        sim_values_float[id] = value;
+        if ( Float.floatToIntBits(sim_values_float[id]) != Float.floatToIntBits(value) ) {
+            sim_values_float[id] = value;
+            dirty[id >>> 6] |= 1L << id;
+        }
     }
 
 //    public void store_sim_int(int id, int value) {
@@ -697,11 +754,17 @@ public class XPlaneSimDataRepository implements SimDataRepository {
 //    }
 
     public void store_sim_string(int id, String value) {
-        sim_values_string[id % 10000] = value;
+        int index = id % 10000;
+        if ( ! value.equals(sim_values_string[index]) ) {
+            sim_values_string[index] = value;
+            dirty[index >>> 6] |= 1L << index;
+        }
     }
 
     public float get_sim_float(int id) {
-        return sim_values_float[id];
+        long[] mask = read_mask.get();
+        if ( mask != null ) mask[id >>> 6] |= 1L << id;
+        return frame_values_float[id];
     }
 
 //    public int get_sim_int(int id) {
@@ -709,11 +772,45 @@ public class XPlaneSimDataRepository implements SimDataRepository {
 //    }
 
     public String get_sim_string(int id) {
-        return sim_values_string[id % 10000];
+        int index = id % 10000;
+        long[] mask = read_mask.get();
+        if ( mask != null ) mask[index >>> 6] |= 1L << index;
+        return frame_values_string[index];
+    }
+
+    /**
+     * Makes the most recently published frame visible to the readers.
+     * There must be only one reader thread calling this: normally this is done
+     * on the event dispatch thread, between two events, after each tick_updates.
+     */
+    public void begin_frame() {
+        if ( SNAPSHOTS && ( (middle.get() & FRESH) != 0 ) ) {
+            front_index = middle.getAndSet(front_index) & ~FRESH;
+            frame_values_float = float_buffers[front_index];
+            frame_values_string = string_buffers[front_index];
+        }
+    }
+
+    private void publish_frame() {
+        // hand over the back buffer, and continue in the one that was in the middle
+        int published = back_index;
+        back_index = middle.getAndSet(published | FRESH) & ~FRESH;
+        // the readers never write, so we can bring our new back buffer up to date from the published one
+        System.arraycopy(float_buffers[published], 0, float_buffers[back_index], 0, NB_OF_SIM_VALUES);
+        System.arraycopy(string_buffers[published], 0, string_buffers[back_index], 0, NB_OF_SIM_VALUES);
+        sim_values_float = float_buffers[back_index];
+        sim_values_string = string_buffers[back_index];
+        // swap in a separate event, so that a repaint never sees two different frames
+        if ( swap_pending.compareAndSet(false, true) ) {
+            EventQueue.invokeLater(swap_frame);
+        }
     }
 
     public void tick_updates() {
         this.updates += 1;
+        if ( SNAPSHOTS ) {
+            publish_frame();
+        }
         for (int i=0; i<this.observers.size(); i++) {
             Observer o = (Observer) this.observers.get(i);
             boolean update = !(o instanceof Component) || ((Component)o).isVisible();
@@ -722,6 +819,28 @@ public class XPlaneSimDataRepository implements SimDataRepository {
                 o.update();
             }
         }
+        for (int i=0; i<this.dirty.length; i++) {
+            this.dirty[i] = 0L;
+        }
+    }
+
+    public long[] new_sim_data_mask() {
+        return new long[(NB_OF_SIM_VALUES + 63) / 64];
+    }
+
+    public void record_reads(long[] mask) {
+        if ( mask != null ) {
+            this.read_mask.set(mask);
+        } else {
+            this.read_mask.remove();
+        }
+    }
+
+    public boolean has_changed(long[] mask) {
+        for (int i=0; i<this.dirty.length; i++) {
+            if ( (this.dirty[i] & mask[i]) != 0L ) return true;
+        }
+        return false;
     }
 
     public long get_nb_of_updates() {
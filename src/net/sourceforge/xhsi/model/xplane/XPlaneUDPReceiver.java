@@ -5,6 +5,16 @@
 * send by the XHSI plugin for X-Plane. The received data is forwarded to
 * XPlaneDataPacketDecoder.
 *
+* This thread only receives: each packet is put in the next slot of a ring
+* of preallocated direct buffers, and a decode worker thread takes them from
+* there and hands them to the reception observers. A slow observer therefore
+* doesn't make us miss datagrams; when the ring is full, the new packet is
+* dropped and counted instead.
+*
+* With an XPlaneUDPRelay, every packet is also re-published to a multicast
+* group. When the packets come from a relay, its header is removed, and
+* the packets that are missing in its sequence are counted as lost.
+*
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2010  Marc Rogiers (marrog.123@gmail.com)
 *
@@ -25,6 +35,10 @@
 package net.sourceforge.xhsi.model.xplane;
 
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.ArrayList;
 import java.util.logging.Logger;
 import java.io.*;
@@ -36,34 +50,76 @@ import net.sourceforge.xhsi.XHSIStatus;
 
 public class XPlaneUDPReceiver extends StoppableThread {
 
-    // DatagramSocket datagram_socket;
+    // the size of a packet, larger packets are truncated
+    public static final int RECEIVE_BUFFER_SIZE = 5000;
+
+    // the number of packets that can wait for the decode worker; a power of 2
+    public static final int RING_SIZE = 128;
+
+    // unicast: a channel, multicast: a socket, since joining a group with a channel needs Java 7
+    DatagramChannel datagram_channel;
+    Selector selector;
     MulticastSocket datagram_socket;
+    DatagramPacket receive_packet;
     byte[] receive_buffer;
+    ByteBuffer discard_buffer;
     ArrayList reception_observers;
     boolean has_reception;
     boolean sender_known;
     boolean multicast_recv;
     //XPlaneUDPSender udp_sender = null;
 
+    // the ring, written by this thread and read by the decode worker
+    private ByteBuffer[] ring = new ByteBuffer[RING_SIZE];
+    private volatile long ring_head = 0;
+    private volatile long ring_tail = 0;
+    private DecodeWorker decode_worker;
+    private XPlaneReceiveMetrics metrics = XPlaneReceiveMetrics.get_instance();
+
+    // when we are a relay
+    private XPlaneUDPRelay relay = null;
+    // when we follow a relay
+    private boolean relay_sequence_known = false;
+    private int next_relay_sequence;
+
+    // only written by this thread
+    private volatile long nb_of_packets = 0;
+    private volatile long nb_of_dropped = 0;
+    private volatile long nb_of_truncated = 0;
+    private volatile long nb_of_lost = 0;
+    private volatile int max_backlog = 0;
+
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
 
     public XPlaneUDPReceiver(int listen_port, boolean multicast, String group_str) throws Exception {
         super();
-        this.receive_buffer = new byte[5000];
-        // this.datagram_socket = new DatagramSocket(listen_port);
-        this.datagram_socket = new MulticastSocket(listen_port);
-        this.datagram_socket.setSoTimeout(1000);
+        this.receive_buffer = new byte[RECEIVE_BUFFER_SIZE];
+        this.discard_buffer = ByteBuffer.wrap(this.receive_buffer);
         this.reception_observers = new ArrayList();
         this.keep_running = true;
         this.has_reception = true;
         this.sender_known = false;
         this.multicast_recv = multicast;
         if ( multicast ) {
+            // this.datagram_socket = new DatagramSocket(listen_port);
+            this.datagram_socket = new MulticastSocket(listen_port);
+            this.datagram_socket.setSoTimeout(1000);
+            this.receive_packet = new DatagramPacket(this.receive_buffer, this.receive_buffer.length);
             logger.config("Joining multicast group " + group_str);
             InetAddress group = InetAddress.getByName(group_str);
             this.datagram_socket.joinGroup(group);
+        } else {
+            this.datagram_channel = DatagramChannel.open();
+            this.datagram_channel.socket().bind(new InetSocketAddress(listen_port));
+            this.datagram_channel.configureBlocking(false);
+            this.selector = Selector.open();
+            this.datagram_channel.register(this.selector, SelectionKey.OP_READ);
+        }
+        for (int i=0; i<RING_SIZE; i++) {
+            this.ring[i] = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
         }
+        this.decode_worker = new DecodeWorker();
     }
 
 
@@ -72,46 +128,204 @@ public class XPlaneUDPReceiver extends StoppableThread {
     }
 
 
-    public DatagramPacket receiveXPlanePacket() throws IOException {
-        DatagramPacket packet = new DatagramPacket(receive_buffer, receive_buffer.length);
-        datagram_socket.receive(packet);
-        logger.finest("Receiving from port " + packet.getAddress().getHostAddress() + ":" + packet.getPort());
-        if ( ! sender_known ) {
-            // intercept the sender's (X-Plane's) address and port
-            InetAddress orig_address = packet.getAddress();
-            int orig_port = packet.getPort();
-            XPlaneUDPSender.get_instance().setDestination(datagram_socket, orig_address, orig_port);
-            sender_known = true;
+    /**
+     * Re-publish every packet through the relay; call before starting this thread
+     */
+    public void set_relay(XPlaneUDPRelay relay) {
+        this.relay = relay;
+    }
+
+
+    /**
+     * The number of packets received, dropped because the ring was full, and that didn't fit in a buffer
+     */
+    public long get_nb_of_packets() {
+        return this.nb_of_packets;
+    }
+
+
+    public long get_nb_of_dropped() {
+        return this.nb_of_dropped;
+    }
+
+
+    public long get_nb_of_truncated() {
+        return this.nb_of_truncated;
+    }
+
+
+    /**
+     * The number of packets that a relay sent, but that never arrived here
+     */
+    public long get_nb_of_lost() {
+        return this.nb_of_lost;
+    }
+
+
+    /**
+     * The most packets that have been waiting for the decode worker
+     */
+    public int get_max_backlog() {
+        return this.max_backlog;
+    }
+
+
+    /**
+     * The number of packets waiting for the decode worker now
+     */
+    public int get_backlog() {
+        return (int)( this.ring_head - this.ring_tail );
+    }
+
+
+    /**
+     * Receives the next packet into the ring; false when nothing was received within a second
+     */
+    private boolean receive_into_ring() throws IOException {
+
+        long head = this.ring_head;
+        boolean ring_full = ( head - this.ring_tail >= RING_SIZE );
+        ByteBuffer packet;
+        InetAddress orig_address;
+        int orig_port;
+
+        if ( this.multicast_recv ) {
+            this.receive_packet.setLength(this.receive_buffer.length);
+            try {
+                this.datagram_socket.receive(this.receive_packet);
+            } catch (SocketTimeoutException ste) {
+                return false;
+            }
+            packet = this.discard_buffer;
+            packet.clear();
+            packet.limit(this.receive_packet.getLength());
+            orig_address = this.receive_packet.getAddress();
+            orig_port = this.receive_packet.getPort();
+        } else {
+            // when the ring is full, receive in the discard buffer only to throw the packet away
+            packet = ring_full ? this.discard_buffer : this.ring[(int)(head & (RING_SIZE - 1))];
+            packet.clear();
+            SocketAddress orig = this.datagram_channel.receive(packet);
+            while ( orig == null ) {
+                this.selector.selectedKeys().clear();
+                if ( this.selector.select(1000) == 0 ) return false;
+                orig = this.datagram_channel.receive(packet);
+            }
+            packet.flip();
+            orig_address = ((InetSocketAddress) orig).getAddress();
+            orig_port = ((InetSocketAddress) orig).getPort();
+        }
+
+        if ( ( packet.limit() >= XPlaneUDPRelay.RELAY_HEADER_SIZE ) && ( packet.getInt(0) == XPlaneUDPRelay.TAG_RELAY ) ) {
+            // we are following a relay
+            int sequence = packet.getInt(4);
+            if ( this.relay_sequence_known ) {
+                int missing = sequence - this.next_relay_sequence;
+                if ( missing > 0 ) {
+                    this.nb_of_lost += missing;
+                    this.metrics.packets_lost(missing);
+                }
+                // otherwise the relay has been restarted, or the packet came late; we continue from here
+            }
+            this.next_relay_sequence = sequence + 1;
+            this.relay_sequence_known = true;
+            if ( ! this.sender_known ) {
+                int plugin_address = packet.getInt(8);
+                if ( plugin_address != 0 ) {
+                    byte[] b = { (byte)(plugin_address >>> 24), (byte)(plugin_address >>> 16), (byte)(plugin_address >>> 8), (byte)plugin_address };
+                    orig_address = InetAddress.getByAddress(b);
+                    orig_port = packet.getInt(12);
+                }
+            }
+            packet.position(XPlaneUDPRelay.RELAY_HEADER_SIZE);
+            packet.compact();
+            packet.flip();
         }
-        return packet;
+
+        if ( ! this.sender_known ) {
+            intercept_sender(orig_address, orig_port);
+        }
+
+        int length = packet.limit();
+        int tag = ( length >= 4 ) ? packet.getInt(0) : 0;
+
+        if ( this.relay != null ) {
+            this.relay.publish(packet);
+        }
+
+        if ( this.multicast_recv && ! ring_full ) {
+            ByteBuffer slot = this.ring[(int)(head & (RING_SIZE - 1))];
+            slot.clear();
+            slot.put(this.receive_buffer, 0, length);
+            slot.flip();
+        }
+
+        this.nb_of_packets++;
+        this.metrics.packet_received(tag, length, System.nanoTime());
+        if ( length == RECEIVE_BUFFER_SIZE ) {
+            // probably more than that, but the rest is lost
+            this.nb_of_truncated++;
+        }
+        if ( ring_full ) {
+            // the decode worker can't keep up; never block the socket
+            this.nb_of_dropped++;
+            this.metrics.packet_dropped();
+        } else {
+            this.ring_head = head + 1;
+            int backlog = (int)( head + 1 - this.ring_tail );
+            if ( backlog > this.max_backlog ) this.max_backlog = backlog;
+            this.decode_worker.wake_up();
+        }
+        return true;
+
+    }
+
+
+    private void intercept_sender(InetAddress orig_address, int orig_port) {
+
+        logger.finest("Receiving from port " + orig_address.getHostAddress() + ":" + orig_port);
+        // intercept the sender's (X-Plane's) address and port
+        if ( this.multicast_recv ) {
+            XPlaneUDPSender.get_instance().setDestination(this.datagram_socket, orig_address, orig_port);
+        } else {
+            XPlaneUDPSender.get_instance().setDestination(this.datagram_channel, orig_address, orig_port);
+        }
+        if ( this.relay != null ) {
+            this.relay.set_plugin(orig_address, orig_port);
+        }
+        this.sender_known = true;
+
     }
 
 
     public void run() {
-        logger.fine("X-Plane receiver listening on port " + datagram_socket.getLocalPort());
-        DatagramPacket packet = null;
+        if ( this.multicast_recv ) {
+            logger.fine("X-Plane receiver listening on port " + datagram_socket.getLocalPort());
+        } else {
+            logger.fine("X-Plane receiver listening on port " + datagram_channel.socket().getLocalPort());
+        }
+        this.decode_worker.start();
         while (this.keep_running) {
             try {
                 // wait for packet or time-out
-                packet = receiveXPlanePacket();
+                if ( receive_into_ring() ) {
 
-                XHSIStatus.receiving = true;
+                    XHSIStatus.receiving = true;
 
-                if  (this.has_reception == false) {
-                    this.has_reception = true;
-                    logger.info("UDP reception re-established");
-                }
+                    if  (this.has_reception == false) {
+                        this.has_reception = true;
+                        logger.info("UDP reception re-established");
+                    }
 
-                // this must be some sort of subscription mechanism...
-                for (int i=0; i<this.reception_observers.size(); i++) {
-                    ((XPlaneDataPacketObserver)this.reception_observers.get(i)).new_sim_data(packet.getData());
-                }
-            } catch (SocketTimeoutException ste) {
-                XHSIStatus.receiving = false;
+                } else {
+
+                    XHSIStatus.receiving = false;
+
+                    if (this.has_reception == true) {
+                        logger.warning("No UDP reception");
+                        this.has_reception = false;
+                    }
 
-                if (this.has_reception == true) {
-                    logger.warning("No UDP reception");
-                    this.has_reception = false;
                 }
             } catch(IOException ioe) {
                 logger.warning("Caught I/O error while waiting for UDP packets! (" + ioe.toString() + ")");
@@ -120,7 +334,66 @@ public class XPlaneUDPReceiver extends StoppableThread {
                 e.printStackTrace();
             }
         }
-        logger.fine("X-Plane receiver stopped");
+        this.decode_worker.wake_up();
+        if ( this.relay != null ) {
+            this.relay.close();
+        }
+        logger.fine("X-Plane receiver stopped (" + this.nb_of_packets + " packets, " + this.nb_of_dropped + " dropped, "
+                + this.nb_of_truncated + " truncated, " + this.nb_of_lost + " lost, max backlog " + this.max_backlog + ")");
+    }
+
+
+    /**
+     * Takes the packets from the ring and hands them to the reception observers
+     */
+    private class DecodeWorker extends Thread {
+
+        // the observers always get this same array, like they got the receive buffer before
+        private byte[] sim_data = new byte[RECEIVE_BUFFER_SIZE];
+        private boolean waiting = false;
+
+        DecodeWorker() {
+            super("udp-decoder");
+            setDaemon(true);
+        }
+
+        synchronized void wake_up() {
+            if ( this.waiting ) notify();
+        }
+
+        public void run() {
+            while ( XPlaneUDPReceiver.this.keep_running ) {
+                long tail = XPlaneUDPReceiver.this.ring_tail;
+                if ( tail == XPlaneUDPReceiver.this.ring_head ) {
+                    synchronized (this) {
+                        // check again, the receiver only notifies when we are waiting
+                        this.waiting = true;
+                        if ( ( tail == XPlaneUDPReceiver.this.ring_head ) && XPlaneUDPReceiver.this.keep_running ) {
+                            try {
+                                wait(1000);
+                            } catch (InterruptedException ie) {}
+                        }
+                        this.waiting = false;
+                    }
+                    continue;
+                }
+                ByteBuffer slot = XPlaneUDPReceiver.this.ring[(int)(tail & (RING_SIZE - 1))];
+                slot.get(this.sim_data, 0, slot.remaining());
+                // the receiver can use the slot again
+                XPlaneUDPReceiver.this.ring_tail = tail + 1;
+                try {
+                    // this must be some sort of subscription mechanism...
+                    for (int i=0; i<XPlaneUDPReceiver.this.reception_observers.size(); i++) {
+                        ((XPlaneDataPacketObserver)XPlaneUDPReceiver.this.reception_observers.get(i)).new_sim_data(this.sim_data);
+                    }
+                } catch(Exception e) {
+                    logger.warning("Caught error while decoding UDP packets! (" + e.toString() + " / " + e.getMessage() + ")");
+                    e.printStackTrace();
+                }
+            }
+        }
+
     }
 
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,137 @@
+/**
+* XPlaneUDPRelay.java
+*
+* Re-publishes the packets that XPlaneUDPReceiver gets from the XHSI plugin
+* to a multicast group, so that the plugin only has to send one stream to
+* one XHSI node, however many display nodes there are. The followers simply
+* receive from the multicast group.
+*
+* Every packet gets a RELAY_HEADER_SIZE byte header in front of it: the
+* "XRLY" tag, a sequence number that lets the followers count lost packets,
+* and the IPv4 address and port of the plugin, so that the followers can
+* send their data points straight to the plugin.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.logging.Logger;
+
+
+public class XPlaneUDPRelay {
+
+    public static final int TAG_RELAY = ('X' << 24) | ('R' << 16) | ('L' << 8) | 'Y';
+
+    // tag, sequence number, plugin address, plugin port
+    public static final int RELAY_HEADER_SIZE = 16;
+
+    private DatagramChannel channel;
+    private InetSocketAddress group;
+    private ByteBuffer header = ByteBuffer.allocateDirect(RELAY_HEADER_SIZE);
+    private ByteBuffer[] datagram = new ByteBuffer[2];
+
+    private int sequence = 0;
+    private int plugin_address = 0;
+    private int plugin_port = 0;
+
+    private long nb_of_packets = 0;
+    private long nb_of_errors = 0;
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+
+    public XPlaneUDPRelay(String group_str, int port) throws IOException {
+
+        this.group = new InetSocketAddress(InetAddress.getByName(group_str), port);
+        this.channel = DatagramChannel.open();
+        // connected, to send the header and the packet as one datagram
+        this.channel.connect(this.group);
+        this.datagram[0] = this.header;
+        logger.config("Relaying the plugin packets to " + group_str + ":" + port);
+
+    }
+
+
+    /**
+     * The plugin that the followers must send their data points to
+     */
+    public void set_plugin(InetAddress address, int port) {
+
+        if ( address instanceof Inet4Address ) {
+            byte[] b = address.getAddress();
+            this.plugin_address = ( (b[0] & 0xFF) << 24 ) | ( (b[1] & 0xFF) << 16 ) | ( (b[2] & 0xFF) << 8 ) | ( b[3] & 0xFF );
+        } else {
+            // the followers will send to us instead, and that doesn't reach the plugin
+            logger.warning("Cannot tell the relay followers the plugin address " + address.getHostAddress() + " (not IPv4)");
+            this.plugin_address = 0;
+        }
+        this.plugin_port = port;
+
+    }
+
+
+    /**
+     * Sends the packet between position and limit to the group, and leaves position and limit as they were
+     */
+    public void publish(ByteBuffer packet) {
+
+        int position = packet.position();
+        this.header.clear();
+        this.header.putInt(TAG_RELAY);
+        this.header.putInt(this.sequence++);
+        this.header.putInt(this.plugin_address);
+        this.header.putInt(this.plugin_port);
+        this.header.flip();
+        this.datagram[1] = packet;
+        try {
+            this.channel.write(this.datagram);
+            this.nb_of_packets++;
+        } catch (IOException ioe) {
+            if ( this.nb_of_errors++ == 0 ) {
+                logger.warning("Caught I/O error while relaying a packet! (" + ioe.toString() + ")");
+            }
+        }
+        this.datagram[1] = null;
+        packet.position(position);
+
+    }
+
+
+    public long get_nb_of_packets() {
+        return this.nb_of_packets;
+    }
+
+
+    public long get_nb_of_errors() {
+        return this.nb_of_errors;
+    }
+
+
+    public void close() {
+        try {
+            this.channel.close();
+        } catch (IOException ioe) {
+            // nothing left to do
+        }
+    }
+
+
+}
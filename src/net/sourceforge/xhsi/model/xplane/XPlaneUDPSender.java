@@ -4,6 +4,14 @@
 * Establishes a datagram socket and send settings data packages
 * back to X-Plane.
 * 
+* A packet is the number of data points followed by that many ID / value
+* pairs. sendDataPoint sends at once, together with the data points that
+* were queued before it. queueDataPoint is for settings that a knob can
+* change many times in a row: they are collected for SEND_TICK milliseconds,
+* keeping only the last value of each ID, and then sent as one packet.
+* The packet is built in a reused direct buffer and sent through a
+* DatagramChannel, so nothing is allocated per data point.
+* 
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2010  Marc Rogiers (marrog.123@gmail.com)
 * 
@@ -23,24 +31,66 @@
 */
 package net.sourceforge.xhsi.model.xplane;
 
-import java.net.*;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.io.*;
 
 
 public class XPlaneUDPSender {
 
+    // the most data points in one packet; the plugin is only known to accept
+    // packets that fit the 500 bytes of the original send buffer, so stay well below that
+    public static final int MAX_DATA_POINTS = 10;
+
+    // how long queued data points are collected before they are sent, in milliseconds
+    public static final int SEND_TICK = Integer.getInteger("xhsi.udp.send_tick", 10).intValue();
+
     /*DatagramSocket*/ MulticastSocket datagram_socket = null;
-    byte[] send_buffer;
+    DatagramChannel datagram_channel = null;
+    // the channel was opened here, and not by the UDP receiver
+    boolean own_channel = false;
+    ByteBuffer send_buffer;
     boolean destination_known;
     InetAddress destination_address;
     int destination_port;
+    // null when the channel is connected to the destination
+    InetSocketAddress destination;
+
+    // the data points of the next packet; only the queued ones are replaced by a later value
+    private int[] pending_ids = new int[MAX_DATA_POINTS];
+    private float[] pending_values = new float[MAX_DATA_POINTS];
+    private boolean[] pending_queued = new boolean[MAX_DATA_POINTS];
+    private int nb_of_pending = 0;
+    private boolean flush_scheduled = false;
+
+    private ScheduledExecutorService flusher = null;
+    private Runnable flush_task = new Runnable() {
+        public void run() {
+            synchronized (XPlaneUDPSender.this) {
+                XPlaneUDPSender.this.flush_scheduled = false;
+                flush();
+            }
+        }
+    };
+
+    private long nb_of_packets = 0;
+    private long nb_of_data_points = 0;
+    private long nb_of_replaced = 0;
 
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
 
     public XPlaneUDPSender() {
-        this.send_buffer = new byte[500];
+        this.send_buffer = ByteBuffer.allocateDirect(4 + 8 * MAX_DATA_POINTS);
         //this.destination_port = port;
         this.destination_known = false;
     }
@@ -57,41 +107,76 @@ public class XPlaneUDPSender {
     }
 
 
-    public void setDestination(/*DatagramSocket*/ MulticastSocket socket, InetAddress address, int port) {
+    public synchronized void setDestination(DatagramChannel channel, InetAddress address, int port) {
 
-        // the UDP receiver intercepted X-Plane's IP-address and port
-        this.destination_known = true;
-        this.datagram_socket = socket;
+        // the UDP receiver intercepted X-Plane's IP-address and port, and we send from the same port
+        close_own_channel();
+        this.datagram_channel = channel;
         this.destination_address = address;
         this.destination_port = port;
+        this.destination = new InetSocketAddress(address, port);
+        this.destination_known = true;
         logger.config("Received first packet from " + address.getHostAddress() + ":" + port);
 
     }
 
 
-    public void sendDataPoint(int id, float value) {
+    public synchronized void setDestination(/*DatagramSocket*/ MulticastSocket socket, InetAddress address, int port) {
 
-        if ( this.destination_known ) {
+        // the UDP receiver intercepted X-Plane's IP-address and port
+        this.datagram_socket = socket;
+        this.destination = null;
+        if ( this.own_channel && this.datagram_channel.isConnected()
+                && address.equals(this.destination_address) && ( port == this.destination_port ) ) {
+            // still connected to the same destination
+            return;
+        }
+        close_own_channel();
+        this.destination_known = false;
+        this.destination_address = address;
+        this.destination_port = port;
+        try {
+            // a MulticastSocket that was not opened from a channel doesn't have one, so we open our own
+            this.datagram_channel = DatagramChannel.open();
+            this.own_channel = true;
+            this.datagram_channel.connect(new InetSocketAddress(address, port));
+            this.destination_known = true;
+            logger.config("Received first packet from " + address.getHostAddress() + ":" + port);
+        } catch (IOException ioe) {
+            logger.warning("Cannot open a channel to " + address.getHostAddress() + ":" + port + " (" + ioe.toString() + ")");
+            close_own_channel();
+        }
+
+    }
 
+
+    private void close_own_channel() {
+
+        if ( this.own_channel ) {
             try {
-                ByteArrayOutputStream byte_array_stream = new ByteArrayOutputStream();
-                DataOutputStream data_stream = new DataOutputStream(byte_array_stream);
-                data_stream.writeInt(1);
-                data_stream.writeInt(id);
-                data_stream.writeFloat(value);
-                logger.finest("data_stream.size = " + data_stream.size());
-                byte[] byte_array = byte_array_stream.toByteArray();
-                logger.finest("byte_array_stream.size = " + byte_array_stream.size());
-                logger.finest("byte_array.length = " + byte_array.length);
-                //DatagramPacket packet = new DatagramPacket(byte_array, byte_array_stream.size(), InetAddress.getLocalHost(), 49019);
-                DatagramPacket packet = new DatagramPacket(byte_array, byte_array_stream.size(), this.destination_address, this.destination_port);
-                // this.datagram_socket = new DatagramSocket(); no, we already have an open socket...
-                this.datagram_socket.send(packet);
-                logger.fine("Datapoint packet sent: ID=" + id + "  Value=" + value);
+                this.datagram_channel.close();
             } catch (IOException ioe) {
-                logger.warning("Caught error while sending a datapoint packet! (" + ioe.toString() + ")");
+                logger.warning("Cannot close the channel to " + this.destination_address.getHostAddress() + ":" + this.destination_port + " (" + ioe.toString() + ")");
             }
+            this.datagram_channel = null;
+            this.own_channel = false;
+        }
 
+    }
+
+
+    /**
+     * Sends the data point now, after the data points that were queued before
+     */
+    public synchronized void sendDataPoint(int id, float value) {
+
+        if ( this.destination_known ) {
+            if ( this.nb_of_pending == MAX_DATA_POINTS ) {
+                flush();
+            }
+            add(id, value, false);
+            flush();
+            if ( logger.isLoggable(Level.FINE) ) logger.fine("Datapoint packet sent: ID=" + id + "  Value=" + value);
         } else {
             logger.warning("Cannot send a datapoint packet! (destination unknown)");
         }
@@ -99,4 +184,101 @@ public class XPlaneUDPSender {
     }
 
 
+    /**
+     * Sends the data point within SEND_TICK milliseconds, or not at all if another value is queued for the same ID before that
+     */
+    public synchronized void queueDataPoint(int id, float value) {
+
+        if ( ! this.destination_known ) {
+            logger.warning("Cannot send a datapoint packet! (destination unknown)");
+            return;
+        }
+
+        for (int i=0; i<this.nb_of_pending; i++) {
+            if ( this.pending_queued[i] && ( this.pending_ids[i] == id ) ) {
+                this.pending_values[i] = value;
+                this.nb_of_replaced++;
+                return;
+            }
+        }
+
+        if ( this.nb_of_pending == MAX_DATA_POINTS ) {
+            flush();
+        }
+        add(id, value, true);
+
+        if ( SEND_TICK <= 0 ) {
+            flush();
+        } else if ( ! this.flush_scheduled ) {
+            if ( this.flusher == null ) {
+                this.flusher = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "udp-sender");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    }
+                );
+            }
+            this.flusher.schedule(this.flush_task, SEND_TICK, TimeUnit.MILLISECONDS);
+            this.flush_scheduled = true;
+        }
+
+    }
+
+
+    /**
+     * The number of packets and data points sent, and of queued values that were replaced before they were sent
+     */
+    public synchronized long get_nb_of_packets() {
+        return this.nb_of_packets;
+    }
+
+
+    public synchronized long get_nb_of_data_points() {
+        return this.nb_of_data_points;
+    }
+
+
+    public synchronized long get_nb_of_replaced() {
+        return this.nb_of_replaced;
+    }
+
+
+    private void add(int id, float value, boolean queued) {
+        this.pending_ids[this.nb_of_pending] = id;
+        this.pending_values[this.nb_of_pending] = value;
+        this.pending_queued[this.nb_of_pending] = queued;
+        this.nb_of_pending++;
+    }
+
+
+    private void flush() {
+
+        if ( this.nb_of_pending == 0 ) return;
+
+        this.send_buffer.clear();
+        this.send_buffer.putInt(this.nb_of_pending);
+        for (int i=0; i<this.nb_of_pending; i++) {
+            this.send_buffer.putInt(this.pending_ids[i]);
+            this.send_buffer.putFloat(this.pending_values[i]);
+        }
+        this.send_buffer.flip();
+        try {
+            if ( this.destination == null ) {
+                this.datagram_channel.write(this.send_buffer);
+            } else {
+                this.datagram_channel.send(this.send_buffer, this.destination);
+            }
+            this.nb_of_packets++;
+            this.nb_of_data_points += this.nb_of_pending;
+        } catch (IOException ioe) {
+            logger.warning("Caught error while sending a datapoint packet! (" + ioe.toString() + ")");
+        }
+        this.nb_of_pending = 0;
+
+    }
+
+
 }
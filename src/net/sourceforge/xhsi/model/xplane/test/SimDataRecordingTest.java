@@ -0,0 +1,120 @@
+/**
+* SimDataRecordingTest.java
+*
+* Checks that XPlaneSimDataRepository.record_reads only records the reads of
+* the thread that is recording (the event dispatch thread during a paint),
+* and not those of the other threads that share the repository.
+*
+*    java -cp xhsi.jar net.sourceforge.xhsi.model.xplane.test.SimDataRecordingTest
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane.test;
+
+import java.util.concurrent.CountDownLatch;
+
+import net.sourceforge.xhsi.model.xplane.XPlaneSimDataRepository;
+
+
+public class SimDataRecordingTest {
+
+    private static final int RECORDED_FLOAT = 3;
+    private static final int RECORDED_STRING = 10000 + 70;
+    private static final int OTHER_FIRST = 200;
+    private static final int OTHER_LAST = 400;
+    private static final int ROUNDS = 200;
+
+    private static int failures = 0;
+    private static volatile int passes = 0;
+
+
+    public static void main(String[] args) throws Exception {
+
+        final XPlaneSimDataRepository repository = new XPlaneSimDataRepository();
+        long[] recording = repository.new_sim_data_mask();
+        final long[] other_recording = repository.new_sim_data_mask();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch done_recording = new CountDownLatch(1);
+        final CountDownLatch done_reading = new CountDownLatch(1);
+
+        // another thread of the repository, which also records its own reads for a while
+        Thread other = new Thread("other-reader") {
+            public void run() {
+                repository.record_reads(other_recording);
+                started.countDown();
+                try {
+                    while ( done_recording.getCount() > 0 ) {
+                        for (int id=OTHER_FIRST; id<=OTHER_LAST; id++) {
+                            repository.get_sim_float(id);
+                        }
+                        passes++;
+                    }
+                } finally {
+                    repository.record_reads(null);
+                    done_reading.countDown();
+                }
+            }
+        };
+        other.start();
+        started.await();
+
+        for (int round=0; round<ROUNDS; round++) {
+            repository.record_reads(recording);
+            repository.get_sim_float(RECORDED_FLOAT);
+            repository.get_sim_string(RECORDED_STRING);
+            // let the other thread read while we are recording
+            int seen = passes;
+            while ( passes == seen ) {
+                Thread.yield();
+            }
+            repository.record_reads(null);
+            // not recorded
+            repository.get_sim_float(RECORDED_FLOAT + 1);
+        }
+        done_recording.countDown();
+        done_reading.await();
+
+        check("the recording thread's float is recorded", is_set(recording, RECORDED_FLOAT));
+        check("the recording thread's string is recorded", is_set(recording, RECORDED_STRING % 10000));
+        check("a read after record_reads(null) is not recorded", ! is_set(recording, RECORDED_FLOAT + 1));
+        boolean any_other = false;
+        for (int id=OTHER_FIRST; id<=OTHER_LAST; id++) {
+            any_other |= is_set(recording, id);
+        }
+        check("the other thread's reads are not recorded in the recording thread's mask", ! any_other);
+        check("the other thread records in its own mask", is_set(other_recording, OTHER_FIRST) && is_set(other_recording, OTHER_LAST));
+        check("the recording thread's reads are not recorded in the other thread's mask", ! is_set(other_recording, RECORDED_FLOAT));
+
+        if ( failures > 0 ) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("OK");
+
+    }
+
+
+    private static boolean is_set(long[] mask, int index) {
+        return ( mask[index >>> 6] & (1L << index) ) != 0L;
+    }
+
+
+    private static void check(String what, boolean ok) {
+        System.out.println( ( ok ? "ok     " : "FAILED " ) + what );
+        if ( ! ok ) failures++;
+    }
+
+}
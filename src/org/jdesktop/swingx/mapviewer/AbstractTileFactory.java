@@ -8,6 +8,7 @@ import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -58,10 +59,41 @@ public abstract class AbstractTileFactory extends TileFactory {
      */
     private final static boolean USING_DISK_CACHE = cacheDir != null;
 
+    /**
+     * tilePack
+     *
+     * If the Java property "tile.pack" is set, the tiles are read from that
+     * TilePack first (See: TilePackImport).
+     */
+    private static TilePack tilePack;
+    static {
+        String str = System.getProperty("tile.pack");
+        if (str != null) {
+            try {
+                tilePack = new TilePack(new File(str));
+                LOG.log(Level.INFO, "Tile pack '" + str + "' has " + tilePack.size() + " tiles");
+            } catch (IOException ex) {
+                System.err.println("Cannot read tile pack '" + str + "': " + ex);
+            }
+        }
+    }
+
+    /**
+     * USING_TILE_PACK
+     */
+    private final static boolean USING_TILE_PACK = tilePack != null;
+
     /**
      * MAX_MAP_ENTRIES
      */
-    private final static int MAX_MAP_ENTRIES = USING_DISK_CACHE ? 250 : 2500;
+    private final static int MAX_MAP_ENTRIES = (USING_DISK_CACHE || USING_TILE_PACK) ? 250 : 2500;
+
+    /**
+     * imageCache
+     *
+     * The decoded images, shared by all the tile factories (See: DecodedTileCache).
+     */
+    final static DecodedTileCache imageCache = new DecodedTileCache(DecodedTileCache.getConfiguredBudget());
 
     /**
      * tileMap
@@ -160,7 +192,14 @@ public abstract class AbstractTileFactory extends TileFactory {
                     }
                     tileMap.put(url, tile);
                     if (valid) {
-                        startLoading(tile);
+                        BufferedImage image = prefetch ? null : imageCache.get(url);
+                        if (image != null) {
+                            // still decoded, only its Tile was dropped from the tileMap
+                            tile.image = new SoftReference<BufferedImage>(image);
+                            tile.setLoaded(true);
+                        } else {
+                            startLoading(tile);
+                        }
                     }
                 }
                 return tile;
@@ -205,6 +244,13 @@ public abstract class AbstractTileFactory extends TileFactory {
         }
     }
 
+    /**
+     * getDecodedTileCache
+     */
+    public static DecodedTileCache getDecodedTileCache() {
+        return imageCache;
+    }
+
     public TileCache getTileCache() {
         return null;
     }
@@ -234,6 +280,9 @@ public abstract class AbstractTileFactory extends TileFactory {
      * tileInCacheDir
      */
     private boolean tileInCacheDir(String url) {
+        if (USING_TILE_PACK && tilePack.contains(url)) {
+            return true;
+        }
         Boolean res = fileExistance.get(url);
         if (res == null) {
             res = tileToFile(url).exists();
@@ -317,6 +366,7 @@ public abstract class AbstractTileFactory extends TileFactory {
                 tile.setLoading(false);
                 if (img != null) {
                     tile.image = new SoftReference(img);
+                    imageCache.put(tile.getURL(), img);
                     tile.setLoaded(true);
                 } else if (USING_DISK_CACHE && tile.getPriority() == Tile.Priority.Low) {
                     // The tile entry is not really needed -- See note below.
@@ -330,8 +380,23 @@ public abstract class AbstractTileFactory extends TileFactory {
          * readIntoCache
          */
         private BufferedImage readIntoCache(Tile tile) throws Exception {
+            if (USING_TILE_PACK) {
+                ByteBuffer packed = tilePack.get(tile.getURL());
+                if (packed != null) {
+                    if (tile.getPriority() == Tile.Priority.Low) {
+                        return null;
+                    }
+                    // decoded straight from the mapped file
+                    imageCache.miss();
+                    return PaintUtils.loadCompatibleImage(new TilePack.ByteBufferInputStream(packed));
+                }
+            }
             byte[] data = readIntoCache0(tile);
-            return (data == null) ? null : PaintUtils.loadCompatibleImage(new ByteArrayInputStream(data));
+            if (data == null) {
+                return null;
+            }
+            imageCache.miss();
+            return PaintUtils.loadCompatibleImage(new ByteArrayInputStream(data));
         }
 
         /**
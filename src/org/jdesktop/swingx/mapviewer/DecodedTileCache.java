@@ -0,0 +1,165 @@
+package org.jdesktop.swingx.mapviewer;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DecodedTileCache
+ *
+ * The decoded tile images of all the tile factories, by URL, in two tiers:
+ * the most recently used ones are held strongly up to a budget of bytes,
+ * and the older ones only by the SoftReference of their Tile, so that a GC
+ * can only drop the tiles that haven't been drawn for a while, and not
+ * every tile at once. A tile that is drawn again moves back to the strong
+ * tier.
+ *
+ * The budget is set in MB with the Java property "tile.memory".
+ */
+public class DecodedTileCache {
+
+    /**
+     * DEFAULT_BUDGET_MB
+     */
+    public final static int DEFAULT_BUDGET_MB = 64;
+
+    private final long budget;
+    private long bytes = 0;
+
+    // access order, so the eldest is the least recently used
+    private final LinkedHashMap<String,BufferedImage> strong = new LinkedHashMap<String,BufferedImage>(256, 0.75f, true);
+
+    private long hits = 0;
+    private long softHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * DecodedTileCache
+     */
+    public DecodedTileCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * The budget of the "tile.memory" Java property, or DEFAULT_BUDGET_MB
+     */
+    public static long getConfiguredBudget() {
+        long mb = DEFAULT_BUDGET_MB;
+        String str = System.getProperty("tile.memory");
+        if (str != null) {
+            try {
+                mb = Long.parseLong(str.trim());
+            } catch (NumberFormatException ex) {
+                System.err.println("tile.memory '" + str + "' is not a number of MB");
+            }
+        }
+        return mb * 1024 * 1024;
+    }
+
+    /**
+     * A tile image has just been decoded
+     */
+    public synchronized void put(String url, BufferedImage image) {
+        BufferedImage old = strong.put(url, image);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += sizeOf(image);
+        trim();
+    }
+
+    /**
+     * The image of the URL if it is in the strong tier (a hit), or null
+     */
+    public synchronized BufferedImage get(String url) {
+        BufferedImage image = strong.get(url);
+        if (image != null) {
+            hits++;
+        }
+        return image;
+    }
+
+    /**
+     * The image of a tile is about to be drawn: it becomes the most recently used,
+     * and goes back to the strong tier if it was only softly reachable. Only that
+     * is counted, and not every paint
+     */
+    public synchronized void touch(String url, BufferedImage image) {
+        if (strong.get(url) == null) {
+            softHits++;
+            strong.put(url, image);
+            bytes += sizeOf(image);
+            trim();
+        }
+    }
+
+    /**
+     * The image of a tile was needed, but has to be decoded (again)
+     */
+    public synchronized void miss() {
+        misses++;
+    }
+
+    /**
+     * Drops the least recently used images beyond the budget to the soft tier,
+     * but keeps the most recent one even if it is bigger than the budget
+     */
+    private void trim() {
+        Iterator<Map.Entry<String,BufferedImage>> it = strong.entrySet().iterator();
+        while (bytes > budget && strong.size() > 1 && it.hasNext()) {
+            bytes -= sizeOf(it.next().getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * sizeOf
+     */
+    private static long sizeOf(BufferedImage image) {
+        return (long)image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() / 8;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return strong.size();
+    }
+
+    /**
+     * The lookups that found the image in the strong tier
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * The images that were drawn while only in the soft tier, and went back to the strong tier
+     */
+    public synchronized long getSoftHits() {
+        return softHits;
+    }
+
+    /**
+     * The images that had to be decoded
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * The images that were dropped from the strong tier to the soft tier
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized String toString() {
+        return "DecodedTileCache " + strong.size() + " tiles, " + (bytes / 1024) + "/" + (budget / 1024) + " kB, "
+                + hits + " hits, " + softHits + " soft hits, " + misses + " misses, " + evictions + " evictions";
+    }
+}
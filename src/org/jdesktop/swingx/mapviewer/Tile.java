@@ -72,6 +72,8 @@ public class Tile extends AbstractBean {
     if (img == null) {
       setLoaded(false);
       dtf.startLoading(this);
+    } else if (url != null) {
+      AbstractTileFactory.imageCache.touch(url, img);
     }
     return img;
   }
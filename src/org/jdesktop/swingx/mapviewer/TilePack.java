@@ -0,0 +1,323 @@
+package org.jdesktop.swingx.mapviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * TilePack
+ *
+ * A read-only archive of map tiles in a single file, so that the tiles can
+ * be used offline without thousands of small files in a "tile.cache"
+ * directory. Use it with "java -Dtile.pack=c:\tile\tiles.pack -jar xhsi.jar",
+ * and make it from a tile cache directory with TilePackImport.
+ *
+ * A tile is identified by the layer (the part of its URL before the tile
+ * coordinates) and its z/x/y in the usual slippy map numbering, which is
+ * taken from the URL: ".../z/x/y.png" or a quadkey ".../a0123.jpeg".
+ *
+ * The file is:
+ *
+ *    int    MAGIC, int VERSION
+ *    int    number of layers, and for each layer its name (writeUTF)
+ *    int    number of tiles
+ *    the index: for each tile, sorted by key, long key, long offset, int length
+ *    the data of the tiles, none of which crosses a multiple of SEGMENT_SIZE
+ *
+ * The file is memory mapped, so a lookup is a binary search in the index
+ * and a slice of the mapped data, without copying it.
+ */
+public class TilePack {
+
+    /**
+     * MAGIC
+     */
+    public final static int MAGIC = 0x5854504B; // "XTPK"
+
+    /**
+     * VERSION
+     */
+    public final static int VERSION = 1;
+
+    /**
+     * The size of the memory mapped segments of the data
+     */
+    public final static long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * INDEX_ENTRY_SIZE
+     */
+    public final static int INDEX_ENTRY_SIZE = 8 + 8 + 4;
+
+    /**
+     * The most layers that a key can tell apart
+     */
+    public final static int MAX_LAYERS = 256;
+
+    /**
+     * The deepest zoom whose x and y fit in a key
+     */
+    public final static int MAX_ZOOM = 25;
+
+    private final String[] layers;
+    private final int tileCount;
+    private final ByteBuffer index;
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * TilePack
+     */
+    public TilePack(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (raf.readInt() != MAGIC) {
+                throw new IOException(file + " is not a tile pack");
+            }
+            int version = raf.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has tile pack version " + version + " instead of " + VERSION);
+            }
+            layers = new String[raf.readInt()];
+            for (int i = 0 ; i < layers.length ; i++) {
+                layers[i] = raf.readUTF();
+            }
+            tileCount = raf.readInt();
+            long indexStart = raf.getFilePointer();
+            index = channel.map(FileChannel.MapMode.READ_ONLY, indexStart, (long)tileCount * INDEX_ENTRY_SIZE);
+            long length = channel.size();
+            segments = new MappedByteBuffer[(int)((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int s = 0 ; s < segments.length ; s++) {
+                long start = s * SEGMENT_SIZE;
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+            }
+        } finally {
+            // the mappings stay valid
+            raf.close();
+        }
+    }
+
+    /**
+     * The number of tiles
+     */
+    public int size() {
+        return tileCount;
+    }
+
+    /**
+     * The data of the tile at the URL as a read-only slice of the file, or null if the pack doesn't have it
+     */
+    public ByteBuffer get(String url) {
+        long key = getKey(url, layers);
+        if (key < 0) {
+            return null;
+        }
+        int i = find(key);
+        if (i < 0) {
+            return null;
+        }
+        ByteBuffer entry = index.duplicate();
+        entry.position(i * INDEX_ENTRY_SIZE + 8);
+        long offset = entry.getLong();
+        int length = entry.getInt();
+        ByteBuffer data = segments[(int)(offset / SEGMENT_SIZE)].duplicate();
+        int start = (int)(offset % SEGMENT_SIZE);
+        data.position(start);
+        data.limit(start + length);
+        return data.slice();
+    }
+
+    /**
+     * The pack has the tile at the URL
+     */
+    public boolean contains(String url) {
+        long key = getKey(url, layers);
+        return key >= 0 && find(key) >= 0;
+    }
+
+    /**
+     * The index of the key in the index, or -1
+     */
+    private int find(long key) {
+        int low = 0;
+        int high = tileCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = index.getLong(mid * INDEX_ENTRY_SIZE);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The key of the tile at the URL, with the layer as its index in layers, or -1 if the URL has no tile coordinates or another layer
+     */
+    static long getKey(String url, String[] layers) {
+        int[] zxy = new int[3];
+        String layer = parseUrl(url, zxy);
+        if (layer == null) {
+            return -1;
+        }
+        for (int i = 0 ; i < layers.length ; i++) {
+            if (layers[i].equals(layer)) {
+                return makeKey(i, zxy[0], zxy[1], zxy[2]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The key of a tile: 8 bits of layer, 6 bits of zoom, 25 bits of x and 25 bits of y, so they sort by layer, z, x, y
+     */
+    static long makeKey(int layer, int z, int x, int y) {
+        return ((long)layer << 56) | ((long)z << 50) | ((long)x << 25) | (long)y;
+    }
+
+    /**
+     * The layer of the tile at the URL, with its z, x and y in zxy, or null if the URL has no tile coordinates
+     *
+     * The scheme and the query are not part of the layer, and "/" and "~"
+     * are the same, so that the names of the files in a tile cache
+     * directory give the same layer as the URLs they were fetched from.
+     */
+    static String parseUrl(String url, int[] zxy) {
+        String str = url;
+        int scheme = str.indexOf("://");
+        if (scheme >= 0) {
+            str = str.substring(scheme + 3);
+        }
+        int query = str.indexOf('?');
+        if (query >= 0) {
+            str = str.substring(0, query);
+        }
+        str = str.replace('~', '/');
+        int dot = str.lastIndexOf('.');
+        int slash = str.lastIndexOf('/');
+        if (dot > slash) {
+            str = str.substring(0, dot);
+        }
+
+        // .../z/x/y
+        int s3 = str.lastIndexOf('/');
+        int s2 = (s3 > 0) ? str.lastIndexOf('/', s3 - 1) : -1;
+        int s1 = (s2 > 0) ? str.lastIndexOf('/', s2 - 1) : -1;
+        if (s1 >= 0) {
+            int z = parseNumber(str, s1 + 1, s2);
+            int x = parseNumber(str, s2 + 1, s3);
+            int y = parseNumber(str, s3 + 1, str.length());
+            if (z >= 0 && z <= MAX_ZOOM && x >= 0 && y >= 0 && x < (1 << z) && y < (1 << z)) {
+                zxy[0] = z;
+                zxy[1] = x;
+                zxy[2] = y;
+                return trimSlashes(str.substring(0, s1));
+            }
+        }
+
+        // .../<letters><quadkey>
+        int end = str.length();
+        int start = end;
+        while (start > s3 + 1 && str.charAt(start - 1) >= '0' && str.charAt(start - 1) <= '3') {
+            start--;
+        }
+        int z = end - start;
+        if (z > 0 && z <= MAX_ZOOM) {
+            int x = 0;
+            int y = 0;
+            for (int i = start ; i < end ; i++) {
+                int digit = str.charAt(i) - '0';
+                x = (x << 1) | (digit & 1);
+                y = (y << 1) | (digit >> 1);
+            }
+            zxy[0] = z;
+            zxy[1] = x;
+            zxy[2] = y;
+            return trimSlashes(str.substring(0, start));
+        }
+        return null;
+    }
+
+    /**
+     * parseNumber
+     */
+    private static int parseNumber(String str, int start, int end) {
+        if (start >= end || end - start > 9) {
+            return -1;
+        }
+        int n = 0;
+        for (int i = start ; i < end ; i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
+    /**
+     * Without the repeated and trailing slashes, "host//7" and "host/7" are the same layer
+     */
+    private static String trimSlashes(String str) {
+        StringBuffer buf = new StringBuffer(str.length());
+        for (int i = 0 ; i < str.length() ; i++) {
+            char c = str.charAt(i);
+            if (c != '/' || (buf.length() > 0 && buf.charAt(buf.length() - 1) != '/')) {
+                buf.append(c);
+            }
+        }
+        while (buf.length() > 0 && buf.charAt(buf.length() - 1) == '/') {
+            buf.setLength(buf.length() - 1);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * ByteBufferInputStream
+     *
+     * To decode a tile straight from the mapped file.
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        public long skip(long n) {
+            int k = (int)Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + k);
+            return k;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
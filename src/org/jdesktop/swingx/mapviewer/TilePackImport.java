@@ -0,0 +1,174 @@
+package org.jdesktop.swingx.mapviewer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TilePackImport
+ *
+ * Makes a TilePack from the files in one or more tile cache directories
+ * (see "tile.cache" in AbstractTileFactory):
+ *
+ *    java -cp xhsi.jar org.jdesktop.swingx.mapviewer.TilePackImport c:\tile\tiles.pack c:\tile\cache
+ *
+ * Files whose name has no tile coordinates are skipped. When several
+ * files are the same tile, the first one is kept.
+ */
+public class TilePackImport {
+
+    /**
+     * Entry
+     */
+    private static class Entry {
+        final long key;
+        final File file;
+        final int length;
+        long offset;
+
+        Entry(long key, File file, int length) {
+            this.key = key;
+            this.file = file;
+            this.length = length;
+        }
+    }
+
+    /**
+     * main
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TilePackImport <tile pack> <tile cache directory>...");
+            System.exit(1);
+        }
+        File[] dirs = new File[args.length - 1];
+        for (int i = 1 ; i < args.length ; i++) {
+            dirs[i - 1] = new File(args[i]);
+        }
+        int count = write(new File(args[0]), dirs);
+        System.out.println(count + " tiles written to " + args[0]);
+    }
+
+    /**
+     * Writes the tiles in the directories to the pack, and returns how many
+     */
+    public static int write(File pack, File[] dirs) throws IOException {
+        ArrayList<String> layers = new ArrayList<String>();
+        Map<String,Integer> layerIds = new HashMap<String,Integer>();
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+        int[] zxy = new int[3];
+        int skipped = 0;
+
+        for (File dir : dirs) {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                throw new IOException(dir + " is not a directory");
+            }
+            for (File file : files) {
+                String layer = file.isFile() ? TilePack.parseUrl(file.getName(), zxy) : null;
+                if (layer == null || file.length() == 0 || file.length() > Integer.MAX_VALUE) {
+                    skipped++;
+                    continue;
+                }
+                Integer id = layerIds.get(layer);
+                if (id == null) {
+                    if (layers.size() == TilePack.MAX_LAYERS) {
+                        throw new IOException("More than " + TilePack.MAX_LAYERS + " layers");
+                    }
+                    id = Integer.valueOf(layers.size());
+                    layerIds.put(layer, id);
+                    layers.add(layer);
+                }
+                entries.add(new Entry(TilePack.makeKey(id.intValue(), zxy[0], zxy[1], zxy[2]), file, (int)file.length()));
+            }
+        }
+
+        Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+        // stable, so the first of the duplicates stays first
+        Arrays.sort(sorted, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                return (e1.key < e2.key) ? -1 : ((e1.key == e2.key) ? 0 : 1);
+            }
+        });
+        int n = 0;
+        for (int i = 0 ; i < sorted.length ; i++) {
+            if (n == 0 || sorted[i].key != sorted[n - 1].key) {
+                sorted[n++] = sorted[i];
+            } else {
+                skipped++;
+            }
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(TilePack.MAGIC);
+        out.writeInt(TilePack.VERSION);
+        out.writeInt(layers.size());
+        for (String layer : layers) {
+            out.writeUTF(layer);
+        }
+        out.writeInt(n);
+        out.flush();
+
+        // no tile crosses a segment, so that it is a slice of one mapping
+        long offset = header.size() + (long)n * TilePack.INDEX_ENTRY_SIZE;
+        for (int i = 0 ; i < n ; i++) {
+            Entry entry = sorted[i];
+            if (offset / TilePack.SEGMENT_SIZE != (offset + entry.length - 1) / TilePack.SEGMENT_SIZE) {
+                offset = (offset / TilePack.SEGMENT_SIZE + 1) * TilePack.SEGMENT_SIZE;
+            }
+            entry.offset = offset;
+            offset += entry.length;
+        }
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pack), 65536));
+        try {
+            header.writeTo(out);
+            for (int i = 0 ; i < n ; i++) {
+                out.writeLong(sorted[i].key);
+                out.writeLong(sorted[i].offset);
+                out.writeInt(sorted[i].length);
+            }
+            byte[] buf = new byte[65536];
+            long position = header.size() + (long)n * TilePack.INDEX_ENTRY_SIZE;
+            for (int i = 0 ; i < n ; i++) {
+                Entry entry = sorted[i];
+                for ( ; position < entry.offset ; position++) {
+                    out.write(0);
+                }
+                InputStream in = new FileInputStream(entry.file);
+                try {
+                    int remaining = entry.length;
+                    while (remaining > 0) {
+                        int k = in.read(buf, 0, Math.min(buf.length, remaining));
+                        if (k < 0) {
+                            throw new IOException(entry.file + " has become shorter");
+                        }
+                        out.write(buf, 0, k);
+                        remaining -= k;
+                    }
+                } finally {
+                    in.close();
+                }
+                position += entry.length;
+            }
+        } finally {
+            out.close();
+        }
+
+        if (skipped > 0) {
+            System.err.println(skipped + " files skipped");
+        }
+        return n;
+    }
+}